@@ -9,10 +9,12 @@
 # The script assumes that the test files are in the following format:
 # - The test file has the extension .pins24
 # - The output file has the same name as the test file with the extension _out.pins24
+# - Optional command line arguments for the phase are in a file with the same name as the test file with the extension .args
 
 # Example of usage:
 # ./test_runner.sh LexAn successful.pins24
 # ./test_runner.sh LexAn LexAn
+# ./test_runner.sh Batch Machine (runs all the programs in the directory at once with the batch runner and compares them with their .out files)
 # Warning: you have to run the script from the prg/ directory, which should be in the root of the project
 # Warning 2: in output files, make sure to add a newline at the end of the file
 
@@ -43,7 +45,7 @@ function run_test {
     echo_color "blue" "---> Running test: $2"
 
     # run java project in ../out catch error too
-    java -p ../out/production/pins24 -m pins24/pins24.phase.$1 $2 > /tmp/test_output.pins24 2>&1
+    java -p ../out/production/pins24 -m pins24/pins24.phase.$1 $2 $4 > /tmp/test_output.pins24 2>&1
 
     # Strip ANSI codes from the test output - WARNING, this could cause incorrect TEST FAILED messages if ANSI codes are included in test.pins24 strings
     # sed 's/\x1b\[1m//g; s/\x1b\[0m//g' /tmp/test_output.pins24 > /tmp/stripped_test_output.pins24
@@ -67,6 +69,13 @@ function run_test {
     rm /tmp/test_output.pins24 /tmp/stripped_test_output.pins24
 }
 
+function test_args {
+    # print the contents of the .args file of the test file (if it exists)
+    if [ -f "${1%.*}.args" ]; then
+        cat "${1%.*}.args"
+    fi
+}
+
 function is_output_file {
     # check if file has _out.pins24 extension
     if [[ $1 == *_out.pins24 || $1 == *.out ]]; then
@@ -109,6 +118,24 @@ fi
 # check build before running the tests
 check_build "$1"
 
+# the batch runner runs all the programs in the directory at once
+if [ "$1" == "Batch" ]; then
+    echo_color "yellow" "Running batch check for $2..."
+    java -p ../out/production/pins24 -m pins24/pins24.phase.Batch --check "$2" > /tmp/test_output.pins24 2>&1
+
+    if [ $? -eq 0 ]; then
+        echo_color "green" "   √ Test passed"
+    else
+        echo_color "red" "   X Test failed"
+        echo_color "yellow" "   └ Programs whose output differs from the expected output:"
+        grep -v "^PASS" /tmp/test_output.pins24
+        echo ""
+    fi
+
+    rm /tmp/test_output.pins24
+    exit 0
+fi
+
 # check if the path is a directory
 if [ -d "$2" ]; then
     echo_color "yellow" "Running tests for $2..."
@@ -129,9 +156,9 @@ if [ -d "$2" ]; then
             output_file2="${file%.*}.out"
             if [[ -f "$output_file" || -f "$output_file2" ]]; then
                 if [ -f "$output_file" ]; then
-                    run_test "$1" "$file" "$output_file"
+                    run_test "$1" "$file" "$output_file" "$(test_args "$file")"
                 elif [ -f "$output_file2" ]; then
-                    run_test "$1" "$file" "$output_file2"
+                    run_test "$1" "$file" "$output_file2" "$(test_args "$file")"
                 else
                     echo "Error: Neither $output_file nor $output_file2 found."
                     exit 1
@@ -163,7 +190,7 @@ elif [ -f "$2" ]; then # check if the path is a file
 
 
     # run the test
-    run_test "$1" "$2" "$output_file"
+    run_test "$1" "$2" "$output_file" "$(test_args "$2")"
 else
     echo_color "red" "Error: $2 is not a valid file or directory."
     exit 1
@@ -301,6 +301,130 @@ public class PDM {
 
 	}
 
+	/**
+	 * Prenos vrednosti z odmikom od klicnega kazalca na sklad.
+	 */
+	public static class LOADL extends INSTR implements CodeInstr {
+
+		/** Odmik od klicnega kazalca. */
+		public final Integer offset;
+
+		/**
+		 * Ustvari nok ukaz {@link LOADL}.
+		 * 
+		 * @param offset        Odmik od klicnega kazalca.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LOADL(final Integer offset, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.offset = offset;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "LOADL " + offset;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti s sklada na naslov z odmikom od klicnega kazalca.
+	 */
+	public static class SAVEL extends INSTR implements CodeInstr {
+
+		/** Odmik od klicnega kazalca. */
+		public final Integer offset;
+
+		/**
+		 * Ustvari nok ukaz {@link SAVEL}.
+		 * 
+		 * @param offset        Odmik od klicnega kazalca.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public SAVEL(final Integer offset, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.offset = offset;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "SAVEL " + offset;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti z naslova oznake na sklad.
+	 */
+	public static class LOADG extends INSTR implements CodeInstr {
+
+		/** Ime oznake. */
+		public final String name;
+
+		/**
+		 * Ustvari nok ukaz {@link LOADG}.
+		 * 
+		 * @param name          Ime oznake.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LOADG(final String name, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.name = name;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "LOADG " + name;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti s sklada na naslov oznake.
+	 */
+	public static class SAVEG extends INSTR implements CodeInstr {
+
+		/** Ime oznake. */
+		public final String name;
+
+		/**
+		 * Ustvari nok ukaz {@link SAVEG}.
+		 * 
+		 * @param name          Ime oznake.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public SAVEG(final String name, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.name = name;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "SAVEG " + name;
+		}
+
+	}
+
 	/**
 	 * Prenos vrednosti registra na sklad.
 	 */
@@ -439,6 +563,67 @@ public class PDM {
 
 	}
 
+	/**
+	 * Pogojni skok na oznako glede na primerjavo vrednosti na vrhu sklada.
+	 */
+	public static class BRCH extends INSTR implements CodeInstr {
+
+		/** Pogoji skoka. */
+		public enum Cond {
+			/** Enako. */
+			EQ,
+			/** Neenako. */
+			NE,
+			/** Manjse. */
+			LT,
+			/** Manjse ali enako. */
+			LE,
+			/** Vecje. */
+			GT,
+			/** Vecje ali enako. */
+			GE,
+			/** Enako nic. */
+			Z,
+			/** Razlicno od nic. */
+			NZ,
+		}
+
+		/** Pogoj skoka. */
+		public final Cond cond;
+
+		/** Ime oznake, na katero se skoci. */
+		public final String name;
+
+		/**
+		 * Ustvari nok ukaz {@link BRCH}.
+		 * 
+		 * Pri pogojih {@link Cond#Z} in {@link Cond#NZ} se s sklada prevzame ena
+		 * vrednost, pri ostalih pa dve, ki se primerjata v vrstnem redu, v katerem sta
+		 * bili preneseni na sklad. Ce pogoj ni izpolnjen, se izvajanje nadaljuje z
+		 * naslednjim ukazom.
+		 * 
+		 * @param cond          Pogoj skoka.
+		 * @param name          Ime oznake, na katero se skoci.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public BRCH(final Cond cond, final String name, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.cond = cond;
+			this.name = name;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "B" + cond + " " + name;
+		}
+
+	}
+
 	/**
 	 * Klic podprograma.
 	 */
@@ -491,4 +676,44 @@ public class PDM {
 
 	}
 
+	/**
+	 * Repni klic podprograma.
+	 * 
+	 * S sklada se prevzamejo naslov klicanega podprograma, velikost parametrov
+	 * podprograma, iz katerega se klice, in velikost parametrov klicanega
+	 * podprograma (obe brez staticne povezave). Argumenti in staticna povezava
+	 * klica se prestavijo na mesto argumentov in staticne povezave podprograma,
+	 * iz katerega se klice, klicni zapis klicanega podprograma pa prevzame njegov
+	 * shranjeni klicni kazalec in povratni naslov, zato se klicani podprogram
+	 * vrne neposredno v klicatelja podprograma, iz katerega se klice.
+	 */
+	public static class TCALL extends INSTR implements CodeInstr {
+
+		/** Klicni zapis klicanega podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/** Klicni zapis podprograma, iz katerega se klice. */
+		public final Mem.Frame debugCallerFrame;
+
+		/**
+		 * Ustvari nok ukaz {@link TCALL}.
+		 * 
+		 * @param debugFrame       Klicni zapis klicanega podprograma.
+		 * @param debugCallerFrame Klicni zapis podprograma, iz katerega se klice.
+		 * @param debugLocation    Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public TCALL(final Mem.Frame debugFrame, final Mem.Frame debugCallerFrame,
+				final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.debugFrame = debugFrame;
+			this.debugCallerFrame = debugCallerFrame;
+		}
+
+		@Override
+		public String toString() {
+			return "TCALL";
+		}
+
+	}
+
 }
\ No newline at end of file
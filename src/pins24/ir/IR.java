@@ -0,0 +1,955 @@
+package pins24.ir;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Vmesna predstavitev programa v obliki SSA.
+ *
+ * Funkcija je graf osnovnih blokov. Ukaz, ki izracuna vrednost, je hkrati
+ * navidezni register, ki mu je vrednost prirejena natanko enkrat (oblika SSA).
+ * Na zacetku bloka, v katerem se stikajo razlicne definicije iste
+ * spremenljivke, so funkcije phi, katerih operandi se po vrsti ujemajo s
+ * predhodniki bloka. Zadnji ukaz vsakega bloka je skok ali vrnitev iz funkcije.
+ *
+ * Vsaka vrednost hrani seznam ukazov, ki jo uporabljajo, zato se operandi
+ * ukazov spreminjajo le prek metod razreda {@link Instr}.
+ */
+public class IR {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public IR() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Program.
+	 */
+	public static class Program {
+
+		/** Funkcije programa (funkcija {@code main} je med njimi). */
+		public final List<Function> functions = new ArrayList<Function>();
+
+		/** Ukazi, ki predstavljajo podatke programa. */
+		public final List<PDM.DataInstr> data = new ArrayList<PDM.DataInstr>();
+
+		/** Inicializacije staticnih spremenljivk. */
+		public final List<GlobalInit> globalInits = new ArrayList<GlobalInit>();
+
+		/**
+		 * Ustvari nov prazen program.
+		 */
+		public Program() {
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder string = new StringBuilder();
+			for (final Function function : functions)
+				string.append(function.toString());
+			return string.toString();
+		}
+
+	}
+
+	/**
+	 * Inicializacija staticne spremenljivke.
+	 *
+	 * @param name      Ime staticne spremenljivke.
+	 * @param initLabel Oznaka zacetne vrednosti v podatkih programa.
+	 * @param loc       Lokacija definicije spremenljivke.
+	 */
+	public record GlobalInit(String name, String initLabel, Report.Locatable loc) {
+	}
+
+	/**
+	 * Funkcija.
+	 */
+	public static class Function {
+
+		/** Definicija funkcije. */
+		public final AST.FunDef funDef;
+
+		/** Klicni zapis funkcije. */
+		public final Mem.Frame frame;
+
+		/** Oznaka zacetka kode funkcije. */
+		public final String label;
+
+		/** Lokacija definicije funkcije. */
+		public final Report.Locatable loc;
+
+		/** Osnovni bloki funkcije (prvi je vstopni blok). */
+		public final List<Block> blocks = new ArrayList<Block>();
+
+		/** Stevilka naslednjega bloka ali ukaza. */
+		private int nextId = 0;
+
+		/**
+		 * Ustvari novo funkcijo brez blokov.
+		 *
+		 * @param funDef Definicija funkcije.
+		 * @param frame  Klicni zapis funkcije.
+		 * @param label  Oznaka zacetka kode funkcije.
+		 * @param loc    Lokacija definicije funkcije.
+		 */
+		public Function(final AST.FunDef funDef, final Mem.Frame frame, final String label,
+				final Report.Locatable loc) {
+			this.funDef = funDef;
+			this.frame = frame;
+			this.label = label;
+			this.loc = loc;
+		}
+
+		/**
+		 * Vrne vstopni blok.
+		 *
+		 * @return Vstopni blok.
+		 */
+		public Block entry() {
+			return blocks.getFirst();
+		}
+
+		/**
+		 * Ustvari nov blok na koncu seznama blokov.
+		 *
+		 * @return Nov blok.
+		 */
+		public Block newBlock() {
+			final Block block = new Block(this, nextId++);
+			blocks.add(block);
+			return block;
+		}
+
+		/**
+		 * Vrne stevilko novega ukaza.
+		 *
+		 * @return Stevilka novega ukaza.
+		 */
+		int newId() {
+			return nextId++;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder string = new StringBuilder();
+			string.append(label + ":\n");
+			for (final Block block : blocks) {
+				string.append("  " + block + ":");
+				if (!block.preds.isEmpty()) {
+					string.append("  ; preds");
+					for (final Block pred : block.preds)
+						string.append(" " + pred);
+				}
+				string.append("\n");
+				for (final Phi phi : block.phis)
+					string.append("    " + phi.describe() + "\n");
+				for (final Instr instr : block.instrs)
+					string.append("    " + instr.describe() + "\n");
+			}
+			return string.toString();
+		}
+
+	}
+
+	/**
+	 * Osnovni blok.
+	 */
+	public static class Block {
+
+		/** Funkcija, ki ji blok pripada. */
+		public final Function function;
+
+		/** Stevilka bloka. */
+		public final int id;
+
+		/** Funkcije phi na zacetku bloka. */
+		public final List<Phi> phis = new ArrayList<Phi>();
+
+		/** Ukazi bloka (zadnji je skok ali vrnitev iz funkcije). */
+		public final List<Instr> instrs = new ArrayList<Instr>();
+
+		/** Predhodniki bloka (v vrstnem redu operandov funkcij phi). */
+		public final List<Block> preds = new ArrayList<Block>();
+
+		/**
+		 * Ustvari nov prazen blok.
+		 *
+		 * @param function Funkcija, ki ji blok pripada.
+		 * @param id       Stevilka bloka.
+		 */
+		private Block(final Function function, final int id) {
+			this.function = function;
+			this.id = id;
+		}
+
+		/**
+		 * Vrne oznako zacetka kode bloka.
+		 *
+		 * @return Oznaka zacetka kode bloka.
+		 */
+		public String label() {
+			return function.label + ":b" + id;
+		}
+
+		/**
+		 * Vrne zadnji ukaz bloka, ce je to skok ali vrnitev iz funkcije.
+		 *
+		 * @return Zadnji ukaz bloka ali {@code null}, ce blok se ni zakljucen.
+		 */
+		public Terminator terminator() {
+			return (!instrs.isEmpty() && (instrs.getLast() instanceof Terminator terminator)) ? terminator : null;
+		}
+
+		/**
+		 * Vrne naslednike bloka.
+		 *
+		 * @return Nasledniki bloka.
+		 */
+		public List<Block> succs() {
+			final Terminator terminator = terminator();
+			return terminator == null ? List.of() : terminator.targets();
+		}
+
+		/**
+		 * Doda ukaz na konec bloka.
+		 *
+		 * @param <I>   Vrsta ukaza.
+		 * @param instr Ukaz.
+		 * @return Dodani ukaz.
+		 */
+		public <I extends Instr> I add(final I instr) {
+			if (terminator() != null)
+				throw new Report.InternalError();
+			instr.block = this;
+			instrs.add(instr);
+			return instr;
+		}
+
+		/**
+		 * Odstrani predhodnika in pripadajoce operande funkcij phi.
+		 *
+		 * @param pred Predhodnik.
+		 */
+		public void removePred(final Block pred) {
+			final int index = preds.indexOf(pred);
+			preds.remove(index);
+			for (final Phi phi : phis)
+				phi.removeOperand(index);
+		}
+
+		@Override
+		public String toString() {
+			return "b" + id;
+		}
+
+	}
+
+	// --- VREDNOSTI ---
+
+	/**
+	 * Vrednost.
+	 */
+	public static abstract class Value {
+
+		/** Ukazi, ki uporabljajo vrednost (vsak tolikokrat, kolikorkrat jo uporablja). */
+		public final List<Instr> users = new ArrayList<Instr>();
+
+		/**
+		 * Ustvari novo vrednost.
+		 */
+		protected Value() {
+		}
+
+		/**
+		 * Vse uporabe vrednosti nadomesti z drugo vrednostjo.
+		 *
+		 * @param value Nadomestna vrednost.
+		 */
+		public void replaceAllUsesWith(final Value value) {
+			if (value == this)
+				return;
+			for (final Instr user : new ArrayList<Instr>(users))
+				for (int i = 0; i < user.operands.size(); i++)
+					if (user.operands.get(i) == this)
+						user.setOperand(i, value);
+		}
+
+	}
+
+	/**
+	 * Konstanta.
+	 */
+	public static class Const extends Value {
+
+		/** Vrednost konstante. */
+		public final int value;
+
+		/**
+		 * Ustvari novo konstanto.
+		 *
+		 * @param value Vrednost konstante.
+		 */
+		public Const(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return "#" + value;
+		}
+
+	}
+
+	/**
+	 * Ukaz.
+	 */
+	public static abstract class Instr extends Value {
+
+		/** Stevilka ukaza (ime navideznega registra). */
+		public final int id;
+
+		/** Blok, ki mu ukaz pripada. */
+		public Block block;
+
+		/** Operandi ukaza. */
+		private final List<Value> operands = new ArrayList<Value>();
+
+		/** Lokacija dela izvorne kode, ki se prevede v ta ukaz. */
+		public final Report.Locatable loc;
+
+		/**
+		 * Ustvari nov ukaz.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 * @param operands Operandi ukaza.
+		 */
+		protected Instr(final Function function, final Report.Locatable loc, final Value... operands) {
+			this.id = function.newId();
+			this.loc = loc;
+			for (final Value operand : operands)
+				addOperand(operand);
+		}
+
+		/**
+		 * Vrne operande ukaza.
+		 *
+		 * @return Operandi ukaza (seznama ni mogoce spreminjati).
+		 */
+		public List<Value> operands() {
+			return Collections.unmodifiableList(operands);
+		}
+
+		/**
+		 * Vrne operand ukaza.
+		 *
+		 * @param index Indeks operanda.
+		 * @return Operand.
+		 */
+		public Value operand(final int index) {
+			return operands.get(index);
+		}
+
+		/**
+		 * Zamenja operand ukaza.
+		 *
+		 * @param index Indeks operanda.
+		 * @param value Nov operand.
+		 */
+		public void setOperand(final int index, final Value value) {
+			operands.get(index).users.remove(this);
+			operands.set(index, value);
+			value.users.add(this);
+		}
+
+		/**
+		 * Doda operand na konec seznama operandov.
+		 *
+		 * @param value Nov operand.
+		 */
+		public void addOperand(final Value value) {
+			operands.add(value);
+			value.users.add(this);
+		}
+
+		/**
+		 * Odstrani operand.
+		 *
+		 * @param index Indeks operanda.
+		 */
+		public void removeOperand(final int index) {
+			operands.remove(index).users.remove(this);
+		}
+
+		/**
+		 * Odstrani vse operande (pred odstranitvijo ukaza iz bloka).
+		 */
+		public void dropOperands() {
+			while (!operands.isEmpty())
+				removeOperand(operands.size() - 1);
+		}
+
+		/**
+		 * Ali ukaz izracuna vrednost.
+		 *
+		 * @return Ali ukaz izracuna vrednost.
+		 */
+		public boolean hasValue() {
+			return true;
+		}
+
+		/**
+		 * Ali ukaz spremeni pomnilnik, izhod ali potek izvajanja.
+		 *
+		 * @return Ali ima ukaz stranske ucinke.
+		 */
+		public boolean hasSideEffects() {
+			return false;
+		}
+
+		/**
+		 * Ali ukaz bere pomnilnik (njegova vrednost je odvisna od ukazov s stranskimi
+		 * ucinki).
+		 *
+		 * @return Ali ukaz bere pomnilnik.
+		 */
+		public boolean readsMemory() {
+			return false;
+		}
+
+		/**
+		 * Ali je vrednost ukaza mogoce brez stroskov ponovno izracunati na vsakem
+		 * mestu uporabe.
+		 *
+		 * @return Ali je ukaz mogoce ponovno izracunati.
+		 */
+		public boolean isRematerializable() {
+			return false;
+		}
+
+		/**
+		 * Vrne opis ukaza brez operandov.
+		 *
+		 * @return Opis ukaza brez operandov.
+		 */
+		protected abstract String mnemonic();
+
+		/**
+		 * Vrne opis ukaza z operandi.
+		 *
+		 * @return Opis ukaza z operandi.
+		 */
+		public String describe() {
+			final StringBuilder string = new StringBuilder();
+			if (hasValue())
+				string.append(this + " = ");
+			string.append(mnemonic());
+			for (int i = 0; i < operands.size(); i++)
+				string.append((i == 0 ? " " : ", ") + operands.get(i));
+			return string.toString();
+		}
+
+		@Override
+		public String toString() {
+			return "%" + id;
+		}
+
+	}
+
+	/**
+	 * Funkcija phi.
+	 */
+	public static class Phi extends Instr {
+
+		/**
+		 * Ustvari novo funkcijo phi brez operandov.
+		 *
+		 * @param block Blok, na zacetku katerega je funkcija phi.
+		 * @param loc   Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Phi(final Block block, final Report.Locatable loc) {
+			super(block.function, loc);
+			this.block = block;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "PHI";
+		}
+
+	}
+
+	/**
+	 * Dvomestna racunska operacija.
+	 */
+	public static class Binary extends Instr {
+
+		/** Racunska operacija. */
+		public final PDM.OPER.Oper oper;
+
+		/**
+		 * Ustvari novo dvomestno racunsko operacijo.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param oper     Racunska operacija.
+		 * @param fst      Prvi operand.
+		 * @param snd      Drugi operand.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Binary(final Function function, final PDM.OPER.Oper oper, final Value fst, final Value snd,
+				final Report.Locatable loc) {
+			super(function, loc, fst, snd);
+			this.oper = oper;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return oper.toString();
+		}
+
+	}
+
+	/**
+	 * Enomestna racunska operacija.
+	 */
+	public static class Unary extends Instr {
+
+		/** Racunska operacija ({@code NOT} ali {@code NEG}). */
+		public final PDM.OPER.Oper oper;
+
+		/**
+		 * Ustvari novo enomestno racunsko operacijo.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param oper     Racunska operacija ({@code NOT} ali {@code NEG}).
+		 * @param expr     Operand.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Unary(final Function function, final PDM.OPER.Oper oper, final Value expr,
+				final Report.Locatable loc) {
+			super(function, loc, expr);
+			this.oper = oper;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return oper.toString();
+		}
+
+	}
+
+	/**
+	 * Naslov v klicnem zapisu funkcije, ki je za podano stevilo staticnih povezav
+	 * zunaj trenutne funkcije.
+	 */
+	public static class FrameAddr extends Instr {
+
+		/** Stevilo staticnih povezav, ki jim je treba slediti. */
+		public final int hops;
+
+		/** Odmik od klicnega kazalca. */
+		public final int offset;
+
+		/**
+		 * Ustvari nov naslov v klicnem zapisu.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param hops     Stevilo staticnih povezav, ki jim je treba slediti.
+		 * @param offset   Odmik od klicnega kazalca.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public FrameAddr(final Function function, final int hops, final int offset, final Report.Locatable loc) {
+			super(function, loc);
+			this.hops = hops;
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean isRematerializable() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "FRAME " + hops + ", " + offset;
+		}
+
+	}
+
+	/**
+	 * Vrednost parametra ob klicu funkcije (parameter, ki je navidezni register, se
+	 * v klicnem zapisu nikoli ne spremeni).
+	 */
+	public static class Param extends Instr {
+
+		/** Odmik parametra od klicnega kazalca. */
+		public final int offset;
+
+		/**
+		 * Ustvari novo vrednost parametra.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param offset   Odmik parametra od klicnega kazalca.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Param(final Function function, final int offset, final Report.Locatable loc) {
+			super(function, loc);
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean isRematerializable() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "PARAM " + offset;
+		}
+
+	}
+
+	/**
+	 * Naslov oznake.
+	 */
+	public static class Name extends Instr {
+
+		/** Ime oznake. */
+		public final String name;
+
+		/**
+		 * Ustvari nov naslov oznake.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param name     Ime oznake.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Name(final Function function, final String name, final Report.Locatable loc) {
+			super(function, loc);
+			this.name = name;
+		}
+
+		@Override
+		public boolean isRematerializable() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "NAME " + name;
+		}
+
+	}
+
+	/**
+	 * Branje iz pomnilnika.
+	 */
+	public static class Load extends Instr {
+
+		/**
+		 * Ustvari novo branje iz pomnilnika.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param addr     Naslov.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Load(final Function function, final Value addr, final Report.Locatable loc) {
+			super(function, loc, addr);
+		}
+
+		@Override
+		public boolean readsMemory() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "LOAD";
+		}
+
+	}
+
+	/**
+	 * Pisanje v pomnilnik.
+	 */
+	public static class Store extends Instr {
+
+		/**
+		 * Ustvari novo pisanje v pomnilnik.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param value    Vrednost.
+		 * @param addr     Naslov.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Store(final Function function, final Value value, final Value addr, final Report.Locatable loc) {
+			super(function, loc, value, addr);
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		public boolean hasSideEffects() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "STORE";
+		}
+
+	}
+
+	/**
+	 * Inicializacija spremenljivke z zacetno vrednostjo iz podatkov programa.
+	 */
+	public static class Init extends Instr {
+
+		/**
+		 * Ustvari novo inicializacijo spremenljivke.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param addr     Naslov spremenljivke.
+		 * @param init     Naslov zacetne vrednosti.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Init(final Function function, final Value addr, final Value init, final Report.Locatable loc) {
+			super(function, loc, addr, init);
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		public boolean hasSideEffects() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "INIT";
+		}
+
+	}
+
+	/**
+	 * Klic funkcije (prvi operand je staticna povezava, ostali so argumenti).
+	 */
+	public static class Call extends Instr {
+
+		/** Definicija klicane funkcije. */
+		public final AST.FunDef funDef;
+
+		/** Oznaka zacetka kode klicane funkcije. */
+		public final String label;
+
+		/** Klicni zapis klicane funkcije. */
+		public final Mem.Frame frame;
+
+		/**
+		 * Ustvari nov klic funkcije.
+		 *
+		 * @param function   Funkcija, v kateri je ukaz.
+		 * @param funDef     Definicija klicane funkcije.
+		 * @param label      Oznaka zacetka kode klicane funkcije.
+		 * @param frame      Klicni zapis klicane funkcije.
+		 * @param staticLink Staticna povezava.
+		 * @param args       Argumenti.
+		 * @param loc        Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Call(final Function function, final AST.FunDef funDef, final String label, final Mem.Frame frame,
+				final Value staticLink, final List<Value> args, final Report.Locatable loc) {
+			super(function, loc, staticLink);
+			for (final Value arg : args)
+				addOperand(arg);
+			this.funDef = funDef;
+			this.label = label;
+			this.frame = frame;
+		}
+
+		@Override
+		public boolean hasSideEffects() {
+			return true;
+		}
+
+		@Override
+		public boolean readsMemory() {
+			return true;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "CALL " + label;
+		}
+
+	}
+
+	// --- SKOKI ---
+
+	/**
+	 * Zadnji ukaz bloka.
+	 */
+	public static abstract class Terminator extends Instr {
+
+		/**
+		 * Ustvari nov zadnji ukaz bloka.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 * @param operands Operandi ukaza.
+		 */
+		protected Terminator(final Function function, final Report.Locatable loc, final Value... operands) {
+			super(function, loc, operands);
+		}
+
+		/**
+		 * Vrne bloke, na katere se lahko skoci.
+		 *
+		 * @return Bloki, na katere se lahko skoci.
+		 */
+		public abstract List<Block> targets();
+
+		/**
+		 * Preusmeri skoke na blok na drug blok.
+		 *
+		 * @param from Blok, na katerega se skace.
+		 * @param to   Blok, na katerega naj se skace.
+		 */
+		public abstract void retarget(Block from, Block to);
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		public boolean hasSideEffects() {
+			return true;
+		}
+
+	}
+
+	/**
+	 * Brezpogojni skok.
+	 */
+	public static class Jump extends Terminator {
+
+		/** Blok, na katerega se skoci. */
+		public Block target;
+
+		/**
+		 * Ustvari nov brezpogojni skok.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param target   Blok, na katerega se skoci.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Jump(final Function function, final Block target, final Report.Locatable loc) {
+			super(function, loc);
+			this.target = target;
+		}
+
+		@Override
+		public List<Block> targets() {
+			return List.of(target);
+		}
+
+		@Override
+		public void retarget(final Block from, final Block to) {
+			if (target == from)
+				target = to;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "JUMP " + target;
+		}
+
+	}
+
+	/**
+	 * Pogojni skok.
+	 */
+	public static class Branch extends Terminator {
+
+		/** Blok, na katerega se skoci, ce pogoj ni enak 0. */
+		public Block ifTrue;
+
+		/** Blok, na katerega se skoci, ce je pogoj enak 0. */
+		public Block ifFalse;
+
+		/**
+		 * Ustvari nov pogojni skok.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param cond     Pogoj.
+		 * @param ifTrue   Blok, na katerega se skoci, ce pogoj ni enak 0.
+		 * @param ifFalse  Blok, na katerega se skoci, ce je pogoj enak 0.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Branch(final Function function, final Value cond, final Block ifTrue, final Block ifFalse,
+				final Report.Locatable loc) {
+			super(function, loc, cond);
+			this.ifTrue = ifTrue;
+			this.ifFalse = ifFalse;
+		}
+
+		@Override
+		public List<Block> targets() {
+			return List.of(ifTrue, ifFalse);
+		}
+
+		@Override
+		public void retarget(final Block from, final Block to) {
+			if (ifTrue == from)
+				ifTrue = to;
+			if (ifFalse == from)
+				ifFalse = to;
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "BRANCH " + ifTrue + ", " + ifFalse;
+		}
+
+	}
+
+	/**
+	 * Vrnitev iz funkcije.
+	 */
+	public static class Return extends Terminator {
+
+		/**
+		 * Ustvari novo vrnitev iz funkcije.
+		 *
+		 * @param function Funkcija, v kateri je ukaz.
+		 * @param value    Rezultat funkcije.
+		 * @param loc      Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public Return(final Function function, final Value value, final Report.Locatable loc) {
+			super(function, loc, value);
+		}
+
+		@Override
+		public List<Block> targets() {
+			return List.of();
+		}
+
+		@Override
+		public void retarget(final Block from, final Block to) {
+		}
+
+		@Override
+		protected String mnemonic() {
+			return "RETURN";
+		}
+
+	}
+
+}
@@ -0,0 +1,646 @@
+package pins24.ir;
+
+import java.util.*;
+import pins24.common.*;
+import pins24.phase.*;
+
+/**
+ * Gradnja vmesne kode v obliki SSA iz abstraktnega sintaksnega drevesa z
+ * dodanimi atributi pomnilniske predstavitve.
+ *
+ * Parametri in lokalne spremenljivke velikosti 4, katerih naslov se nikjer ne
+ * izracuna in do katerih ne dostopajo gnezdene funkcije, postanejo navidezni
+ * registri; oblika SSA se zgradi sproti med prehodom drevesa (Braun in drugi,
+ * "Simple and Efficient Construction of Static Single Assignment Form", 2013).
+ * Ostale spremenljivke se berejo in pisejo v pomnilnik enako kot v
+ * {@link CodeGen}, vrstni red racunanja izrazov pa je enak kot v {@link CodeGen}
+ * (argumenti klica od zadnjega proti prvemu, pri prirejanju najprej vrednost in
+ * nato naslov).
+ */
+public class IRBuilder {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public IRBuilder() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Zgradi vmesno kodo programa.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                pomnilniske predstavitve.
+	 * @return Vmesna koda programa.
+	 */
+	public static IR.Program build(final Memory.AttrAST attrAST) {
+		return (new ProgramBuilder(attrAST)).build();
+	}
+
+	/**
+	 * Gradnja vmesne kode programa.
+	 */
+	private static class ProgramBuilder {
+
+		/**
+		 * Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
+		 * predstavitve.
+		 */
+		private final Memory.AttrAST attrAST;
+
+		/** Vmesna koda programa. */
+		private final IR.Program program = new IR.Program();
+
+		/** Oznake zacetkov kode funkcij. */
+		private final Map<AST.FunDef, String> labels = new HashMap<AST.FunDef, String>();
+
+		/**
+		 * Parametri in spremenljivke, katerih naslov se izracuna ali do katerih dostopajo
+		 * gnezdene funkcije.
+		 */
+		private final Set<AST.Def> escaping = new HashSet<AST.Def>();
+
+		/** Funkcije, ki so dosegljive iz funkcije {@code main}. */
+		private final Set<AST.FunDef> reachable;
+
+		/** Stevec oznak podatkov. */
+		private int labelCounter = 0;
+
+		/**
+		 * Ustvari novo gradnjo vmesne kode programa.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+		 *                pomnilniske predstavitve.
+		 */
+		ProgramBuilder(final Memory.AttrAST attrAST) {
+			this.attrAST = attrAST;
+			this.reachable = CodeGen.reachableFunDefs(attrAST);
+		}
+
+		/**
+		 * Zgradi vmesno kodo programa.
+		 *
+		 * @return Vmesna koda programa.
+		 */
+		IR.Program build() {
+			final Set<String> usedLabels = new HashSet<String>();
+			attrAST.ast.accept(new AST.FullVisitor<Object, Integer>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final Integer depth) {
+					final Mem.Frame frame = attrAST.attrFrame.get(funDef);
+					String label = frame.name;
+					if (funDef.stmts.size() > 0)
+						for (int count = 1; !usedLabels.add(label); count++)
+							label = frame.name + ":" + count;
+					labels.put(funDef, label);
+					funDef.stmts.accept(this, frame.depth);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.VarExpr varExpr, final Integer depth) {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					if ((varAccess(def) instanceof Mem.RelAccess relAccess) && (relAccess.depth < depth))
+						escaping.add(def);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.UnExpr unExpr, final Integer depth) {
+					if ((unExpr.oper == AST.UnExpr.Oper.MEMADDR) && (unExpr.expr instanceof AST.VarExpr varExpr))
+						escaping.add(attrAST.attrDef.get(varExpr));
+					unExpr.expr.accept(this, depth);
+					return null;
+				}
+
+			}, 0);
+
+			for (final AST.Node def : (AST.Nodes<?>) attrAST.ast)
+				switch (def) {
+				case AST.VarDef varDef -> {
+					final Mem.AbsAccess access = (Mem.AbsAccess) attrAST.attrVarAccess.get(varDef);
+					final Report.Locatable loc = attrAST.attrLoc.get(varDef);
+					program.data.add(new PDM.LABEL(access.name, loc));
+					program.data.add(new PDM.SIZE(access.size, loc));
+					program.globalInits.add(new IR.GlobalInit(access.name, initData(access, loc), loc));
+				}
+				case AST.FunDef funDef -> buildFunction(funDef);
+				default -> throw new Report.InternalError();
+				}
+			return program;
+		}
+
+		/**
+		 * Zgradi vmesno kodo funkcije (in vseh gnezdenih funkcij), ce je dosegljiva
+		 * iz funkcije {@code main}.
+		 *
+		 * @param funDef Definicija funkcije.
+		 */
+		void buildFunction(final AST.FunDef funDef) {
+			if ((funDef.stmts.size() == 0) || !reachable.contains(funDef))
+				return;
+			(new FunctionBuilder(funDef)).build();
+		}
+
+		/**
+		 * Vrne dostop do parametra ali spremenljivke.
+		 *
+		 * @param def Definicija parametra ali spremenljivke.
+		 * @return Dostop do parametra ali spremenljivke.
+		 */
+		Mem.Access varAccess(final AST.Def def) {
+			return switch (def) {
+			case AST.VarDef varDef -> attrAST.attrVarAccess.get(varDef);
+			case AST.ParDef parDef -> attrAST.attrParAccess.get(parDef);
+			default -> null;
+			};
+		}
+
+		/**
+		 * Doda zacetno vrednost spremenljivke v podatke programa.
+		 *
+		 * @param access Dostop do spremenljivke.
+		 * @param loc    Lokacija definicije spremenljivke.
+		 * @return Oznaka zacetne vrednosti.
+		 */
+		String initData(final Mem.Access access, final Report.Locatable loc) {
+			final String label = ":" + labelCounter++;
+			program.data.add(new PDM.LABEL(label, loc));
+			if (access.inits != null)
+				for (final Integer init : access.inits)
+					program.data.add(new PDM.DATA(init, loc));
+			return label;
+		}
+
+		/**
+		 * Gradnja vmesne kode ene funkcije.
+		 */
+		private class FunctionBuilder implements AST.FullVisitor<IR.Value, Object> {
+
+			/** Definicija funkcije. */
+			private final AST.FunDef funDef;
+
+			/** Klicni zapis funkcije. */
+			private final Mem.Frame frame;
+
+			/** Vmesna koda funkcije. */
+			private final IR.Function function;
+
+			/** Blok, na konec katerega se dodajajo ukazi. */
+			private IR.Block current;
+
+			/** Parametri in spremenljivke funkcije, ki so navidezni registri. */
+			private final Set<AST.Def> promoted = new HashSet<AST.Def>();
+
+			/** Trenutne vrednosti navideznih registrov na koncu posameznih blokov. */
+			private final Map<IR.Block, Map<AST.Def, IR.Value>> currentDefs = new HashMap<IR.Block, Map<AST.Def, IR.Value>>();
+
+			/** Bloki, katerih predhodniki so ze vsi znani. */
+			private final Set<IR.Block> sealed = new HashSet<IR.Block>();
+
+			/** Funkcije phi v blokih, katerih predhodniki se niso vsi znani. */
+			private final Map<IR.Block, Map<AST.Def, IR.Phi>> incompletePhis = new HashMap<IR.Block, Map<AST.Def, IR.Phi>>();
+
+			/** Odstranjene funkcije phi in vrednosti, ki so jih nadomestile. */
+			private final Map<IR.Phi, IR.Value> replaced = new HashMap<IR.Phi, IR.Value>();
+
+			/**
+			 * Ustvari novo gradnjo vmesne kode funkcije.
+			 *
+			 * @param funDef Definicija funkcije.
+			 */
+			FunctionBuilder(final AST.FunDef funDef) {
+				this.funDef = funDef;
+				this.frame = attrAST.attrFrame.get(funDef);
+				this.function = new IR.Function(funDef, frame, labels.get(funDef), attrAST.attrLoc.get(funDef));
+			}
+
+			/**
+			 * Zgradi vmesno kodo funkcije.
+			 */
+			void build() {
+				program.functions.add(function);
+				current = function.newBlock();
+				sealed.add(current);
+				final Report.Locatable loc = function.loc;
+				for (final AST.ParDef parDef : funDef.pars)
+					if (promote(parDef)) {
+						final Mem.RelAccess access = attrAST.attrParAccess.get(parDef);
+						writeVariable(parDef, current, current.add(new IR.Param(function, access.offset, loc)));
+					}
+				final IR.Value result = stmts(funDef.stmts.getAll());
+				current.add(new IR.Return(function, result == null ? new IR.Const(0) : result, loc));
+			}
+
+			/**
+			 * Ali parameter ali spremenljivka funkcije postane navidezni register.
+			 *
+			 * @param def Definicija parametra ali spremenljivke.
+			 * @return Ali parameter ali spremenljivka postane navidezni register.
+			 */
+			private boolean promote(final AST.Def def) {
+				if (escaping.contains(def) || !(varAccess(def) instanceof Mem.RelAccess access)
+						|| !access.depth.equals(frame.depth) || (access.size != 4))
+					return false;
+				// zacetna vrednost spremenljivke mora biti ena sama konstanta (ali nobena)
+				if ((access.inits != null) && !access.inits.isEmpty() && (access.inits.get(0) != 0)
+						&& ((access.inits.get(0) != 1) || (access.inits.get(1) != 1) || (access.inits.get(2) != 1)))
+					return false;
+				promoted.add(def);
+				return true;
+			}
+
+			/**
+			 * Zgradi vmesno kodo zaporedja stavkov.
+			 *
+			 * @param stmts Zaporedje stavkov.
+			 * @return Vrednost zadnjega stavka ali {@code null}, ce zadnji stavek nima
+			 *         vrednosti.
+			 */
+			private IR.Value stmts(final List<AST.Stmt> stmts) {
+				IR.Value value = null;
+				for (final AST.Stmt stmt : stmts)
+					value = stmt.accept(this, null);
+				return value;
+			}
+
+			// --- OBLIKA SSA ---
+
+			/**
+			 * Zapise novo vrednost navideznega registra na koncu bloka.
+			 *
+			 * @param def   Definicija parametra ali spremenljivke.
+			 * @param block Blok.
+			 * @param value Nova vrednost.
+			 */
+			private void writeVariable(final AST.Def def, final IR.Block block, final IR.Value value) {
+				currentDefs.computeIfAbsent(block, __ -> new HashMap<AST.Def, IR.Value>()).put(def, value);
+			}
+
+			/**
+			 * Vrne vrednost navideznega registra na koncu bloka.
+			 *
+			 * @param def   Definicija parametra ali spremenljivke.
+			 * @param block Blok.
+			 * @return Vrednost navideznega registra.
+			 */
+			private IR.Value readVariable(final AST.Def def, final IR.Block block) {
+				final Map<AST.Def, IR.Value> defs = currentDefs.get(block);
+				if ((defs != null) && defs.containsKey(def))
+					return resolve(defs.get(def));
+				final IR.Value value;
+				if (!sealed.contains(block)) {
+					final IR.Phi phi = newPhi(block);
+					incompletePhis.computeIfAbsent(block, __ -> new LinkedHashMap<AST.Def, IR.Phi>()).put(def, phi);
+					value = phi;
+				} else if (block.preds.size() == 1)
+					value = readVariable(def, block.preds.getFirst());
+				else if (block.preds.isEmpty())
+					// spremenljivke so na zacetku funkcije enake 0 (prostor zanje se zapolni z niclami)
+					value = new IR.Const(0);
+				else {
+					final IR.Phi phi = newPhi(block);
+					writeVariable(def, block, phi);
+					value = addPhiOperands(def, phi);
+				}
+				writeVariable(def, block, value);
+				return value;
+			}
+
+			/**
+			 * Ustvari novo funkcijo phi na zacetku bloka.
+			 *
+			 * @param block Blok.
+			 * @return Nova funkcija phi.
+			 */
+			private IR.Phi newPhi(final IR.Block block) {
+				final IR.Phi phi = new IR.Phi(block, function.loc);
+				block.phis.add(phi);
+				return phi;
+			}
+
+			/**
+			 * Doda operande funkciji phi (po en operand za vsakega predhodnika bloka).
+			 *
+			 * @param def Definicija parametra ali spremenljivke.
+			 * @param phi Funkcija phi.
+			 * @return Funkcija phi ali vrednost, ki jo je nadomestila.
+			 */
+			private IR.Value addPhiOperands(final AST.Def def, final IR.Phi phi) {
+				for (final IR.Block pred : phi.block.preds)
+					phi.addOperand(readVariable(def, pred));
+				return tryRemoveTrivialPhi(phi);
+			}
+
+			/**
+			 * Odstrani funkcijo phi, katere operandi so (razen nje same) vsi enaki.
+			 *
+			 * @param phi Funkcija phi.
+			 * @return Funkcija phi ali vrednost, ki jo je nadomestila.
+			 */
+			private IR.Value tryRemoveTrivialPhi(final IR.Phi phi) {
+				IR.Value same = null;
+				for (final IR.Value operand : phi.operands()) {
+					if ((operand == phi) || Passes.sameValue(operand, same))
+						continue;
+					if (same != null)
+						return phi;
+					same = operand;
+				}
+				if (same == null)
+					same = new IR.Const(0);
+				final List<IR.Instr> users = new ArrayList<IR.Instr>(phi.users);
+				users.removeIf(user -> user == phi);
+				phi.replaceAllUsesWith(same);
+				phi.dropOperands();
+				phi.block.phis.remove(phi);
+				replaced.put(phi, same);
+				for (final IR.Instr user : users)
+					if ((user instanceof IR.Phi userPhi) && userPhi.block.phis.contains(userPhi)
+							&& !isIncomplete(userPhi))
+						tryRemoveTrivialPhi(userPhi);
+				return same;
+			}
+
+			/**
+			 * Ali funkcija phi se caka na operande.
+			 *
+			 * @param phi Funkcija phi.
+			 * @return Ali funkcija phi se caka na operande.
+			 */
+			private boolean isIncomplete(final IR.Phi phi) {
+				final Map<AST.Def, IR.Phi> phis = incompletePhis.get(phi.block);
+				return (phis != null) && phis.containsValue(phi);
+			}
+
+			/**
+			 * Vrne vrednost, ki je nadomestila odstranjeno funkcijo phi.
+			 *
+			 * @param value Vrednost.
+			 * @return Vrednost ali vrednost, ki jo je nadomestila.
+			 */
+			private IR.Value resolve(IR.Value value) {
+				while ((value instanceof IR.Phi phi) && replaced.containsKey(phi))
+					value = replaced.get(phi);
+				return value;
+			}
+
+			/**
+			 * Oznaci, da so vsi predhodniki bloka znani, in dopolni funkcije phi v bloku.
+			 *
+			 * @param block Blok.
+			 */
+			private void sealBlock(final IR.Block block) {
+				final Map<AST.Def, IR.Phi> phis = incompletePhis.remove(block);
+				sealed.add(block);
+				if (phis != null)
+					for (final Map.Entry<AST.Def, IR.Phi> entry : phis.entrySet())
+						addPhiOperands(entry.getKey(), entry.getValue());
+			}
+
+			/**
+			 * Zakljuci trenutni blok s skokom na drug blok.
+			 *
+			 * @param target Blok, na katerega se skoci.
+			 * @param loc    Lokacija dela izvorne kode, ki se prevede v skok.
+			 */
+			private void jump(final IR.Block target, final Report.Locatable loc) {
+				current.add(new IR.Jump(function, target, loc));
+				target.preds.add(current);
+			}
+
+			/**
+			 * Premakne blok na konec seznama blokov (bloki si v kodi sledijo v vrstnem redu
+			 * seznama).
+			 *
+			 * @param block Blok.
+			 */
+			private void place(final IR.Block block) {
+				function.blocks.remove(block);
+				function.blocks.add(block);
+			}
+
+			// --- NASLOVI ---
+
+			/**
+			 * Vrne naslov parametra ali spremenljivke v pomnilniku.
+			 *
+			 * @param def Definicija parametra ali spremenljivke.
+			 * @param loc Lokacija dela izvorne kode, ki se prevede v ta naslov.
+			 * @return Naslov parametra ali spremenljivke.
+			 */
+			private IR.Value address(final AST.Def def, final Report.Locatable loc) {
+				return switch (varAccess(def)) {
+				case Mem.AbsAccess access -> current.add(new IR.Name(function, access.name, loc));
+				case Mem.RelAccess access -> current
+						.add(new IR.FrameAddr(function, frame.depth - access.depth, access.offset, loc));
+				default -> throw new Report.InternalError();
+				};
+			}
+
+			// --- STAVKI ---
+
+			@Override
+			public IR.Value visit(final AST.FunDef nestedFunDef, final Object arg) {
+				buildFunction(nestedFunDef);
+				return null;
+			}
+
+			@Override
+			public IR.Value visit(final AST.VarDef varDef, final Object arg) {
+				final Mem.Access access = attrAST.attrVarAccess.get(varDef);
+				final Report.Locatable loc = attrAST.attrLoc.get(varDef);
+				if (promote(varDef)) {
+					// spremenljivka brez zacetne vrednosti obdrzi prejsnjo vrednost
+					if ((access.inits != null) && !access.inits.isEmpty() && (access.inits.get(0) != 0))
+						writeVariable(varDef, current, new IR.Const(access.inits.get(3)));
+					return null;
+				}
+				final String initLabel = initData(access, loc);
+				final IR.Value addr = address(varDef, loc);
+				current.add(new IR.Init(function, addr, current.add(new IR.Name(function, initLabel, loc)), loc));
+				return null;
+			}
+
+			@Override
+			public IR.Value visit(final AST.ExprStmt exprStmt, final Object arg) {
+				return exprStmt.expr.accept(this, arg);
+			}
+
+			@Override
+			public IR.Value visit(final AST.AssignStmt assignStmt, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(assignStmt);
+				final IR.Value value = assignStmt.srcExpr.accept(this, arg);
+				switch (assignStmt.dstExpr) {
+				case AST.VarExpr varExpr -> {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					if (promoted.contains(def))
+						writeVariable(def, current, value);
+					else
+						current.add(new IR.Store(function, value, address(def, loc), loc));
+				}
+				case AST.UnExpr unExpr when unExpr.oper == AST.UnExpr.Oper.VALUEAT -> {
+					final IR.Value addr = unExpr.expr.accept(this, arg);
+					current.add(new IR.Store(function, value, addr, loc));
+				}
+				default -> throw new Report.InternalError();
+				}
+				return null;
+			}
+
+			@Override
+			public IR.Value visit(final AST.IfStmt ifStmt, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(ifStmt);
+				final IR.Value cond = ifStmt.cond.accept(this, arg);
+				final IR.Block thenBlock = function.newBlock();
+				final IR.Block elseBlock = ifStmt.elseStmts.size() > 0 ? function.newBlock() : null;
+				final IR.Block joinBlock = function.newBlock();
+
+				current.add(new IR.Branch(function, cond, thenBlock, elseBlock == null ? joinBlock : elseBlock, loc));
+				thenBlock.preds.add(current);
+				(elseBlock == null ? joinBlock : elseBlock).preds.add(current);
+
+				sealBlock(thenBlock);
+				current = thenBlock;
+				stmts(ifStmt.thenStmts.getAll());
+				jump(joinBlock, loc);
+
+				if (elseBlock != null) {
+					place(elseBlock);
+					sealBlock(elseBlock);
+					current = elseBlock;
+					stmts(ifStmt.elseStmts.getAll());
+					jump(joinBlock, loc);
+				}
+
+				place(joinBlock);
+				sealBlock(joinBlock);
+				current = joinBlock;
+				return null;
+			}
+
+			@Override
+			public IR.Value visit(final AST.WhileStmt whileStmt, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(whileStmt);
+				final IR.Block condBlock = function.newBlock();
+				jump(condBlock, loc);
+
+				current = condBlock;
+				final IR.Value cond = whileStmt.cond.accept(this, arg);
+				final IR.Block bodyBlock = function.newBlock();
+				final IR.Block exitBlock = function.newBlock();
+				current.add(new IR.Branch(function, cond, bodyBlock, exitBlock, loc));
+				bodyBlock.preds.add(current);
+				exitBlock.preds.add(current);
+
+				sealBlock(bodyBlock);
+				current = bodyBlock;
+				stmts(whileStmt.stmts.getAll());
+				jump(condBlock, loc);
+				sealBlock(condBlock);
+
+				place(exitBlock);
+				sealBlock(exitBlock);
+				current = exitBlock;
+				return null;
+			}
+
+			@Override
+			public IR.Value visit(final AST.LetStmt letStmt, final Object arg) {
+				letStmt.defs.accept(this, arg);
+				return stmts(letStmt.stmts.getAll());
+			}
+
+			// --- IZRAZI ---
+
+			@Override
+			public IR.Value visit(final AST.AtomExpr atomExpr, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(atomExpr);
+				return switch (atomExpr.type) {
+				case INTCONST -> new IR.Const(Memory.decodeIntConst(atomExpr, loc));
+				case CHRCONST -> new IR.Const(Memory.decodeChrConst(atomExpr, loc));
+				case STRCONST -> {
+					final String label = ":" + labelCounter++;
+					program.data.add(new PDM.LABEL(label, loc));
+					for (final Integer value : Memory.decodeStrConst(atomExpr, loc))
+						program.data.add(new PDM.DATA(value, loc));
+					yield current.add(new IR.Name(function, label, loc));
+				}
+				};
+			}
+
+			@Override
+			public IR.Value visit(final AST.VarExpr varExpr, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(varExpr);
+				final AST.Def def = attrAST.attrDef.get(varExpr);
+				if (promoted.contains(def))
+					return readVariable(def, current);
+				return current.add(new IR.Load(function, address(def, loc), loc));
+			}
+
+			@Override
+			public IR.Value visit(final AST.UnExpr unExpr, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(unExpr);
+				if (unExpr.oper == AST.UnExpr.Oper.MEMADDR)
+					return switch (unExpr.expr) {
+					case AST.VarExpr varExpr -> address(attrAST.attrDef.get(varExpr), loc);
+					case AST.UnExpr valueAt when valueAt.oper == AST.UnExpr.Oper.VALUEAT -> valueAt.expr.accept(this,
+							arg);
+					default -> throw new Report.InternalError();
+					};
+				final IR.Value value = unExpr.expr.accept(this, arg);
+				return switch (unExpr.oper) {
+				case NOT -> current.add(new IR.Unary(function, PDM.OPER.Oper.NOT, value, loc));
+				case SUB -> current.add(new IR.Unary(function, PDM.OPER.Oper.NEG, value, loc));
+				case ADD -> value;
+				case VALUEAT -> current.add(new IR.Load(function, value, loc));
+				default -> throw new Report.InternalError();
+				};
+			}
+
+			@Override
+			public IR.Value visit(final AST.BinExpr binExpr, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(binExpr);
+				final IR.Value fst = binExpr.fstExpr.accept(this, arg);
+				final IR.Value snd = binExpr.sndExpr.accept(this, arg);
+				final PDM.OPER.Oper oper = switch (binExpr.oper) {
+				case OR -> PDM.OPER.Oper.OR;
+				case AND -> PDM.OPER.Oper.AND;
+				case EQU -> PDM.OPER.Oper.EQU;
+				case NEQ -> PDM.OPER.Oper.NEQ;
+				case GTH -> PDM.OPER.Oper.GTH;
+				case LTH -> PDM.OPER.Oper.LTH;
+				case GEQ -> PDM.OPER.Oper.GEQ;
+				case LEQ -> PDM.OPER.Oper.LEQ;
+				case ADD -> PDM.OPER.Oper.ADD;
+				case SUB -> PDM.OPER.Oper.SUB;
+				case MUL -> PDM.OPER.Oper.MUL;
+				case DIV -> PDM.OPER.Oper.DIV;
+				case MOD -> PDM.OPER.Oper.MOD;
+				};
+				return current.add(new IR.Binary(function, oper, fst, snd, loc));
+			}
+
+			@Override
+			public IR.Value visit(final AST.CallExpr callExpr, final Object arg) {
+				final Report.Locatable loc = attrAST.attrLoc.get(callExpr);
+				final AST.FunDef callee = (AST.FunDef) attrAST.attrDef.get(callExpr);
+				final Mem.Frame calleeFrame = attrAST.attrFrame.get(callee);
+
+				// argumenti se racunajo od zadnjega proti prvemu
+				final IR.Value[] args = new IR.Value[callExpr.args.size()];
+				for (int i = args.length - 1; i >= 0; i--)
+					args[i] = callExpr.args.get(i).accept(this, arg);
+
+				// staticna povezava je klicni kazalec funkcije, v kateri je klicana funkcija
+				// definirana (funkcija main in funkcije na najvisjem nivoju dobijo 0)
+				final IR.Value staticLink = calleeFrame.depth == 1 ? new IR.Const(0)
+						: current.add(new IR.FrameAddr(function, frame.depth - (calleeFrame.depth - 1), 0, loc));
+				return current.add(new IR.Call(function, callee, labels.get(callee), calleeFrame, staticLink,
+						Arrays.asList(args), loc));
+			}
+
+		}
+
+	}
+
+}
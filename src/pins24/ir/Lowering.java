@@ -0,0 +1,525 @@
+package pins24.ir;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Prevajanje vmesne kode v ukaze skladovnega stroja.
+ *
+ * Vrednost, ki jo uporablja en sam ukaz v istem bloku (ali funkcija phi v
+ * nasledniku bloka, ki se konca z brezpogojnim skokom), ostane na skladu, ce
+ * jo tam uporabnik najde v pravem vrstnem redu; vrstni red ukazov se pri tem
+ * ne spreminja. Ostale vrednosti in funkcije phi dobijo vsaka svoje mesto pod
+ * lokalnimi spremenljivkami v klicnem zapisu, konstante in naslovi pa se
+ * izracunajo na vsakem mestu uporabe posebej. Prepisi vrednosti v funkcije phi
+ * so na koncu predhodnikov (kriticne povezave so zato razcepljene), primerjava,
+ * ki ji sledi pogojni skok, pa se zdruzi s skokom v en ukaz {@link PDM.BRCH}.
+ * Klic, katerega rezultat je takoj tudi rezultat funkcije, se prevede v
+ * {@link PDM.TCALL}, ce naslov nobenega dela klicnega zapisa ne zapusti
+ * funkcije. Enako velja za klic, katerega rezultat se zavrze, ce funkcija
+ * takoj zatem vrne konstanto, ki jo vrne tudi klicana funkcija.
+ */
+public class Lowering {
+
+	/** Vmesna koda programa. */
+	private final IR.Program program;
+
+	/**
+	 * Ustvari novo prevajanje vmesne kode v ukaze skladovnega stroja.
+	 *
+	 * @param program Vmesna koda programa.
+	 */
+	public Lowering(final IR.Program program) {
+		this.program = program;
+	}
+
+	/**
+	 * Izracuna seznam ukazov, ki predstavljajo kodo programa.
+	 *
+	 * @return Seznam ukazov, ki predstavljajo kodo programa.
+	 */
+	public List<PDM.CodeInstr> codeSegment() {
+		final List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>();
+		for (final IR.GlobalInit init : program.globalInits) {
+			code.add(new PDM.NAME(init.name(), init.loc()));
+			code.add(new PDM.NAME(init.initLabel(), init.loc()));
+			code.add(new PDM.INIT(init.loc()));
+		}
+		IR.Function main = null;
+		for (final IR.Function function : program.functions)
+			if (function.funDef.name.equals("main") && (function.frame.depth == 1))
+				main = function;
+		if (main == null)
+			throw new Report.Error("Undefined label 'main'.");
+		code.add(new PDM.PUSH(0, null));
+		code.add(new PDM.NAME(main.label, null));
+		code.add(new PDM.CALL(main.frame, null));
+		code.add(new PDM.PUSH(0, null));
+		code.add(new PDM.NAME("exit", null));
+		code.add(new PDM.CALL(null, null));
+		final Map<AST.FunDef, Integer> results = constantResults();
+		for (final IR.Function function : program.functions)
+			(new FunctionLowering(function, results)).lower(code);
+		return Collections.unmodifiableList(code);
+	}
+
+	/**
+	 * Doloci funkcije, ki vedno vrnejo isto konstanto.
+	 *
+	 * @return Konstanta, ki jo vrne funkcija, za vsako funkcijo, ki vedno vrne isto
+	 *         konstanto.
+	 */
+	private Map<AST.FunDef, Integer> constantResults() {
+		final Map<AST.FunDef, Integer> results = new HashMap<AST.FunDef, Integer>();
+		for (final IR.Function function : program.functions) {
+			Integer result = null;
+			boolean constant = true;
+			for (final IR.Block block : function.blocks)
+				if (block.instrs.getLast() instanceof IR.Return ret) {
+					if (!(ret.operand(0) instanceof IR.Const value) || ((result != null) && (result != value.value)))
+						constant = false;
+					else
+						result = value.value;
+				}
+			if (constant && (result != null))
+				results.put(function.funDef, result);
+		}
+		return results;
+	}
+
+	/**
+	 * Izracuna seznam ukazov, ki predstavljajo podatke programa.
+	 *
+	 * @return Seznam ukazov, ki predstavljajo podatke programa.
+	 */
+	public List<PDM.DataInstr> dataSegment() {
+		return Collections.unmodifiableList(program.data);
+	}
+
+	/**
+	 * Prevajanje ene funkcije.
+	 */
+	private static class FunctionLowering {
+
+		/** Funkcija. */
+		private final IR.Function function;
+
+		/** Vrednosti, ki ostanejo na skladu do uporabe. */
+		private final Set<IR.Instr> stacked = new HashSet<IR.Instr>();
+
+		/** Primerjave, ki se zdruzijo s pogojnim skokom. */
+		private final Set<IR.Binary> fused = new HashSet<IR.Binary>();
+
+		/** Konstante, ki jih vrnejo funkcije, ki vedno vrnejo isto konstanto. */
+		private final Map<AST.FunDef, Integer> results;
+
+		/** Klici, ki nadomestijo klicni zapis funkcije. */
+		private final Set<IR.Call> tailCalls = new HashSet<IR.Call>();
+
+		/** Zadnji ukazi blokov s klici, ki nadomestijo klicni zapis funkcije. */
+		private final Set<IR.Terminator> tailExits = new HashSet<IR.Terminator>();
+
+		/** Odmiki mest vrednosti v klicnem zapisu. */
+		private final Map<IR.Instr, Integer> slots = new HashMap<IR.Instr, Integer>();
+
+		/**
+		 * Ustvari novo prevajanje funkcije.
+		 *
+		 * @param function Funkcija.
+		 * @param results  Konstante, ki jih vrnejo funkcije, ki vedno vrnejo isto
+		 *                 konstanto.
+		 */
+		FunctionLowering(final IR.Function function, final Map<AST.FunDef, Integer> results) {
+			this.function = function;
+			this.results = results;
+		}
+
+		/**
+		 * Prevede funkcijo.
+		 *
+		 * @param code Seznam ukazov, ki se mu doda koda funkcije.
+		 */
+		void lower(final List<PDM.CodeInstr> code) {
+			Passes.splitCriticalEdges(function);
+			stackify();
+			if (!frameEscapes())
+				for (final IR.Block block : function.blocks) {
+					final int size = block.instrs.size();
+					if ((size < 2) || !(block.instrs.get(size - 2) instanceof IR.Call call)
+							|| (call.funDef.stmts.size() == 0))
+						continue;
+					final IR.Terminator exit = (IR.Terminator) block.instrs.getLast();
+					final IR.Value result = returnedValue(exit);
+					if (((result == call) && (call.users.size() == 1)) || ((result instanceof IR.Const value)
+							&& call.users.isEmpty() && Objects.equals(results.get(call.funDef), value.value))) {
+						tailCalls.add(call);
+						tailExits.add(exit);
+					}
+				}
+			final Mem.Frame frame = function.frame;
+			for (final IR.Block block : function.blocks) {
+				for (final IR.Phi phi : block.phis)
+					slots.put(phi, -frame.varsSize - 4 * (slots.size() + 1));
+				for (final IR.Instr instr : block.instrs)
+					if (instr.hasValue() && !instr.users.isEmpty() && !instr.isRematerializable()
+							&& !stacked.contains(instr))
+						slots.put(instr, -frame.varsSize - 4 * (slots.size() + 1));
+			}
+
+			final Report.Locatable loc = function.loc;
+			code.add(new PDM.LABEL(function.label, loc));
+			// prostor za lokalne spremenljivke in vrednosti se zapolni z niclami
+			code.add(new PDM.PUSH(-(frame.varsSize - 8 + 4 * slots.size()), loc));
+			code.add(new PDM.POPN(loc));
+			for (int b = 0; b < function.blocks.size(); b++) {
+				final IR.Block block = function.blocks.get(b);
+				final IR.Block next = b + 1 < function.blocks.size() ? function.blocks.get(b + 1) : null;
+				if (!block.preds.isEmpty())
+					code.add(new PDM.LABEL(block.label(), loc));
+				for (final IR.Instr instr : block.instrs)
+					lower(instr, next, code);
+			}
+		}
+
+		/**
+		 * Ali naslov kaksnega dela klicnega zapisa funkcije zapusti funkcijo (naslov se
+		 * shrani, se poda kot argument ali kot staticna povezava).
+		 *
+		 * @return Ali naslov dela klicnega zapisa zapusti funkcijo.
+		 */
+		private boolean frameEscapes() {
+			for (final IR.Block block : function.blocks)
+				for (final IR.Instr instr : block.instrs) {
+					if (!(instr instanceof IR.FrameAddr frameAddr) || (frameAddr.hops != 0))
+						continue;
+					for (final IR.Instr user : frameAddr.users)
+						for (int i = 0; i < user.operands().size(); i++) {
+							if (user.operand(i) != frameAddr)
+								continue;
+							final boolean isAddress = switch (user) {
+							case IR.Load __ -> true;
+							case IR.Store __ -> i == 1;
+							case IR.Init __ -> i == 0;
+							default -> false;
+							};
+							if (!isAddress)
+								return true;
+						}
+				}
+			return false;
+		}
+
+		/**
+		 * Vrne vrednost, ki jo funkcija vrne takoj po zadnjem ukazu bloka.
+		 *
+		 * @param exit Zadnji ukaz bloka.
+		 * @return Vrednost, ki jo funkcija vrne, ali {@code null}, ce funkcija ne vrne
+		 *         takoj.
+		 */
+		private IR.Value returnedValue(final IR.Terminator exit) {
+			if (exit instanceof IR.Return ret)
+				return ret.operand(0);
+			if ((exit instanceof IR.Jump jump) && jump.target.phis.isEmpty() && (jump.target.instrs.size() == 1)
+					&& (jump.target.instrs.getFirst() instanceof IR.Return ret))
+				return ret.operand(0);
+			return null;
+		}
+
+		// --- VREDNOSTI NA SKLADU ---
+
+		/**
+		 * Doloci vrednosti, ki ostanejo na skladu do uporabe.
+		 */
+		private void stackify() {
+			for (final IR.Block block : function.blocks)
+				for (final IR.Instr instr : block.instrs)
+					if (instr.hasValue() && !instr.isRematerializable() && (instr.users.size() == 1)
+							&& isLocalUse(instr, instr.users.getFirst()))
+						stacked.add(instr);
+			// vrednosti, ki jih uporabnik ne najde na vrhu sklada, se odstranjujejo, dokler
+			// se vse vrednosti na skladu ne ujemajo
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final IR.Block block : function.blocks)
+					changed |= !stackifyBlock(block);
+			}
+			for (final IR.Block block : function.blocks)
+				if ((block.terminator() instanceof IR.Branch branch) && (branch.operand(0) instanceof IR.Binary cond)
+						&& stacked.contains(cond) && (cond.block == block) && (condition(cond.oper) != null))
+					fused.add(cond);
+		}
+
+		/**
+		 * Preveri, ali uporabniki vrednosti bloka, ki ostanejo na skladu, najdejo
+		 * vrednosti na vrhu sklada, in odstrani prvo vrednost, pri kateri to ne drzi.
+		 *
+		 * @param block Blok.
+		 * @return Ali so vse vrednosti na skladu na pravem mestu.
+		 */
+		private boolean stackifyBlock(final IR.Block block) {
+			final Deque<IR.Instr> stack = new ArrayDeque<IR.Instr>();
+			for (final IR.Instr instr : block.instrs) {
+				final List<IR.Value> operands = pushOrder(instr);
+				// na skladu so lahko le operandi na zacetku zaporedja
+				int numStacked = 0;
+				while ((numStacked < operands.size()) && stacked.contains(operands.get(numStacked)))
+					numStacked++;
+				for (int i = numStacked; i < operands.size(); i++)
+					if (stacked.remove(operands.get(i)))
+						return false;
+				for (int i = numStacked - 1; i >= 0; i--) {
+					if (stack.peek() != operands.get(i)) {
+						stacked.remove(operands.get(i));
+						return false;
+					}
+					stack.pop();
+				}
+				if (stacked.contains(instr))
+					stack.push(instr);
+			}
+			return true;
+		}
+
+		/**
+		 * Ali je uporaba vrednosti v istem bloku ali v funkciji phi naslednika, ki je
+		 * edini naslednik bloka.
+		 *
+		 * @param instr Ukaz, ki izracuna vrednost.
+		 * @param user  Ukaz, ki vrednost uporablja.
+		 * @return Ali je uporaba vrednosti lahko na skladu.
+		 */
+		private static boolean isLocalUse(final IR.Instr instr, final IR.Instr user) {
+			if (user instanceof IR.Phi phi)
+				return (instr.block.terminator() instanceof IR.Jump jump) && (jump.target == phi.block)
+						&& (phi.block.preds.get(phi.operands().indexOf(instr)) == instr.block);
+			return user.block == instr.block;
+		}
+
+		/**
+		 * Vrne operande ukaza v vrstnem redu, v katerem se prenesejo na sklad.
+		 *
+		 * @param instr Ukaz.
+		 * @return Operandi v vrstnem redu prenosa na sklad.
+		 */
+		private List<IR.Value> pushOrder(final IR.Instr instr) {
+			return switch (instr) {
+			case IR.Binary binary when isSwapped(binary) -> List.of(binary.operand(1), binary.operand(0));
+			case IR.Call call -> {
+				// argumenti od zadnjega proti prvemu, nato staticna povezava
+				final List<IR.Value> operands = new ArrayList<IR.Value>(call.operands().subList(1, call.operands().size()));
+				Collections.reverse(operands);
+				operands.add(call.operand(0));
+				yield operands;
+			}
+			case IR.Jump jump -> {
+				// vrednosti funkcij phi v nasledniku
+				final int index = jump.target.preds.indexOf(jump.block);
+				final List<IR.Value> operands = new ArrayList<IR.Value>();
+				for (final IR.Phi phi : phiOrder(jump))
+					operands.add(phi.operand(index));
+				yield operands;
+			}
+			default -> instr.operands();
+			};
+		}
+
+		/**
+		 * Vrne funkcije phi naslednika v vrstnem redu prepisa vrednosti: najprej tiste,
+		 * katerih vrednosti so na skladu (v vrstnem redu izracuna), nato ostale.
+		 *
+		 * @param jump Brezpogojni skok.
+		 * @return Funkcije phi naslednika v vrstnem redu prepisa vrednosti.
+		 */
+		private List<IR.Phi> phiOrder(final IR.Jump jump) {
+			final int index = jump.target.preds.indexOf(jump.block);
+			final List<IR.Phi> phis = new ArrayList<IR.Phi>(jump.target.phis);
+			phis.sort(Comparator.comparingInt(phi -> (phi.operand(index) instanceof IR.Instr instr)
+					&& stacked.contains(instr) ? jump.block.instrs.indexOf(instr) : Integer.MAX_VALUE));
+			return phis;
+		}
+
+		/**
+		 * Ali se operanda dvomestne operacije preneseta na sklad v obratnem vrstnem
+		 * redu (da lahko drugi operand, ki je ze na skladu, tam ostane).
+		 *
+		 * @param binary Dvomestna operacija.
+		 * @return Ali se operanda preneseta na sklad v obratnem vrstnem redu.
+		 */
+		private boolean isSwapped(final IR.Binary binary) {
+			return (mirror(binary.oper) != null) && !stacked.contains(binary.operand(0))
+					&& stacked.contains(binary.operand(1));
+		}
+
+		/**
+		 * Vrne operacijo, ki jo izracuna ukaz za dvomestno operacijo.
+		 *
+		 * @param binary Dvomestna operacija.
+		 * @return Operacija glede na vrstni red operandov na skladu.
+		 */
+		private PDM.OPER.Oper oper(final IR.Binary binary) {
+			return isSwapped(binary) ? mirror(binary.oper) : binary.oper;
+		}
+
+		// --- UKAZI ---
+
+		/**
+		 * Prevede ukaz.
+		 *
+		 * @param instr Ukaz.
+		 * @param next  Blok, ki v kodi sledi bloku ukaza.
+		 * @param code  Seznam ukazov, ki se mu doda koda ukaza.
+		 */
+		private void lower(final IR.Instr instr, final IR.Block next, final List<PDM.CodeInstr> code) {
+			// klicana funkcija se vrne neposredno v klicatelja te funkcije
+			if (instr.isRematerializable() || tailExits.contains(instr))
+				return;
+			final Report.Locatable loc = instr.loc;
+			for (final IR.Value operand : pushOrder(instr))
+				push(operand, loc, code);
+			switch (instr) {
+			case IR.Binary binary -> {
+				if (!fused.contains(binary))
+					code.add(new PDM.OPER(oper(binary), loc));
+			}
+			case IR.Unary unary -> code.add(new PDM.OPER(unary.oper, loc));
+			case IR.Load __ -> code.add(new PDM.LOAD(loc));
+			case IR.Store __ -> code.add(new PDM.SAVE(loc));
+			case IR.Init __ -> code.add(new PDM.INIT(loc));
+			case IR.Call call when tailCalls.contains(call) -> {
+				// klicni zapis klicane funkcije nadomesti klicni zapis te funkcije
+				code.add(new PDM.PUSH(call.frame.parsSize - 4, loc));
+				code.add(new PDM.PUSH(function.frame.parsSize - 4, loc));
+				code.add(new PDM.NAME(call.label, loc));
+				code.add(new PDM.TCALL(call.frame, function.frame, loc));
+				return;
+			}
+			case IR.Call call -> {
+				code.add(new PDM.NAME(call.label, loc));
+				code.add(new PDM.CALL(call.frame, loc));
+			}
+			case IR.Jump jump -> {
+				// prepis vrednosti v funkcije phi naslednika (vse vrednosti so ze na skladu)
+				for (final IR.Phi phi : phiOrder(jump).reversed())
+					code.add(new PDM.SAVEL(slots.get(phi), loc));
+				if (jump.target != next) {
+					code.add(new PDM.NAME(jump.target.label(), loc));
+					code.add(new PDM.UJMP(loc));
+				}
+			}
+			case IR.Branch branch -> {
+				PDM.BRCH.Cond cond = (branch.operand(0) instanceof IR.Binary binary) && fused.contains(binary)
+						? condition(oper(binary))
+						: PDM.BRCH.Cond.NZ;
+				if (branch.ifTrue == next)
+					code.add(new PDM.BRCH(negate(cond), branch.ifFalse.label(), loc));
+				else {
+					code.add(new PDM.BRCH(cond, branch.ifTrue.label(), loc));
+					if (branch.ifFalse != next) {
+						code.add(new PDM.NAME(branch.ifFalse.label(), loc));
+						code.add(new PDM.UJMP(loc));
+					}
+				}
+			}
+			case IR.Return __ -> {
+				code.add(new PDM.PUSH(function.frame.parsSize - 4, loc)); // RETN odstrani se staticno povezavo
+				code.add(new PDM.RETN(function.frame, loc));
+			}
+			default -> throw new Report.InternalError();
+			}
+			if (!instr.hasValue() || stacked.contains(instr))
+				return;
+			if (slots.containsKey(instr))
+				code.add(new PDM.SAVEL(slots.get(instr), loc));
+			else {
+				// vrednost se ne uporablja
+				code.add(new PDM.PUSH(4, loc));
+				code.add(new PDM.POPN(loc));
+			}
+		}
+
+		/**
+		 * Prenese vrednost operanda na sklad.
+		 *
+		 * @param value Operand.
+		 * @param loc   Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 * @param code  Seznam ukazov, ki se mu dodajo ukazi.
+		 */
+		private void push(final IR.Value value, final Report.Locatable loc, final List<PDM.CodeInstr> code) {
+			switch (value) {
+			case IR.Const constant -> code.add(new PDM.PUSH(constant.value, loc));
+			case IR.Name name -> code.add(new PDM.NAME(name.name, loc));
+			case IR.FrameAddr frameAddr -> {
+				code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				for (int hop = 0; hop < frameAddr.hops; hop++)
+					code.add(new PDM.LOAD(loc));
+				if (frameAddr.offset != 0) {
+					code.add(new PDM.PUSH(frameAddr.offset, loc));
+					code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				}
+			}
+			case IR.Param param -> code.add(new PDM.LOADL(param.offset, loc));
+			case IR.Instr instr when stacked.contains(instr) -> {
+			}
+			case IR.Instr instr -> code.add(new PDM.LOADL(slots.get(instr), loc));
+			default -> throw new Report.InternalError();
+			}
+		}
+
+		/**
+		 * Vrne operacijo, ki da enak rezultat pri zamenjanih operandih.
+		 *
+		 * @param oper Racunska operacija.
+		 * @return Operacija pri zamenjanih operandih ali {@code null}, ce je ni.
+		 */
+		private static PDM.OPER.Oper mirror(final PDM.OPER.Oper oper) {
+			return switch (oper) {
+			case ADD, MUL, EQU, NEQ, AND, OR -> oper;
+			case LTH -> PDM.OPER.Oper.GTH;
+			case GTH -> PDM.OPER.Oper.LTH;
+			case LEQ -> PDM.OPER.Oper.GEQ;
+			case GEQ -> PDM.OPER.Oper.LEQ;
+			default -> null;
+			};
+		}
+
+		/**
+		 * Vrne pogoj skoka, ki ustreza primerjavi.
+		 *
+		 * @param oper Racunska operacija.
+		 * @return Pogoj skoka ali {@code null}, ce operacija ni primerjava.
+		 */
+		private static PDM.BRCH.Cond condition(final PDM.OPER.Oper oper) {
+			return switch (oper) {
+			case EQU -> PDM.BRCH.Cond.EQ;
+			case NEQ -> PDM.BRCH.Cond.NE;
+			case LTH -> PDM.BRCH.Cond.LT;
+			case LEQ -> PDM.BRCH.Cond.LE;
+			case GTH -> PDM.BRCH.Cond.GT;
+			case GEQ -> PDM.BRCH.Cond.GE;
+			default -> null;
+			};
+		}
+
+		/**
+		 * Vrne negiran pogoj skoka.
+		 *
+		 * @param cond Pogoj skoka.
+		 * @return Negiran pogoj skoka.
+		 */
+		private static PDM.BRCH.Cond negate(final PDM.BRCH.Cond cond) {
+			return switch (cond) {
+			case EQ -> PDM.BRCH.Cond.NE;
+			case NE -> PDM.BRCH.Cond.EQ;
+			case LT -> PDM.BRCH.Cond.GE;
+			case GE -> PDM.BRCH.Cond.LT;
+			case LE -> PDM.BRCH.Cond.GT;
+			case GT -> PDM.BRCH.Cond.LE;
+			case Z -> PDM.BRCH.Cond.NZ;
+			case NZ -> PDM.BRCH.Cond.Z;
+			};
+		}
+
+	}
+
+}
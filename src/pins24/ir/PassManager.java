@@ -0,0 +1,157 @@
+package pins24.ir;
+
+import java.util.*;
+import pins24.common.*;
+import pins24.phase.*;
+
+/**
+ * Izvajanje optimizacij nad vmesno kodo.
+ *
+ * Optimizacije se nad vsako funkcijo izvajajo v podanem zaporedju, ki se
+ * ponavlja, dokler katera od optimizacij se spremeni funkcijo (a najvec
+ * {@link #MAX_ROUNDS}-krat). Za vsako optimizacijo se belezita cas izvajanja
+ * in stevilo izvedb, ki so funkcijo spremenile.
+ */
+public class PassManager {
+
+	/** Ali se koda generira prek vmesne kode namesto neposredno iz drevesa. */
+	public static boolean enabled = false;
+
+	/** Najvecje stevilo ponovitev zaporedja optimizacij nad eno funkcijo. */
+	public static final int MAX_ROUNDS = 16;
+
+	/**
+	 * Optimizacija vmesne kode ene funkcije.
+	 */
+	public interface Pass {
+
+		/**
+		 * Vrne ime optimizacije.
+		 *
+		 * @return Ime optimizacije.
+		 */
+		public String name();
+
+		/**
+		 * Izvede optimizacijo nad funkcijo.
+		 *
+		 * @param function Funkcija.
+		 * @return Ali je optimizacija funkcijo spremenila.
+		 */
+		public boolean run(IR.Function function);
+
+	}
+
+	/** Zaporedje optimizacij. */
+	private final List<Pass> passes;
+
+	/** Skupni cas izvajanja vsake optimizacije (v nanosekundah). */
+	private final long[] times;
+
+	/** Stevilo izvedb vsake optimizacije, ki so funkcijo spremenile. */
+	private final int[] numChanges;
+
+	/**
+	 * Ustvari novo izvajanje standardnega zaporedja optimizacij.
+	 */
+	public PassManager() {
+		this(List.of(new Passes.ConstantFolding(), new Passes.ValueNumbering(), new Passes.SimplifyCFG(),
+				new Passes.DeadCodeElimination()));
+	}
+
+	/**
+	 * Ustvari novo izvajanje podanega zaporedja optimizacij.
+	 *
+	 * @param passes Zaporedje optimizacij.
+	 */
+	public PassManager(final List<Pass> passes) {
+		this.passes = passes;
+		this.times = new long[passes.size()];
+		this.numChanges = new int[passes.size()];
+	}
+
+	/**
+	 * Optimizira vmesno kodo programa.
+	 *
+	 * @param program Vmesna koda programa.
+	 * @return Optimizirana vmesna koda programa (isti objekt).
+	 */
+	public IR.Program run(final IR.Program program) {
+		for (final IR.Function function : program.functions) {
+			Passes.verify(function);
+			boolean changed = true;
+			for (int round = 0; changed && (round < MAX_ROUNDS); round++) {
+				changed = false;
+				for (int p = 0; p < passes.size(); p++) {
+					final long start = System.nanoTime();
+					final boolean passChanged = passes.get(p).run(function);
+					times[p] += System.nanoTime() - start;
+					if (passChanged) {
+						numChanges[p]++;
+						changed = true;
+					}
+				}
+			}
+			Passes.verify(function);
+		}
+		return program;
+	}
+
+	/**
+	 * Vrne opis casa izvajanja in ucinka optimizacij.
+	 *
+	 * @return Opis casa izvajanja in ucinka optimizacij.
+	 */
+	public String stats() {
+		long total = 0;
+		final StringBuilder perPass = new StringBuilder();
+		for (int p = 0; p < passes.size(); p++) {
+			total += times[p];
+			perPass.append(perPass.isEmpty() ? "" : ", ").append(String.format("%s: %.3f ms, %d changes",
+					passes.get(p).name(), times[p] / 1e6, numChanges[p]));
+		}
+		return String.format("ir: %.3f ms in passes (%s).", total / 1e6, perPass);
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon gradnje in optimizacije vmesne kode kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (intermediate code):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+				// vmesna koda:
+				final PassManager passManager = new PassManager();
+				final IR.Program program = passManager.run(IRBuilder.build(foldAttrAST));
+
+				System.out.print(program);
+				Report.info(passManager.stats());
+			}
+
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,717 @@
+package pins24.ir;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Optimizacije in analize vmesne kode.
+ *
+ * Vsaka optimizacija deluje nad eno funkcijo in vrne, ali je funkcijo
+ * spremenila; {@link PassManager} jih izvaja v zaporedju, dokler se funkcija
+ * spreminja.
+ */
+public class Passes {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Passes() {
+		throw new Report.InternalError();
+	}
+
+	// --- OPTIMIZACIJE ---
+
+	/**
+	 * Racunanje izrazov s konstantnimi operandi in odstranjevanje pogojnih skokov s
+	 * konstantnim pogojem.
+	 */
+	public static class ConstantFolding implements PassManager.Pass {
+
+		/**
+		 * Ustvari novo racunanje izrazov s konstantnimi operandi.
+		 */
+		public ConstantFolding() {
+		}
+
+		@Override
+		public String name() {
+			return "constant folding";
+		}
+
+		@Override
+		public boolean run(final IR.Function function) {
+			boolean changed = false;
+			for (final IR.Block block : function.blocks) {
+				for (final IR.Phi phi : new ArrayList<IR.Phi>(block.phis)) {
+					final IR.Value value = trivialPhiValue(phi);
+					if (value != null) {
+						phi.replaceAllUsesWith(value);
+						remove(phi);
+						changed = true;
+					}
+				}
+				for (final IR.Instr instr : new ArrayList<IR.Instr>(block.instrs)) {
+					final IR.Value value = switch (instr) {
+					case IR.Binary binary -> fold(binary);
+					case IR.Unary unary -> (unary.operand(0) instanceof IR.Const expr)
+							? new IR.Const(compute(unary.oper, expr.value))
+							: null;
+					default -> null;
+					};
+					if (value != null) {
+						instr.replaceAllUsesWith(value);
+						remove(instr);
+						changed = true;
+					}
+				}
+				if ((block.terminator() instanceof IR.Branch branch) && (branch.operand(0) instanceof IR.Const cond)) {
+					final IR.Block target = cond.value != 0 ? branch.ifTrue : branch.ifFalse;
+					final IR.Block other = cond.value != 0 ? branch.ifFalse : branch.ifTrue;
+					if (other != target)
+						other.removePred(block);
+					else
+						target.removePred(block);
+					replaceTerminator(block, new IR.Jump(function, target, branch.loc));
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		/**
+		 * Izracuna dvomestno operacijo ali jo poenostavi, ce je eden od operandov
+		 * nevtralni element.
+		 *
+		 * @param binary Dvomestna operacija.
+		 * @return Vrednost operacije ali {@code null}, ce je ni mogoce izracunati.
+		 */
+		private static IR.Value fold(final IR.Binary binary) {
+			final IR.Value fst = binary.operand(0);
+			final IR.Value snd = binary.operand(1);
+			if ((fst instanceof IR.Const fstConst) && (snd instanceof IR.Const sndConst)) {
+				final Integer value = compute(binary.oper, fstConst.value, sndConst.value);
+				return value == null ? null : new IR.Const(value);
+			}
+			// x+0, 0+x, x-0, x*1, 1*x
+			return switch (binary.oper) {
+			case ADD -> isConst(snd, 0) ? fst : isConst(fst, 0) ? snd : null;
+			case SUB -> isConst(snd, 0) ? fst : null;
+			case MUL -> isConst(snd, 1) ? fst : isConst(fst, 1) ? snd : null;
+			default -> null;
+			};
+		}
+
+	}
+
+	/**
+	 * Odstranjevanje ponovnih izracunov istih vrednosti (global value numbering).
+	 *
+	 * Bloki se obiskujejo po drevesu dominatorjev, zato se izraz brez stranskih
+	 * ucinkov nadomesti z enakim izrazom v dominatorju. Branje iz pomnilnika se
+	 * nadomesti le s prejsnjim branjem istega naslova v istem bloku, med katerima
+	 * ni ukaza s stranskimi ucinki.
+	 */
+	public static class ValueNumbering implements PassManager.Pass {
+
+		/**
+		 * Ustvari novo odstranjevanje ponovnih izracunov.
+		 */
+		public ValueNumbering() {
+		}
+
+		@Override
+		public String name() {
+			return "value numbering";
+		}
+
+		@Override
+		public boolean run(final IR.Function function) {
+			final Map<IR.Block, IR.Block> idoms = dominators(function);
+			final Map<IR.Block, List<IR.Block>> children = new HashMap<IR.Block, List<IR.Block>>();
+			for (final IR.Block block : reversePostorder(function))
+				if (block != function.entry())
+					children.computeIfAbsent(idoms.get(block), __ -> new ArrayList<IR.Block>()).add(block);
+
+			boolean changed = false;
+			final Map<List<Object>, IR.Instr> available = new HashMap<List<Object>, IR.Instr>();
+			final Deque<Object> stack = new ArrayDeque<Object>();
+			stack.push(function.entry());
+			while (!stack.isEmpty()) {
+				final Object top = stack.pop();
+				if (top instanceof List<?> keys) {
+					// konec obiska poddrevesa: izrazi bloka niso vec na voljo
+					for (final Object key : keys)
+						available.remove(key);
+					continue;
+				}
+				final IR.Block block = (IR.Block) top;
+				final List<Object> blockKeys = new ArrayList<Object>();
+				final Map<IR.Value, IR.Instr> loads = new HashMap<IR.Value, IR.Instr>();
+				for (final IR.Instr instr : new ArrayList<IR.Instr>(block.instrs)) {
+					if (instr.hasSideEffects()) {
+						loads.clear();
+						continue;
+					}
+					if (instr instanceof IR.Load) {
+						final IR.Instr same = loads.get(instr.operand(0));
+						if (same != null) {
+							instr.replaceAllUsesWith(same);
+							remove(instr);
+							changed = true;
+						} else
+							loads.put(instr.operand(0), instr);
+						continue;
+					}
+					final List<Object> key = key(instr);
+					if (key == null)
+						continue;
+					final IR.Instr same = available.get(key);
+					if (same != null) {
+						instr.replaceAllUsesWith(same);
+						remove(instr);
+						changed = true;
+					} else {
+						available.put(key, instr);
+						blockKeys.add(key);
+					}
+				}
+				stack.push(blockKeys);
+				for (final IR.Block child : children.getOrDefault(block, List.of()))
+					stack.push(child);
+			}
+			return changed;
+		}
+
+		/**
+		 * Vrne kljuc, ki je enak za ukaze, ki izracunajo isto vrednost.
+		 *
+		 * @param instr Ukaz.
+		 * @return Kljuc ali {@code null}, ce ukaza ni mogoce nadomestiti z drugim.
+		 */
+		private static List<Object> key(final IR.Instr instr) {
+			final List<Object> key = new ArrayList<Object>();
+			switch (instr) {
+			case IR.Binary binary -> {
+				key.add(binary.oper);
+				Object fst = operandKey(binary.operand(0));
+				Object snd = operandKey(binary.operand(1));
+				// pri komutativnih operacijah je vrstni red operandov dolocen
+				if (isCommutative(binary.oper) && (order(fst) > order(snd))) {
+					final Object tmp = fst;
+					fst = snd;
+					snd = tmp;
+				}
+				key.add(fst);
+				key.add(snd);
+			}
+			case IR.Unary unary -> {
+				key.add(unary.oper);
+				key.add(operandKey(unary.operand(0)));
+			}
+			case IR.FrameAddr frameAddr -> {
+				key.add("FRAME");
+				key.add(frameAddr.hops);
+				key.add(frameAddr.offset);
+			}
+			case IR.Param param -> {
+				key.add("PARAM");
+				key.add(param.offset);
+			}
+			case IR.Name name -> {
+				key.add("NAME");
+				key.add(name.name);
+			}
+			default -> {
+				return null;
+			}
+			}
+			return key;
+		}
+
+		/**
+		 * Vrne kljuc operanda (konstante so enake, ce imajo enako vrednost).
+		 *
+		 * @param value Operand.
+		 * @return Kljuc operanda.
+		 */
+		private static Object operandKey(final IR.Value value) {
+			return value instanceof IR.Const constant ? Integer.valueOf(constant.value) : value;
+		}
+
+		/**
+		 * Vrne vrstni red operanda komutativne operacije.
+		 *
+		 * @param key Kljuc operanda.
+		 * @return Vrstni red operanda.
+		 */
+		private static long order(final Object key) {
+			return key instanceof IR.Instr instr ? instr.id : Long.MAX_VALUE;
+		}
+
+		/**
+		 * Ali je operacija komutativna.
+		 *
+		 * @param oper Operacija.
+		 * @return Ali je operacija komutativna.
+		 */
+		private static boolean isCommutative(final PDM.OPER.Oper oper) {
+			return switch (oper) {
+			case ADD, MUL, EQU, NEQ, AND, OR -> true;
+			default -> false;
+			};
+		}
+
+	}
+
+	/**
+	 * Poenostavljanje grafa blokov.
+	 *
+	 * Odstranijo se nedosegljivi bloki, pogojni skok z enakima ciljema postane
+	 * brezpogojni, pogojni skok z negiranim pogojem zamenja cilja, prazni bloki se
+	 * preskocijo, blok z enim samim predhodnikom pa se zdruzi s predhodnikom.
+	 */
+	public static class SimplifyCFG implements PassManager.Pass {
+
+		/**
+		 * Ustvari novo poenostavljanje grafa blokov.
+		 */
+		public SimplifyCFG() {
+		}
+
+		@Override
+		public String name() {
+			return "simplify cfg";
+		}
+
+		@Override
+		public boolean run(final IR.Function function) {
+			boolean changed = removeUnreachable(function);
+			changed |= simplifyBranches(function);
+			changed |= skipEmptyBlocks(function);
+			changed |= mergeBlocks(function);
+			return changed;
+		}
+
+		/**
+		 * Odstrani bloke, ki niso dosegljivi iz vstopnega bloka.
+		 *
+		 * @param function Funkcija.
+		 * @return Ali je bil kaksen blok odstranjen.
+		 */
+		private static boolean removeUnreachable(final IR.Function function) {
+			final Set<IR.Block> reachable = new HashSet<IR.Block>(reversePostorder(function));
+			if (reachable.size() == function.blocks.size())
+				return false;
+			for (final IR.Block block : function.blocks) {
+				if (reachable.contains(block))
+					continue;
+				for (final IR.Block succ : block.succs())
+					if (reachable.contains(succ))
+						while (succ.preds.contains(block))
+							succ.removePred(block);
+			}
+			for (final IR.Block block : function.blocks) {
+				if (reachable.contains(block))
+					continue;
+				for (final IR.Phi phi : block.phis)
+					phi.dropOperands();
+				for (final IR.Instr instr : block.instrs)
+					instr.dropOperands();
+			}
+			function.blocks.removeIf(block -> !reachable.contains(block));
+			return true;
+		}
+
+		/**
+		 * Preusmeri skoke na prazne bloke (brez funkcij phi) na njihove naslednike.
+		 *
+		 * @param function Funkcija.
+		 * @return Ali je bil kaksen blok preskocen.
+		 */
+		private static boolean skipEmptyBlocks(final IR.Function function) {
+			boolean changed = false;
+			for (final IR.Block block : new ArrayList<IR.Block>(function.blocks)) {
+				if ((block == function.entry()) || !block.phis.isEmpty() || (block.instrs.size() != 1)
+						|| !(block.terminator() instanceof IR.Jump jump))
+					continue;
+				final IR.Block target = jump.target;
+				// operandi funkcij phi v cilju bi bili za nove predhodnike lahko razlicni
+				if ((target == block) || !target.phis.isEmpty())
+					continue;
+				for (final IR.Block pred : new ArrayList<IR.Block>(block.preds)) {
+					pred.terminator().retarget(block, target);
+					target.preds.add(pred);
+				}
+				target.preds.remove(block);
+				block.preds.clear();
+				jump.dropOperands();
+				function.blocks.remove(block);
+				changed = true;
+			}
+			return changed;
+		}
+
+		/**
+		 * Zdruzi bloke z edinim predhodnikom, ki se konca z brezpogojnim skokom, s
+		 * predhodnikom.
+		 *
+		 * @param function Funkcija.
+		 * @return Ali sta bila kaksna bloka zdruzena.
+		 */
+		private static boolean mergeBlocks(final IR.Function function) {
+			boolean changed = false;
+			for (final IR.Block block : new ArrayList<IR.Block>(function.blocks)) {
+				if (!function.blocks.contains(block) || !(block.terminator() instanceof IR.Jump jump))
+					continue;
+				final IR.Block succ = jump.target;
+				if ((succ == block) || (succ == function.entry()) || (succ.preds.size() != 1))
+					continue;
+				for (final IR.Phi phi : new ArrayList<IR.Phi>(succ.phis)) {
+					phi.replaceAllUsesWith(phi.operand(0));
+					remove(phi);
+				}
+				remove(jump);
+				for (final IR.Instr instr : succ.instrs) {
+					instr.block = block;
+					block.instrs.add(instr);
+				}
+				succ.instrs.clear();
+				for (final IR.Block next : block.succs())
+					Collections.replaceAll(next.preds, succ, block);
+				function.blocks.remove(succ);
+				changed = true;
+			}
+			return changed;
+		}
+
+	}
+
+	/**
+	 * Odstranjevanje ukazov, katerih vrednosti se ne uporabljajo.
+	 */
+	public static class DeadCodeElimination implements PassManager.Pass {
+
+		/**
+		 * Ustvari novo odstranjevanje neuporabljenih ukazov.
+		 */
+		public DeadCodeElimination() {
+		}
+
+		@Override
+		public String name() {
+			return "dead code";
+		}
+
+		@Override
+		public boolean run(final IR.Function function) {
+			final Set<IR.Instr> live = new HashSet<IR.Instr>();
+			final Deque<IR.Instr> worklist = new ArrayDeque<IR.Instr>();
+			for (final IR.Block block : function.blocks)
+				for (final IR.Instr instr : block.instrs)
+					if (instr.hasSideEffects() && live.add(instr))
+						worklist.add(instr);
+			while (!worklist.isEmpty())
+				for (final IR.Value operand : worklist.poll().operands())
+					if ((operand instanceof IR.Instr instr) && live.add(instr))
+						worklist.add(instr);
+
+			final List<IR.Instr> dead = new ArrayList<IR.Instr>();
+			for (final IR.Block block : function.blocks) {
+				for (final IR.Phi phi : block.phis)
+					if (!live.contains(phi))
+						dead.add(phi);
+				for (final IR.Instr instr : block.instrs)
+					if (!live.contains(instr))
+						dead.add(instr);
+			}
+			for (final IR.Instr instr : dead)
+				instr.dropOperands();
+			for (final IR.Instr instr : dead)
+				remove(instr);
+			return !dead.isEmpty();
+		}
+
+	}
+
+	// --- POMOZNE METODE ---
+
+	/**
+	 * Ali sta vrednosti enaki (konstanti sta enaki, ce imata enako vrednost).
+	 *
+	 * @param fst Prva vrednost.
+	 * @param snd Druga vrednost.
+	 * @return Ali sta vrednosti enaki.
+	 */
+	public static boolean sameValue(final IR.Value fst, final IR.Value snd) {
+		if ((fst == null) || (snd == null))
+			return false;
+		if ((fst instanceof IR.Const fstConst) && (snd instanceof IR.Const sndConst))
+			return fstConst.value == sndConst.value;
+		return fst == snd;
+	}
+
+	/**
+	 * Ali je vrednost konstanta s podano vrednostjo.
+	 *
+	 * @param value    Vrednost.
+	 * @param constant Vrednost konstante.
+	 * @return Ali je vrednost konstanta s podano vrednostjo.
+	 */
+	private static boolean isConst(final IR.Value value, final int constant) {
+		return (value instanceof IR.Const c) && (c.value == constant);
+	}
+
+	/**
+	 * Vrne vrednost, s katero je mogoce nadomestiti funkcijo phi, katere operandi
+	 * so (razen nje same) vsi enaki.
+	 *
+	 * @param phi Funkcija phi.
+	 * @return Vrednost ali {@code null}, ce funkcije phi ni mogoce nadomestiti.
+	 */
+	private static IR.Value trivialPhiValue(final IR.Phi phi) {
+		IR.Value same = null;
+		for (final IR.Value operand : phi.operands()) {
+			if ((operand == phi) || sameValue(operand, same))
+				continue;
+			if (same != null)
+				return null;
+			same = operand;
+		}
+		return same == null ? new IR.Const(0) : same;
+	}
+
+	/**
+	 * Izracuna enomestno operacijo enako kot skladovni stroj.
+	 *
+	 * @param oper Operacija.
+	 * @param expr Operand.
+	 * @return Vrednost operacije.
+	 */
+	static int compute(final PDM.OPER.Oper oper, final int expr) {
+		return switch (oper) {
+		case NOT -> expr == 0 ? 1 : 0;
+		case NEG -> -expr;
+		default -> throw new Report.InternalError();
+		};
+	}
+
+	/**
+	 * Izracuna dvomestno operacijo enako kot skladovni stroj.
+	 *
+	 * @param oper Operacija.
+	 * @param fst  Prvi operand.
+	 * @param snd  Drugi operand.
+	 * @return Vrednost operacije ali {@code null} pri deljenju z 0 (napaka se
+	 *         pojavi sele med izvajanjem).
+	 */
+	static Integer compute(final PDM.OPER.Oper oper, final int fst, final int snd) {
+		return switch (oper) {
+		case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+		case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+		case EQU -> fst == snd ? 1 : 0;
+		case NEQ -> fst != snd ? 1 : 0;
+		case GTH -> fst > snd ? 1 : 0;
+		case LTH -> fst < snd ? 1 : 0;
+		case GEQ -> fst >= snd ? 1 : 0;
+		case LEQ -> fst <= snd ? 1 : 0;
+		case ADD -> fst + snd;
+		case SUB -> fst - snd;
+		case MUL -> fst * snd;
+		case DIV -> snd == 0 ? null : fst / snd;
+		case MOD -> snd == 0 ? null : fst % snd;
+		default -> throw new Report.InternalError();
+		};
+	}
+
+	/**
+	 * Odstrani ukaz (ali funkcijo phi) iz bloka.
+	 *
+	 * @param instr Ukaz.
+	 */
+	static void remove(final IR.Instr instr) {
+		instr.dropOperands();
+		if (instr instanceof IR.Phi phi)
+			phi.block.phis.remove(phi);
+		else
+			instr.block.instrs.remove(instr);
+	}
+
+	/**
+	 * Zamenja zadnji ukaz bloka.
+	 *
+	 * @param block      Blok.
+	 * @param terminator Nov zadnji ukaz bloka.
+	 */
+	static void replaceTerminator(final IR.Block block, final IR.Terminator terminator) {
+		remove(block.terminator());
+		block.add(terminator);
+	}
+
+	/**
+	 * Poenostavi pogojne skoke z enakima ciljema ali z negiranim pogojem.
+	 *
+	 * @param function Funkcija.
+	 * @return Ali je bil kaksen skok poenostavljen.
+	 */
+	static boolean simplifyBranches(final IR.Function function) {
+		boolean changed = false;
+		for (final IR.Block block : function.blocks) {
+			if (!(block.terminator() instanceof IR.Branch branch))
+				continue;
+			if (branch.ifTrue == branch.ifFalse) {
+				branch.ifTrue.removePred(block);
+				replaceTerminator(block, new IR.Jump(function, branch.ifTrue, branch.loc));
+				changed = true;
+			} else if ((branch.operand(0) instanceof IR.Unary not) && (not.oper == PDM.OPER.Oper.NOT)) {
+				replaceTerminator(block, new IR.Branch(function, not.operand(0), branch.ifFalse, branch.ifTrue, branch.loc));
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Razcepi kriticne povezave (povezave iz bloka z vec nasledniki v blok z vec
+	 * predhodniki ali s funkcijami phi) z vstavljanjem praznih blokov, da je za
+	 * vsako povezavo v blok s funkcijami phi na voljo mesto za prepis vrednosti.
+	 *
+	 * @param function Funkcija.
+	 */
+	public static void splitCriticalEdges(final IR.Function function) {
+		simplifyBranches(function);
+		for (final IR.Block block : new ArrayList<IR.Block>(function.blocks)) {
+			final IR.Terminator terminator = block.terminator();
+			if (terminator.targets().size() < 2)
+				continue;
+			for (final IR.Block succ : terminator.targets()) {
+				if ((succ.preds.size() < 2) && succ.phis.isEmpty())
+					continue;
+				final IR.Block split = function.newBlock();
+				function.blocks.remove(split);
+				function.blocks.add(function.blocks.indexOf(succ), split);
+				split.add(new IR.Jump(function, succ, terminator.loc));
+				split.preds.add(block);
+				terminator.retarget(succ, split);
+				succ.preds.set(succ.preds.indexOf(block), split);
+			}
+		}
+	}
+
+	/**
+	 * Vrne bloke, dosegljive iz vstopnega bloka, v obratnem vrstnem redu zakljucka
+	 * obiska v globino.
+	 *
+	 * @param function Funkcija.
+	 * @return Dosegljivi bloki v obratnem vrstnem redu zakljucka obiska.
+	 */
+	public static List<IR.Block> reversePostorder(final IR.Function function) {
+		final List<IR.Block> postorder = new ArrayList<IR.Block>();
+		final Set<IR.Block> visited = new HashSet<IR.Block>();
+		final Deque<Iterator<IR.Block>> stack = new ArrayDeque<Iterator<IR.Block>>();
+		final Deque<IR.Block> blocks = new ArrayDeque<IR.Block>();
+		visited.add(function.entry());
+		stack.push(function.entry().succs().iterator());
+		blocks.push(function.entry());
+		while (!stack.isEmpty()) {
+			if (stack.peek().hasNext()) {
+				final IR.Block succ = stack.peek().next();
+				if (visited.add(succ)) {
+					stack.push(succ.succs().iterator());
+					blocks.push(succ);
+				}
+			} else {
+				stack.pop();
+				postorder.add(blocks.pop());
+			}
+		}
+		Collections.reverse(postorder);
+		return postorder;
+	}
+
+	/**
+	 * Izracuna neposredne dominatorje dosegljivih blokov (Cooper, Harvey in
+	 * Kennedy, "A Simple, Fast Dominance Algorithm", 2001).
+	 *
+	 * @param function Funkcija.
+	 * @return Neposredni dominatorji blokov (vstopni blok je svoj dominator).
+	 */
+	public static Map<IR.Block, IR.Block> dominators(final IR.Function function) {
+		final List<IR.Block> order = reversePostorder(function);
+		final Map<IR.Block, Integer> index = new HashMap<IR.Block, Integer>();
+		for (int i = 0; i < order.size(); i++)
+			index.put(order.get(i), i);
+		final Map<IR.Block, IR.Block> idoms = new HashMap<IR.Block, IR.Block>();
+		idoms.put(function.entry(), function.entry());
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final IR.Block block : order) {
+				if (block == function.entry())
+					continue;
+				IR.Block idom = null;
+				for (final IR.Block pred : block.preds) {
+					if (!idoms.containsKey(pred))
+						continue;
+					if (idom == null)
+						idom = pred;
+					else {
+						IR.Block fst = pred;
+						IR.Block snd = idom;
+						while (fst != snd) {
+							while (index.get(fst) > index.get(snd))
+								fst = idoms.get(fst);
+							while (index.get(snd) > index.get(fst))
+								snd = idoms.get(snd);
+						}
+						idom = fst;
+					}
+				}
+				if (idoms.get(block) != idom) {
+					idoms.put(block, idom);
+					changed = true;
+				}
+			}
+		}
+		return idoms;
+	}
+
+	/**
+	 * Preveri, ali je vmesna koda funkcije pravilno zgrajena.
+	 *
+	 * @param function Funkcija.
+	 */
+	public static void verify(final IR.Function function) {
+		for (final IR.Block block : function.blocks) {
+			if (block.terminator() == null)
+				throw new Report.InternalError();
+			final List<IR.Block> preds = new ArrayList<IR.Block>();
+			for (final IR.Block other : function.blocks)
+				for (final IR.Block succ : other.succs())
+					if (succ == block)
+						preds.add(other);
+			final List<IR.Block> blockPreds = new ArrayList<IR.Block>(block.preds);
+			for (final IR.Block pred : preds)
+				if (!blockPreds.remove(pred))
+					throw new Report.InternalError();
+			if (!blockPreds.isEmpty())
+				throw new Report.InternalError();
+			for (final IR.Phi phi : block.phis)
+				if ((phi.block != block) || (phi.operands().size() != block.preds.size()))
+					throw new Report.InternalError();
+			for (final IR.Instr instr : block.instrs) {
+				if (instr.block != block)
+					throw new Report.InternalError();
+				if ((instr instanceof IR.Terminator) != (instr == block.instrs.getLast()))
+					throw new Report.InternalError();
+			}
+		}
+		final Set<IR.Instr> defined = new HashSet<IR.Instr>();
+		for (final IR.Block block : function.blocks) {
+			defined.addAll(block.phis);
+			defined.addAll(block.instrs);
+		}
+		for (final IR.Instr instr : defined)
+			for (final IR.Value operand : instr.operands())
+				if (!operand.users.contains(instr) || ((operand instanceof IR.Instr def) && !defined.contains(def)))
+					throw new Report.InternalError();
+	}
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Vmesna predstavitev programa v obliki SSA in optimizacije nad njo.
+ *
+ * @author bostjan.slivnik@fri.uni-lj.si
+ */
+package pins24.ir;
@@ -0,0 +1,281 @@
+package pins24.machine;
+
+import pins24.common.*;
+
+/**
+ * Zgoscena predstavitev kode programa s celimi stevili.
+ *
+ * Koda je tabela celih stevil, indeksirana s fizicnim naslovom ukaza, tako da
+ * je razporeditev ukazov v pomnilniku enaka kot pri izvajanju objektne
+ * predstavitve ukazov: na naslovu ukaza je njegova operacijska koda, ukazi z
+ * operandom pa imajo razresen operand na naslednjem mestu. Oznake in ukaz
+ * {@link PDM.NAME} so ze razreseni, zato se ukaz {@link PDM.NAME} prevede v
+ * {@link #PUSH}, vsaka racunska operacija in vsak register pa dobita svojo
+ * operacijsko kodo.
+ */
+public class Bytecode {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Bytecode() {
+		throw new Report.InternalError();
+	}
+
+	// --- OPERACIJSKE KODE ---
+
+	/** Neveljaven ukaz (naslov, ki ni zacetek ukaza). */
+	public static final int ILLEGAL = 0;
+
+	/** Inicializacija spremenljivke. */
+	public static final int INIT = 1;
+
+	/** Prenos vrednosti iz pomnilnika na sklad. */
+	public static final int LOAD = 2;
+
+	/** Prenos vrednosti s sklada v pomnilnik. */
+	public static final int SAVE = 3;
+
+	/** Spreminjanje lokacija vrha sklada. */
+	public static final int POPN = 4;
+
+	/** Prenos konstante (ali razresenega imena oznake) na sklad. */
+	public static final int PUSH = 5;
+
+	/** Prenos vrednosti programskega stevca na sklad. */
+	public static final int REGN_PC = 6;
+
+	/** Prenos vrednosti klicnega kazalca na sklad. */
+	public static final int REGN_FP = 7;
+
+	/** Prenos vrednosti skladovnega kazalca na sklad. */
+	public static final int REGN_SP = 8;
+
+	/** Negacija. */
+	public static final int NOT = 9;
+
+	/** Sprememba predznaka. */
+	public static final int NEG = 10;
+
+	/** Disjunkcija. */
+	public static final int OR = 11;
+
+	/** Konjunkcija. */
+	public static final int AND = 12;
+
+	/** Enakost. */
+	public static final int EQU = 13;
+
+	/** Neenakost. */
+	public static final int NEQ = 14;
+
+	/** Vecji kot. */
+	public static final int GTH = 15;
+
+	/** Manjsi kot. */
+	public static final int LTH = 16;
+
+	/** Vecji ali enak. */
+	public static final int GEQ = 17;
+
+	/** Manjsi ali enak. */
+	public static final int LEQ = 18;
+
+	/** Sestevanje. */
+	public static final int ADD = 19;
+
+	/** Odstevanje. */
+	public static final int SUB = 20;
+
+	/** Mnozenje. */
+	public static final int MUL = 21;
+
+	/** Deljenje. */
+	public static final int DIV = 22;
+
+	/** Modulo. */
+	public static final int MOD = 23;
+
+	/** Brezpogojni skok. */
+	public static final int UJMP = 24;
+
+	/** Pogojni skok. */
+	public static final int CJMP = 25;
+
+	/** Klic podprograma. */
+	public static final int CALL = 26;
+
+	/** Vrnitev iz podprograma. */
+	public static final int RETN = 27;
+
+	/** Prenos vrednosti z odmikom od klicnega kazalca na sklad. */
+	public static final int LOADL = 28;
+
+	/** Prenos vrednosti s sklada na naslov z odmikom od klicnega kazalca. */
+	public static final int SAVEL = 29;
+
+	/** Prenos vrednosti z (razresenega) naslova oznake na sklad. */
+	public static final int LOADG = 30;
+
+	/** Prenos vrednosti s sklada na (razresen) naslov oznake. */
+	public static final int SAVEG = 31;
+
+	/** Skok, ce sta vrednosti enaki. */
+	public static final int BEQ = 32;
+
+	/** Skok, ce sta vrednosti razlicni. */
+	public static final int BNE = 33;
+
+	/** Skok, ce je prva vrednost manjsa od druge. */
+	public static final int BLT = 34;
+
+	/** Skok, ce je prva vrednost manjsa ali enaka drugi. */
+	public static final int BLE = 35;
+
+	/** Skok, ce je prva vrednost vecja od druge. */
+	public static final int BGT = 36;
+
+	/** Skok, ce je prva vrednost vecja ali enaka drugi. */
+	public static final int BGE = 37;
+
+	/** Skok, ce je vrednost enaka nic. */
+	public static final int BZ = 38;
+
+	/** Skok, ce je vrednost razlicna od nic. */
+	public static final int BNZ = 39;
+
+	/** Repni klic podprograma. */
+	public static final int TCALL = 40;
+
+	/** Imena ukazov, indeksirana z operacijsko kodo. */
+	private static final String[] mnemonics = { "ILLEGAL", "INIT", "LOAD", "SAVE", "POPN", "PUSH", "REGN.PC",
+			"REGN.FP", "REGN.SP", "OPER.NOT", "OPER.NEG", "OPER.OR", "OPER.AND", "OPER.EQU", "OPER.NEQ", "OPER.GTH",
+			"OPER.LTH", "OPER.GEQ", "OPER.LEQ", "OPER.ADD", "OPER.SUB", "OPER.MUL", "OPER.DIV", "OPER.MOD", "UJMP",
+			"CJMP", "CALL", "RETN", "LOADL", "SAVEL", "LOADG", "SAVEG", "BEQ",
+			"BNE", "BLT", "BLE", "BGT", "BGE", "BZ", "BNZ", "TCALL" };
+
+	/**
+	 * Vrne ime ukaza s podano operacijsko kodo.
+	 *
+	 * @param opcode Operacijska koda.
+	 * @return Ime ukaza.
+	 */
+	public static String mnemonic(final int opcode) {
+		return (opcode >= 0) && (opcode < mnemonics.length) ? mnemonics[opcode] : "ILLEGAL";
+	}
+
+	/**
+	 * Vrne znakovno predstavitev ukaza na podanem naslovu.
+	 *
+	 * @param code Koda programa.
+	 * @param addr Fizicni naslov ukaza.
+	 * @return Znakovna predstavitev ukaza.
+	 */
+	public static String toString(final int[] code, final int addr) {
+		final int opcode = code[addr];
+		return hasOperand(opcode) ? mnemonic(opcode) + " " + code[addr + 1] : mnemonic(opcode);
+	}
+
+	/**
+	 * Ali ima ukaz s podano operacijsko kodo operand.
+	 *
+	 * @param opcode Operacijska koda.
+	 * @return Ali ima ukaz operand.
+	 */
+	public static boolean hasOperand(final int opcode) {
+		return switch (opcode) {
+		case PUSH, LOADL, SAVEL, LOADG, SAVEG, BEQ, BNE, BLT, BLE, BGT, BGE, BZ, BNZ -> true;
+		default -> false;
+		};
+	}
+
+	// --- PREVAJANJE ---
+
+	/**
+	 * Prevede povezano kodo programa v zgosceno predstavitev.
+	 *
+	 * @param program  Ukazi kode programa, indeksirani s fizicnim naslovom.
+	 * @param operands Razreseni operandi ukazov, indeksirani s fizicnim
+	 *                 naslovom.
+	 * @return Koda programa, indeksirana s fizicnim naslovom.
+	 */
+	public static int[] lower(final PDM.CodeInstr[] program, final int[] operands) {
+		final int[] code = new int[program.length];
+		for (int addr = 0; addr < program.length; addr++) {
+			final PDM.CodeInstr instr = program[addr];
+			if (instr == null)
+				continue;
+			switch (instr) {
+			case PDM.INIT __ -> code[addr] = INIT;
+			case PDM.LOAD __ -> code[addr] = LOAD;
+			case PDM.SAVE __ -> code[addr] = SAVE;
+			case PDM.POPN __ -> code[addr] = POPN;
+			case PDM.PUSH __ -> {
+				code[addr] = PUSH;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.NAME __ -> {
+				code[addr] = PUSH;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.LOADL __ -> {
+				code[addr] = LOADL;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.SAVEL __ -> {
+				code[addr] = SAVEL;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.LOADG __ -> {
+				code[addr] = LOADG;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.SAVEG __ -> {
+				code[addr] = SAVEG;
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.REGN i -> code[addr] = switch (i.regn) {
+			case PC -> REGN_PC;
+			case FP -> REGN_FP;
+			case SP -> REGN_SP;
+			};
+			case PDM.OPER i -> code[addr] = switch (i.oper) {
+			case NOT -> NOT;
+			case NEG -> NEG;
+			case OR -> OR;
+			case AND -> AND;
+			case EQU -> EQU;
+			case NEQ -> NEQ;
+			case GTH -> GTH;
+			case LTH -> LTH;
+			case GEQ -> GEQ;
+			case LEQ -> LEQ;
+			case ADD -> ADD;
+			case SUB -> SUB;
+			case MUL -> MUL;
+			case DIV -> DIV;
+			case MOD -> MOD;
+			};
+			case PDM.BRCH i -> {
+				code[addr] = switch (i.cond) {
+				case EQ -> BEQ;
+				case NE -> BNE;
+				case LT -> BLT;
+				case LE -> BLE;
+				case GT -> BGT;
+				case GE -> BGE;
+				case Z -> BZ;
+				case NZ -> BNZ;
+				};
+				code[addr + 1] = operands[addr];
+			}
+			case PDM.UJMP __ -> code[addr] = UJMP;
+			case PDM.CJMP __ -> code[addr] = CJMP;
+			case PDM.CALL __ -> code[addr] = CALL;
+			case PDM.RETN __ -> code[addr] = RETN;
+			case PDM.TCALL __ -> code[addr] = TCALL;
+			default -> throw new Report.InternalError();
+			}
+		}
+		return code;
+	}
+
+}
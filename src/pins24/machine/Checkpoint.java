@@ -0,0 +1,203 @@
+package pins24.machine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Shranjeno stanje skladovnega stroja.
+ *
+ * Datoteka s shranjenim stanjem vsebuje zaporedoma: oznako {@code PDMC},
+ * razlicico formata, registre {@code PC}, {@code FP} in {@code SP}, naslov vrha
+ * sklada, stevilo izvedenih ukazov, polozaja na vhodu in izhodu programa, oznake programa z
+ * naslovi, stanje dodeljevalnika pomnilnika na kopici ter strani pomnilnika, ki
+ * se razlikujejo od pomnilniske slike programa. Vsa stevila so zapisana po
+ * pravilu debelega konca, strani pa so poravnane na mnogokratnik 4 bajtov, zato
+ * se datoteka prebere s preslikavo v pomnilnik.
+ */
+public class Checkpoint {
+
+	/** Oznaka zacetka datoteke s shranjenim stanjem. */
+	public static final int MAGIC = 0x50444D43;
+
+	/** Razlicica formata datoteke s shranjenim stanjem. */
+	public static final int VERSION = 2;
+
+	/** Programski stevec. */
+	public int PC;
+
+	/** Klicni kazalec. */
+	public int FP;
+
+	/** Skladovni kazalec. */
+	public int SP;
+
+	/** Naslov vrha sklada (odvisen od omejitve velikosti kopice in sklada). */
+	public int stackTop;
+
+	/** Stevilo izvedenih ukazov. */
+	public long numInstrs;
+
+	/** Stevilo prebranih bajtov vhoda programa. */
+	public long inputPosition;
+
+	/** Stevilo izpisanih bajtov izhoda programa. */
+	public long outputPosition;
+
+	/** Oznake programa z naslovi (za preverjanje, ali stanje pripada programu). */
+	public Map<String, Integer> labels = new TreeMap<String, Integer>();
+
+	/** Stanje dodeljevalnika pomnilnika na kopici (glej {@link HeapAllocator#state()}). */
+	public long[] heap = new long[0];
+
+	/** Indeksi shranjenih strani pomnilnika. */
+	public int[] pageIndices = new int[0];
+
+	/** Vsebine shranjenih strani pomnilnika. */
+	public int[][] pages = new int[0][];
+
+	/**
+	 * Ustvari novo, prazno shranjeno stanje.
+	 */
+	public Checkpoint() {
+	}
+
+	/**
+	 * Shrani strani pomnilnika, ki se razlikujejo od pomnilniske slike programa.
+	 *
+	 * @param memory  Pomnilnik skladovnega stroja.
+	 * @param initial Pomnilnik s pomnilnisko sliko programa (pred izvajanjem).
+	 */
+	public void savePages(final PagedMemory memory, final PagedMemory initial) {
+		final int[] zero = new int[PagedMemory.PAGE_SIZE >> 2];
+		final ArrayList<Integer> indices = new ArrayList<Integer>();
+		for (int pageIndex = 0; pageIndex < memory.pageLimit(); pageIndex++) {
+			final int[] page = memory.page(pageIndex);
+			final int[] initialPage = initial.page(pageIndex);
+			if (!Arrays.equals(page == null ? zero : page, initialPage == null ? zero : initialPage))
+				indices.add(pageIndex);
+		}
+		pageIndices = new int[indices.size()];
+		pages = new int[indices.size()][];
+		for (int p = 0; p < pageIndices.length; p++) {
+			pageIndices[p] = indices.get(p);
+			final int[] page = memory.page(pageIndices[p]);
+			pages[p] = page == null ? zero : page.clone();
+		}
+	}
+
+	/**
+	 * Vzpostavi shranjene strani pomnilnika.
+	 *
+	 * @param memory Pomnilnik s pomnilnisko sliko programa.
+	 */
+	public void loadPages(final PagedMemory memory) {
+		for (int p = 0; p < pageIndices.length; p++)
+			memory.setPage(pageIndices[p], pages[p]);
+	}
+
+	/**
+	 * Zapise shranjeno stanje v datoteko.
+	 *
+	 * Stanje se najprej zapise v zacasno datoteko, ki nato nadomesti podano
+	 * datoteko, zato prekinjeno pisanje ne pokvari prejsnjega shranjenega stanja.
+	 *
+	 * @param fileName Ime datoteke.
+	 */
+	public void write(final String fileName) {
+		final Path path;
+		final Path tmpPath;
+		try {
+			path = Path.of(fileName);
+			tmpPath = Path.of(fileName + ".tmp");
+		} catch (InvalidPathException __) {
+			throw new Report.Error("Illegal checkpoint file name '" + fileName + "'.");
+		}
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(PC);
+			out.writeInt(FP);
+			out.writeInt(SP);
+			out.writeInt(stackTop);
+			out.writeLong(numInstrs);
+			out.writeLong(inputPosition);
+			out.writeLong(outputPosition);
+			out.writeInt(labels.size());
+			for (final Map.Entry<String, Integer> label : labels.entrySet()) {
+				final byte[] name = label.getKey().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+				out.write(new byte[(4 - name.length % 4) % 4]);
+				out.writeInt(label.getValue());
+			}
+			out.writeInt(heap.length);
+			for (final long value : heap)
+				out.writeLong(value);
+			out.writeInt(pageIndices.length);
+			for (int p = 0; p < pageIndices.length; p++) {
+				out.writeInt(pageIndices[p]);
+				for (final int word : pages[p])
+					out.writeInt(word);
+			}
+		} catch (IOException __) {
+			throw new Report.Error("Cannot write checkpoint file '" + fileName + "'.");
+		}
+		try {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException __) {
+			throw new Report.Error("Cannot write checkpoint file '" + fileName + "'.");
+		}
+	}
+
+	/**
+	 * Prebere shranjeno stanje iz datoteke.
+	 *
+	 * @param fileName Ime datoteke.
+	 * @return Shranjeno stanje.
+	 */
+	public static Checkpoint read(final String fileName) {
+		final Checkpoint checkpoint = new Checkpoint();
+		try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+			final ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if ((in.getInt() != MAGIC) || (in.getInt() != VERSION))
+				throw new Report.Error("Illegal checkpoint file '" + fileName + "'.");
+			checkpoint.PC = in.getInt();
+			checkpoint.FP = in.getInt();
+			checkpoint.SP = in.getInt();
+			checkpoint.stackTop = in.getInt();
+			checkpoint.numInstrs = in.getLong();
+			checkpoint.inputPosition = in.getLong();
+			checkpoint.outputPosition = in.getLong();
+			final int numLabels = in.getInt();
+			for (int l = 0; l < numLabels; l++) {
+				final byte[] name = new byte[in.getInt()];
+				in.get(name);
+				in.position(in.position() + (4 - name.length % 4) % 4);
+				checkpoint.labels.put(new String(name, StandardCharsets.UTF_8), in.getInt());
+			}
+			checkpoint.heap = new long[in.getInt()];
+			in.asLongBuffer().get(checkpoint.heap);
+			in.position(in.position() + 8 * checkpoint.heap.length);
+			final int numPages = in.getInt();
+			checkpoint.pageIndices = new int[numPages];
+			checkpoint.pages = new int[numPages][PagedMemory.PAGE_SIZE >> 2];
+			for (int p = 0; p < numPages; p++) {
+				checkpoint.pageIndices[p] = in.getInt();
+				in.asIntBuffer().get(checkpoint.pages[p]);
+				in.position(in.position() + PagedMemory.PAGE_SIZE);
+			}
+		} catch (IOException | InvalidPathException __) {
+			throw new Report.Error("Cannot read checkpoint file '" + fileName + "'.");
+		} catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException __) {
+			throw new Report.Error("Illegal checkpoint file '" + fileName + "'.");
+		}
+		return checkpoint;
+	}
+
+}
@@ -0,0 +1,356 @@
+package pins24.machine;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Dodeljevalnik pomnilnika na kopici.
+ *
+ * Kopica se zacne za segmentom s staticnimi spremenljivkami in raste navzgor.
+ * Vsak blok se zacne z glavo, v kateri je velikost bloka (veckratnik
+ * {@link #ALIGN}, vkljucno z glavo) ter zastavici {@link #ALLOCATED} in
+ * {@link #PREV_FREE}. Prost blok ima za glavo se naslov naslednjega in
+ * prejsnjega prostega bloka v svojem seznamu, v zadnji besedi pa svojo velikost
+ * (noga), da ga lahko sosednji blok za njim zdruzi s seboj. Prosti bloki so
+ * razvrsceni v sezname po velikostnih razredih (razred {@code c} vsebuje bloke
+ * velikosti od {@code 2^c} do {@code 2^(c+1)-1}).
+ *
+ * Ob sprostitvi se blok zdruzi s sosednjima prostima blokoma, prost blok na
+ * vrhu kopice pa se vrne kopici, ki se zato lahko tudi skrci.
+ */
+public class HeapAllocator {
+
+	/** Poravnava in zrnatost velikosti blokov. */
+	public static final int ALIGN = 8;
+
+	/** Velikost glave bloka. */
+	public static final int HEADER_SIZE = 4;
+
+	/** Najmanjsa velikost bloka (glava, dva kazalca in noga). */
+	public static final int MIN_BLOCK_SIZE = 16;
+
+	/** Zastavica v glavi bloka: blok je dodeljen. */
+	private static final int ALLOCATED = 1;
+
+	/** Zastavica v glavi bloka: prejsnji blok je prost. */
+	private static final int PREV_FREE = 2;
+
+	/** Maska za velikost bloka v glavi bloka. */
+	private static final int SIZE_MASK = ~(ALIGN - 1);
+
+	/** Stevilo velikostnih razredov. */
+	private static final int NUM_CLASSES = 32;
+
+	/** Pomnilnik skladovnega stroja. */
+	private final PagedMemory memory;
+
+	/** Naslov zacetka kopice. */
+	private final int base;
+
+	/** Naslov prvega bajta za vrhom kopice. */
+	private int top;
+
+	/** Najvecja dovoljena velikost kopice. */
+	private int maxHeapSize;
+
+	/** Prvi bloki seznamov prostih blokov po velikostnih razredih (0 za prazen seznam). */
+	private final int[] freeLists = new int[NUM_CLASSES];
+
+	/** Dodeljeni bloki, indeksirani z {@code (blok - base) / ALIGN}. */
+	private final BitSet allocated = new BitSet();
+
+	/** Stevilo dodelitev. */
+	private long numAllocs = 0;
+
+	/** Stevilo sprostitev. */
+	private long numFrees = 0;
+
+	/** Stevilo bajtov v dodeljenih blokih (brez glav). */
+	private long liveBytes = 0;
+
+	/** Najvecje stevilo bajtov v dodeljenih blokih (brez glav). */
+	private long peakLiveBytes = 0;
+
+	/** Najvecja velikost kopice. */
+	private int peakHeapSize = 0;
+
+	/**
+	 * Ustvari nov dodeljevalnik pomnilnika na prazni kopici.
+	 *
+	 * @param memory Pomnilnik skladovnega stroja.
+	 * @param base   Prvi naslov za segmentom s staticnimi spremenljivkami.
+	 */
+	public HeapAllocator(final PagedMemory memory, final int base) {
+		this(memory, base, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Ustvari nov dodeljevalnik pomnilnika na prazni kopici z omejeno velikostjo.
+	 *
+	 * @param memory      Pomnilnik skladovnega stroja.
+	 * @param base        Prvi naslov za segmentom s staticnimi spremenljivkami.
+	 * @param maxHeapSize Najvecja velikost kopice (v bajtih).
+	 */
+	public HeapAllocator(final PagedMemory memory, final int base, final int maxHeapSize) {
+		this.memory = memory;
+		this.base = (base + ALIGN - 1) & SIZE_MASK;
+		this.top = this.base;
+		this.maxHeapSize = maxHeapSize;
+	}
+
+	/**
+	 * Izprazni kopico (vsebina pomnilnika se ne spremeni).
+	 */
+	public void reset() {
+		top = base;
+		Arrays.fill(freeLists, 0);
+		allocated.clear();
+		numAllocs = 0;
+		numFrees = 0;
+		liveBytes = 0;
+		peakLiveBytes = 0;
+		peakHeapSize = 0;
+	}
+
+	/**
+	 * Nastavi najvecjo dovoljeno velikost kopice (ze dodeljeni bloki ostanejo).
+	 *
+	 * @param maxHeapSize Najvecja velikost kopice (v bajtih).
+	 */
+	public void setMaxHeapSize(final int maxHeapSize) {
+		this.maxHeapSize = maxHeapSize;
+	}
+
+	/**
+	 * Vrne naslov prvega bajta za vrhom kopice.
+	 *
+	 * @return Naslov prvega bajta za vrhom kopice.
+	 */
+	public int top() {
+		return top;
+	}
+
+	/**
+	 * Dodeli blok pomnilnika, postavljen na nic.
+	 *
+	 * @param size Zahtevana velikost (v bajtih).
+	 * @return Naslov dodeljenega pomnilnika.
+	 */
+	public int alloc(final int size) {
+		return alloc(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Dodeli blok pomnilnika, postavljen na nic, pri cemer kopica ne sme zrasti
+	 * cez podan naslov (na primer do sklada).
+	 *
+	 * @param size  Zahtevana velikost (v bajtih).
+	 * @param limit Naslov, do katerega lahko zraste kopica.
+	 * @return Naslov dodeljenega pomnilnika.
+	 */
+	public int alloc(final int size, final int limit) {
+		if (size < 0)
+			throw new Report.Error("Illegal size " + size + " in new.");
+		final long needed = Math.max(MIN_BLOCK_SIZE, ((long) size + HEADER_SIZE + ALIGN - 1) & SIZE_MASK);
+		if (needed > Integer.MAX_VALUE - top)
+			throw new Report.Error("Out of heap memory in new.");
+		final int blockSize = (int) needed;
+
+		int block = find(blockSize);
+		if (block != 0) {
+			unlink(block);
+			final int freeSize = memory.load(block) & SIZE_MASK;
+			if (freeSize - blockSize >= MIN_BLOCK_SIZE) {
+				memory.save(block, blockSize | ALLOCATED);
+				release(block + blockSize, freeSize - blockSize);
+			} else {
+				memory.save(block, freeSize | ALLOCATED);
+				if (block + freeSize < top)
+					memory.save(block + freeSize, memory.load(block + freeSize) & ~PREV_FREE);
+			}
+		} else {
+			// blok na vrhu kopice, blok pod njim je gotovo dodeljen
+			if (((long) top - base + blockSize > maxHeapSize) || ((long) top + blockSize > limit))
+				throw new Report.Error("Out of heap memory in new.");
+			block = top;
+			top += blockSize;
+			peakHeapSize = Math.max(peakHeapSize, top - base);
+			memory.save(block, blockSize | ALLOCATED);
+		}
+		final int payloadSize = (memory.load(block) & SIZE_MASK) - HEADER_SIZE;
+		memory.clear(block + HEADER_SIZE, payloadSize);
+		allocated.set((block - base) / ALIGN);
+
+		numAllocs++;
+		liveBytes += payloadSize;
+		peakLiveBytes = Math.max(peakLiveBytes, liveBytes);
+		return block + HEADER_SIZE;
+	}
+
+	/**
+	 * Sprosti blok pomnilnika.
+	 *
+	 * @param addr Naslov pomnilnika, ki ga je vrnila metoda {@link #alloc(int)}.
+	 */
+	public void free(final int addr) {
+		int block = addr - HEADER_SIZE;
+		if ((block < base) || (block >= top) || ((block - base) % ALIGN != 0)
+				|| !allocated.get((block - base) / ALIGN))
+			throw new Report.Error("Illegal address " + addr + " in del.");
+		allocated.clear((block - base) / ALIGN);
+		final int header = memory.load(block);
+		int blockSize = header & SIZE_MASK;
+
+		numFrees++;
+		liveBytes -= blockSize - HEADER_SIZE;
+
+		// zdruzitev z naslednjim prostim blokom
+		final int next = block + blockSize;
+		if ((next < top) && ((memory.load(next) & ALLOCATED) == 0)) {
+			unlink(next);
+			blockSize += memory.load(next) & SIZE_MASK;
+		}
+		// zdruzitev s prejsnjim prostim blokom
+		if ((header & PREV_FREE) != 0) {
+			final int prevSize = memory.load(block - 4);
+			block -= prevSize;
+			unlink(block);
+			blockSize += prevSize;
+		}
+
+		if (block + blockSize == top)
+			top = block;
+		else
+			release(block, blockSize);
+	}
+
+	/**
+	 * Vrne velikostni razred bloka.
+	 *
+	 * @param blockSize Velikost bloka.
+	 * @return Velikostni razred.
+	 */
+	private static int sizeClass(final int blockSize) {
+		return 31 - Integer.numberOfLeadingZeros(blockSize);
+	}
+
+	/**
+	 * Poisce prost blok zahtevane velikosti.
+	 *
+	 * @param blockSize Zahtevana velikost bloka.
+	 * @return Naslov prostega bloka ali 0, ce ga ni.
+	 */
+	private int find(final int blockSize) {
+		final int sizeClass = sizeClass(blockSize);
+		// v lastnem razredu je treba preveriti velikost
+		for (int block = freeLists[sizeClass]; block != 0; block = memory.load(block + 4))
+			if ((memory.load(block) & SIZE_MASK) >= blockSize)
+				return block;
+		// v visjih razredih je vsak blok dovolj velik
+		for (int c = sizeClass + 1; c < NUM_CLASSES; c++)
+			if (freeLists[c] != 0)
+				return freeLists[c];
+		return 0;
+	}
+
+	/**
+	 * Oznaci blok kot prost in ga doda v seznam prostih blokov.
+	 *
+	 * Blok pred njim mora biti dodeljen, za njim pa mora biti dodeljen blok.
+	 *
+	 * @param block     Naslov bloka.
+	 * @param blockSize Velikost bloka.
+	 */
+	private void release(final int block, final int blockSize) {
+		memory.save(block, blockSize);
+		memory.save(block + blockSize - 4, blockSize);
+		memory.save(block + blockSize, memory.load(block + blockSize) | PREV_FREE);
+		final int sizeClass = sizeClass(blockSize);
+		final int head = freeLists[sizeClass];
+		memory.save(block + 4, head);
+		memory.save(block + 8, 0);
+		if (head != 0)
+			memory.save(head + 8, block);
+		freeLists[sizeClass] = block;
+	}
+
+	/**
+	 * Odstrani prost blok iz seznama prostih blokov.
+	 *
+	 * @param block Naslov bloka.
+	 */
+	private void unlink(final int block) {
+		final int next = memory.load(block + 4);
+		final int prev = memory.load(block + 8);
+		if (prev != 0)
+			memory.save(prev + 4, next);
+		else
+			freeLists[sizeClass(memory.load(block) & SIZE_MASK)] = next;
+		if (next != 0)
+			memory.save(next + 8, prev);
+	}
+
+	/**
+	 * Vrne stanje dodeljevalnika (bloki in seznami prostih blokov so v
+	 * pomnilniku, zato jih stanje ne vsebuje).
+	 *
+	 * @return Stanje dodeljevalnika.
+	 */
+	public long[] state() {
+		final long[] bitmap = allocated.toLongArray();
+		final long[] state = new long[6 + NUM_CLASSES + bitmap.length];
+		state[0] = top;
+		state[1] = peakHeapSize;
+		state[2] = numAllocs;
+		state[3] = numFrees;
+		state[4] = liveBytes;
+		state[5] = peakLiveBytes;
+		for (int c = 0; c < NUM_CLASSES; c++)
+			state[6 + c] = freeLists[c];
+		System.arraycopy(bitmap, 0, state, 6 + NUM_CLASSES, bitmap.length);
+		return state;
+	}
+
+	/**
+	 * Vzpostavi stanje dodeljevalnika.
+	 *
+	 * @param state Stanje dodeljevalnika, kot ga vrne metoda {@link #state()}.
+	 */
+	public void restore(final long[] state) {
+		if (state.length < 6 + NUM_CLASSES)
+			throw new Report.Error("Illegal heap state.");
+		top = (int) state[0];
+		peakHeapSize = (int) state[1];
+		numAllocs = state[2];
+		numFrees = state[3];
+		liveBytes = state[4];
+		peakLiveBytes = state[5];
+		for (int c = 0; c < NUM_CLASSES; c++)
+			freeLists[c] = (int) state[6 + c];
+		allocated.clear();
+		allocated.or(BitSet.valueOf(Arrays.copyOfRange(state, 6 + NUM_CLASSES, state.length)));
+	}
+
+	/**
+	 * Vrne opis stanja kopice.
+	 *
+	 * Fragmentacija je delez prostega pomnilnika, ki ni v najvecjem prostem bloku.
+	 *
+	 * @return Opis stanja kopice.
+	 */
+	public String stats() {
+		long freeBytes = 0;
+		int largestFree = 0;
+		for (int c = 0; c < NUM_CLASSES; c++)
+			for (int block = freeLists[c]; block != 0; block = memory.load(block + 4)) {
+				final int blockSize = memory.load(block) & SIZE_MASK;
+				freeBytes += blockSize;
+				largestFree = Math.max(largestFree, blockSize);
+			}
+		final double fragmentation = freeBytes == 0 ? 0.0 : 100.0 * (freeBytes - largestFree) / freeBytes;
+		return String.format(
+				"heap: %d allocations, %d deallocations, %d bytes live (peak %d), %d bytes in heap (peak %d), %d bytes free, %.1f%% fragmentation.",
+				numAllocs, numFrees, liveBytes, peakLiveBytes, top - base, peakHeapSize, freeBytes, fragmentation);
+	}
+
+}
@@ -0,0 +1,245 @@
+package pins24.machine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import pins24.common.*;
+
+/**
+ * Medpomnjen vhod programa.
+ *
+ * Vhod se bere po bajtih iz medpomnilnika, ki se polni s standardnega vhoda (ali
+ * drugega toka), ali pa iz datoteke, ki je preslikana v pomnilnik (po oknih
+ * velikosti {@link #WINDOW_SIZE}). Celo stevilo je zaporedje znakov med belimi znaki, ki
+ * ga metoda {@link #getInt()} prebere enako kot {@link java.util.Scanner#nextInt()},
+ * metoda {@link #getLine()} pa prebere preostanek vrstice enako kot
+ * {@link java.util.Scanner#nextLine()}.
+ */
+public class InputChannel implements AutoCloseable {
+
+	/** Velikost medpomnilnika pri branju toka. */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/** Velikost okna datoteke, ki je naenkrat preslikano v pomnilnik. */
+	public static final long WINDOW_SIZE = 1L << 30;
+
+	/** Kanal, s katerega se bere tok ({@code null} pri branju datoteke). */
+	private final ReadableByteChannel stream;
+
+	/** Datoteka, ki se preslika v pomnilnik ({@code null} pri branju toka). */
+	private final FileChannel file;
+
+	/** Velikost datoteke. */
+	private final long fileSize;
+
+	/** Odmik dela datoteke, ki se se ni preslikal v pomnilnik. */
+	private long filePos = 0;
+
+	/** Medpomnilnik oziroma trenutno okno datoteke. */
+	private ByteBuffer buffer;
+
+	/** Kodna tabela za znake, ki niso znaki ASCII. */
+	private final Charset charset = Charset.defaultCharset();
+
+	/** Medpomnilnik za bajte vrstice. */
+	private byte[] line = new byte[256];
+
+	/** Stevilo bajtov, ki so bili prebrani v medpomnilnik pred trenutno vsebino. */
+	private long consumed = 0;
+
+	/**
+	 * Ustvari nov medpomnjen vhod s standardnega vhoda.
+	 */
+	public InputChannel() {
+		this(System.in);
+	}
+
+	/**
+	 * Ustvari nov medpomnjen vhod s podanega toka (tok ostane odprt).
+	 *
+	 * @param stream Tok, s katerega se bere.
+	 */
+	public InputChannel(final InputStream stream) {
+		this.stream = Channels.newChannel(stream);
+		this.file = null;
+		this.fileSize = 0;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+	}
+
+	/**
+	 * Ustvari nov medpomnjen vhod iz datoteke, ki se preslika v pomnilnik.
+	 *
+	 * @param fileName Ime datoteke.
+	 */
+	public InputChannel(final String fileName) {
+		this.stream = null;
+		try {
+			this.file = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+			this.fileSize = file.size();
+		} catch (IOException | InvalidPathException __) {
+			throw new Report.Error("Cannot open input file '" + fileName + "'.");
+		}
+		this.buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Napolni medpomnilnik oziroma preslika naslednje okno datoteke.
+	 *
+	 * @return Ali je v medpomnilniku vsaj en bajt ({@code false} na koncu vhoda).
+	 */
+	private boolean fill() {
+		try {
+			if (file != null) {
+				if (filePos >= fileSize)
+					return false;
+				final long size = Math.min(fileSize - filePos, WINDOW_SIZE);
+				consumed = filePos;
+				buffer = file.map(FileChannel.MapMode.READ_ONLY, filePos, size);
+				filePos += size;
+				return true;
+			} else {
+				consumed += buffer.limit();
+				buffer.clear();
+				int size;
+				do {
+					size = stream.read(buffer);
+				} while (size == 0);
+				buffer.flip();
+				return size > 0;
+			}
+		} catch (IOException __) {
+			throw new Report.Error("Cannot read program input.");
+		}
+	}
+
+	/**
+	 * Vrne stevilo prebranih bajtov vhoda.
+	 *
+	 * @return Stevilo prebranih bajtov vhoda.
+	 */
+	public long position() {
+		return consumed + buffer.position();
+	}
+
+	/**
+	 * Preskoci zacetek vhoda (pri nadaljevanju izvajanja s shranjenega mesta).
+	 *
+	 * @param position Stevilo bajtov, ki naj bodo prebrani.
+	 */
+	public void skip(final long position) {
+		if (file != null) {
+			if (position > fileSize)
+				throw new Report.Error("Input file is shorter than expected.");
+			filePos = position;
+			consumed = position;
+			buffer = ByteBuffer.allocate(0);
+			return;
+		}
+		while (position() < position) {
+			if (!buffer.hasRemaining() && !fill())
+				throw new Report.Error("Program input is shorter than expected.");
+			buffer.position((int) Math.min(buffer.limit(), buffer.position() + (position - position())));
+		}
+	}
+
+	/**
+	 * Vrne naslednji bajt vhoda, ne da bi ga prebral.
+	 *
+	 * @return Naslednji bajt vhoda ali {@code -1} na koncu vhoda.
+	 */
+	private int peek() {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get(buffer.position()) & 0xFF;
+	}
+
+	/**
+	 * Ali je bajt beli znak.
+	 *
+	 * @param b Bajt.
+	 * @return Ali je bajt beli znak.
+	 */
+	private static boolean isWhitespace(final int b) {
+		return (b == ' ') || (b == '\t') || (b == '\n') || (b == '\r') || (b == '\f') || (b == 0x0B)
+				|| ((b >= 0x1C) && (b <= 0x1F));
+	}
+
+	/**
+	 * Prebere celo stevilo.
+	 *
+	 * @return Prebrano celo stevilo.
+	 */
+	public int getInt() {
+		int b;
+		while (isWhitespace(b = peek()))
+			buffer.get();
+		if (b == -1)
+			throw new Report.Error("Unexpected end of program input.");
+		boolean negative = false;
+		if ((b == '-') || (b == '+')) {
+			negative = b == '-';
+			buffer.get();
+			b = peek();
+		}
+		long value = 0;
+		int numDigits = 0;
+		while ((b != -1) && !isWhitespace(b)) {
+			if ((b < '0') || (b > '9'))
+				throw new Report.Error("Illegal integer in program input.");
+			value = 10 * value + (b - '0');
+			if (value > (long) Integer.MAX_VALUE + 1)
+				throw new Report.Error("Illegal integer in program input.");
+			numDigits++;
+			buffer.get();
+			b = peek();
+		}
+		if (numDigits == 0)
+			throw new Report.Error("Illegal integer in program input.");
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE)
+			throw new Report.Error("Illegal integer in program input.");
+		return (int) value;
+	}
+
+	/**
+	 * Prebere preostanek vrstice (brez znaka za konec vrstice).
+	 *
+	 * @return Prebrana vrstica.
+	 */
+	public String getLine() {
+		int b = peek();
+		if (b == -1)
+			throw new Report.Error("Unexpected end of program input.");
+		int size = 0;
+		while ((b != -1) && (b != '\n')) {
+			if (size == line.length) {
+				final byte[] newLine = new byte[2 * line.length];
+				System.arraycopy(line, 0, newLine, 0, size);
+				line = newLine;
+			}
+			line[size++] = buffer.get();
+			b = peek();
+		}
+		if (b == '\n')
+			buffer.get();
+		if ((size > 0) && (line[size - 1] == '\r'))
+			size--;
+		return new String(line, 0, size, charset);
+	}
+
+	/**
+	 * Zapre datoteko (tok ostane odprt).
+	 */
+	@Override
+	public void close() {
+		if (file != null)
+			try {
+				file.close();
+			} catch (IOException __) {
+				throw new Report.Error("Cannot close input file.");
+			}
+	}
+
+}
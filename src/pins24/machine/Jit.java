@@ -0,0 +1,1132 @@
+package pins24.machine;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Prevajanje funkcij v kodo javanskega navideznega stroja.
+ *
+ * Funkcija se prevede v skriti razred, ki implementira vmesnik {@link JitCode}.
+ * Prevedena koda uporablja isti pomnilnik in enako razporeditev klicnih zapisov
+ * kot interpreter, zato se prevedene in interpretirane funkcije lahko poljubno
+ * klicejo med seboj. Vrednosti, ki jih ukazi znotraj osnovnega bloka prenasajo
+ * na sklad, se hranijo v lokalnih spremenljivkah javanske metode (navidezni
+ * sklad) in se zapisejo v pomnilnik sele pred klicem funkcije, na koncu
+ * osnovnega bloka ali ob ukazu {@code REGN.SP}.
+ *
+ * Funkcija, v kateri se skace na izracunan naslov, se ne prevede.
+ */
+public class Jit {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Jit() {
+		throw new Report.InternalError();
+	}
+
+	/** Najvecja dolzina kode prevedene metode (zaradi 16-bitnih odmikov skokov). */
+	private static final int MAX_CODE_LENGTH = 32767;
+
+	/** Najvecja globina navideznega sklada. */
+	private static final int MAX_SLOTS = 64;
+
+	/** Indeks lokalne spremenljivke z izvajalnim okoljem. */
+	private static final int RUNTIME = 1;
+
+	/** Indeks lokalne spremenljivke s pomnilnikom. */
+	private static final int MEMORY = 2;
+
+	/** Indeks lokalne spremenljivke s klicnim kazalcem. */
+	private static final int FP = 3;
+
+	/** Indeks lokalne spremenljivke s skladovnim kazalcem. */
+	private static final int SP = 4;
+
+	/** Indeks prve pomozne lokalne spremenljivke. */
+	private static final int SCRATCH = 5;
+
+	/** Indeks lokalne spremenljivke z dnom navideznega sklada. */
+	private static final int SLOTS = 8;
+
+	/** Dostop do paketa, v katerem so definirani prevedeni razredi. */
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	/**
+	 * Vrne napako, ki se sprozi ob neveljavnem dostopu do pomnilnika v prevedeni
+	 * kodi.
+	 *
+	 * @return Notranja napaka.
+	 */
+	public static Error fault() {
+		return new Report.InternalError();
+	}
+
+	// --- DOLOCANJE KODE FUNKCIJE ---
+
+	/**
+	 * Koda funkcije: ukazi, ki so dosegljivi iz vstopne tocke funkcije brez klicev
+	 * drugih funkcij.
+	 */
+	public static class Region {
+
+		/** Naslov vstopne tocke funkcije. */
+		public final int entry;
+
+		/** Naslovi ukazov funkcije. */
+		private final BitSet instrs;
+
+		/** Naslovi ukazov, na katere se skace. */
+		private final BitSet targets;
+
+		/**
+		 * Ustvari nov opis kode funkcije.
+		 *
+		 * @param entry   Naslov vstopne tocke funkcije.
+		 * @param instrs  Naslovi ukazov funkcije.
+		 * @param targets Naslovi ukazov, na katere se skace.
+		 */
+		private Region(final int entry, final BitSet instrs, final BitSet targets) {
+			this.entry = entry;
+			this.instrs = instrs;
+			this.targets = targets;
+		}
+
+		/**
+		 * Vrne naslove ukazov funkcije.
+		 *
+		 * @return Naslovi ukazov funkcije (v narascajocem vrstnem redu).
+		 */
+		public int[] addrs() {
+			return instrs.stream().toArray();
+		}
+
+	}
+
+	/**
+	 * Doloci kodo funkcije.
+	 *
+	 * @param code  Koda programa (glej {@link Bytecode}).
+	 * @param entry Naslov vstopne tocke funkcije.
+	 * @return Koda funkcije ali {@code null}, ce funkcija skace na izracunan
+	 *         naslov.
+	 */
+	public static Region region(final int[] code, final int entry) {
+		final BitSet instrs = new BitSet(code.length);
+		final BitSet targets = new BitSet(code.length);
+		targets.set(entry);
+		final Deque<Integer> work = new ArrayDeque<Integer>();
+		work.push(entry);
+		while (!work.isEmpty()) {
+			final int pc = work.pop();
+			if ((pc < 0) || (pc >= code.length))
+				return null;
+			if (instrs.get(pc))
+				continue;
+			instrs.set(pc);
+			final int opcode = code[pc];
+			final int next = pc + (Bytecode.hasOperand(opcode) ? 5 : 1);
+			switch (opcode) {
+			case Bytecode.ILLEGAL:
+				return null;
+			case Bytecode.PUSH:
+				if ((next < code.length) && (code[next] == Bytecode.UJMP)) {
+					// skok na znan naslov
+					instrs.set(next);
+					targets.set(code[pc + 1]);
+					work.push(code[pc + 1]);
+				} else if ((next + 5 < code.length) && (code[next] == Bytecode.PUSH)
+						&& (code[next + 5] == Bytecode.CJMP)) {
+					// pogojni skok na znana naslova
+					instrs.set(next);
+					instrs.set(next + 5);
+					targets.set(code[pc + 1]);
+					targets.set(code[next + 1]);
+					work.push(code[pc + 1]);
+					work.push(code[next + 1]);
+				} else
+					work.push(next);
+				break;
+			case Bytecode.UJMP:
+			case Bytecode.CJMP:
+				return null;
+			case Bytecode.BEQ:
+			case Bytecode.BNE:
+			case Bytecode.BLT:
+			case Bytecode.BLE:
+			case Bytecode.BGT:
+			case Bytecode.BGE:
+			case Bytecode.BZ:
+			case Bytecode.BNZ:
+				targets.set(code[pc + 1]);
+				targets.set(next);
+				work.push(code[pc + 1]);
+				work.push(next);
+				break;
+			case Bytecode.RETN:
+			case Bytecode.TCALL:
+				break;
+			default:
+				work.push(next);
+				break;
+			}
+		}
+		// na ukaze, ki so del skoka na znan naslov, se ne sme skakati
+		for (int pc = instrs.nextSetBit(0); pc >= 0; pc = instrs.nextSetBit(pc + 1)) {
+			if (((code[pc] == Bytecode.UJMP) || (code[pc] == Bytecode.CJMP)) && targets.get(pc))
+				return null;
+			if ((code[pc] == Bytecode.PUSH) && (pc + 5 < code.length) && (code[pc + 5] == Bytecode.CJMP)
+					&& targets.get(pc))
+				return null;
+		}
+		return new Region(entry, instrs, targets);
+	}
+
+	// --- PREVAJANJE ---
+
+	/**
+	 * Prevede funkcijo v kodo javanskega navideznega stroja.
+	 *
+	 * @param code            Koda programa (glej {@link Bytecode}).
+	 * @param codeSegmentSize Velikost segmenta z ukazi kode programa.
+	 * @param region          Koda funkcije.
+	 * @return Prevedena funkcija ali {@code null}, ce funkcije ni mogoce prevesti.
+	 */
+	public static JitCode compile(final int[] code, final int codeSegmentSize, final Region region) {
+		final byte[] classFile;
+		try {
+			final Compiler compiler = new Compiler(code, codeSegmentSize, region);
+			if (!compiler.compile())
+				return null;
+			classFile = compiler.classFile();
+		} catch (IOException __) {
+			throw new Report.InternalError();
+		}
+		if (classFile == null)
+			return null;
+		try {
+			final MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+			return (JitCode) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		} catch (Throwable __) {
+			return null;
+		}
+	}
+
+	/**
+	 * Operand ukaza: konstanta ali lokalna spremenljivka.
+	 *
+	 * @param isConst Ali je operand konstanta.
+	 * @param value   Vrednost konstante ali indeks lokalne spremenljivke.
+	 */
+	private record Operand(boolean isConst, int value) {
+	}
+
+	/**
+	 * Prevajalnik ene funkcije.
+	 */
+	private static class Compiler {
+
+		/** Koda programa. */
+		private final int[] code;
+
+		/** Velikost segmenta z ukazi kode programa. */
+		private final int codeSegmentSize;
+
+		/** Koda funkcije. */
+		private final Region region;
+
+		/** Tabela konstant razreda. */
+		private final ConstantPool pool = new ConstantPool();
+
+		/** Koda metode. */
+		private final ByteArrayOutputStream method = new ByteArrayOutputStream();
+
+		/** Polozaji oznak v kodi metode. */
+		private final Vector<Integer> labels = new Vector<Integer>();
+
+		/** Oznake ukazov funkcije. */
+		private final HashMap<Integer, Integer> addrLabels = new HashMap<Integer, Integer>();
+
+		/** Skoki v kodi metode (izmenicno polozaj ukaza in oznaka). */
+		private final Vector<Integer> jumps = new Vector<Integer>();
+
+		/** Ali je vrednost na navideznem skladu konstanta. */
+		private final boolean[] isConst = new boolean[MAX_SLOTS];
+
+		/** Konstante na navideznem skladu. */
+		private final int[] consts = new int[MAX_SLOTS];
+
+		/** Globina navideznega sklada. */
+		private int depth = 0;
+
+		/** Stevilo uporabljenih pomoznih lokalnih spremenljivk trenutnega ukaza. */
+		private int scratch = 0;
+
+		/** Stevilo ukazov, ki se niso pristeti k stevilu izvedenih ukazov. */
+		private int pending = 0;
+
+		/**
+		 * Ustvari nov prevajalnik funkcije.
+		 *
+		 * @param code            Koda programa.
+		 * @param codeSegmentSize Velikost segmenta z ukazi kode programa.
+		 * @param region          Koda funkcije.
+		 */
+		Compiler(final int[] code, final int codeSegmentSize, final Region region) {
+			this.code = code;
+			this.codeSegmentSize = codeSegmentSize;
+			this.region = region;
+		}
+
+		/**
+		 * Prevede kodo funkcije v kodo metode.
+		 *
+		 * @return Ali je bila funkcija prevedena.
+		 */
+		boolean compile() {
+			boolean reachable = true;
+			for (final int pc : region.addrs()) {
+				if (region.targets.get(pc)) {
+					if (reachable) {
+						flush();
+						count();
+					}
+					place(label(pc));
+					reachable = true;
+				}
+				if (!reachable)
+					return false;
+				scratch = 0;
+				pending++;
+				final int opcode = code[pc];
+				final int operand = Bytecode.hasOperand(opcode) ? code[pc + 1] : 0;
+				switch (opcode) {
+				case Bytecode.INIT: {
+					flush();
+					aload(RUNTIME);
+					iload(SP);
+					invoke(0xB9, "pins24/machine/JitRuntime", "init", "(I)I", 2);
+					istore(SP);
+					break;
+				}
+				case Bytecode.LOAD: {
+					final Operand addr = pop();
+					check(addr);
+					final int result = push();
+					aload(MEMORY);
+					load(addr);
+					invoke(0xB6, "pins24/machine/PagedMemory", "load", "(I)I", 0);
+					istore(result);
+					break;
+				}
+				case Bytecode.SAVE: {
+					final Operand addr = pop();
+					final Operand value = pop();
+					check(addr);
+					aload(MEMORY);
+					load(addr);
+					load(value);
+					invoke(0xB6, "pins24/machine/PagedMemory", "save", "(II)V", 0);
+					break;
+				}
+				case Bytecode.POPN: {
+					final Operand size = pop();
+					if (!size.isConst())
+						return false;
+					int n = size.value();
+					if (n < 0) {
+						flush();
+						final int words = (-n + 3) / 4;
+						iinc(SP, -4 * words);
+						aload(RUNTIME);
+						iload(SP);
+						invoke(0xB9, "pins24/machine/JitRuntime", "stack", "(I)V", 2);
+						aload(MEMORY);
+						iload(SP);
+						iconst(4 * words);
+						invoke(0xB6, "pins24/machine/PagedMemory", "clear", "(II)V", 0);
+					} else {
+						int bytes = 0;
+						for (; n > 0; n -= 4) {
+							if (depth > 0)
+								depth--;
+							else
+								bytes += 4;
+						}
+						iinc(SP, bytes);
+					}
+					break;
+				}
+				case Bytecode.PUSH:
+				case Bytecode.REGN_PC: {
+					push(opcode == Bytecode.PUSH ? operand : pc);
+					break;
+				}
+				case Bytecode.REGN_FP: {
+					final int result = push();
+					iload(FP);
+					istore(result);
+					break;
+				}
+				case Bytecode.REGN_SP: {
+					flush();
+					final int result = push();
+					iload(SP);
+					istore(result);
+					break;
+				}
+				case Bytecode.NOT:
+				case Bytecode.NEG: {
+					final Operand expr = pop();
+					if (expr.isConst()) {
+						push(opcode == Bytecode.NOT ? (expr.value() == 0 ? 1 : 0) : -expr.value());
+						break;
+					}
+					final int result = push();
+					load(expr);
+					if (opcode == Bytecode.NOT)
+						bool(0x99);
+					else
+						op(0x74);
+					istore(result);
+					break;
+				}
+				case Bytecode.OR:
+				case Bytecode.AND:
+				case Bytecode.EQU:
+				case Bytecode.NEQ:
+				case Bytecode.GTH:
+				case Bytecode.LTH:
+				case Bytecode.GEQ:
+				case Bytecode.LEQ:
+				case Bytecode.ADD:
+				case Bytecode.SUB:
+				case Bytecode.MUL:
+				case Bytecode.DIV:
+				case Bytecode.MOD: {
+					final Operand snd = pop();
+					final Operand fst = pop();
+					if (fst.isConst() && snd.isConst()
+							&& !(((opcode == Bytecode.DIV) || (opcode == Bytecode.MOD)) && (snd.value() == 0))) {
+						push(fold(opcode, fst.value(), snd.value()));
+						break;
+					}
+					final int result = push();
+					switch (opcode) {
+					case Bytecode.OR -> {
+						load(fst);
+						load(snd);
+						op(0x80); // ior
+						bool(0x9A);
+					}
+					case Bytecode.AND -> {
+						final int falseLabel = newLabel();
+						final int endLabel = newLabel();
+						load(fst);
+						jump(0x99, falseLabel);
+						load(snd);
+						jump(0x99, falseLabel);
+						iconst(1);
+						jump(0xA7, endLabel);
+						place(falseLabel);
+						iconst(0);
+						place(endLabel);
+					}
+					case Bytecode.EQU, Bytecode.NEQ, Bytecode.GTH, Bytecode.LTH, Bytecode.GEQ, Bytecode.LEQ -> {
+						load(fst);
+						load(snd);
+						bool(compare(opcode));
+					}
+					default -> {
+						load(fst);
+						load(snd);
+						op(switch (opcode) {
+						case Bytecode.ADD -> 0x60;
+						case Bytecode.SUB -> 0x64;
+						case Bytecode.MUL -> 0x68;
+						case Bytecode.DIV -> 0x6C;
+						case Bytecode.MOD -> 0x70;
+						default -> throw new Report.InternalError();
+						});
+					}
+					}
+					istore(result);
+					break;
+				}
+				case Bytecode.UJMP: {
+					final Operand target = pop();
+					if (!target.isConst())
+						return false;
+					flush();
+					count();
+					jump(0xA7, label(target.value()));
+					reachable = false;
+					break;
+				}
+				case Bytecode.CJMP: {
+					final Operand elseTarget = pop();
+					final Operand thenTarget = pop();
+					final Operand cond = pop();
+					if (!elseTarget.isConst() || !thenTarget.isConst())
+						return false;
+					flush();
+					count();
+					load(cond);
+					jump(0x9A, label(thenTarget.value()));
+					jump(0xA7, label(elseTarget.value()));
+					reachable = false;
+					break;
+				}
+				case Bytecode.BEQ:
+				case Bytecode.BNE:
+				case Bytecode.BLT:
+				case Bytecode.BLE:
+				case Bytecode.BGT:
+				case Bytecode.BGE: {
+					final Operand snd = pop();
+					final Operand fst = pop();
+					flush();
+					count();
+					load(fst);
+					load(snd);
+					jump(switch (opcode) {
+					case Bytecode.BEQ -> 0x9F;
+					case Bytecode.BNE -> 0xA0;
+					case Bytecode.BLT -> 0xA1;
+					case Bytecode.BGE -> 0xA2;
+					case Bytecode.BGT -> 0xA3;
+					case Bytecode.BLE -> 0xA4;
+					default -> throw new Report.InternalError();
+					}, label(operand));
+					break;
+				}
+				case Bytecode.BZ:
+				case Bytecode.BNZ: {
+					final Operand cond = pop();
+					flush();
+					count();
+					load(cond);
+					jump(opcode == Bytecode.BZ ? 0x99 : 0x9A, label(operand));
+					break;
+				}
+				case Bytecode.CALL: {
+					final Operand newPC = pop();
+					flush();
+					count();
+					aload(RUNTIME);
+					load(newPC);
+					iconst(pc + 1);
+					iload(FP);
+					iload(SP);
+					invoke(0xB9, "pins24/machine/JitRuntime", "call", "(IIII)I", 5);
+					istore(SP);
+					break;
+				}
+				case Bytecode.RETN: {
+					final Operand parsSize = pop();
+					final Operand result = pop();
+					count();
+					iload(FP);
+					load(parsSize);
+					op(0x60); // iadd
+					istore(SP);
+					aload(MEMORY);
+					iload(SP);
+					load(result);
+					invoke(0xB6, "pins24/machine/PagedMemory", "save", "(II)V", 0);
+					iload(SP);
+					op(0xAC); // ireturn
+					depth = 0;
+					reachable = false;
+					break;
+				}
+				case Bytecode.TCALL: {
+					final Operand newPC = pop();
+					final Operand callerParsSize = pop();
+					final Operand parsSize = pop();
+					flush();
+					count();
+					aload(RUNTIME);
+					load(newPC);
+					load(parsSize);
+					load(callerParsSize);
+					iload(FP);
+					iload(SP);
+					invoke(0xB9, "pins24/machine/JitRuntime", "tailCall", "(IIIII)I", 6);
+					op(0xAC); // ireturn
+					depth = 0;
+					reachable = false;
+					break;
+				}
+				case Bytecode.LOADL:
+				case Bytecode.LOADG: {
+					if ((opcode == Bytecode.LOADG) && (operand < codeSegmentSize))
+						return false;
+					final int result = push();
+					aload(MEMORY);
+					if (opcode == Bytecode.LOADL) {
+						iload(FP);
+						iconst(operand);
+						op(0x60); // iadd
+					} else
+						iconst(operand);
+					invoke(0xB6, "pins24/machine/PagedMemory", "load", "(I)I", 0);
+					istore(result);
+					break;
+				}
+				case Bytecode.SAVEL:
+				case Bytecode.SAVEG: {
+					if ((opcode == Bytecode.SAVEG) && (operand < codeSegmentSize))
+						return false;
+					final Operand value = pop();
+					aload(MEMORY);
+					if (opcode == Bytecode.SAVEL) {
+						iload(FP);
+						iconst(operand);
+						op(0x60); // iadd
+					} else
+						iconst(operand);
+					load(value);
+					invoke(0xB6, "pins24/machine/PagedMemory", "save", "(II)V", 0);
+					break;
+				}
+				default:
+					return false;
+				}
+			}
+			if (reachable)
+				return false;
+			return method.size() <= MAX_CODE_LENGTH;
+		}
+
+		/**
+		 * Izracuna vrednost operacije nad konstantama.
+		 *
+		 * @param opcode Operacijska koda.
+		 * @param fst    Prvi operand.
+		 * @param snd    Drugi operand.
+		 * @return Vrednost operacije.
+		 */
+		private static int fold(final int opcode, final int fst, final int snd) {
+			return switch (opcode) {
+			case Bytecode.OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+			case Bytecode.AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+			case Bytecode.EQU -> fst == snd ? 1 : 0;
+			case Bytecode.NEQ -> fst != snd ? 1 : 0;
+			case Bytecode.GTH -> fst > snd ? 1 : 0;
+			case Bytecode.LTH -> fst < snd ? 1 : 0;
+			case Bytecode.GEQ -> fst >= snd ? 1 : 0;
+			case Bytecode.LEQ -> fst <= snd ? 1 : 0;
+			case Bytecode.ADD -> fst + snd;
+			case Bytecode.SUB -> fst - snd;
+			case Bytecode.MUL -> fst * snd;
+			case Bytecode.DIV -> fst / snd;
+			case Bytecode.MOD -> fst % snd;
+			default -> throw new Report.InternalError();
+			};
+		}
+
+		/**
+		 * Vrne ukaz za primerjavo dveh celih stevil, ki ustreza operaciji.
+		 *
+		 * @param opcode Operacijska koda primerjave.
+		 * @return Ukaz {@code if_icmp<cond>}.
+		 */
+		private static int compare(final int opcode) {
+			return switch (opcode) {
+			case Bytecode.EQU -> 0x9F;
+			case Bytecode.NEQ -> 0xA0;
+			case Bytecode.LTH -> 0xA1;
+			case Bytecode.GEQ -> 0xA2;
+			case Bytecode.GTH -> 0xA3;
+			case Bytecode.LEQ -> 0xA4;
+			default -> throw new Report.InternalError();
+			};
+		}
+
+		// --- NAVIDEZNI SKLAD ---
+
+		/**
+		 * Prenese konstanto na navidezni sklad.
+		 *
+		 * @param value Konstanta.
+		 */
+		private void push(final int value) {
+			if (depth == MAX_SLOTS)
+				flush();
+			isConst[depth] = true;
+			consts[depth] = value;
+			depth++;
+		}
+
+		/**
+		 * Prenese novo (se neizracunano) vrednost na navidezni sklad.
+		 *
+		 * @return Indeks lokalne spremenljivke, v katero je treba shraniti vrednost.
+		 */
+		private int push() {
+			if (depth == MAX_SLOTS)
+				flush();
+			isConst[depth] = false;
+			return SLOTS + depth++;
+		}
+
+		/**
+		 * Prevzame vrednost z navideznega sklada (ce je ta prazen, pa s sklada v
+		 * pomnilniku).
+		 *
+		 * @return Operand.
+		 */
+		private Operand pop() {
+			if (depth > 0) {
+				depth--;
+				return isConst[depth] ? new Operand(true, consts[depth]) : new Operand(false, SLOTS + depth);
+			}
+			final int local = SCRATCH + scratch++;
+			aload(MEMORY);
+			iload(SP);
+			invoke(0xB6, "pins24/machine/PagedMemory", "load", "(I)I", 0);
+			istore(local);
+			iinc(SP, 4);
+			return new Operand(false, local);
+		}
+
+		/**
+		 * Zapise vse vrednosti z navideznega sklada na sklad v pomnilniku.
+		 */
+		private void flush() {
+			for (int slot = 0; slot < depth; slot++) {
+				aload(MEMORY);
+				iload(SP);
+				iconst(-4 * (slot + 1));
+				op(0x60); // iadd
+				load(isConst[slot] ? new Operand(true, consts[slot]) : new Operand(false, SLOTS + slot));
+				invoke(0xB6, "pins24/machine/PagedMemory", "save", "(II)V", 0);
+			}
+			iinc(SP, -4 * depth);
+			depth = 0;
+		}
+
+		/**
+		 * Pristeje ukaze, ki se niso bili pristeti, k stevilu izvedenih ukazov.
+		 */
+		private void count() {
+			if (pending == 0)
+				return;
+			aload(RUNTIME);
+			iconst(pending);
+			op(0x85); // i2l
+			invoke(0xB9, "pins24/machine/JitRuntime", "count", "(J)V", 3);
+			pending = 0;
+		}
+
+		/**
+		 * Preveri, ali naslov ne kaze v segment z ukazi kode programa.
+		 *
+		 * @param addr Naslov.
+		 */
+		private void check(final Operand addr) {
+			if (addr.isConst() && (addr.value() >= codeSegmentSize))
+				return;
+			final int okLabel = newLabel();
+			load(addr);
+			iconst(codeSegmentSize);
+			jump(0xA2, okLabel); // if_icmpge
+			invoke(0xB8, "pins24/machine/Jit", "fault", "()Ljava/lang/Error;", 0);
+			op(0xBF); // athrow
+			place(okLabel);
+		}
+
+		// --- UKAZI JAVANSKEGA NAVIDEZNEGA STROJA ---
+
+		/**
+		 * Doda ukaz brez operandov.
+		 *
+		 * @param opcode Operacijska koda.
+		 */
+		private void op(final int opcode) {
+			method.write(opcode);
+		}
+
+		/**
+		 * Doda dvobajtno vrednost.
+		 *
+		 * @param value Vrednost.
+		 */
+		private void u2(final int value) {
+			method.write(value >> 8);
+			method.write(value);
+		}
+
+		/**
+		 * Doda ukaz, ki na sklad prenese konstanto.
+		 *
+		 * @param value Konstanta.
+		 */
+		private void iconst(final int value) {
+			if ((value >= -1) && (value <= 5))
+				op(0x03 + value);
+			else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+				op(0x10);
+				method.write(value);
+			} else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+				op(0x11);
+				u2(value);
+			} else {
+				op(0x13); // ldc_w
+				u2(pool.integer(value));
+			}
+		}
+
+		/**
+		 * Doda ukaz, ki na sklad prenese operand.
+		 *
+		 * @param operand Operand.
+		 */
+		private void load(final Operand operand) {
+			if (operand.isConst())
+				iconst(operand.value());
+			else
+				iload(operand.value());
+		}
+
+		/**
+		 * Doda ukaz {@code iload}.
+		 *
+		 * @param local Indeks lokalne spremenljivke.
+		 */
+		private void iload(final int local) {
+			op(0x15);
+			method.write(local);
+		}
+
+		/**
+		 * Doda ukaz {@code istore}.
+		 *
+		 * @param local Indeks lokalne spremenljivke.
+		 */
+		private void istore(final int local) {
+			op(0x36);
+			method.write(local);
+		}
+
+		/**
+		 * Doda ukaz {@code aload}.
+		 *
+		 * @param local Indeks lokalne spremenljivke.
+		 */
+		private void aload(final int local) {
+			op(0x19);
+			method.write(local);
+		}
+
+		/**
+		 * Doda ukaz {@code iinc}.
+		 *
+		 * @param local Indeks lokalne spremenljivke.
+		 * @param delta Sprememba vrednosti.
+		 */
+		private void iinc(final int local, final int delta) {
+			if (delta == 0)
+				return;
+			if ((delta >= Short.MIN_VALUE) && (delta <= Short.MAX_VALUE)) {
+				op(0xC4); // wide
+				op(0x84);
+				u2(local);
+				u2(delta);
+			} else {
+				iload(local);
+				iconst(delta);
+				op(0x60); // iadd
+				istore(local);
+			}
+		}
+
+		/**
+		 * Doda klic metode.
+		 *
+		 * @param opcode     Ukaz za klic ({@code invokevirtual}, {@code invokestatic}
+		 *                   ali {@code invokeinterface}).
+		 * @param owner      Razred ali vmesnik z metodo.
+		 * @param name       Ime metode.
+		 * @param descriptor Opis tipa metode.
+		 * @param numArgs    Stevilo besed argumentov (samo za
+		 *                   {@code invokeinterface}).
+		 */
+		private void invoke(final int opcode, final String owner, final String name, final String descriptor,
+				final int numArgs) {
+			op(opcode);
+			u2(pool.methodref(owner, name, descriptor, opcode == 0xB9));
+			if (opcode == 0xB9) {
+				method.write(numArgs);
+				method.write(0);
+			}
+		}
+
+		/**
+		 * Doda zaporedje ukazov, ki glede na pogojni skok na sklad prenese 1 ali 0.
+		 *
+		 * @param opcode Ukaz za pogojni skok, ki se izvede, ce je rezultat 1.
+		 */
+		private void bool(final int opcode) {
+			final int trueLabel = newLabel();
+			final int endLabel = newLabel();
+			jump(opcode, trueLabel);
+			iconst(0);
+			jump(0xA7, endLabel);
+			place(trueLabel);
+			iconst(1);
+			place(endLabel);
+		}
+
+		/**
+		 * Vrne oznako ukaza funkcije.
+		 *
+		 * @param addr Naslov ukaza.
+		 * @return Oznaka.
+		 */
+		private int label(final int addr) {
+			Integer label = addrLabels.get(addr);
+			if (label == null) {
+				label = newLabel();
+				addrLabels.put(addr, label);
+			}
+			return label;
+		}
+
+		/**
+		 * Ustvari novo oznako.
+		 *
+		 * @return Oznaka.
+		 */
+		private int newLabel() {
+			labels.add(-1);
+			return labels.size() - 1;
+		}
+
+		/**
+		 * Postavi oznako na trenutni polozaj v kodi metode.
+		 *
+		 * @param label Oznaka.
+		 */
+		private void place(final int label) {
+			labels.set(label, method.size());
+		}
+
+		/**
+		 * Doda skok na oznako.
+		 *
+		 * @param opcode Ukaz za skok.
+		 * @param label  Oznaka.
+		 */
+		private void jump(final int opcode, final int label) {
+			jumps.add(method.size());
+			jumps.add(label);
+			op(opcode);
+			u2(0);
+		}
+
+		// --- DATOTEKA RAZREDA ---
+
+		/**
+		 * Vrne vsebino datoteke razreda s prevedeno funkcijo.
+		 *
+		 * @return Vsebina datoteke razreda ali {@code null}, ce skok ne sega do
+		 *         oznake.
+		 * @throws IOException Ce pisanje ne uspe.
+		 */
+		byte[] classFile() throws IOException {
+			final byte[] body = method.toByteArray();
+			for (int j = 0; j < jumps.size(); j += 2) {
+				final int pos = jumps.get(j);
+				final int target = labels.get(jumps.get(j + 1));
+				if (target < 0)
+					return null;
+				final int offset = target - pos;
+				if ((offset < Short.MIN_VALUE) || (offset > Short.MAX_VALUE))
+					return null;
+				body[pos + 1] = (byte) (offset >> 8);
+				body[pos + 2] = (byte) offset;
+			}
+
+			final int thisClass = pool.cls("pins24/machine/JitCompiled");
+			final int superClass = pool.cls("java/lang/Object");
+			final int iface = pool.cls("pins24/machine/JitCode");
+			final int initName = pool.utf8("<init>");
+			final int initDesc = pool.utf8("()V");
+			final int objectInit = pool.methodref("java/lang/Object", "<init>", "()V", false);
+			final int runName = pool.utf8("run");
+			final int runDesc = pool.utf8("(Lpins24/machine/JitRuntime;Lpins24/machine/PagedMemory;II)I");
+			final int codeAttr = pool.utf8("Code");
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); // minor version
+			out.writeShort(49); // major version (preverjanje brez StackMapTable)
+			pool.write(out);
+			out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(iface);
+			out.writeShort(0); // fields
+			out.writeShort(2); // methods
+
+			// konstruktor
+			out.writeShort(0x0001);
+			out.writeShort(initName);
+			out.writeShort(initDesc);
+			out.writeShort(1);
+			out.writeShort(codeAttr);
+			out.writeInt(12 + 5);
+			out.writeShort(1); // max stack
+			out.writeShort(1); // max locals
+			out.writeInt(5);
+			out.writeByte(0x2A); // aload_0
+			out.writeByte(0xB7); // invokespecial
+			out.writeShort(objectInit);
+			out.writeByte(0xB1); // return
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+
+			// prevedena funkcija
+			out.writeShort(0x0001);
+			out.writeShort(runName);
+			out.writeShort(runDesc);
+			out.writeShort(1);
+			out.writeShort(codeAttr);
+			out.writeInt(12 + body.length);
+			out.writeShort(8); // max stack
+			out.writeShort(SLOTS + MAX_SLOTS); // max locals
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+
+			out.writeShort(0); // attributes
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+	}
+
+	/**
+	 * Tabela konstant datoteke razreda.
+	 */
+	private static class ConstantPool {
+
+		/** Vnosi tabele. */
+		private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+		/** Izhod za pisanje vnosov tabele. */
+		private final DataOutputStream out = new DataOutputStream(entries);
+
+		/** Indeksi ze dodanih vnosov. */
+		private final HashMap<String, Integer> indices = new HashMap<String, Integer>();
+
+		/** Stevilo vnosov tabele (vkljucno z neuporabljenim vnosom 0). */
+		private int count = 1;
+
+		/**
+		 * Vrne indeks vnosa, ki ga po potrebi doda.
+		 *
+		 * @param key   Kljuc vnosa.
+		 * @param tag   Vrsta vnosa.
+		 * @param write Zapis vsebine vnosa (brez vrste).
+		 * @return Indeks vnosa.
+		 */
+		private int entry(final String key, final int tag, final Writer write) {
+			final Integer index = indices.get(key);
+			if (index != null)
+				return index;
+			try {
+				out.writeByte(tag);
+				write.write();
+			} catch (IOException __) {
+				throw new Report.InternalError();
+			}
+			indices.put(key, count);
+			return count++;
+		}
+
+		/** Zapis vsebine vnosa. */
+		private interface Writer {
+			/**
+			 * Zapise vsebino vnosa.
+			 *
+			 * @throws IOException Ce pisanje ne uspe.
+			 */
+			void write() throws IOException;
+		}
+
+		/**
+		 * Vrne indeks niza.
+		 *
+		 * @param value Niz.
+		 * @return Indeks vnosa.
+		 */
+		int utf8(final String value) {
+			return entry("U" + value, 1, () -> out.writeUTF(value));
+		}
+
+		/**
+		 * Vrne indeks celostevilske konstante.
+		 *
+		 * @param value Konstanta.
+		 * @return Indeks vnosa.
+		 */
+		int integer(final int value) {
+			return entry("I" + value, 3, () -> out.writeInt(value));
+		}
+
+		/**
+		 * Vrne indeks razreda.
+		 *
+		 * @param name Ime razreda.
+		 * @return Indeks vnosa.
+		 */
+		int cls(final String name) {
+			final int nameIndex = utf8(name);
+			return entry("C" + name, 7, () -> out.writeShort(nameIndex));
+		}
+
+		/**
+		 * Vrne indeks metode.
+		 *
+		 * @param owner      Razred ali vmesnik z metodo.
+		 * @param name       Ime metode.
+		 * @param descriptor Opis tipa metode.
+		 * @param iface      Ali je metoda definirana v vmesniku.
+		 * @return Indeks vnosa.
+		 */
+		int methodref(final String owner, final String name, final String descriptor, final boolean iface) {
+			final int ownerIndex = cls(owner);
+			final int nameIndex = utf8(name);
+			final int descIndex = utf8(descriptor);
+			final int nameAndType = entry("N" + name + descriptor, 12, () -> {
+				out.writeShort(nameIndex);
+				out.writeShort(descIndex);
+			});
+			return entry("M" + owner + "." + name + descriptor, iface ? 11 : 10, () -> {
+				out.writeShort(ownerIndex);
+				out.writeShort(nameAndType);
+			});
+		}
+
+		/**
+		 * Zapise tabelo konstant.
+		 *
+		 * @param classFile Izhod datoteke razreda.
+		 * @throws IOException Ce pisanje ne uspe.
+		 */
+		void write(final DataOutputStream classFile) throws IOException {
+			out.flush();
+			classFile.writeShort(count);
+			entries.writeTo(classFile);
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package pins24.machine;
+
+/**
+ * Funkcija, prevedena v kodo javanskega navideznega stroja.
+ */
+public interface JitCode {
+
+	/**
+	 * Izvede prevedeno funkcijo.
+	 *
+	 * Ob klicu je klicni zapis funkcije ze postavljen (na naslovu {@code FP - 4}
+	 * je shranjen klicni kazalec klicatelja, na naslovu {@code FP - 8} pa
+	 * povratni naslov). Ob vrnitvi so parametri in staticna povezava ze odstranjeni
+	 * s sklada, na vrhu sklada pa je rezultat funkcije.
+	 *
+	 * @param runtime Izvajalno okolje.
+	 * @param memory  Pomnilnik.
+	 * @param FP      Klicni kazalec funkcije.
+	 * @param SP      Skladovni kazalec ob vstopu v funkcijo.
+	 * @return Skladovni kazalec po vrnitvi iz funkcije.
+	 */
+	public int run(JitRuntime runtime, PagedMemory memory, int FP, int SP);
+
+}
@@ -0,0 +1,61 @@
+package pins24.machine;
+
+/**
+ * Storitve izvajalnega okolja, ki jih uporablja prevedena koda funkcij.
+ */
+public interface JitRuntime {
+
+	/**
+	 * Izvede klic funkcije (prevedene, interpretirane ali 'sistemske').
+	 *
+	 * Argumenti in staticna povezava so ob klicu ze v pomnilniku na vrhu sklada.
+	 *
+	 * @param newPC    Naslov klicane funkcije.
+	 * @param returnPC Povratni naslov.
+	 * @param FP       Klicni kazalec klicatelja.
+	 * @param SP       Skladovni kazalec (kaze na staticno povezavo).
+	 * @return Skladovni kazalec po vrnitvi (kaze na rezultat funkcije).
+	 */
+	public int call(int newPC, int returnPC, int FP, int SP);
+
+	/**
+	 * Izvede repni klic funkcije: klicni zapis klicane funkcije nadomesti klicni
+	 * zapis funkcije, iz katere se klice, klicana funkcija pa se vrne neposredno v
+	 * njenega klicatelja.
+	 *
+	 * @param newPC          Naslov klicane funkcije.
+	 * @param parsSize       Velikost parametrov klicane funkcije (brez staticne
+	 *                       povezave).
+	 * @param callerParsSize Velikost parametrov funkcije, iz katere se klice (brez
+	 *                       staticne povezave).
+	 * @param FP             Klicni kazalec funkcije, iz katere se klice.
+	 * @param SP             Skladovni kazalec (kaze na staticno povezavo klica).
+	 * @return Skladovni kazalec po vrnitvi (kaze na rezultat funkcije).
+	 */
+	public int tailCall(int newPC, int parsSize, int callerParsSize, int FP, int SP);
+
+	/**
+	 * Izvede ukaz {@code INIT}.
+	 *
+	 * @param SP Skladovni kazalec (na vrhu sklada sta naslov inicializacije in
+	 *           naslov spremenljivke).
+	 * @return Skladovni kazalec po izvedbi ukaza.
+	 */
+	public int init(int SP);
+
+	/**
+	 * Preveri, ali je sklad po rezervaciji prostora za lokalne spremenljivke
+	 * dovolj oddaljen od kopice.
+	 *
+	 * @param SP Skladovni kazalec.
+	 */
+	public void stack(int SP);
+
+	/**
+	 * Pristeje stevilo izvedenih ukazov.
+	 *
+	 * @param numInstrs Stevilo izvedenih ukazov.
+	 */
+	public void count(long numInstrs);
+
+}
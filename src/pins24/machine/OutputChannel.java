@@ -0,0 +1,224 @@
+package pins24.machine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Medpomnjen izhod programa.
+ *
+ * Izpisana cela stevila in znaki se zapisujejo v medpomnilnik, ki se izprazni,
+ * ko se napolni, in ob klicu metode {@link #flush()} (skladovni stroj jo poklice
+ * pred branjem vhoda in ob koncu izvajanja). Zapisani bajti so enaki, kot bi
+ * jih izpisal {@code System.out.printf("%d", ...)} oziroma
+ * {@code System.out.printf("%c", ...)}.
+ */
+public class OutputChannel implements AutoCloseable {
+
+	/** Privzeta velikost medpomnilnika. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** Kanal, na katerega se izpisuje. */
+	private final WritableByteChannel channel;
+
+	/** Tok, na katerega se izpisuje ({@code null} pri pisanju v datoteko). */
+	private final PrintStream stream;
+
+	/** Kodna tabela za znake, ki niso znaki ASCII. */
+	private final Charset charset;
+
+	/** Medpomnilnik. */
+	private final byte[] buffer;
+
+	/** Ovojnica medpomnilnika za pisanje na kanal. */
+	private final ByteBuffer byteBuffer;
+
+	/** Stevilo bajtov v medpomnilniku. */
+	private int size = 0;
+
+	/** Stevilo bajtov, ki so ze bili zapisani na kanal. */
+	private long written = 0;
+
+	/** Najvecje stevilo izpisanih bajtov. */
+	private final long limit;
+
+	/**
+	 * Ustvari nov medpomnjen izhod na standardni izhod.
+	 */
+	public OutputChannel() {
+		this(System.out, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Ustvari nov medpomnjen izhod na podan tok z omejeno dolzino izhoda (tok
+	 * ostane odprt).
+	 *
+	 * @param stream Tok, na katerega se izpisuje.
+	 * @param limit  Najvecje stevilo izpisanih bajtov.
+	 */
+	public OutputChannel(final PrintStream stream, final long limit) {
+		this(Channels.newChannel(stream), stream, stream.charset(), DEFAULT_CAPACITY, limit);
+	}
+
+	/**
+	 * Ustvari nov medpomnjen izhod v datoteko.
+	 *
+	 * @param fileName Ime datoteke.
+	 */
+	public OutputChannel(final String fileName) {
+		this(fileName, 0);
+	}
+
+	/**
+	 * Ustvari nov medpomnjen izhod v datoteko, ki se nadaljuje na podanem mestu
+	 * (preostanek datoteke se zavrze).
+	 *
+	 * @param fileName Ime datoteke.
+	 * @param position Stevilo bajtov, ki ostanejo v datoteki.
+	 */
+	public OutputChannel(final String fileName, final long position) {
+		this(open(fileName, position), null, System.out.charset(), DEFAULT_CAPACITY, Long.MAX_VALUE);
+		this.written = position;
+	}
+
+	/**
+	 * Ustvari nov medpomnjen izhod.
+	 *
+	 * @param channel  Kanal, na katerega se izpisuje.
+	 * @param stream   Tok, na katerega se izpisuje ({@code null} pri pisanju v
+	 *                 datoteko).
+	 * @param charset  Kodna tabela za znake, ki niso znaki ASCII.
+	 * @param capacity Velikost medpomnilnika.
+	 * @param limit    Najvecje stevilo izpisanih bajtov.
+	 */
+	private OutputChannel(final WritableByteChannel channel, final PrintStream stream, final Charset charset,
+			final int capacity, final long limit) {
+		this.channel = channel;
+		this.stream = stream;
+		this.charset = charset;
+		this.buffer = new byte[capacity];
+		this.byteBuffer = ByteBuffer.wrap(buffer);
+		this.limit = limit;
+	}
+
+	/**
+	 * Odpre datoteko za pisanje.
+	 *
+	 * @param fileName Ime datoteke.
+	 * @param position Stevilo bajtov, ki ostanejo v datoteki.
+	 * @return Kanal za pisanje v datoteko.
+	 */
+	private static FileChannel open(final String fileName, final long position) {
+		try {
+			final FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			if (channel.size() < position)
+				throw new Report.Error("Output file '" + fileName + "' is shorter than expected.");
+			channel.truncate(position);
+			channel.position(position);
+			return channel;
+		} catch (IOException | InvalidPathException __) {
+			throw new Report.Error("Cannot open output file '" + fileName + "'.");
+		}
+	}
+
+	/**
+	 * Vrne stevilo izpisanih bajtov (vkljucno s tistimi, ki so se v
+	 * medpomnilniku).
+	 *
+	 * @return Stevilo izpisanih bajtov.
+	 */
+	public long position() {
+		return written + size;
+	}
+
+	/**
+	 * Izpise celo stevilo v desetiskem zapisu.
+	 *
+	 * @param value Celo stevilo.
+	 */
+	public void putInt(final int value) {
+		if (buffer.length - size < 11)
+			flush();
+		long abs = value;
+		if (abs < 0) {
+			buffer[size++] = '-';
+			abs = -abs;
+		}
+		int end = size;
+		for (long rest = abs; rest >= 10; rest /= 10)
+			end++;
+		size = end + 1;
+		do {
+			buffer[end--] = (byte) ('0' + abs % 10);
+			abs /= 10;
+		} while (abs > 0);
+	}
+
+	/**
+	 * Izpise znak.
+	 *
+	 * @param c Koda znaka (Unicode).
+	 */
+	public void putChar(final int c) {
+		if ((c >= 0) && (c < 0x80)) {
+			if (size == buffer.length)
+				flush();
+			buffer[size++] = (byte) c;
+			return;
+		}
+		if (!Character.isValidCodePoint(c))
+			throw new IllegalFormatCodePointException(c);
+		final byte[] bytes = new String(Character.toChars(c)).getBytes(charset);
+		if (buffer.length - size < bytes.length)
+			flush();
+		System.arraycopy(bytes, 0, buffer, size, bytes.length);
+		size += bytes.length;
+	}
+
+	/**
+	 * Izprazni medpomnilnik.
+	 * 
+	 * Ce bi izhod presegel najvecje dovoljeno stevilo bajtov, se zapise le
+	 * dovoljeni zacetek medpomnilnika, izvajanje programa pa se konca z napako.
+	 */
+	public void flush() {
+		boolean exceeded = false;
+		if (size > 0) {
+			final int allowed = (int) Math.min(size, limit - written);
+			exceeded = allowed < size;
+			byteBuffer.clear().limit(allowed);
+			try {
+				while (byteBuffer.hasRemaining())
+					channel.write(byteBuffer);
+			} catch (IOException __) {
+				throw new Report.Error("Cannot write program output.");
+			}
+			written += allowed;
+			size = 0;
+		}
+		if (stream != null)
+			stream.flush();
+		if (exceeded)
+			throw new Report.Error("Program output exceeds " + limit + " bytes.");
+	}
+
+	/**
+	 * Izprazni medpomnilnik in zapre datoteko (tok ostane odprt).
+	 */
+	@Override
+	public void close() {
+		flush();
+		if (stream == null)
+			try {
+				channel.close();
+			} catch (IOException __) {
+				throw new Report.Error("Cannot close output file.");
+			}
+	}
+
+}
@@ -0,0 +1,221 @@
+package pins24.machine;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Pomnilnik skladovnega stroja, razdeljen na strani.
+ *
+ * Vsaka stran obsega {@link #PAGE_SIZE} bajtov in je predstavljena s tabelo
+ * stiribajtnih besed. Stran je ustvarjena sele ob prvem pisanju vanjo, stran,
+ * ki se ne obstaja, pa se bere kot sama nicla. Vrednosti so shranjene po
+ * pravilu tankega konca (little-endian), torej enako, kot jih pricakujejo
+ * ukaz {@code INIT} ter sistemska klica {@code getstr} in {@code putstr}.
+ */
+public class PagedMemory {
+
+	/** Dvojiski logaritem velikosti strani. */
+	public static final int PAGE_BITS = 12;
+
+	/** Velikost strani (v bajtih). */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	/** Maska za izracun indeksa besede znotraj strani. */
+	private static final int WORD_MASK = (PAGE_SIZE >> 2) - 1;
+
+	/** Tabela strani (neobstojece strani so {@code null}). */
+	private int[][] pages = new int[64][];
+
+	/** Stevilo ustvarjenih strani. */
+	private int numPages = 0;
+
+	/**
+	 * Ustvari nov, povsem prazen pomnilnik.
+	 */
+	public PagedMemory() {
+	}
+
+	/**
+	 * Prebere stiribajtno vrednost iz pomnilnika.
+	 *
+	 * @param addr Pomnilniski naslov.
+	 * @return Vrednost.
+	 */
+	public int load(final int addr) {
+		if ((addr & 3) == 0)
+			return loadWord(addr);
+		final int shift = (addr & 3) << 3;
+		final int lo = loadWord(addr & ~3);
+		final int hi = loadWord((addr & ~3) + 4);
+		return (lo >>> shift) | (hi << (32 - shift));
+	}
+
+	/**
+	 * Shrani stiribajtno vrednost v pomnilnik.
+	 *
+	 * @param addr  Pomnilniski naslov.
+	 * @param value Vrednost.
+	 */
+	public void save(final int addr, final int value) {
+		if ((addr & 3) == 0) {
+			saveWord(addr, value);
+			return;
+		}
+		final int shift = (addr & 3) << 3;
+		final int mask = (1 << shift) - 1;
+		final int loAddr = addr & ~3;
+		final int hiAddr = loAddr + 4;
+		saveWord(loAddr, (loadWord(loAddr) & mask) | (value << shift));
+		saveWord(hiAddr, (loadWord(hiAddr) & ~mask) | (value >>> (32 - shift)));
+	}
+
+	/**
+	 * Prebere en bajt iz pomnilnika.
+	 *
+	 * @param addr Pomnilniski naslov.
+	 * @return Vrednost bajta (med 0 in 255).
+	 */
+	public int loadByte(final int addr) {
+		return (loadWord(addr & ~3) >>> ((addr & 3) << 3)) & 0xFF;
+	}
+
+	/**
+	 * Shrani en bajt v pomnilnik.
+	 *
+	 * @param addr  Pomnilniski naslov.
+	 * @param value Vrednost bajta (uposteva se le spodnjih 8 bitov).
+	 */
+	public void saveByte(final int addr, final int value) {
+		final int shift = (addr & 3) << 3;
+		final int wordAddr = addr & ~3;
+		saveWord(wordAddr, (loadWord(wordAddr) & ~(0xFF << shift)) | ((value & 0xFF) << shift));
+	}
+
+	/**
+	 * Postavi podano obmocje pomnilnika na nic.
+	 *
+	 * Strani, ki se ne obstajajo, ostanejo neustvarjene.
+	 *
+	 * @param addr Zacetni naslov obmocja.
+	 * @param size Velikost obmocja (v bajtih).
+	 */
+	public void clear(int addr, int size) {
+		while ((size > 0) && ((addr & 3) != 0)) {
+			saveByte(addr++, 0);
+			size--;
+		}
+		while (size >= 4) {
+			final int pageIndex = addr >>> PAGE_BITS;
+			if ((pageIndex >= pages.length) || (pages[pageIndex] == null)) {
+				// cela (preostala) stran je ze nicelna
+				final int skip = Math.min(size & ~3, PAGE_SIZE - (addr & (PAGE_SIZE - 1)));
+				addr += skip;
+				size -= skip;
+				continue;
+			}
+			pages[pageIndex][(addr >>> 2) & WORD_MASK] = 0;
+			addr += 4;
+			size -= 4;
+		}
+		while (size > 0) {
+			saveByte(addr++, 0);
+			size--;
+		}
+	}
+
+	/**
+	 * Zavrze vse strani (pomnilnik je nato povsem prazen).
+	 */
+	public void reset() {
+		pages = new int[64][];
+		numPages = 0;
+	}
+
+	/**
+	 * Vrne stevilo ustvarjenih strani.
+	 *
+	 * @return Stevilo ustvarjenih strani.
+	 */
+	public int numPages() {
+		return numPages;
+	}
+
+	/**
+	 * Vrne stevilo mest v tabeli strani (indeksi strani so manjsi od tega
+	 * stevila).
+	 *
+	 * @return Stevilo mest v tabeli strani.
+	 */
+	public int pageLimit() {
+		return pages.length;
+	}
+
+	/**
+	 * Vrne vsebino strani.
+	 *
+	 * @param pageIndex Indeks strani.
+	 * @return Besede strani ali {@code null}, ce stran se ne obstaja (tabele se ne
+	 *         sme spreminjati).
+	 */
+	public int[] page(final int pageIndex) {
+		return pageIndex < pages.length ? pages[pageIndex] : null;
+	}
+
+	/**
+	 * Nastavi vsebino strani.
+	 *
+	 * @param pageIndex Indeks strani.
+	 * @param words     Besede strani (tabela se prepise).
+	 */
+	public void setPage(final int pageIndex, final int[] words) {
+		if (words.length != (PAGE_SIZE >> 2))
+			throw new Report.InternalError();
+		if (pageIndex >= pages.length)
+			pages = Arrays.copyOf(pages, Math.max(pageIndex + 1, 2 * pages.length));
+		if (pages[pageIndex] == null) {
+			pages[pageIndex] = new int[PAGE_SIZE >> 2];
+			numPages++;
+		}
+		System.arraycopy(words, 0, pages[pageIndex], 0, words.length);
+	}
+
+	/**
+	 * Prebere poravnano besedo iz pomnilnika.
+	 *
+	 * @param addr Pomnilniski naslov (deljiv s 4).
+	 * @return Vrednost.
+	 */
+	private int loadWord(final int addr) {
+		final int pageIndex = addr >>> PAGE_BITS;
+		if (pageIndex >= pages.length)
+			return 0;
+		final int[] page = pages[pageIndex];
+		return page == null ? 0 : page[(addr >>> 2) & WORD_MASK];
+	}
+
+	/**
+	 * Shrani poravnano besedo v pomnilnik.
+	 *
+	 * @param addr  Pomnilniski naslov (deljiv s 4).
+	 * @param value Vrednost.
+	 */
+	private void saveWord(final int addr, final int value) {
+		final int pageIndex = addr >>> PAGE_BITS;
+		if (pageIndex >= pages.length) {
+			if (value == 0)
+				return;
+			if (addr < 0)
+				throw new Report.InternalError();
+			pages = Arrays.copyOf(pages, Math.max(pageIndex + 1, 2 * pages.length));
+		}
+		int[] page = pages[pageIndex];
+		if (page == null) {
+			if (value == 0)
+				return;
+			page = pages[pageIndex] = new int[PAGE_SIZE >> 2];
+			numPages++;
+		}
+		page[(addr >>> 2) & WORD_MASK] = value;
+	}
+
+}
@@ -0,0 +1,212 @@
+package pins24.machine;
+
+import java.io.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Profil izvajanja programa.
+ *
+ * Med izvajanjem se steje le, kolikokrat je bil izveden ukaz na posameznem
+ * naslovu, in vzdrzuje sklad klicev funkcij (za stevilo klicev ter vkljucno in
+ * izkljucno stevilo ukazov posamezne funkcije). Stevila izvedb po vrstah ukazov
+ * in po lokacijah v izvorni kodi se izracunajo sele ob izpisu porocila.
+ */
+public class Profiler {
+
+	/** Najvecje stevilo izpisanih lokacij v izvorni kodi. */
+	private static final int MAX_LOCATIONS = 20;
+
+	/** Ukazi kode programa, indeksirani s fizicnim naslovom ukaza. */
+	private final PDM.CodeInstr[] code;
+
+	/** Preslikava fizicnih naslovov v imena oznak. */
+	private final Map<Integer, String> addrToLabel;
+
+	/** Stevilo izvedb ukaza, indeksirano s fizicnim naslovom ukaza. */
+	private final long[] counts;
+
+	/** Stevilo klicev funkcije, indeksirano z naslovom vstopne tocke. */
+	private final long[] calls;
+
+	/** Stevilo ukazov, izvedenih v funkciji sami, indeksirano z naslovom vstopne tocke. */
+	private final long[] exclusive;
+
+	/**
+	 * Stevilo ukazov, izvedenih v funkciji in funkcijah, ki jih klice, indeksirano z
+	 * naslovom vstopne tocke.
+	 */
+	private final long[] inclusive;
+
+	/** Stevilo aktivnih klicev funkcije, indeksirano z naslovom vstopne tocke. */
+	private final int[] active;
+
+	/** Naslovi vstopnih tock funkcij na skladu klicev. */
+	private int[] stackEntries = new int[64];
+
+	/** Stevilo izvedenih ukazov ob klicu funkcij na skladu klicev. */
+	private long[] stackCounts = new long[64];
+
+	/** Globina sklada klicev. */
+	private int depth = 0;
+
+	/** Skupno stevilo izvedenih ukazov. */
+	private long total = 0;
+
+	/**
+	 * Ustvari nov profil izvajanja programa.
+	 *
+	 * Izvajanje programa se zacne na naslovu 0, ki se steje kot vstopna tocka
+	 * zacetne kode.
+	 *
+	 * @param code        Ukazi kode programa, indeksirani s fizicnim naslovom
+	 *                    ukaza.
+	 * @param addrToLabel Preslikava fizicnih naslovov v imena oznak.
+	 */
+	public Profiler(final PDM.CodeInstr[] code, final Map<Integer, String> addrToLabel) {
+		this.code = code;
+		this.addrToLabel = addrToLabel;
+		this.counts = new long[code.length];
+		this.calls = new long[code.length];
+		this.exclusive = new long[code.length];
+		this.inclusive = new long[code.length];
+		this.active = new int[code.length];
+		call(0);
+	}
+
+	/**
+	 * Zabelezi izvedbo ukaza.
+	 *
+	 * @param PC Fizicni naslov ukaza.
+	 */
+	public void step(final int PC) {
+		counts[PC]++;
+		exclusive[stackEntries[depth - 1]]++;
+		total++;
+	}
+
+	/**
+	 * Zabelezi klic funkcije.
+	 *
+	 * @param entry Naslov vstopne tocke funkcije.
+	 */
+	public void call(final int entry) {
+		if (depth == stackEntries.length) {
+			stackEntries = Arrays.copyOf(stackEntries, 2 * depth);
+			stackCounts = Arrays.copyOf(stackCounts, 2 * depth);
+		}
+		stackEntries[depth] = entry;
+		stackCounts[depth] = total;
+		depth++;
+		calls[entry]++;
+		active[entry]++;
+	}
+
+	/**
+	 * Zabelezi vrnitev iz funkcije.
+	 */
+	public void retn() {
+		depth--;
+		final int entry = stackEntries[depth];
+		// pri rekurziji se steje le najbolj zunanji klic
+		if (--active[entry] == 0)
+			inclusive[entry] += total - stackCounts[depth];
+	}
+
+	/**
+	 * Izpise porocilo o izvajanju programa.
+	 *
+	 * Funkcije, ki se ob koncu izvajanja se niso vrnile, se stejejo, kot da so se
+	 * vrnile ob koncu izvajanja.
+	 *
+	 * @param out Izhod za izpis porocila.
+	 */
+	public void report(final PrintStream out) {
+		while (depth > 0)
+			retn();
+
+		out.printf("\nPROFILE: %d instructions\n", total);
+
+		// vrste ukazov
+		final HashMap<String, Long> kinds = new HashMap<String, Long>();
+		final HashMap<Report.Location, Long> locations = new HashMap<Report.Location, Long>();
+		for (int addr = 0; addr < code.length; addr++) {
+			if (counts[addr] == 0)
+				continue;
+			kinds.merge(kind(code[addr]), counts[addr], Long::sum);
+			final Report.Location location = ((PDM.INSTR) code[addr]).debugLocation;
+			if (location != null)
+				locations.merge(location, counts[addr], Long::sum);
+		}
+		out.printf("\nINSTRUCTIONS:\n");
+		out.printf("%14s %7s  %s\n", "count", "%", "instruction");
+		for (final Map.Entry<String, Long> kind : sorted(kinds))
+			out.printf("%14d %6.2f%%  %s\n", kind.getValue(), percent(kind.getValue()), kind.getKey());
+
+		// funkcije
+		final HashMap<Integer, Long> functions = new HashMap<Integer, Long>();
+		for (int entry = 0; entry < code.length; entry++)
+			if (calls[entry] > 0)
+				functions.put(entry, inclusive[entry]);
+		out.printf("\nFUNCTIONS:\n");
+		out.printf("%10s %14s %7s %14s %7s  %s\n", "calls", "inclusive", "%", "exclusive", "%", "function");
+		for (final Map.Entry<Integer, Long> function : sorted(functions)) {
+			final int entry = function.getKey();
+			final String label = addrToLabel.get(entry);
+			out.printf("%10d %14d %6.2f%% %14d %6.2f%%  %s\n", calls[entry], inclusive[entry],
+					percent(inclusive[entry]), exclusive[entry], percent(exclusive[entry]),
+					label != null ? label : entry == 0 ? "<start>" : "<" + entry + ">");
+		}
+
+		// lokacije v izvorni kodi
+		out.printf("\nLOCATIONS:\n");
+		out.printf("%14s %7s  %s\n", "count", "%", "location");
+		int numLocations = 0;
+		for (final Map.Entry<Report.Location, Long> location : sorted(locations)) {
+			if (numLocations++ == MAX_LOCATIONS)
+				break;
+			out.printf("%14d %6.2f%%  %s\n", location.getValue(), percent(location.getValue()),
+					location.getKey().toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Vrne vrsto ukaza.
+	 *
+	 * @param instr Ukaz.
+	 * @return Vrsta ukaza.
+	 */
+	private static String kind(final PDM.CodeInstr instr) {
+		return switch (instr) {
+		case PDM.REGN i -> i.toString();
+		case PDM.OPER i -> i.toString();
+		case PDM.BRCH i -> "B" + i.cond;
+		default -> instr.getClass().getSimpleName();
+		};
+	}
+
+	/**
+	 * Vrne delez vseh izvedenih ukazov.
+	 *
+	 * @param count Stevilo ukazov.
+	 * @return Delez (v odstotkih).
+	 */
+	private double percent(final long count) {
+		return total == 0 ? 0.0 : 100.0 * count / total;
+	}
+
+	/**
+	 * Uredi vnose padajoce po vrednosti.
+	 *
+	 * @param <Key> Tip kljucev.
+	 * @param map   Preslikava.
+	 * @return Urejeni vnosi.
+	 */
+	private static <Key> List<Map.Entry<Key, Long>> sorted(final Map<Key, Long> map) {
+		final List<Map.Entry<Key, Long>> entries = new ArrayList<Map.Entry<Key, Long>>(map.entrySet());
+		entries.sort((fst, snd) -> Long.compare(snd.getValue(), fst.getValue()));
+		return entries;
+	}
+
+}
@@ -0,0 +1,378 @@
+package pins24.machine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import pins24.common.*;
+
+/**
+ * Dvojiska sled izvajanja programa.
+ *
+ * Sled se zacne z glavo: oznaka {@code PDMT}, razlicica formata, velikost
+ * segmenta z ukazi, zacetni vrednosti {@code SP} in {@code FP} ter stevilo in
+ * vsebina besed na sklad od {@code SP} do vrha sklada. Sledi zapis za vsak
+ * izveden ukaz:
+ * <ol>
+ * <li>operacijska koda ukaza (glej {@link Bytecode}), pri ukazu {@code CALL}, ki
+ * ne klice 'sistemske' funkcije, pa z dodanim bitom {@link #ENTER},</li>
+ * <li>razlika med naslovom ukaza in naslovom prejsnjega ukaza,</li>
+ * <li>sprememba {@code SP} in sprememba {@code FP},</li>
+ * <li>stevilo besed, prevzetih z vrha sklada (vse so prevzete pred prvim
+ * pisanjem),</li>
+ * <li>stevilo zapisanih besed in za vsako besedo razlika med njenim naslovom in
+ * {@code SP} po izvedbi ukaza ter zapisana vrednost.</li>
+ * </ol>
+ * Vsa cela stevila razen operacijske kode so zapisana s spremenljivo dolzino
+ * (po 7 bitov v bajtu), predznacena pa so pred tem preslikana v nepredznacena
+ * (0, -1, 1, -2, ... v 0, 1, 2, 3, ...).
+ */
+public class Trace {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Trace() {
+		throw new Report.InternalError();
+	}
+
+	/** Oznaka zacetka sledi. */
+	public static final int MAGIC = 0x50444D54;
+
+	/** Razlicica formata sledi. */
+	public static final int VERSION = 1;
+
+	/** Bit v operacijski kodi, ki oznacuje vstop v funkcijo. */
+	public static final int ENTER = 0x80;
+
+	/** Velikost medpomnilnika. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Najvecja dolzina zapisa celega stevila. */
+	private static final int MAX_VARINT_SIZE = 5;
+
+	/**
+	 * Zapisovalnik sledi.
+	 */
+	public static class Recorder implements AutoCloseable {
+
+		/** Datoteka s sledjo. */
+		private final FileChannel channel;
+
+		/** Medpomnilnik. */
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		/** Naslov prejsnjega ukaza. */
+		private int prevPC = 0;
+
+		/**
+		 * Ustvari nov zapisovalnik sledi in zapise glavo sledi.
+		 *
+		 * @param fileName        Ime datoteke s sledjo.
+		 * @param codeSegmentSize Velikost segmenta z ukazi.
+		 * @param SP              Zacetna vrednost skladovnega kazalca.
+		 * @param FP              Zacetna vrednost klicnega kazalca.
+		 * @param stack           Vsebina sklada od {@code SP} navzgor.
+		 */
+		public Recorder(final String fileName, final int codeSegmentSize, final int SP, final int FP,
+				final int[] stack) {
+			try {
+				channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} catch (IOException | InvalidPathException __) {
+				throw new Report.Error("Cannot open trace file '" + fileName + "'.");
+			}
+			ensure(5 * 4);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(codeSegmentSize);
+			buffer.putInt(SP);
+			buffer.putInt(FP);
+			putUnsigned(stack.length);
+			for (final int value : stack)
+				putSigned(value);
+		}
+
+		/**
+		 * Zapise izvedbo ukaza.
+		 *
+		 * @param opcode    Operacijska koda (z bitom {@link Trace#ENTER}).
+		 * @param PC        Naslov ukaza.
+		 * @param deltaSP   Sprememba skladovnega kazalca.
+		 * @param deltaFP   Sprememba klicnega kazalca.
+		 * @param numPops   Stevilo besed, prevzetih z vrha sklada.
+		 * @param SP        Skladovni kazalec po izvedbi ukaza.
+		 * @param writes    Naslovi in vrednosti zapisanih besed (izmenicno).
+		 * @param numWrites Stevilo zapisanih besed.
+		 */
+		public void step(final int opcode, final int PC, final int deltaSP, final int deltaFP, final int numPops,
+				final int SP, final int[] writes, final int numWrites) {
+			ensure(1 + 5 * MAX_VARINT_SIZE);
+			buffer.put((byte) opcode);
+			putSigned(PC - prevPC);
+			putSigned(deltaSP);
+			putSigned(deltaFP);
+			putUnsigned(numPops);
+			putUnsigned(numWrites);
+			for (int w = 0; w < numWrites; w++) {
+				putSigned(writes[2 * w] - SP);
+				putSigned(writes[2 * w + 1]);
+			}
+			prevPC = PC;
+		}
+
+		/**
+		 * Zapise nepredznaceno celo stevilo.
+		 *
+		 * @param value Celo stevilo.
+		 */
+		private void putUnsigned(int value) {
+			ensure(MAX_VARINT_SIZE);
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		/**
+		 * Zapise predznaceno celo stevilo.
+		 *
+		 * @param value Celo stevilo.
+		 */
+		private void putSigned(final int value) {
+			putUnsigned((value << 1) ^ (value >> 31));
+		}
+
+		/**
+		 * Poskrbi, da je v medpomnilniku dovolj prostora.
+		 *
+		 * @param size Potrebno stevilo bajtov.
+		 */
+		private void ensure(final int size) {
+			if (buffer.remaining() < size)
+				flush();
+		}
+
+		/**
+		 * Izprazni medpomnilnik.
+		 */
+		private void flush() {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			} catch (IOException __) {
+				throw new Report.Error("Cannot write trace file.");
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Izprazni medpomnilnik in zapre datoteko s sledjo.
+		 */
+		@Override
+		public void close() {
+			flush();
+			try {
+				channel.close();
+			} catch (IOException __) {
+				throw new Report.Error("Cannot close trace file.");
+			}
+		}
+
+	}
+
+	/**
+	 * Izvedba enega ukaza, kot je zapisana v sledi.
+	 */
+	public static class Step {
+
+		/** Zaporedna stevilka izvedbe ukaza (od 1 naprej). */
+		public long number = 0;
+
+		/** Operacijska koda (brez bita {@link Trace#ENTER}). */
+		public int opcode;
+
+		/** Ali je ukaz {@code CALL} vstopil v funkcijo. */
+		public boolean enter;
+
+		/** Naslov ukaza. */
+		public int PC = 0;
+
+		/** Skladovni kazalec pred izvedbo ukaza. */
+		public int oldSP;
+
+		/** Klicni kazalec pred izvedbo ukaza. */
+		public int oldFP;
+
+		/** Skladovni kazalec po izvedbi ukaza. */
+		public int SP;
+
+		/** Klicni kazalec po izvedbi ukaza. */
+		public int FP;
+
+		/** Stevilo besed, prevzetih z vrha sklada. */
+		public int numPops;
+
+		/** Naslovi in vrednosti zapisanih besed (izmenicno). */
+		public int[] writes = new int[16];
+
+		/** Stevilo zapisanih besed. */
+		public int numWrites;
+
+		@SuppressWarnings({ "doclint:missing" })
+		public Step() {
+		}
+
+	}
+
+	/**
+	 * Bralnik sledi.
+	 */
+	public static class Reader implements AutoCloseable {
+
+		/** Datoteka s sledjo. */
+		private final FileChannel channel;
+
+		/** Medpomnilnik. */
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		/** Velikost segmenta z ukazi. */
+		public final int codeSegmentSize;
+
+		/** Zacetna vrednost skladovnega kazalca. */
+		public final int initSP;
+
+		/** Zacetna vrednost klicnega kazalca. */
+		public final int initFP;
+
+		/** Vsebina sklada od zacetne vrednosti {@code SP} navzgor. */
+		public final int[] initStack;
+
+		/**
+		 * Odpre sled in prebere glavo sledi.
+		 *
+		 * @param fileName Ime datoteke s sledjo.
+		 */
+		public Reader(final String fileName) {
+			try {
+				channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+			} catch (IOException | InvalidPathException __) {
+				throw new Report.Error("Cannot open trace file '" + fileName + "'.");
+			}
+			buffer.limit(0);
+			if (!ensure(5 * 4) || (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+				throw new Report.Error("Illegal trace file '" + fileName + "'.");
+			codeSegmentSize = buffer.getInt();
+			initSP = buffer.getInt();
+			initFP = buffer.getInt();
+			initStack = new int[getUnsigned()];
+			for (int i = 0; i < initStack.length; i++)
+				initStack[i] = getSigned();
+		}
+
+		/**
+		 * Prebere izvedbo naslednjega ukaza.
+		 *
+		 * @param step Izvedba prejsnjega ukaza, ki jo nadomesti izvedba naslednjega.
+		 * @return Ali je bila izvedba prebrana ({@code false} na koncu sledi).
+		 */
+		public boolean next(final Step step) {
+			if (!ensure(1))
+				return false;
+			final int opcode = buffer.get() & 0xFF;
+			step.number++;
+			step.opcode = opcode & ~ENTER;
+			step.enter = (opcode & ENTER) != 0;
+			step.PC += getSigned();
+			step.oldSP = step.SP;
+			step.oldFP = step.FP;
+			step.SP += getSigned();
+			step.FP += getSigned();
+			step.numPops = getUnsigned();
+			step.numWrites = getUnsigned();
+			if (step.writes.length < 2 * step.numWrites)
+				step.writes = new int[2 * step.numWrites];
+			for (int w = 0; w < step.numWrites; w++) {
+				step.writes[2 * w] = step.SP + getSigned();
+				step.writes[2 * w + 1] = getSigned();
+			}
+			return true;
+		}
+
+		/**
+		 * Vrne izvedbo pred prvim ukazom (z zacetnima vrednostma registrov).
+		 *
+		 * @return Izvedba pred prvim ukazom.
+		 */
+		public Step start() {
+			final Step step = new Step();
+			step.SP = initSP;
+			step.FP = initFP;
+			return step;
+		}
+
+		/**
+		 * Prebere nepredznaceno celo stevilo.
+		 *
+		 * @return Celo stevilo.
+		 */
+		private int getUnsigned() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				if (!ensure(1))
+					throw new Report.Error("Truncated trace file.");
+				final int b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new Report.Error("Illegal trace file.");
+		}
+
+		/**
+		 * Prebere predznaceno celo stevilo.
+		 *
+		 * @return Celo stevilo.
+		 */
+		private int getSigned() {
+			final int value = getUnsigned();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		/**
+		 * Poskrbi, da je v medpomnilniku dovolj bajtov.
+		 *
+		 * @param size Potrebno stevilo bajtov.
+		 * @return Ali je v medpomnilniku dovolj bajtov ({@code false} na koncu
+		 *         sledi).
+		 */
+		private boolean ensure(final int size) {
+			if (buffer.remaining() >= size)
+				return true;
+			buffer.compact();
+			try {
+				while (buffer.position() < size)
+					if (channel.read(buffer) < 0)
+						break;
+			} catch (IOException __) {
+				throw new Report.Error("Cannot read trace file.");
+			}
+			buffer.flip();
+			return buffer.remaining() >= size;
+		}
+
+		/**
+		 * Zapre datoteko s sledjo.
+		 */
+		@Override
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException __) {
+				throw new Report.Error("Cannot close trace file.");
+			}
+		}
+
+	}
+
+}
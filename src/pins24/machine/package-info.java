@@ -0,0 +1,6 @@
+/**
+ * Izvajalno okolje skladovnega stroja.
+ *
+ * @author bostjan.slivnik@fri.uni-lj.si
+ */
+package pins24.machine;
@@ -0,0 +1,420 @@
+package pins24.phase;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import pins24.common.*;
+import pins24.ir.*;
+
+/**
+ * Hkratno izvajanje vec programov v enem navideznem stroju.
+ *
+ * Vsak program se prevede in izvede v svojem skladovnem stroju, ki ima svoj
+ * vhod, izhod in omejitve (glej {@link Machine.Environment}), zato se programi
+ * lahko izvajajo hkrati. Vhod programa {@code prog.pins24} je datoteka
+ * {@code prog.in}, ce obstaja (sicer je vhod prazen), dodatne izbire za njegovo
+ * prevajanje in izvajanje pa so v datoteki {@code prog.args}, ce obstaja.
+ * Izpis izvajanja je enak izpisu, ki ga skladovni stroj (glej {@link Machine})
+ * z izbirami iz datoteke {@code prog.args} v ukazni vrstici izpise na
+ * standardni izhod in standardni izhod za napake, zato se z izbiro
+ * {@code --check} lahko primerja z datoteko {@code prog.out}.
+ */
+public class Batch {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Batch() {
+		throw new Report.InternalError();
+	}
+
+	/** Velikost sklada niti, ki izvajajo programe (pri izbiri {@code --threads=N}). */
+	private static final long THREAD_STACK_SIZE = 1L << 28;
+
+	/** Izbire za prevajanje in izvajanje programov, podane v ukazni vrstici. */
+	private static final Options options = new Options();
+
+	/** Stevilo niti, ki izvajajo programe (0 za navidezne niti). */
+	private static int numThreads = 0;
+
+	/** Ali se izpis izvajanja primerja z datoteko s pricakovanim izpisom. */
+	private static boolean check = false;
+
+	/** Imenik za izpise izvajanja ({@code null}, ce se izpisi ne shranijo). */
+	private static String outputDirName = null;
+
+	/**
+	 * Izid izvajanja enega programa.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @param transcript  Izpis izvajanja.
+	 * @param error       Opis napake ({@code null}, ce se je program izvedel do
+	 *                    konca).
+	 * @param numInstrs   Stevilo izvedenih ukazov.
+	 * @param runTime     Cas prevajanja in izvajanja (v nanosekundah).
+	 */
+	public record Result(String srcFileName, String transcript, String error, long numInstrs, long runTime) {
+	}
+
+	/**
+	 * Izbire za prevajanje in izvajanje posameznega programa.
+	 */
+	public static class Options {
+
+		/** Izvedba skladovnega stroja, ki izvaja program. */
+		public Machine.Engine engine = Machine.Engine.OBJECT;
+
+		/** Najvecje stevilo bajtov izhoda programa. */
+		public long outputLimit = 1L << 26;
+
+		/** Najvecja velikost kopice programa (v bajtih). */
+		public int heapLimit = 1 << 28;
+
+		/** Najvecje stevilo izvedenih ukazov programa. */
+		public long maxInstrs = Long.MAX_VALUE;
+
+		/** Najmanjsa velikost prostora za sklad programa nad kopico (v bajtih). */
+		public int stackSize = 0;
+
+		/** Stevilo klicev in skokov nazaj, po katerem se funkcija prevede. */
+		public int jitThreshold = Machine.jitThreshold;
+
+		/** Ali se do klicnih zapisov zunanjih funkcij dostopa prek tabele klicnih kazalcev. */
+		public boolean display = false;
+
+		/** Ali se koda generira prek vmesne kode. */
+		public boolean ir = false;
+
+		/**
+		 * Ustvari nove privzete izbire.
+		 */
+		public Options() {
+		}
+
+		/**
+		 * Ustvari kopijo izbir.
+		 *
+		 * @param options Izbire.
+		 */
+		public Options(final Options options) {
+			this.engine = options.engine;
+			this.outputLimit = options.outputLimit;
+			this.heapLimit = options.heapLimit;
+			this.maxInstrs = options.maxInstrs;
+			this.stackSize = options.stackSize;
+			this.jitThreshold = options.jitThreshold;
+			this.display = options.display;
+			this.ir = options.ir;
+		}
+
+		/**
+		 * Obdela izbiro za prevajanje in izvajanje programa.
+		 *
+		 * @param option Izbira.
+		 * @return Ali je bila izbira prepoznana.
+		 */
+		public boolean parse(final String option) {
+			if (option.equals("--display")) {
+				display = true;
+				return true;
+			}
+			if (option.equals("--ir")) {
+				ir = true;
+				return true;
+			}
+			if (option.startsWith("--engine=")) {
+				try {
+					engine = Machine.Engine.valueOf(option.substring("--engine=".length()).toUpperCase());
+					return true;
+				} catch (IllegalArgumentException __) {
+					throw new Report.Error("Unknown engine in command line option '" + option + "'.");
+				}
+			}
+			try {
+				if (option.startsWith("--output-limit=")) {
+					outputLimit = Long.parseLong(option.substring("--output-limit=".length()));
+					return outputLimit >= 0;
+				}
+				if (option.startsWith("--max-instrs=")) {
+					maxInstrs = Long.parseLong(option.substring("--max-instrs=".length()));
+					return maxInstrs > 0;
+				}
+				if (option.startsWith("--stack-size=")) {
+					stackSize = Integer.parseInt(option.substring("--stack-size=".length()));
+					return stackSize >= 0;
+				}
+				if (option.startsWith("--heap-limit=")) {
+					heapLimit = Integer.parseInt(option.substring("--heap-limit=".length()));
+					return heapLimit >= 0;
+				}
+				if (option.startsWith("--jit-threshold=")) {
+					jitThreshold = Integer.parseInt(option.substring("--jit-threshold=".length()));
+					return jitThreshold > 0;
+				}
+			} catch (NumberFormatException __) {
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * Prevede in izvede program.
+	 *
+	 * Izbiram se pred prevajanjem dodajo izbire iz datoteke {@code prog.args}, ce
+	 * obstaja.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @param options     Izbire za prevajanje in izvajanje programa.
+	 * @return Izid izvajanja.
+	 */
+	public static Result run(final String srcFileName, final Options options) {
+		final long begTime = System.nanoTime();
+		final ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(transcript, false, System.out.charset());
+		out.println("This is PINS'24 compiler (pushdown machine):");
+
+		String error = null;
+		Machine.Processor processor = null;
+		try (SynAn synAn = new SynAn(srcFileName); InputStream input = openInput(srcFileName)) {
+			final Options programOptions = readOptions(srcFileName, options);
+			// abstraktna sintaksa:
+			final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+			// semanticna analiza:
+			final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+			// pomnilniska predstavitev:
+			final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+			// poenostavljanje izrazov:
+			final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+			final List<PDM.CodeInstr> codeSegment;
+			final List<PDM.DataInstr> dataSegment;
+			if (programOptions.ir) {
+				// vmesna koda in njena optimizacija:
+				final Lowering lowering = new Lowering((new PassManager()).run(IRBuilder.build(foldAttrAST)));
+				codeSegment = (new Peephole()).optimize(lowering.codeSegment());
+				dataSegment = lowering.dataSegment();
+			} else {
+				// generiranje kode:
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(foldAttrAST, programOptions.display);
+				codeSegment = (new Peephole())
+						.optimize((new CodeGen.CodeSegmentGenerator(codegenAttrAST)).codeSegment());
+				dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST)).dataSegment();
+			}
+
+			// povezovanje:
+			final Linker.Image image = Linker.link(codeSegment, dataSegment);
+
+			// ustvari nov stroj in izvede program:
+			processor = Machine.newProcessor(programOptions.engine, image, new Machine.Environment(input, out,
+					programOptions.outputLimit, programOptions.heapLimit, programOptions.stackSize,
+					programOptions.jitThreshold));
+			processor.setBudget(programOptions.maxInstrs);
+			if (processor.run().status() == Machine.Status.EXHAUSTED)
+				throw new Report.Error("Program exceeded " + programOptions.maxInstrs + " instructions.");
+			out.println(":-) Done.");
+		} catch (Report.Error err) {
+			error = err.getMessage();
+		} catch (IOException __) {
+			error = "Cannot read input file of '" + srcFileName + "'.";
+		} catch (RuntimeException | StackOverflowError err) {
+			// napaka v prevajalniku ne sme ustaviti izvajanja ostalih programov
+			error = "Internal error: " + err + ".";
+		}
+		if (error != null)
+			out.println(error);
+		out.flush();
+		return new Result(srcFileName, transcript.toString(System.out.charset()), error,
+				processor == null ? 0 : processor.numInstrs(), System.nanoTime() - begTime);
+	}
+
+	/**
+	 * Odpre vhod programa.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Vhod programa (prazen, ce datoteka z vhodom ne obstaja).
+	 * @throws IOException Ce datoteke z vhodom ni mogoce odpreti.
+	 */
+	private static InputStream openInput(final String srcFileName) throws IOException {
+		final Path inputPath = Path.of(baseName(srcFileName) + ".in");
+		if (!Files.isRegularFile(inputPath))
+			return InputStream.nullInputStream();
+		return new BufferedInputStream(Files.newInputStream(inputPath));
+	}
+
+	/**
+	 * Vrne izbire za prevajanje in izvajanje programa, ki jim so dodane izbire iz
+	 * datoteke {@code prog.args}, ce obstaja.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @param options     Izbire, podane v ukazni vrstici.
+	 * @return Izbire za prevajanje in izvajanje programa.
+	 * @throws IOException Ce datoteke z izbirami ni mogoce prebrati.
+	 */
+	private static Options readOptions(final String srcFileName, final Options options) throws IOException {
+		final Path argsPath = Path.of(baseName(srcFileName) + ".args");
+		if (!Files.isRegularFile(argsPath))
+			return options;
+		final Options programOptions = new Options(options);
+		for (final String option : Files.readString(argsPath).trim().split("\\s+"))
+			if (!option.isEmpty() && !programOptions.parse(option))
+				throw new Report.Error("Illegal option '" + option + "' in '" + argsPath + "'.");
+		return programOptions;
+	}
+
+	/**
+	 * Vrne ime izvorne datoteke brez koncnice {@code .pins24}.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Ime izvorne datoteke brez koncnice.
+	 */
+	private static String baseName(final String srcFileName) {
+		return srcFileName.endsWith(".pins24") ? srcFileName.substring(0, srcFileName.length() - ".pins24".length())
+				: srcFileName;
+	}
+
+	/**
+	 * Ali je izpis izvajanja enak pricakovanemu izpisu.
+	 *
+	 * Iz izpisa izvajanja se pred primerjanjem odstranijo ubezna zaporedja za
+	 * oblikovanje besedila.
+	 *
+	 * @param result Izid izvajanja.
+	 * @return Ali je izpis enak vsebini datoteke s pricakovanim izpisom.
+	 */
+	private static boolean matches(final Result result) {
+		final Path expectedPath = Path.of(baseName(result.srcFileName()) + ".out");
+		try {
+			final String expected = Files.readString(expectedPath, System.out.charset());
+			return result.transcript().replaceAll("\033\\[[0-9;]*m", "").equals(expected);
+		} catch (IOException __) {
+			return false;
+		}
+	}
+
+	/**
+	 * Shrani izpis izvajanja v imenik za izpise.
+	 *
+	 * @param result Izid izvajanja.
+	 */
+	private static void save(final Result result) {
+		final Path outputPath = Path.of(outputDirName, Path.of(baseName(result.srcFileName())).getFileName() + ".out");
+		try {
+			Files.writeString(outputPath, result.transcript(), System.out.charset());
+		} catch (IOException __) {
+			throw new Report.Error("Cannot write output file '" + outputPath + "'.");
+		}
+	}
+
+	/**
+	 * Doda izvorne datoteke, podane v ukazni vrstici, na seznam izvornih datotek.
+	 *
+	 * @param srcFileNames Seznam imen izvornih datotek.
+	 * @param cmdLineArg   Izvorna datoteka ali imenik z izvornimi datotekami.
+	 */
+	private static void addSources(final List<String> srcFileNames, final String cmdLineArg) {
+		final Path path = Path.of(cmdLineArg);
+		if (!Files.isDirectory(path)) {
+			srcFileNames.add(cmdLineArg);
+			return;
+		}
+		try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.pins24")) {
+			final List<String> dirFileNames = new ArrayList<String>();
+			for (final Path srcPath : dir)
+				dirFileNames.add(srcPath.toString());
+			Collections.sort(dirFileNames);
+			srcFileNames.addAll(dirFileNames);
+		} catch (IOException __) {
+			throw new Report.Error("Cannot read directory '" + cmdLineArg + "'.");
+		}
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon hkratnega izvajanja programov kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (batch runner):");
+
+		try {
+			final List<String> srcFileNames = new ArrayList<String>();
+			for (final String cmdLineArg : cmdLineArgs) {
+				if (cmdLineArg.startsWith("--"))
+					parseOption(cmdLineArg);
+				else
+					addSources(srcFileNames, cmdLineArg);
+			}
+			if (srcFileNames.isEmpty())
+				throw new Report.Error("No source file specified in the command line.");
+			if ((outputDirName != null) && !Files.isDirectory(Path.of(outputDirName)))
+				throw new Report.Error("Output directory '" + outputDirName + "' does not exist.");
+
+			final long begTime = System.nanoTime();
+			final ExecutorService pool = numThreads == 0 ? Executors.newVirtualThreadPerTaskExecutor()
+					: Executors.newFixedThreadPool(numThreads,
+							runnable -> new Thread(null, runnable, "pins24-batch", THREAD_STACK_SIZE));
+			int numFailed = 0;
+			try {
+				final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+				for (final String srcFileName : srcFileNames)
+					futures.add(pool.submit(() -> run(srcFileName, options)));
+				for (final Future<Result> future : futures) {
+					final Result result = future.get();
+					final boolean failed = check ? !matches(result) : (result.error() != null);
+					if (failed)
+						numFailed++;
+					if (outputDirName != null)
+						save(result);
+					final String status = check ? (failed ? "FAIL" : "PASS") : (failed ? "ERROR" : "OK");
+					System.out.printf("%-5s %s (%d instructions in %.3f s)%s\n", status, result.srcFileName(),
+							result.numInstrs(), result.runTime() / 1e9,
+							(!check && failed) ? ": " + result.error() : "");
+				}
+			} catch (InterruptedException | ExecutionException __) {
+				throw new Report.InternalError();
+			} finally {
+				pool.shutdownNow();
+			}
+			final double seconds = (System.nanoTime() - begTime) / 1e9;
+			Report.info(String.format("%d programs, %d %s in %.3f s.", srcFileNames.size(), numFailed,
+					check ? "failed" : "with errors", seconds));
+			if (numFailed > 0)
+				System.exit(1);
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Obdela izbiro v ukazni vrstici.
+	 *
+	 * @param option Izbira v ukazni vrstici.
+	 */
+	private static void parseOption(final String option) {
+		if (option.equals("--check")) {
+			check = true;
+			return;
+		}
+		if (option.startsWith("--output-dir=")) {
+			outputDirName = option.substring("--output-dir=".length());
+			if (!outputDirName.isEmpty())
+				return;
+			throw new Report.Error("Missing output directory name in command line option '" + option + "'.");
+		}
+		try {
+			if (option.startsWith("--threads=")) {
+				numThreads = Integer.parseInt(option.substring("--threads=".length()));
+				if (numThreads >= 0)
+					return;
+			}
+		} catch (NumberFormatException __) {
+		}
+		if (options.parse(option))
+			return;
+		throw new Report.Error("Illegal command line option '" + option + "'.");
+	}
+
+}
@@ -13,6 +13,19 @@ public class CodeGen {
 		throw new Report.InternalError();
 	}
 
+	/**
+	 * Ali se do klicnih zapisov zunanjih funkcij dostopa prek tabele klicnih
+	 * kazalcev (display) namesto po verigi staticnih povezav.
+	 *
+	 * Tabela ima za vsako staticno globino funkcije, ki vsebuje gnezdene funkcije,
+	 * en naslov v podatkih programa. Taka funkcija ob vstopu shrani staro vrednost
+	 * na sklad pod lokalne spremenljivke in na njeno mesto zapise svoj klicni
+	 * kazalec, pred vrnitvijo pa staro vrednost obnovi. Dostop do spremenljivke ali
+	 * staticne povezave zunanje funkcije je zato enako drag ne glede na razliko
+	 * globin.
+	 */
+	public static boolean display = false;
+
 	/**
 	 * Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
 	 * predstavitve.
@@ -116,12 +129,69 @@ public class CodeGen {
 	 *         predstavitve.
 	 */
 	public static AttrAST generate(final Memory.AttrAST memoryAttrAST) {
+		return generate(memoryAttrAST, display);
+	}
+
+	/**
+	 * Izracuna kodo programa z dostopom do klicnih zapisov zunanjih funkcij prek
+	 * tabele klicnih kazalcev ali brez nje (ne glede na {@link #display}).
+	 *
+	 * @param memoryAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                      pomnilniske predstavitve.
+	 * @param display       Ali se do klicnih zapisov zunanjih funkcij dostopa prek
+	 *                      tabele klicnih kazalcev.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
+	 *         predstavitve.
+	 */
+	public static AttrAST generate(final Memory.AttrAST memoryAttrAST, final boolean display) {
 		AttrAST attrAST = new AttrAST(memoryAttrAST, new HashMap<AST.Node, List<PDM.CodeInstr>>(),
 				new HashMap<AST.Node, List<PDM.DataInstr>>());
-		(new CodeGenerator(attrAST)).generate();
+		(new CodeGenerator(attrAST, display)).generate();
 		return attrAST;
 	}
 
+	/**
+	 * Izracuna mnozico funkcij, ki so dosegljive iz funkcije {@code main}.
+	 *
+	 * Funkcija je dosegljiva, ce je to funkcija {@code main} na najvisjem nivoju
+	 * ali ce jo klice katera od dosegljivih funkcij. Koda in podatki nedosegljivih
+	 * funkcij (vkljucno z vsemi gnezdenimi funkcijami) se ne izpisejo v kodo in
+	 * podatke programa.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
+	 *                analize.
+	 * @return Mnozica dosegljivih funkcij.
+	 */
+	public static Set<AST.FunDef> reachableFunDefs(final SemAn.AttrAST attrAST) {
+		final Set<AST.FunDef> reachable = new HashSet<AST.FunDef>();
+		final Deque<AST.FunDef> pending = new ArrayDeque<AST.FunDef>();
+		if (attrAST.ast instanceof AST.Nodes<?> defs)
+			for (final AST.Node def : defs)
+				if ((def instanceof AST.FunDef funDef) && funDef.name.equals("main") && reachable.add(funDef))
+					pending.add(funDef);
+
+		final AST.FullVisitor<Object, Object> callCollector = new AST.FullVisitor<Object, Object>() {
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				// gnezdene funkcije so dosegljive le, ce so klicane
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Object arg) {
+				if ((attrAST.attrDef.get(callExpr) instanceof AST.FunDef funDef) && reachable.add(funDef))
+					pending.add(funDef);
+				callExpr.args.accept(this, arg);
+				return null;
+			}
+
+		};
+		while (!pending.isEmpty())
+			pending.remove().stmts.accept(callCollector, null);
+		return reachable;
+	}
+
 	/**
 	 * Generiranje kode v abstraktnem sintaksnem drevesu.
 	 */
@@ -133,6 +203,12 @@ public class CodeGen {
 		 */
 		private final AttrAST attrAST;
 
+		/**
+		 * Ali se do klicnih zapisov zunanjih funkcij dostopa prek tabele klicnih
+		 * kazalcev.
+		 */
+		private final boolean display;
+
 		/** Stevec anonimnih label. */
 		private int labelCounter = 0;
 
@@ -141,9 +217,12 @@ public class CodeGen {
 		 *
 		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
 		 *                pomnilniske predstavitve.
+		 * @param display Ali se do klicnih zapisov zunanjih funkcij dostopa prek
+		 *                tabele klicnih kazalcev.
 		 */
-		public CodeGenerator(final AttrAST attrAST) {
+		public CodeGenerator(final AttrAST attrAST, final boolean display) {
 			this.attrAST = attrAST;
+			this.display = display;
 		}
 
 		/**
@@ -153,7 +232,11 @@ public class CodeGen {
 		 *         predstavitve.
 		 */
 		public AttrAST generate() {
-			attrAST.ast.accept(new Generator(), null);
+			final Generator generator = new Generator();
+			generator.analyzeStaticLinks(attrAST.ast);
+			generator.analyzeInlining(attrAST.ast);
+			generator.reachable.addAll(reachableFunDefs(attrAST));
+			attrAST.ast.accept(generator, null);
 			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrCode),
 					Collections.unmodifiableMap(attrAST.attrData));
 		}
@@ -163,6 +246,38 @@ public class CodeGen {
 
 			private final Map<String, Integer> funNameCount = new HashMap<>();  // to track count of functions with the same name
 
+			private final Set<AST.CallExpr> tailCalls = new HashSet<>();  // calls in tail position (they reuse the caller's frame)
+
+			private final Set<Mem.Frame> displayFrames = new HashSet<>();  // frames that are entered into the display
+
+			private final Set<Integer> displayDepths = new HashSet<>();  // depths with an entry in the display
+
+			private static final int MAX_LIFTED_VARS = 3;  // the most free variables passed as extra parameters
+
+			private final Map<Mem.Frame, AST.FunDef> frameFuns = new HashMap<>();  // the function of each frame
+
+			private final Map<AST.ParDef, AST.FunDef> parFuns = new HashMap<>();  // the function of each parameter
+
+			private final Set<AST.FunDef> noStaticLink = new HashSet<>();  // functions that are called without a static link
+
+			private final Map<AST.FunDef, List<AST.Def>> liftedVars = new HashMap<>();  // free variables passed as extra parameters
+
+			private final Map<AST.FunDef, Mem.Frame> debugFrames = new HashMap<>();  // frames with the actual layout of parameters
+
+			private final Set<AST.FunDef> reachable = new HashSet<>();  // functions that end up in the code segment
+
+			private static final int INLINE_SIZE = 16;  // the largest body (in AST nodes) inlined at every call
+
+			private static final int INLINE_HOT_SIZE = 48;  // the largest body inlined into loops or at the only call
+
+			private final Map<AST.CallExpr, AST.FunDef> inlinedCalls = new HashMap<>();  // calls replaced by the body of the called function
+
+			private final Map<AST.FunDef, Integer> inlineAreas = new HashMap<>();  // the size of the area for parameters and variables of inlined functions
+
+			private final Map<AST.Def, Integer> inlinedOffsets = new HashMap<>();  // offsets of the parameters and variables of the function being inlined
+
+			private final Map<AST.Node, String> dataLabels = new HashMap<>();  // labels of data (shared by all inlined copies of the code)
+
 			@SuppressWarnings({"doclint:missing"})
 			public Generator() {
 			}
@@ -193,15 +308,42 @@ public class CodeGen {
 				code.add(new PDM.PUSH(-varsSize, loc));
 				code.add(new PDM.POPN(loc));
 
+				// only functions with nested functions enter their frames into the display
+				if (display && hasNestedFunctions(funDef)) {
+					displayFrames.add(funFrame);
+					// the display entry is emitted with the first reachable function at its depth
+					if (reachable.contains(funDef) && displayDepths.add(funFrame.depth)) {
+						List<PDM.DataInstr> data = new LinkedList<>();
+						data.add(new PDM.LABEL(displayLabel(funFrame.depth), loc));
+						data.add(new PDM.SIZE(4, loc));
+						attrAST.attrData.put(funDef, data);
+					}
+					code.add(new PDM.LOADG(displayLabel(funFrame.depth), loc));  // save the old entry below the local variables
+					code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+					code.add(new PDM.SAVEG(displayLabel(funFrame.depth), loc));
+				}
+
+				// the area for parameters and variables of inlined functions lies below the local variables
+				if (inlineAreas.containsKey(funDef)) {
+					code.add(new PDM.PUSH(-inlineAreas.get(funDef), loc));
+					code.add(new PDM.POPN(loc));
+				}
+
 //				for (AST.ParDef par : funDef.pars) {  // parameters don't need to be handled here
 //					code.addAll(par.accept(this, frame));
 //				}
 
+				// a tail call discards the frame, so the frame must not be accessible through a pointer
+				if (!takesFrameAddress(funDef, funFrame)) {
+					markTailCalls(funDef.stmts.getAll(), true, null, funFrame);
+				}
+
 				for (AST.Stmt stmt : funDef.stmts) {
 					List<PDM.CodeInstr> stmtCode = stmt.accept(this, funFrame);
 					List<PDM.CodeInstr> cleanedCode = new LinkedList<>(stmtCode);
-					if (cleanedCode.size() > 1 && cleanedCode.getLast() instanceof PDM.POPN) {
-						// I'm not sure if this If statement is ok; when to remove the last two commands?
+					// the value of the last statement is the result of the function, so it is left on the stack
+					// (values of other statements are removed, as tail calls rely on the stack being balanced)
+					if (stmt == funDef.stmts.getAll().getLast() && cleanedCode.size() > 1 && cleanedCode.getLast() instanceof PDM.POPN) {
 						cleanedCode.removeLast();  // get rid of unnecessary code (POPN)
 						cleanedCode.removeLast();  // get rid of unnecessary code (PUSH)
 					}
@@ -209,9 +351,12 @@ public class CodeGen {
 				}
 //				code.addAll(funDef.stmts.accept(this, funFrame));
 
-				int parsSize = funFrame.parsSize - 4;  // -4 because parsSize contains the size of SL (4 bytes)
-				code.add(new PDM.PUSH(parsSize, loc));
-				code.add(new PDM.RETN(funFrame, loc));  // return from function
+				// a tail call at the end of the function never returns here
+				if (!(code.getLast() instanceof PDM.UJMP) && !(code.getLast() instanceof PDM.TCALL)) {
+					code.addAll(restoreDisplay(funFrame, loc));
+					code.add(new PDM.PUSH(argsSize(funDef) - 4, loc));  // -4 because RETN always removes the (possibly missing) SL
+					code.add(new PDM.RETN(debugFrame(funDef), loc));  // return from function
+				}
 
 				attrAST.attrCode.put(funDef, code);
 
@@ -228,7 +373,7 @@ public class CodeGen {
 				Report.Locatable loc = attrAST.attrLoc.get(varDef);
 				Mem.Access access = attrAST.attrVarAccess.get(varDef);
 
-				String label = ":" + labelCounter++;
+				String label = dataLabels.computeIfAbsent(varDef, __ -> ":" + labelCounter++);
 				switch (access) {
 					case Mem.AbsAccess absAccess -> {  // global variable
 						code.add(new PDM.NAME(absAccess.name, loc));
@@ -239,7 +384,7 @@ public class CodeGen {
 					}
 					case Mem.RelAccess relAccess -> {  // local variable
 						code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
-						code.add(new PDM.PUSH(relAccess.offset, loc));
+						code.add(new PDM.PUSH(inlinedOffsets.getOrDefault(varDef, relAccess.offset), loc));
 						code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 						code.add(new PDM.NAME(label, loc));
 						code.add(new PDM.INIT(loc));
@@ -265,41 +410,7 @@ public class CodeGen {
 				Report.Locatable loc = attrAST.attrLoc.get(varExpr);
 				AST.Def def = attrAST.attrDef.get(varExpr);
 
-				Mem.Access access;
-				switch (def) {
-					case final AST.VarDef varDef: {
-						access = attrAST.attrVarAccess.get(varDef);
-						break;
-					}
-					case final AST.ParDef parDef: {
-						access = attrAST.attrParAccess.get(parDef);
-						break;
-					}
-					default:
-						throw new Report.Error("VarDef or ParDef expected in VarExpr visit method");
-				}
-
-				switch (access) {
-					case final Mem.RelAccess relAccess: {
-						code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));  // start with current FP
-						// adjust FP to the FP of the function where the variable is defined
-						int depthDiff = frame.depth - relAccess.depth;
-						for (int i = 0; i < depthDiff; i++) {
-							code.add(new PDM.LOAD(loc));  // load static link from FP
-						}
-						code.add(new PDM.PUSH(relAccess.offset, loc));
-						code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
-						break;
-					}
-					case final Mem.AbsAccess absAccess: {
-						code.add(new PDM.NAME(absAccess.name, loc));
-						break;
-					}
-					default:
-						throw new Report.Error("RelAccess or AbsAccess expected in VarExpr visit method");
-				}
-
-				code.add(new PDM.LOAD(loc));  // load the value of the variable
+				code.addAll(loadVar(def, frame, loc));
 
 				attrAST.attrCode.put(varExpr, code);
 				return code;
@@ -323,8 +434,11 @@ public class CodeGen {
 
 				code.addAll(exprStmt.expr.accept(this, frame));
 
-				code.add(new PDM.PUSH(4, loc));
-				code.add(new PDM.POPN(loc));
+				// a tail call does not return here, so there is no value to remove
+				if (!(exprStmt.expr instanceof AST.CallExpr callExpr && tailCalls.contains(callExpr))) {
+					code.add(new PDM.PUSH(4, loc));
+					code.add(new PDM.POPN(loc));
+				}
 
 				attrAST.attrCode.put(exprStmt, code);
 				return code;
@@ -338,10 +452,15 @@ public class CodeGen {
 				List<PDM.CodeInstr> srcExprCode = assignStmt.srcExpr.accept(this, frame);  // right side of the assignment
 				code.addAll(srcExprCode);
 				List<PDM.CodeInstr> dstExprCode = assignStmt.dstExpr.accept(this, frame);  // left side of the assignment
-				dstExprCode = removeLastLoadCodeInstr(dstExprCode);  // removes the unnecessary LOAD command - we don't need to load the value of the variable we're assigning to
-				code.addAll(dstExprCode);
-
-				code.add(new PDM.SAVE(loc));
+				if (dstExprCode.size() == 1 && dstExprCode.getFirst() instanceof PDM.LOADL loadl) {
+					code.add(new PDM.SAVEL(loadl.offset, loc));  // variable of the current function
+				} else if (dstExprCode.size() == 1 && dstExprCode.getFirst() instanceof PDM.LOADG loadg) {
+					code.add(new PDM.SAVEG(loadg.name, loc));  // global variable
+				} else {
+					dstExprCode = removeLastLoadCodeInstr(dstExprCode);  // removes the unnecessary LOAD command - we don't need to load the value of the variable we're assigning to
+					code.addAll(dstExprCode);
+					code.add(new PDM.SAVE(loc));
+				}
 
 				attrAST.attrCode.put(assignStmt, code);
 				return code;
@@ -354,26 +473,67 @@ public class CodeGen {
 				AST.FunDef def = (AST.FunDef) attrAST.attrDef.get(callExpr);
 				Mem.Frame callingFunFrame = attrAST.attrFrame.get(def);  // get the Frame of the function that's being called
 
+				if (inlinedCalls.containsKey(callExpr)) {
+					code.addAll(inlineCall(callExpr, def, frame, loc));
+					attrAST.attrCode.put(callExpr, code);
+					return code;
+				}
+
 //				for (AST.Expr arg : callExpr.args) {
 //					code.addAll(arg.accept(this, frame));
 //				}
+				boolean selfTailCall = tailCalls.contains(callExpr) && callingFunFrame == frame;
+
+				// lifted free variables follow the arguments (their values do not change in a self-recursive tail call)
+				List<AST.Def> lifted = liftedVars.getOrDefault(def, List.of());
+				if (!selfTailCall) {
+					for (int i = lifted.size() - 1; i >= 0; i--) {
+						code.addAll(loadVar(lifted.get(i), frame, loc));
+					}
+				}
 				// semantic rules state that function arguments are evaluated from right to left
 				for (int i = callExpr.args.size() - 1; i >= 0; i--) {
 					code.addAll(callExpr.args.get(i).accept(this, frame));
 				}
 
+				// self-recursive tail call: the arguments replace the parameters and the function starts over in the same frame
+				if (selfTailCall) {
+					for (AST.ParDef par : def.pars) {
+						code.add(new PDM.SAVEL(parOffset(par), loc));
+					}
+					code.addAll(restoreDisplay(frame, loc));
+					int varsSize = frame.varsSize - 8;  // -8 because varsSize contains the size of FP and RA (4 bytes each)
+					if (displayFrames.contains(frame)) {
+						varsSize += 4;  // the saved display entry
+					}
+					varsSize += inlineAreas.getOrDefault(frameFuns.get(frame), 0);
+					if (varsSize > 0) {
+						// release the local variables (they are allocated and cleared again at the start of the function)
+						code.add(new PDM.PUSH(varsSize, loc));
+						code.add(new PDM.POPN(loc));
+					}
+					code.add(new PDM.NAME(getFullFunName(frame.name), loc));
+					code.add(new PDM.UJMP(loc));
+
+					attrAST.attrCode.put(callExpr, code);
+					return code;
+				}
+
 				// calling function is declared in the same or outer scopes of the caller function
 				if (callingFunFrame.depth - 1 <= frame.depth) {
 					int depthDiff = frame.depth - callingFunFrame.depth;
-					code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
-					// calling function is at the same depth as the current function
-					if (depthDiff == 0) {
-						code.add(new PDM.LOAD(loc));
+					if (noStaticLink.contains(def)) {
+						// the called function never uses its static link, so none is passed
+					} else if (callingFunFrame.depth == 1) {
+						// the static link at the end of every chain is the one 'main' is called with
+						code.add(new PDM.PUSH(0, loc));
+					} else if (display && depthDiff >= 0) {
+						// the static link is the FP of the function where the called function is defined
+						code.add(new PDM.LOADG(displayLabel(callingFunFrame.depth - 1), loc));
 					} else {
-						// get the FP of the caller
-						for (int i = 0; i < depthDiff; i++) {
-							code.add(new PDM.PUSH(-4, loc));
-							code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+						// follow the static links up to the function where the called function is defined
+						for (int i = 0; i <= depthDiff; i++) {
 							code.add(new PDM.LOAD(loc));
 						}
 					}
@@ -384,8 +544,17 @@ public class CodeGen {
 				}
 
 				String labelName = getFullFunName(callingFunFrame.name);
-				code.add(new PDM.NAME(labelName, loc));  // push the full name of the function, eg. 'main.f1:1', not just 'f1' or 'main.f1'
-				code.add(new PDM.CALL(callingFunFrame, loc));
+				if (tailCalls.contains(callExpr)) {
+					// tail call: the callee's frame replaces the frame of the current function
+					code.addAll(restoreDisplay(frame, loc));
+					code.add(new PDM.PUSH(argsSize(def) - 4, loc));  // -4 because TCALL always moves the (possibly missing) SL
+					code.add(new PDM.PUSH(argsSize(frameFuns.get(frame)) - 4, loc));
+					code.add(new PDM.NAME(labelName, loc));
+					code.add(new PDM.TCALL(debugFrame(def), debugFrame(frameFuns.get(frame)), loc));
+				} else {
+					code.add(new PDM.NAME(labelName, loc));  // push the full name of the function, eg. 'main.f1:1', not just 'f1' or 'main.f1'
+					code.add(new PDM.CALL(debugFrame(def), loc));
+				}
 
 				attrAST.attrCode.put(callExpr, code);
 				return code;
@@ -401,7 +570,7 @@ public class CodeGen {
 					case INTCONST -> code.add(new PDM.PUSH(Memory.decodeIntConst(atomExpr, loc), loc));
 					case CHRCONST -> code.add(new PDM.PUSH(Memory.decodeChrConst(atomExpr, loc), loc));
 					case STRCONST -> {
-						String strConstLabel = ":" + labelCounter++;
+						String strConstLabel = dataLabels.computeIfAbsent(atomExpr, __ -> ":" + labelCounter++);
 						code.add(new PDM.NAME(strConstLabel, loc));
 						data.add(new PDM.LABEL(strConstLabel, loc));
 						Vector<Integer> values = Memory.decodeStrConst(atomExpr, loc);
@@ -529,11 +698,8 @@ public class CodeGen {
 				String elseLabel = "else:" + counter;
 				String endifLabel = "endif:" + counter;
 
-				// prepare for a conditional jump
-				code.addAll(ifStmt.cond.accept(this, frame));
-				code.add(new PDM.NAME(thenLabel, loc));
-				code.add(new PDM.NAME(elseLabel, loc));
-				code.add(new PDM.CJMP(loc));  // if false, jump to the else part, otherwise the then part
+				// if false, jump to the else part, otherwise fall through to the then part
+				code.addAll(addCodeInstrToJumpIfFalse(ifStmt.cond, elseLabel, frame, loc));
 
 				// execute the then part if the condition was true
 				code.add(new PDM.LABEL(thenLabel, loc));
@@ -567,11 +733,8 @@ public class CodeGen {
 				// label for the start of the loop to jump back to
 				code.add(new PDM.LABEL(condLabel, loc));
 
-				// prepare for a conditional jump
-				code.addAll(whileStmt.cond.accept(this, frame));  // code for the condition
-				code.add(new PDM.NAME(doLabel, loc));
-				code.add(new PDM.NAME(endLabel, loc));
-				code.add(new PDM.CJMP(loc));  // if false, jump to the end, otherwise execute the loop body
+				// if false, jump to the end, otherwise fall through to the loop body
+				code.addAll(addCodeInstrToJumpIfFalse(whileStmt.cond, endLabel, frame, loc));
 
 				// prepare for the loop body
 				code.add(new PDM.LABEL(doLabel, loc));  // label marking the start of the loop body
@@ -604,16 +767,595 @@ public class CodeGen {
 				return fullFunName;
 			}
 
+			// finds the functions that can be called without a static link:
+			// top-level functions (except 'main', which is called by the startup code) never follow their static link,
+			// with a display no function does, and a nested function without nested functions does not need it
+			// if its free variables are few and read-only (they are passed as extra parameters) and
+			// it does not call other nested functions that need a static link
+			private void analyzeStaticLinks(AST.Node ast) {
+				final Map<AST.FunDef, Set<AST.Def>> freeVars = new LinkedHashMap<>();
+				final Map<AST.FunDef, Set<AST.FunDef>> callees = new HashMap<>();
+				final Set<AST.FunDef> withNestedFunctions = new HashSet<>();
+				final Set<AST.Def> writtenVars = new HashSet<>();  // assigned to or with the address taken
+				ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+					@Override
+					public Object visit(final AST.FunDef funDef, final AST.FunDef outerFunDef) {
+						frameFuns.put(attrAST.attrFrame.get(funDef), funDef);
+						for (AST.ParDef par : funDef.pars) {
+							parFuns.put(par, funDef);
+						}
+						if (funDef.stmts.size() > 0) {
+							if (outerFunDef != null) {
+								withNestedFunctions.add(outerFunDef);
+							}
+							freeVars.put(funDef, new LinkedHashSet<>());
+							callees.put(funDef, new HashSet<>());
+						}
+						funDef.stmts.accept(this, funDef);
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.VarExpr varExpr, final AST.FunDef funDef) {
+						AST.Def def = attrAST.attrDef.get(varExpr);
+						if (funDef != null && varAccess(def) instanceof Mem.RelAccess relAccess
+								&& relAccess.depth < attrAST.attrFrame.get(funDef).depth) {
+							freeVars.get(funDef).add(def);
+						}
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.CallExpr callExpr, final AST.FunDef funDef) {
+						if (funDef != null) {
+							callees.get(funDef).add((AST.FunDef) attrAST.attrDef.get(callExpr));
+						}
+						callExpr.args.accept(this, funDef);
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.AssignStmt assignStmt, final AST.FunDef funDef) {
+						if (assignStmt.dstExpr instanceof AST.VarExpr varExpr) {
+							writtenVars.add(attrAST.attrDef.get(varExpr));
+						}
+						assignStmt.dstExpr.accept(this, funDef);
+						assignStmt.srcExpr.accept(this, funDef);
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.UnExpr unExpr, final AST.FunDef funDef) {
+						if (unExpr.oper == AST.UnExpr.Oper.MEMADDR && unExpr.expr instanceof AST.VarExpr varExpr) {
+							writtenVars.add(attrAST.attrDef.get(varExpr));
+						}
+						unExpr.expr.accept(this, funDef);
+						return null;
+					}
+				}, null);
+
+				Set<AST.FunDef> candidates = new HashSet<>();
+				for (AST.FunDef funDef : freeVars.keySet()) {
+					Mem.Frame funFrame = attrAST.attrFrame.get(funDef);
+					if (funFrame.depth == 1 && funDef.name.equals("main")) {
+						continue;
+					}
+					if (display || funFrame.depth == 1) {
+						noStaticLink.add(funDef);
+						continue;
+					}
+					if (withNestedFunctions.contains(funDef)) {
+						continue;
+					}
+					Set<AST.Def> free = freeVars.get(funDef);
+					if (free.size() > MAX_LIFTED_VARS) {
+						continue;
+					}
+					boolean readOnly = true;
+					for (AST.Def def : free) {
+						readOnly &= !writtenVars.contains(def) && varAccess(def).size == 4;
+					}
+					if (readOnly) {
+						candidates.add(funDef);
+						liftedVars.put(funDef, new ArrayList<>(free));
+					}
+				}
+
+				// a candidate needs its static link to compute the static link of a nested function it calls,
+				// and it passes on the free variables of the functions it calls (so they become its free variables too)
+				boolean changed = true;
+				while (changed) {
+					changed = false;
+					for (AST.FunDef funDef : new ArrayList<>(candidates)) {
+						List<AST.Def> lifted = liftedVars.get(funDef);
+						for (AST.FunDef callee : callees.get(funDef)) {
+							if (callee == funDef) {
+								continue;
+							}
+							boolean needsStaticLink = attrAST.attrFrame.get(callee).depth > 1
+									&& !noStaticLink.contains(callee) && !candidates.contains(callee);
+							Set<AST.Def> passed = new LinkedHashSet<>(lifted);
+							passed.addAll(liftedVars.getOrDefault(callee, List.of()));
+							if (needsStaticLink || passed.size() > MAX_LIFTED_VARS) {
+								candidates.remove(funDef);
+								liftedVars.remove(funDef);
+								changed = true;
+								break;
+							}
+							if (passed.size() > lifted.size()) {
+								lifted.clear();
+								lifted.addAll(passed);
+								changed = true;
+							}
+						}
+					}
+				}
+				noStaticLink.addAll(candidates);
+				liftedVars.values().removeIf(List::isEmpty);
+			}
+
+			// decides which calls are replaced by the body of the called function (see isInlinable):
+			// tiny functions are inlined at every call, small ones at calls within loops or at their only call,
+			// as the code grows by the size of the body at each inlined call
+			private void analyzeInlining(AST.Node ast) {
+				final Map<AST.FunDef, List<AST.CallExpr>> calls = new LinkedHashMap<>();
+				final Map<AST.CallExpr, AST.FunDef> callers = new HashMap<>();
+				final Set<AST.CallExpr> callsInLoops = new HashSet<>();
+				ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+					private int loopDepth = 0;
+
+					@Override
+					public Object visit(final AST.FunDef funDef, final AST.FunDef outerFunDef) {
+						int outerLoopDepth = loopDepth;
+						loopDepth = 0;
+						funDef.stmts.accept(this, funDef);
+						loopDepth = outerLoopDepth;
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+						loopDepth++;
+						whileStmt.cond.accept(this, funDef);
+						whileStmt.stmts.accept(this, funDef);
+						loopDepth--;
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.CallExpr callExpr, final AST.FunDef funDef) {
+						if (funDef != null) {
+							AST.FunDef callee = (AST.FunDef) attrAST.attrDef.get(callExpr);
+							calls.computeIfAbsent(callee, __ -> new ArrayList<>()).add(callExpr);
+							callers.put(callExpr, funDef);
+							if (loopDepth > 0) {
+								callsInLoops.add(callExpr);
+							}
+						}
+						callExpr.args.accept(this, funDef);
+						return null;
+					}
+				}, null);
+
+				for (Map.Entry<AST.FunDef, List<AST.CallExpr>> entry : calls.entrySet()) {
+					AST.FunDef callee = entry.getKey();
+					if (!isInlinable(callee)) {
+						continue;
+					}
+					int size = bodySize(callee);
+					int areaSize = 4 * callee.pars.size();
+					for (AST.VarDef varDef : localVarDefs(callee)) {
+						areaSize += attrAST.attrVarAccess.get(varDef).size;
+					}
+					for (AST.CallExpr callExpr : entry.getValue()) {
+						boolean hot = callsInLoops.contains(callExpr) || entry.getValue().size() == 1;
+						if (size <= INLINE_SIZE || (hot && size <= INLINE_HOT_SIZE)) {
+							inlinedCalls.put(callExpr, callee);
+							inlineAreas.merge(callers.get(callExpr), areaSize, Math::max);
+						}
+					}
+				}
+			}
+
+			// whether calls of the function can be replaced by its body:
+			// the function calls no functions and defines none, does not take addresses of its parameters and variables
+			// (they are moved into the caller's frame) and its result is the value of its last statement
+			private boolean isInlinable(AST.FunDef funDef) {
+				Mem.Frame funFrame = attrAST.attrFrame.get(funDef);
+				if (funDef.stmts.size() == 0 || (funFrame.depth == 1 && funDef.name.equals("main"))) {
+					return false;
+				}
+				final boolean[] leaf = { true };
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.FunDef nestedFunDef, final Object arg) {
+						leaf[0] = false;
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.CallExpr callExpr, final Object arg) {
+						leaf[0] = false;
+						return null;
+					}
+				}, null);
+				if (!leaf[0] || takesFrameAddress(funDef, funFrame)) {
+					return false;
+				}
+				AST.Stmt stmt = funDef.stmts.getAll().getLast();
+				while (stmt instanceof AST.LetStmt letStmt && letStmt.stmts.size() > 0) {
+					stmt = letStmt.stmts.getAll().getLast();
+				}
+				return stmt instanceof AST.ExprStmt;
+			}
+
+			// the number of statements and expressions in the body of a function
+			private int bodySize(AST.FunDef funDef) {
+				final int[] size = { 0 };
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.Nodes<? extends AST.Node> nodes, final Object arg) {
+						for (AST.Node node : nodes) {
+							if (node instanceof AST.Stmt) {
+								size[0]++;
+							}
+							node.accept(this, arg);
+						}
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
+						size[0]++;
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.VarExpr varExpr, final Object arg) {
+						size[0]++;
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.UnExpr unExpr, final Object arg) {
+						size[0]++;
+						return AST.FullVisitor.super.visit(unExpr, arg);
+					}
+
+					@Override
+					public Object visit(final AST.BinExpr binExpr, final Object arg) {
+						size[0]++;
+						return AST.FullVisitor.super.visit(binExpr, arg);
+					}
+				}, null);
+				return size[0];
+			}
+
+			// the local variables of a function (defined in its let statements)
+			private List<AST.VarDef> localVarDefs(AST.FunDef funDef) {
+				final List<AST.VarDef> varDefs = new ArrayList<>();
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.VarDef varDef, final Object arg) {
+						varDefs.add(varDef);
+						return null;
+					}
+				}, null);
+				return varDefs;
+			}
+
+			// replaces a call by the body of the called function: the arguments are evaluated as for a call,
+			// but the parameters and the variables of the called function are placed into the inline area of the caller,
+			// and the body is generated as seen from the caller's frame (so free variables are accessed as in the caller)
+			private List<PDM.CodeInstr> inlineCall(AST.CallExpr callExpr, AST.FunDef funDef, Mem.Frame frame, Report.Locatable loc) {
+				List<PDM.CodeInstr> code = new LinkedList<>();
+
+				// semantic rules state that function arguments are evaluated from right to left
+				for (int i = callExpr.args.size() - 1; i >= 0; i--) {
+					code.addAll(callExpr.args.get(i).accept(this, frame));
+				}
+
+				int offset = -frame.varsSize;
+				if (displayFrames.contains(frame)) {
+					offset -= 4;  // the saved display entry
+				}
+				for (AST.ParDef par : funDef.pars) {
+					offset -= 4;
+					inlinedOffsets.put(par, offset);
+				}
+				for (AST.VarDef varDef : localVarDefs(funDef)) {
+					offset -= attrAST.attrVarAccess.get(varDef).size;
+					inlinedOffsets.put(varDef, offset);
+				}
+				for (AST.ParDef par : funDef.pars) {
+					code.add(new PDM.SAVEL(inlinedOffsets.get(par), loc));
+				}
+
+				for (AST.Stmt stmt : funDef.stmts) {
+					code.addAll(stmt.accept(this, frame));
+				}
+				// the value of the last statement is the result of the call
+				code.removeLast();  // POPN
+				code.removeLast();  // PUSH
+
+				inlinedOffsets.clear();
+				return code;
+			}
+
+			// the access to a variable or a parameter
+			private Mem.Access varAccess(AST.Def def) {
+				return switch (def) {
+					case AST.VarDef varDef -> attrAST.attrVarAccess.get(varDef);
+					case AST.ParDef parDef -> attrAST.attrParAccess.get(parDef);
+					default -> null;
+				};
+			}
+
+			// the size of the static link, the arguments and the lifted free variables of a function
+			private int argsSize(AST.FunDef funDef) {
+				Mem.Frame funFrame = attrAST.attrFrame.get(funDef);
+				int size = noStaticLink.contains(funDef) ? funFrame.parsSize - 4 : funFrame.parsSize;
+				return size + 4 * liftedVars.getOrDefault(funDef, List.of()).size();
+			}
+
+			// the offset of a parameter (the parameters move into the place of a missing static link)
+			private int parOffset(AST.ParDef parDef) {
+				int offset = attrAST.attrParAccess.get(parDef).offset;
+				return noStaticLink.contains(parFuns.get(parDef)) ? offset - 4 : offset;
+			}
+
+			// the offset of a lifted free variable (they follow the parameters)
+			private int liftedOffset(AST.FunDef funDef, int index) {
+				return argsSize(funDef) - 4 * (liftedVars.get(funDef).size() - index);
+			}
+
+			// the frame of a function as seen by the machine (for tracing the stack)
+			private Mem.Frame debugFrame(AST.FunDef funDef) {
+				Mem.Frame funFrame = attrAST.attrFrame.get(funDef);
+				if (!noStaticLink.contains(funDef) && !liftedVars.containsKey(funDef)) {
+					return funFrame;
+				}
+				return debugFrames.computeIfAbsent(funDef, __ -> {
+					List<Mem.RelAccess> debugPars = new ArrayList<>();
+					for (AST.ParDef par : funDef.pars) {
+						Mem.RelAccess access = attrAST.attrParAccess.get(par);
+						debugPars.add(new Mem.RelAccess(parOffset(par), access.depth, access.size, null, access.debugName));
+					}
+					List<AST.Def> lifted = liftedVars.getOrDefault(funDef, List.of());
+					for (int i = 0; i < lifted.size(); i++) {
+						debugPars.add(new Mem.RelAccess(liftedOffset(funDef, i), funFrame.depth, 4, null, lifted.get(i).name));
+					}
+					return new Mem.Frame(funFrame.name, funFrame.depth, argsSize(funDef), funFrame.varsSize, debugPars,
+							funFrame.debugVars);
+				});
+			}
+
+			// loads the value of a variable or a parameter as seen from the given frame
+			private List<PDM.CodeInstr> loadVar(AST.Def def, Mem.Frame frame, Report.Locatable loc) {
+				List<PDM.CodeInstr> code = new LinkedList<>();
+
+				if (inlinedOffsets.containsKey(def)) {
+					code.add(new PDM.LOADL(inlinedOffsets.get(def), loc));  // parameter or variable of the inlined function
+					return code;
+				}
+
+				AST.FunDef funDef = frameFuns.get(frame);
+				List<AST.Def> lifted = liftedVars.getOrDefault(funDef, List.of());
+				if (lifted.contains(def)) {
+					code.add(new PDM.LOADL(liftedOffset(funDef, lifted.indexOf(def)), loc));  // free variable passed as an extra parameter
+					return code;
+				}
+
+				Mem.Access access = varAccess(def);
+				if (access == null) {
+					throw new Report.Error("VarDef or ParDef expected in VarExpr visit method");
+				}
+
+				switch (access) {
+					case final Mem.RelAccess relAccess: {
+						int offset = def instanceof AST.ParDef parDef ? parOffset(parDef) : relAccess.offset;
+						int depthDiff = frame.depth - relAccess.depth;
+						if (depthDiff == 0) {
+							code.add(new PDM.LOADL(offset, loc));  // variable of the current function
+							break;
+						}
+						if (display && depthDiff > 0) {
+							code.add(new PDM.LOADG(displayLabel(relAccess.depth), loc));  // FP of the function where the variable is defined
+							code.add(new PDM.PUSH(offset, loc));
+							code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+							code.add(new PDM.LOAD(loc));  // load the value of the variable
+							break;
+						}
+						code.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));  // start with current FP
+						// adjust FP to the FP of the function where the variable is defined
+						for (int i = 0; i < depthDiff; i++) {
+							code.add(new PDM.LOAD(loc));  // load static link from FP
+						}
+						code.add(new PDM.PUSH(offset, loc));
+						code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						code.add(new PDM.LOAD(loc));  // load the value of the variable
+						break;
+					}
+					case final Mem.AbsAccess absAccess: {
+						code.add(new PDM.LOADG(absAccess.name, loc));
+						break;
+					}
+					default:
+						throw new Report.Error("RelAccess or AbsAccess expected in VarExpr visit method");
+				}
+
+
+				return code;
+			}
+
+			// marks calls in tail position among the statements of a function:
+			// value - whether the value of the last statement is the result of the function,
+			// result - the constant the function returns after the statements (or null)
+			private void markTailCalls(List<AST.Stmt> stmts, boolean value, Integer result, Mem.Frame frame) {
+				if (stmts.isEmpty()) {
+					return;
+				}
+				markTailCall(stmts.getLast(), value, result, frame);
+				// in 'call, constant' the call is in tail position if the callee returns the same constant
+				if (value && stmts.size() > 1) {
+					Integer constant = constValue(stmts.getLast());
+					if (constant != null) {
+						markTailCall(stmts.get(stmts.size() - 2), false, constant, frame);
+					}
+				}
+			}
+
+			private void markTailCall(AST.Stmt stmt, boolean value, Integer result, Mem.Frame frame) {
+				switch (stmt) {
+					case AST.ExprStmt exprStmt -> {
+						if (!(exprStmt.expr instanceof AST.CallExpr callExpr)) {
+							break;
+						}
+						AST.FunDef def = (AST.FunDef) attrAST.attrDef.get(callExpr);
+						Mem.Frame callingFunFrame = attrAST.attrFrame.get(def);
+						if (def.stmts.size() == 0 || callingFunFrame.depth > frame.depth) {
+							break;  // 'system' functions and functions nested in the current one (static link is the current frame)
+						}
+						if (inlinedCalls.containsKey(callExpr)) {
+							break;
+						}
+						if (value || (result != null && result.equals(funResult(def)))) {
+							tailCalls.add(callExpr);
+						}
+					}
+					case AST.LetStmt letStmt -> markTailCalls(letStmt.stmts.getAll(), value, result, frame);
+					case AST.IfStmt ifStmt -> {
+						if (!value && result != null) {
+							markTailCalls(ifStmt.thenStmts.getAll(), false, result, frame);
+							markTailCalls(ifStmt.elseStmts.getAll(), false, result, frame);
+						}
+					}
+					default -> {}
+				}
+			}
+
+			// the constant value of an expression statement (or null)
+			private Integer constValue(AST.Stmt stmt) {
+				if (stmt instanceof AST.ExprStmt exprStmt && exprStmt.expr instanceof AST.AtomExpr atomExpr) {
+					Report.Locatable loc = attrAST.attrLoc.get(atomExpr);
+					switch (atomExpr.type) {
+						case INTCONST -> { return Memory.decodeIntConst(atomExpr, loc); }
+						case CHRCONST -> { return Memory.decodeChrConst(atomExpr, loc); }
+						default -> { return null; }
+					}
+				}
+				return null;
+			}
+
+			// the constant result of a function (or null)
+			private Integer funResult(AST.FunDef funDef) {
+				AST.Stmt stmt = funDef.stmts.getAll().getLast();
+				while (stmt instanceof AST.LetStmt letStmt && letStmt.stmts.size() > 0) {
+					stmt = letStmt.stmts.getAll().getLast();
+				}
+				return constValue(stmt);
+			}
+
+			// whether the address of a parameter or a local variable of the function is taken
+			private boolean takesFrameAddress(AST.FunDef funDef, Mem.Frame funFrame) {
+				final boolean[] found = { false };
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.UnExpr unExpr, final Object arg) {
+						if (unExpr.oper == AST.UnExpr.Oper.MEMADDR && unExpr.expr instanceof AST.VarExpr varExpr) {
+							Mem.Access access = varAccess(attrAST.attrDef.get(varExpr));
+							if (access instanceof Mem.RelAccess relAccess && relAccess.depth.equals(funFrame.depth)) {
+								found[0] = true;
+							}
+						}
+						unExpr.expr.accept(this, arg);
+						return null;
+					}
+				}, null);
+				return found[0];
+			}
+
+			private String displayLabel(int depth) {
+				return ":display:" + depth;
+			}
+
+			// restores the display entry saved at the start of the function (before the frame is discarded)
+			private List<PDM.CodeInstr> restoreDisplay(Mem.Frame frame, Report.Locatable loc) {
+				List<PDM.CodeInstr> code = new LinkedList<>();
+				if (displayFrames.contains(frame)) {
+					code.add(new PDM.LOADL(-frame.varsSize - 4, loc));
+					code.add(new PDM.SAVEG(displayLabel(frame.depth), loc));
+				}
+				return code;
+			}
+
+			// whether the function contains definitions of nested functions (with a body)
+			private boolean hasNestedFunctions(AST.FunDef funDef) {
+				final boolean[] found = { false };
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.FunDef nestedFunDef, final Object arg) {
+						if (nestedFunDef.stmts.size() > 0) {
+							found[0] = true;
+						}
+						return null;
+					}
+				}, null);
+				return found[0];
+			}
+
 			private List<PDM.CodeInstr> removeLastLoadCodeInstr(List<PDM.CodeInstr> code) {
 				if (code.size() > 1 && code.getLast() instanceof PDM.LOAD) {
 					List<PDM.CodeInstr> newCode = new LinkedList<>(code);
 					newCode.removeLast();
 					return newCode;
+				} else if (!code.isEmpty() && code.getLast() instanceof PDM.LOADL loadl) {
+					// expand LOADL back to the computation of the variable's address
+					List<PDM.CodeInstr> newCode = new LinkedList<>(code);
+					newCode.removeLast();
+					newCode.add(new PDM.REGN(PDM.REGN.Reg.FP, loadl.debugLocation));
+					newCode.add(new PDM.PUSH(loadl.offset, loadl.debugLocation));
+					newCode.add(new PDM.OPER(PDM.OPER.Oper.ADD, loadl.debugLocation));
+					return newCode;
+				} else if (!code.isEmpty() && code.getLast() instanceof PDM.LOADG loadg) {
+					// replace LOADG with the address of the global variable
+					List<PDM.CodeInstr> newCode = new LinkedList<>(code);
+					newCode.removeLast();
+					newCode.add(new PDM.NAME(loadg.name, loadg.debugLocation));
+					return newCode;
 				} else {
 					throw new Report.Error("Attempted to remove the last LOAD command, but the last command is not a LOAD command");
 				}
 			}
 
+			private List<PDM.CodeInstr> addCodeInstrToJumpIfFalse(AST.Expr cond, String falseLabel, Mem.Frame frame, Report.Locatable loc) {
+				List<PDM.CodeInstr> code = new LinkedList<>();
+
+				if (cond instanceof AST.BinExpr binExpr) {
+					// comparisons are fused with the jump (the jump is taken if the comparison fails)
+					PDM.BRCH.Cond negCond = switch (binExpr.oper) {
+						case EQU -> PDM.BRCH.Cond.NE;
+						case NEQ -> PDM.BRCH.Cond.EQ;
+						case LTH -> PDM.BRCH.Cond.GE;
+						case LEQ -> PDM.BRCH.Cond.GT;
+						case GTH -> PDM.BRCH.Cond.LE;
+						case GEQ -> PDM.BRCH.Cond.LT;
+						default -> null;
+					};
+					if (negCond != null) {
+						code.addAll(binExpr.fstExpr.accept(this, frame));
+						code.addAll(binExpr.sndExpr.accept(this, frame));
+						code.add(new PDM.BRCH(negCond, falseLabel, attrAST.attrLoc.get(binExpr)));
+						attrAST.attrCode.put(binExpr, code);
+						return code;
+					}
+				}
+
+				code.addAll(cond.accept(this, frame));
+				code.add(new PDM.BRCH(PDM.BRCH.Cond.Z, falseLabel, loc));
+				return code;
+			}
+
 			private List<PDM.CodeInstr> addCodeInstrToSwapBinOperands(Report.Locatable loc) {
 				List<PDM.CodeInstr> code = new ArrayList<>();
 
@@ -679,6 +1421,9 @@ public class CodeGen {
 		/** Klicni zapis funkcije {@code main}. */
 		private Mem.Frame main = null;
 
+		/** Funkcije, ki so dosegljive iz funkcije {@code main}. */
+		private final Set<AST.FunDef> reachable;
+
 		/**
 		 * Ustvari nov generator seznama ukazov, ki predstavljajo kodo programa.
 		 *
@@ -687,6 +1432,7 @@ public class CodeGen {
 		 */
 		public CodeSegmentGenerator(final AttrAST attrAST) {
 			this.attrAST = attrAST;
+			this.reachable = reachableFunDefs(attrAST);
 		}
 
 		/**
@@ -719,7 +1465,7 @@ public class CodeGen {
 
 			@Override
 			public Object visit(final AST.FunDef funDef, final Object arg) {
-				if (funDef.stmts.size() == 0)
+				if ((funDef.stmts.size() == 0) || !reachable.contains(funDef))
 					return null;
 				List<PDM.CodeInstr> code = attrAST.attrCode.get(funDef);
 				codeFunsSegment.addAll(code);
@@ -766,6 +1512,9 @@ public class CodeGen {
 		/** Seznam ukazov, ki predstavljajo podatke programa. */
 		private final Vector<PDM.DataInstr> dataSegment = new Vector<PDM.DataInstr>();
 
+		/** Funkcije, ki so dosegljive iz funkcije {@code main}. */
+		private final Set<AST.FunDef> reachable;
+
 		/**
 		 * Ustvari nov generator seznama ukazov, ki predstavljajo podatke programa.
 		 *
@@ -774,6 +1523,7 @@ public class CodeGen {
 		 */
 		public DataSegmentGenerator(final AttrAST attrAST) {
 			this.attrAST = attrAST;
+			this.reachable = reachableFunDefs(attrAST);
 		}
 
 		/**
@@ -804,6 +1554,18 @@ public class CodeGen {
 				return null;
 			}
 
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				if ((funDef.stmts.size() > 0) && !reachable.contains(funDef))
+					return null;
+				List<PDM.DataInstr> data = attrAST.attrData.get(funDef);
+				if (data != null)
+					dataSegment.addAll(data);
+				funDef.pars.accept(this, arg);
+				funDef.stmts.accept(this, arg);
+				return null;
+			}
+
 			@Override
 			public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
 				List<PDM.DataInstr> data = attrAST.attrData.get(atomExpr);
@@ -839,13 +1601,17 @@ public class CodeGen {
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
 				// pomnilniska predstavitev:
 				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
 				// generiranje kode:
-				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(foldAttrAST);
 
 				(new AST.Logger(codegenAttrAST)).log();
 				{
 					int addr = 0;
-					final List<PDM.CodeInstr> codeSegment = (new CodeSegmentGenerator(codegenAttrAST)).codeSegment();
+					final Peephole peephole = new Peephole();
+					final List<PDM.CodeInstr> codeSegment = peephole
+							.optimize((new CodeSegmentGenerator(codegenAttrAST)).codeSegment());
 					{
 						System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
 						for (final PDM.CodeInstr instr : codeSegment) {
@@ -864,6 +1630,7 @@ public class CodeGen {
 						}
 					}
 					System.out.println();
+					Report.info(peephole.stats());
 				}
 			}
 
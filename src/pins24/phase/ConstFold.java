@@ -0,0 +1,428 @@
+package pins24.phase;
+
+import java.util.*;
+
+import pins24.common.*;
+
+/**
+ * Poenostavljanje izrazov.
+ *
+ * Med izracunom pomnilniske predstavitve in generiranjem kode se izracunajo
+ * konstantni dvomestni in enomestni izrazi, izrazi oblike {@code x+0},
+ * {@code x-0}, {@code x*1} in {@code x/1} se nadomestijo z izrazom {@code x},
+ * izrazi oblike {@code x*0} pa s konstanto {@code 0}, ce izraz {@code x} nima
+ * stranskih ucinkov. Vrednosti se racunajo enako kot na skladovnem stroju,
+ * deljenje z nic pa ostane v kodi.
+ *
+ * Vozlisca abstraktnega sintaksnega drevesa so nespremenljiva, zato se na novo
+ * zgradijo le vozlisca, v katerih se je kaj spremenilo. Nova vozlisca prevzamejo
+ * atribute (in s tem lokacije za izpis napak) vozlisc, ki jih nadomescajo.
+ */
+public class ConstFold {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public ConstFold() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Opravi poenostavljanje izrazov.
+	 *
+	 * @param memoryAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                      pomnilniske predstavitve.
+	 * @return Poenostavljeno abstraktno sintaksno drevo z atributi po fazi
+	 *         pomnilniske predstavitve.
+	 */
+	public static Memory.AttrAST fold(final Memory.AttrAST memoryAttrAST) {
+		return (new Folder(memoryAttrAST)).fold();
+	}
+
+	/**
+	 * Poenostavljalnik izrazov.
+	 */
+	private static class Folder {
+
+		/**
+		 * Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
+		 * predstavitve.
+		 */
+		private final Memory.AttrAST attrAST;
+
+		/** Atribut: lokacija kode, ki priprada posameznemu vozliscu. */
+		private final Map<AST.Node, Report.Locatable> attrLoc;
+
+		/** Atribut: definicija uporabljenega imena. */
+		private final Map<AST.NameExpr, AST.Def> attrDef;
+
+		/** Atribut: ali je dani izraz levi izraz. */
+		private final Map<AST.Expr, Boolean> attrLVal;
+
+		/** Atribut: klicni zapis funkcije. */
+		private final Map<AST.FunDef, Mem.Frame> attrFrame;
+
+		/** Na novo zgrajene definicije funkcij. */
+		private final Map<AST.FunDef, AST.FunDef> newFunDefs = new HashMap<AST.FunDef, AST.FunDef>();
+
+		/**
+		 * Ustvari nov poenostavljalnik izrazov.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+		 *                pomnilniske predstavitve.
+		 */
+		public Folder(final Memory.AttrAST attrAST) {
+			this.attrAST = attrAST;
+			this.attrLoc = new HashMap<AST.Node, Report.Locatable>(attrAST.attrLoc);
+			this.attrDef = new HashMap<AST.NameExpr, AST.Def>(attrAST.attrDef);
+			this.attrLVal = new HashMap<AST.Expr, Boolean>(attrAST.attrLVal);
+			this.attrFrame = new HashMap<AST.FunDef, Mem.Frame>(attrAST.attrFrame);
+		}
+
+		/**
+		 * Sprozi poenostavljanje izrazov.
+		 *
+		 * @return Poenostavljeno abstraktno sintaksno drevo z atributi po fazi
+		 *         pomnilniske predstavitve.
+		 */
+		public Memory.AttrAST fold() {
+			final AST.Node ast = attrAST.ast.accept(new FoldVisitor(), null);
+			if (ast == attrAST.ast)
+				return attrAST;
+			// klici funkcij, ki so bile na novo zgrajene
+			for (final Map.Entry<AST.NameExpr, AST.Def> entry : attrDef.entrySet())
+				if ((entry.getValue() instanceof AST.FunDef funDef) && newFunDefs.containsKey(funDef))
+					entry.setValue(newFunDefs.get(funDef));
+			final Abstr.AttrAST abstrAttrAST = new Abstr.AttrAST(new AST.AttrAST(ast),
+					Collections.unmodifiableMap(attrLoc));
+			final SemAn.AttrAST semanAttrAST = new SemAn.AttrAST(abstrAttrAST, Collections.unmodifiableMap(attrDef),
+					Collections.unmodifiableMap(attrLVal));
+			return new Memory.AttrAST(semanAttrAST, Collections.unmodifiableMap(attrFrame), attrAST.attrParAccess,
+					attrAST.attrVarAccess);
+		}
+
+		/** Obiskovalec, ki poenostavi izraze in vrne (morda novo) vozlisce. */
+		private class FoldVisitor implements AST.FullVisitor<AST.Node, Object> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public FoldVisitor() {
+			}
+
+			@Override
+			public AST.Node visit(final AST.Nodes<? extends AST.Node> nodes, final Object arg) {
+				final List<? extends AST.Node> newNodes = foldAll(nodes);
+				return newNodes == null ? nodes : replace(nodes, new AST.Nodes<AST.Node>(new ArrayList<AST.Node>(newNodes)));
+			}
+
+			@Override
+			public AST.Node visit(final AST.FunDef funDef, final Object arg) {
+				final List<AST.Stmt> stmts = foldAll(funDef.stmts);
+				if (stmts == null)
+					return funDef;
+				final AST.FunDef newFunDef = replace(funDef, new AST.FunDef(funDef.name, funDef.pars.getAll(), stmts));
+				attrFrame.put(newFunDef, attrFrame.get(funDef));
+				newFunDefs.put(funDef, newFunDef);
+				return newFunDef;
+			}
+
+			@Override
+			public AST.Node visit(final AST.ParDef parDef, final Object arg) {
+				return parDef;
+			}
+
+			@Override
+			public AST.Node visit(final AST.VarDef varDef, final Object arg) {
+				return varDef;
+			}
+
+			@Override
+			public AST.Node visit(final AST.ExprStmt exprStmt, final Object arg) {
+				final AST.Expr expr = (AST.Expr) exprStmt.expr.accept(this, arg);
+				return expr == exprStmt.expr ? exprStmt : replace(exprStmt, new AST.ExprStmt(expr));
+			}
+
+			@Override
+			public AST.Node visit(final AST.AssignStmt assignStmt, final Object arg) {
+				final AST.Expr dstExpr = (AST.Expr) assignStmt.dstExpr.accept(this, arg);
+				final AST.Expr srcExpr = (AST.Expr) assignStmt.srcExpr.accept(this, arg);
+				if ((dstExpr == assignStmt.dstExpr) && (srcExpr == assignStmt.srcExpr))
+					return assignStmt;
+				return replace(assignStmt, new AST.AssignStmt(dstExpr, srcExpr));
+			}
+
+			@Override
+			public AST.Node visit(final AST.IfStmt ifStmt, final Object arg) {
+				final AST.Expr cond = (AST.Expr) ifStmt.cond.accept(this, arg);
+				final List<AST.Stmt> thenStmts = foldAll(ifStmt.thenStmts);
+				final List<AST.Stmt> elseStmts = foldAll(ifStmt.elseStmts);
+				if ((cond == ifStmt.cond) && (thenStmts == null) && (elseStmts == null))
+					return ifStmt;
+				return replace(ifStmt, new AST.IfStmt(cond, thenStmts == null ? ifStmt.thenStmts.getAll() : thenStmts,
+						elseStmts == null ? ifStmt.elseStmts.getAll() : elseStmts));
+			}
+
+			@Override
+			public AST.Node visit(final AST.WhileStmt whileStmt, final Object arg) {
+				final AST.Expr cond = (AST.Expr) whileStmt.cond.accept(this, arg);
+				final List<AST.Stmt> stmts = foldAll(whileStmt.stmts);
+				if ((cond == whileStmt.cond) && (stmts == null))
+					return whileStmt;
+				return replace(whileStmt, new AST.WhileStmt(cond, stmts == null ? whileStmt.stmts.getAll() : stmts));
+			}
+
+			@Override
+			public AST.Node visit(final AST.LetStmt letStmt, final Object arg) {
+				final List<AST.MainDef> defs = foldAll(letStmt.defs);
+				final List<AST.Stmt> stmts = foldAll(letStmt.stmts);
+				if ((defs == null) && (stmts == null))
+					return letStmt;
+				return replace(letStmt, new AST.LetStmt(defs == null ? letStmt.defs.getAll() : defs,
+						stmts == null ? letStmt.stmts.getAll() : stmts));
+			}
+
+			@Override
+			public AST.Node visit(final AST.AtomExpr atomExpr, final Object arg) {
+				return atomExpr;
+			}
+
+			@Override
+			public AST.Node visit(final AST.UnExpr unExpr, final Object arg) {
+				final AST.Expr expr = (AST.Expr) unExpr.expr.accept(this, arg);
+				final Integer value = constValue(expr);
+				switch (unExpr.oper) {
+				case ADD:
+					return expr;
+				case NOT:
+					if (value != null)
+						return constant(unExpr, value == 0 ? 1 : 0);
+					break;
+				case SUB:
+					if (value != null)
+						return constant(unExpr, -value);
+					break;
+				default:
+					break;
+				}
+				return expr == unExpr.expr ? unExpr : replace(unExpr, new AST.UnExpr(unExpr.oper, expr));
+			}
+
+			@Override
+			public AST.Node visit(final AST.BinExpr binExpr, final Object arg) {
+				final AST.Expr fstExpr = (AST.Expr) binExpr.fstExpr.accept(this, arg);
+				final AST.Expr sndExpr = (AST.Expr) binExpr.sndExpr.accept(this, arg);
+				final Integer fst = constValue(fstExpr);
+				final Integer snd = constValue(sndExpr);
+				if ((fst != null) && (snd != null)) {
+					final Integer value = compute(binExpr.oper, fst, snd);
+					if (value != null)
+						return constant(binExpr, value);
+				}
+				switch (binExpr.oper) {
+				case ADD:
+					if (isConst(fst, 0))
+						return sndExpr;
+					if (isConst(snd, 0))
+						return fstExpr;
+					break;
+				case SUB:
+					if (isConst(snd, 0))
+						return fstExpr;
+					break;
+				case MUL:
+					if (isConst(fst, 1))
+						return sndExpr;
+					if (isConst(snd, 1))
+						return fstExpr;
+					if ((isConst(fst, 0) && isPure(sndExpr)) || (isConst(snd, 0) && isPure(fstExpr)))
+						return constant(binExpr, 0);
+					break;
+				case DIV:
+					if (isConst(snd, 1))
+						return fstExpr;
+					break;
+				default:
+					break;
+				}
+				if ((fstExpr == binExpr.fstExpr) && (sndExpr == binExpr.sndExpr))
+					return binExpr;
+				return replace(binExpr, new AST.BinExpr(binExpr.oper, fstExpr, sndExpr));
+			}
+
+			@Override
+			public AST.Node visit(final AST.VarExpr varExpr, final Object arg) {
+				return varExpr;
+			}
+
+			@Override
+			public AST.Node visit(final AST.CallExpr callExpr, final Object arg) {
+				final List<AST.Expr> args = foldAll(callExpr.args);
+				if (args == null)
+					return callExpr;
+				final AST.CallExpr newCallExpr = replace(callExpr, new AST.CallExpr(callExpr.name, args));
+				attrDef.put(newCallExpr, attrDef.get(callExpr));
+				return newCallExpr;
+			}
+
+			/**
+			 * Poenostavi zaporedje vozlisc.
+			 *
+			 * @param <Node> Tip vozlisc.
+			 * @param nodes  Zaporedje vozlisc.
+			 * @return Seznam poenostavljenih vozlisc ali {@code null}, ce se nobeno
+			 *         vozlisce ni spremenilo.
+			 */
+			@SuppressWarnings("unchecked")
+			private <Node extends AST.Node> List<Node> foldAll(final AST.Nodes<Node> nodes) {
+				final List<Node> newNodes = new ArrayList<Node>();
+				boolean changed = false;
+				for (final Node node : nodes) {
+					final Node newNode = (Node) node.accept(this, null);
+					changed |= newNode != node;
+					newNodes.add(newNode);
+				}
+				return changed ? newNodes : null;
+			}
+
+		}
+
+		/**
+		 * Prenese atribute starega vozlisca na novo vozlisce.
+		 *
+		 * @param <Node>  Tip vozlisca.
+		 * @param oldNode Staro vozlisce.
+		 * @param newNode Novo vozlisce.
+		 * @return Novo vozlisce.
+		 */
+		private <Node extends AST.Node> Node replace(final AST.Node oldNode, final Node newNode) {
+			final Report.Locatable loc = attrLoc.get(oldNode);
+			if (loc != null)
+				attrLoc.put(newNode, loc);
+			if ((oldNode instanceof AST.Expr oldExpr) && (newNode instanceof AST.Expr newExpr)
+					&& attrLVal.containsKey(oldExpr))
+				attrLVal.put(newExpr, attrLVal.get(oldExpr));
+			return newNode;
+		}
+
+		/**
+		 * Ustvari celostevilsko konstanto, ki nadomesti izraz.
+		 *
+		 * @param expr  Izraz.
+		 * @param value Vrednost izraza.
+		 * @return Celostevilska konstanta.
+		 */
+		private AST.AtomExpr constant(final AST.Expr expr, final int value) {
+			final AST.AtomExpr atomExpr = replace(expr,
+					new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, Integer.toString(value)));
+			attrLVal.put(atomExpr, false);
+			return atomExpr;
+		}
+
+		/**
+		 * Vrne vrednost celostevilske ali znakovne konstante.
+		 *
+		 * @param expr Izraz.
+		 * @return Vrednost konstante ali {@code null}, ce izraz ni konstanta.
+		 */
+		private Integer constValue(final AST.Expr expr) {
+			if (!(expr instanceof AST.AtomExpr atomExpr))
+				return null;
+			return switch (atomExpr.type) {
+			case INTCONST -> Memory.decodeIntConst(atomExpr, attrLoc.get(atomExpr));
+			case CHRCONST -> Memory.decodeChrConst(atomExpr, attrLoc.get(atomExpr));
+			default -> null;
+			};
+		}
+
+		/**
+		 * Ali je vrednost konstante enaka podani vrednosti.
+		 *
+		 * @param value    Vrednost konstante (ali {@code null}).
+		 * @param constant Podana vrednost.
+		 * @return Ali je vrednost konstante enaka podani vrednosti.
+		 */
+		private static boolean isConst(final Integer value, final int constant) {
+			return (value != null) && (value == constant);
+		}
+
+		/**
+		 * Izracuna vrednost dvomestnega izraza enako kot skladovni stroj.
+		 *
+		 * @param oper Dvomestni operator.
+		 * @param fst  Vrednost prvega operanda.
+		 * @param snd  Vrednost drugega operanda.
+		 * @return Vrednost izraza ali {@code null} pri deljenju z nic.
+		 */
+		private static Integer compute(final AST.BinExpr.Oper oper, final int fst, final int snd) {
+			return switch (oper) {
+			case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+			case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+			case EQU -> fst == snd ? 1 : 0;
+			case NEQ -> fst != snd ? 1 : 0;
+			case GTH -> fst > snd ? 1 : 0;
+			case LTH -> fst < snd ? 1 : 0;
+			case GEQ -> fst >= snd ? 1 : 0;
+			case LEQ -> fst <= snd ? 1 : 0;
+			case ADD -> fst + snd;
+			case SUB -> fst - snd;
+			case MUL -> fst * snd;
+			case DIV -> snd == 0 ? null : fst / snd;
+			case MOD -> snd == 0 ? null : fst % snd;
+			};
+		}
+
+		/**
+		 * Ali je izracun izraza brez stranskih ucinkov (in se ne more koncati z
+		 * napako).
+		 *
+		 * @param expr Izraz.
+		 * @return Ali je izracun izraza brez stranskih ucinkov.
+		 */
+		private static boolean isPure(final AST.Expr expr) {
+			return switch (expr) {
+			case AST.AtomExpr __ -> true;
+			case AST.VarExpr __ -> true;
+			case AST.UnExpr unExpr -> (unExpr.oper != AST.UnExpr.Oper.VALUEAT) && isPure(unExpr.expr);
+			case AST.BinExpr binExpr -> (binExpr.oper != AST.BinExpr.Oper.DIV) && (binExpr.oper != AST.BinExpr.Oper.MOD)
+					&& isPure(binExpr.fstExpr) && isPure(binExpr.sndExpr);
+			default -> false;
+			};
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon poenostavljanja izrazov kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (constant folding):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+
+				(new AST.Logger(foldAttrAST)).log();
+			}
+
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package pins24.phase;
+
+import java.util.*;
+import pins24.common.*;
+import pins24.machine.*;
+
+/**
+ * Povezovanje kode in podatkov programa v pomnilnisko sliko.
+ *
+ * Povezovalnik vsakemu ukazu dodeli fizicni naslov, razresi vsa imena oznak v
+ * naslove in iz seznamov ukazov zgradi sliko programa, v kateri so ukazi
+ * dosegljivi neposredno po naslovu, operandi ukazov {@link PDM.PUSH} in
+ * {@link PDM.NAME} pa so ze izracunani kot cela stevila.
+ */
+public class Linker {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Linker() {
+		throw new Report.InternalError();
+	}
+
+	/** Naslovi 'sistemskih' funkcij. */
+	private static final Map<String, Integer> sysCalls;
+
+	static {
+		final LinkedHashMap<String, Integer> calls = new LinkedHashMap<String, Integer>();
+		calls.put("exit", -1);
+		calls.put("getint", -2);
+		calls.put("putint", -3);
+		calls.put("getstr", -4);
+		calls.put("putstr", -5);
+		calls.put("new", -6);
+		calls.put("del", -7);
+		sysCalls = Collections.unmodifiableMap(calls);
+	}
+
+	/**
+	 * Pomnilniska slika programa.
+	 */
+	public static class Image {
+
+		/** Velikost segmenta z ukazi kode programa. */
+		public final int codeSegmentSize;
+
+		/** Velikost segmenta s staticnimi spremenljivkami. */
+		public final int dataSegmentSize;
+
+		/**
+		 * Ukazi kode programa, indeksirani s fizicnim naslovom ukaza (na naslovih, ki
+		 * niso zacetki ukazov, je {@code null}).
+		 */
+		public final PDM.CodeInstr[] code;
+
+		/**
+		 * Razreseni operandi ukazov, indeksirani s fizicnim naslovom ukaza (vrednost
+		 * konstante pri {@link PDM.PUSH}, odmik pri {@link PDM.LOADL} in
+		 * {@link PDM.SAVEL} oziroma naslov oznake pri {@link PDM.NAME},
+		 * {@link PDM.LOADG}, {@link PDM.SAVEG} in {@link PDM.BRCH}).
+		 */
+		public final int[] operands;
+
+		/** Preslikava imen oznak v fizicne naslove. */
+		public final Map<String, Integer> labelToAddr;
+
+		/** Preslikava fizicnih naslovov v imena oznak. */
+		public final Map<Integer, String> addrToLabel;
+
+		/** Imena oznak v segmentu kode (v vrstnem redu definicije). */
+		private final List<String> codeLabels;
+
+		/** Imena oznak v segmentu podatkov (v vrstnem redu definicije). */
+		private final List<String> dataLabels;
+
+		/** Zacetne vrednosti podatkov (izmenicno naslov in vrednost). */
+		private final int[] dataInits;
+
+		/**
+		 * Ustvari novo pomnilnisko sliko programa.
+		 *
+		 * @param codeSegmentSize Velikost segmenta z ukazi kode programa.
+		 * @param dataSegmentSize Velikost segmenta s staticnimi spremenljivkami.
+		 * @param code            Ukazi kode programa, indeksirani s fizicnim naslovom.
+		 * @param operands        Razreseni operandi ukazov, indeksirani s fizicnim
+		 *                        naslovom.
+		 * @param labelToAddr     Preslikava imen oznak v fizicne naslove.
+		 * @param addrToLabel     Preslikava fizicnih naslovov v imena oznak.
+		 * @param codeLabels      Imena oznak v segmentu kode.
+		 * @param dataLabels      Imena oznak v segmentu podatkov.
+		 * @param dataInits       Zacetne vrednosti podatkov (izmenicno naslov in
+		 *                        vrednost).
+		 */
+		private Image(final int codeSegmentSize, final int dataSegmentSize, final PDM.CodeInstr[] code,
+				final int[] operands, final Map<String, Integer> labelToAddr, final Map<Integer, String> addrToLabel,
+				final List<String> codeLabels, final List<String> dataLabels, final int[] dataInits) {
+			this.codeSegmentSize = codeSegmentSize;
+			this.dataSegmentSize = dataSegmentSize;
+			this.code = code;
+			this.operands = operands;
+			this.labelToAddr = Collections.unmodifiableMap(labelToAddr);
+			this.addrToLabel = Collections.unmodifiableMap(addrToLabel);
+			this.codeLabels = Collections.unmodifiableList(codeLabels);
+			this.dataLabels = Collections.unmodifiableList(dataLabels);
+			this.dataInits = dataInits;
+		}
+
+		/**
+		 * Zapise zacetne vrednosti staticnih spremenljivk v pomnilnik.
+		 *
+		 * @param memory Pomnilnik.
+		 */
+		public void load(final PagedMemory memory) {
+			for (int i = 0; i < dataInits.length; i += 2)
+				memory.save(dataInits[i], dataInits[i + 1]);
+		}
+
+		/**
+		 * Izpise vrednosti vseh oznak.
+		 */
+		public void logLabels() {
+			System.out.println("\n\033[1mCODE LABELS:\033[0m");
+			for (final String label : codeLabels)
+				System.out.printf("LABEL %s = %d\n", label, labelToAddr.get(label));
+			System.out.println("\n\033[1mDATA LABELS:\033[0m");
+			for (final String label : dataLabels)
+				System.out.printf("LABEL %s = %d\n", label, labelToAddr.get(label));
+		}
+
+	}
+
+	/**
+	 * Poveze kodo in podatke programa v pomnilnisko sliko.
+	 *
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+	 * @return Pomnilniska slika programa.
+	 */
+	public static Image link(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+		final HashMap<String, Integer> labelToAddr = new HashMap<String, Integer>();
+		final HashMap<Integer, String> addrToLabel = new HashMap<Integer, String>();
+		for (final Map.Entry<String, Integer> sysCall : sysCalls.entrySet()) {
+			labelToAddr.put(sysCall.getKey(), sysCall.getValue());
+			addrToLabel.put(sysCall.getValue(), sysCall.getKey());
+		}
+		final List<String> codeLabels = new ArrayList<String>();
+		final List<String> dataLabels = new ArrayList<String>();
+
+		// 1. prehod: naslovi oznak
+		int memPtr = 0;
+		for (final PDM.CodeInstr instr : codeSegment) {
+			if (instr instanceof PDM.LABEL label) {
+				define(label, memPtr, labelToAddr, addrToLabel);
+				codeLabels.add(label.name);
+			}
+			memPtr += instr.size();
+		}
+		final int codeSegmentSize = memPtr;
+		final Vector<Integer> dataInits = new Vector<Integer>();
+		for (final PDM.DataInstr instr : dataSegment) {
+			switch (instr) {
+			case PDM.LABEL label -> {
+				define(label, memPtr, labelToAddr, addrToLabel);
+				dataLabels.add(label.name);
+			}
+			case PDM.SIZE size -> memPtr += size.size;
+			case PDM.DATA data -> {
+				dataInits.add(memPtr);
+				dataInits.add(data.intc);
+				memPtr += 4;
+			}
+			default -> throw new Report.InternalError();
+			}
+		}
+		final int dataSegmentSize = memPtr - codeSegmentSize;
+
+		// 2. prehod: ukazi in njihovi operandi
+		final PDM.CodeInstr[] code = new PDM.CodeInstr[codeSegmentSize];
+		final int[] operands = new int[codeSegmentSize];
+		memPtr = 0;
+		for (final PDM.CodeInstr instr : codeSegment) {
+			switch (instr) {
+			case PDM.LABEL __ -> {
+				continue;
+			}
+			case PDM.PUSH i -> operands[memPtr] = i.intc;
+			case PDM.NAME i -> operands[memPtr] = resolve(i.name, i, labelToAddr);
+			case PDM.LOADL i -> operands[memPtr] = i.offset;
+			case PDM.SAVEL i -> operands[memPtr] = i.offset;
+			case PDM.LOADG i -> operands[memPtr] = resolve(i.name, i, labelToAddr);
+			case PDM.SAVEG i -> operands[memPtr] = resolve(i.name, i, labelToAddr);
+			case PDM.BRCH i -> operands[memPtr] = resolve(i.name, i, labelToAddr);
+			default -> {
+			}
+			}
+			code[memPtr] = instr;
+			memPtr += instr.size();
+		}
+
+		final int[] inits = new int[dataInits.size()];
+		for (int i = 0; i < inits.length; i++)
+			inits[i] = dataInits.get(i);
+		return new Image(codeSegmentSize, dataSegmentSize, code, operands, labelToAddr, addrToLabel, codeLabels,
+				dataLabels, inits);
+	}
+
+	/**
+	 * Doda definicijo oznake.
+	 *
+	 * @param label       Oznaka.
+	 * @param addr        Fizicni naslov oznake.
+	 * @param labelToAddr Preslikava imen oznak v fizicne naslove.
+	 * @param addrToLabel Preslikava fizicnih naslovov v imena oznak.
+	 */
+	private static void define(final PDM.LABEL label, final int addr, final Map<String, Integer> labelToAddr,
+			final Map<Integer, String> addrToLabel) {
+		labelToAddr.put(label.name, addr);
+		addrToLabel.put(addr, label.name);
+	}
+
+	/**
+	 * Razresi ime oznake v fizicni naslov.
+	 *
+	 * @param name        Ime oznake.
+	 * @param instr       Ukaz, ki se sklicuje na oznako.
+	 * @param labelToAddr Preslikava imen oznak v fizicne naslove.
+	 * @return Fizicni naslov oznake.
+	 */
+	private static int resolve(final String name, final PDM.INSTR instr, final Map<String, Integer> labelToAddr) {
+		final Integer addr = labelToAddr.get(name);
+		if (addr == null) {
+			if (instr.debugLocation == null)
+				throw new Report.Error("Undefined label '" + name + "'.");
+			throw new Report.Error(instr.debugLocation, "Undefined label '" + name + "'.");
+		}
+		return addr;
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon povezovanja kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (linker):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+				// generiranje kode:
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(foldAttrAST);
+				// povezovanje:
+				final Image image = link(
+						(new Peephole()).optimize((new CodeGen.CodeSegmentGenerator(codegenAttrAST)).codeSegment()),
+						(new CodeGen.DataSegmentGenerator(codegenAttrAST)).dataSegment());
+
+				System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
+				for (int addr = 0; addr < image.codeSegmentSize; addr++) {
+					final PDM.CodeInstr instr = image.code[addr];
+					if (instr == null)
+						continue;
+					final String label = image.addrToLabel.get(addr);
+					if (label != null)
+						System.out.printf("%8d       %s:\n", addr, label);
+					switch (instr) {
+					case PDM.PUSH i -> System.out.printf("%8d [%s]   PUSH %d\n", addr, i.size(), image.operands[addr]);
+					case PDM.NAME i -> System.out.printf("%8d [%s]   NAME %d (%s)\n", addr, i.size(),
+							image.operands[addr], i.name);
+					case PDM.LOADG i -> System.out.printf("%8d [%s]   LOADG %d (%s)\n", addr, i.size(),
+							image.operands[addr], i.name);
+					case PDM.SAVEG i -> System.out.printf("%8d [%s]   SAVEG %d (%s)\n", addr, i.size(),
+							image.operands[addr], i.name);
+					case PDM.BRCH i -> System.out.printf("%8d [%s]   B%s %d (%s)\n", addr, i.size(), i.cond,
+							image.operands[addr], i.name);
+					default -> System.out.printf("%8d [%s]   %s\n", addr, instr.size(), instr.toString());
+					}
+				}
+				image.logLabels();
+				System.out.println();
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
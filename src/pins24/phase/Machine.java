@@ -1,7 +1,11 @@
 package pins24.phase;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import pins24.common.*;
+import pins24.ir.*;
+import pins24.machine.*;
 
 /**
  * Skladovni stroj.
@@ -33,522 +37,2560 @@ public class Machine {
 	/** Ali se opravi testni izpis dogajanja na skladu. */
 	public static boolean debugStack = false;
 
+	/** Izvedbe skladovnega stroja. */
+	public enum Engine {
+		/** Izvajanje objektne predstavitve ukazov ({@link Executor}). */
+		OBJECT,
+		/** Izvajanje zgoscene predstavitve ukazov ({@link BytecodeExecutor}). */
+		BYTECODE,
+		/** Izvajanje s prevajanjem pogosto izvajanih funkcij ({@link JitExecutor}). */
+		JIT,
+		/** Izvajanje grafa vozlisc ({@link ClosureExecutor}). */
+		CLOSURE,
+	}
+
+	/** Izvedba skladovnega stroja, ki izvede program. */
+	public static Engine engine = Engine.OBJECT;
+
+	/** Stevilo klicev in skokov nazaj, po katerem se funkcija prevede. */
+	public static int jitThreshold = 1000;
+
+	/** Ali se po koncu izvajanja izpise statistika izvajanja. */
+	public static boolean printStats = false;
+
+	/** Ali se med izvajanjem zbira profil izvajanja (glej {@link Profiler}). */
+	public static boolean printProfile = false;
+
+	/** Ime datoteke za porocilo o profilu izvajanja ({@code null} za standardni izhod). */
+	public static String profileFileName = null;
+
+	/** Ime datoteke za izhod programa ({@code null} za standardni izhod). */
+	public static String outputFileName = null;
+
+	/** Ime datoteke za vhod programa ({@code null} za standardni vhod). */
+	public static String inputFileName = null;
+
+	/** Ime datoteke za dvojisko sled izvajanja ({@code null}, ce se sled ne zapisuje). */
+	public static String traceFileName = null;
+
+	/** Ime datoteke za shranjevanje stanja ({@code null}, ce se stanje ne shranjuje). */
+	public static String checkpointFileName = null;
+
+	/** Stevilo ukazov med zaporednima shranjevanjema stanja (0 le ob prekinitvi). */
+	public static long checkpointInterval = 0;
+
+	/** Ime datoteke s stanjem, s katerim se izvajanje nadaljuje ({@code null} za zacetek). */
+	public static String resumeFileName = null;
+
+	/** Najvecje stevilo izvedenih ukazov. */
+	public static long maxInstrs = Long.MAX_VALUE;
+
+	/** Najvecja velikost kopice (v bajtih). */
+	public static int heapLimit = Integer.MAX_VALUE;
+
+	/** Najmanjsa velikost prostora za sklad nad kopico (v bajtih). */
+	public static int stackSize = 0;
+
+	/** Najnizji naslov vrha sklada. */
+	public static final int STACK_TOP = 0x10000;
+
+	/**
+	 * Stevilo bajtov pod skladovnim kazalcem, ki jih ob klicu funkcije in
+	 * rezervaciji prostora za lokalne spremenljivke ne sme zasedati kopica
+	 * (prostor za vmesne rezultate med preverjanji).
+	 */
+	public static final int STACK_RED_ZONE = 1024;
+
+	/**
+	 * Okolje posameznega izvajanja programa, ki ne uporablja standardnega vhoda
+	 * in izhoda ter izbir v ukazni vrstici.
+	 * 
+	 * @param input        Vhod programa.
+	 * @param output       Izhod programa in sporocila skladovnega stroja.
+	 * @param outputLimit  Najvecje stevilo bajtov izhoda programa.
+	 * @param heapLimit    Najvecja velikost kopice (v bajtih).
+	 * @param stackSize    Najmanjsa velikost prostora za sklad nad kopico (v
+	 *                     bajtih).
+	 * @param jitThreshold Stevilo klicev in skokov nazaj, po katerem se funkcija
+	 *                     prevede.
+	 */
+	public record Environment(InputStream input, PrintStream output, long outputLimit, int heapLimit,
+			int stackSize, int jitThreshold) {
+	}
+
+	/** Stanje izvajanja programa. */
+	public enum Status {
+		/** Izvajanje je bilo prekinjeno po zahtevanem stevilu ukazov in se lahko nadaljuje. */
+		SUSPENDED,
+		/** Program se je koncal s klicem {@code exit}. */
+		EXITED,
+		/** Program je izvedel dovoljeno stevilo ukazov in je bil ustavljen. */
+		EXHAUSTED,
+		/** Izvajanje programa se je koncalo z napako. */
+		FAILED,
+	}
+
+	/**
+	 * Izid izvajanja programa.
+	 * 
+	 * @param status    Stanje izvajanja.
+	 * @param exitCode  Izhodna koda programa (le pri stanju {@link Status#EXITED}).
+	 * @param numInstrs Stevilo izvedenih ukazov.
+	 * @param runTime   Cas izvajanja programa (v nanosekundah).
+	 */
+	public record Result(Status status, int exitCode, long numInstrs, long runTime) {
+	}
+
+	/**
+	 * Skupni del vseh izvedb skladovnega stroja: registri, pomnilnik in
+	 * 'sistemske' funkcije.
+	 */
+	public static abstract class Processor {
+
+		/** Pomnilnik (brez predstavitve ukazov). */
+		protected final PagedMemory memory = new PagedMemory();
+
+		/** Pomnilniska slika programa. */
+		private final Linker.Image image;
+
+		/** Okolje izvajanja ({@code null} pri izvajanju iz ukazne vrstice). */
+		protected Environment environment;
+
+		/** Tok za sporocila skladovnega stroja. */
+		private PrintStream console;
+
+		/** Velikost segmenta z ukazi kode programa. */
+		protected final int codeSegmentSize;
+
+		/** Velikost segmenta s staticnimi spremenljivkami. */
+		protected final int dataSegmentSize;
+
+		/** Programski stevec. */
+		protected int PC;
+
+		/** Klicni kazalec. */
+		protected int FP;
+
+		/** Skladovni kazalec. */
+		protected int SP;
+
+		/** Naslov vrha sklada (sklad raste navzdol proti kopici). */
+		protected int stackTop;
+
+		/** Dodeljevalnik pomnilnika na kopici. */
+		protected final HeapAllocator heap;
+
+		/** Stevilo izvedenih ukazov. */
+		protected long numInstrs = 0;
+
+		/** Cas izvajanja programa (v nanosekundah). */
+		private long runTime = 0;
+
+		/** Najvecje skupno stevilo izvedenih ukazov. */
+		private long budget = Long.MAX_VALUE;
+
+		/**
+		 * Stevilo izvedenih ukazov, ob katerem se izvajanje prekine (izvedbe ga
+		 * preverjajo med izvajanjem ukazov).
+		 */
+		protected long limit = Long.MAX_VALUE;
+
+		/** Stanje izvajanja. */
+		private Status status = Status.SUSPENDED;
+
+		/** Ali se je izvajanje ze zacelo. */
+		private boolean started = false;
+
+		/** Ali se je izvedel klic {@code exit}. */
+		private boolean exited = false;
+
+		/** Izhodna koda programa. */
+		private int exitCode = 0;
+
+		/** Medpomnjen vhod programa (ustvarjen ob prvi uporabi). */
+		private InputChannel input = null;
+
+		/** Stevilo bajtov vhoda, ki so bili prebrani pred nadaljevanjem izvajanja. */
+		private long inputSkip = 0;
+
+		/** Medpomnjen izhod programa. */
+		protected OutputChannel output;
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa in ga
+		 * pripravi na izvajanje.
+		 * 
+		 * @param image Pomnilniska slika programa.
+		 */
+		protected Processor(final Linker.Image image) {
+			this(image, null);
+		}
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa in ga
+		 * pripravi na izvajanje v podanem okolju.
+		 * 
+		 * @param image       Pomnilniska slika programa.
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
+		 */
+		protected Processor(final Linker.Image image, final Environment environment) {
+			this.image = image;
+			this.environment = environment;
+			this.console = environment == null ? System.out : environment.output();
+			this.codeSegmentSize = image.codeSegmentSize;
+			this.dataSegmentSize = image.dataSegmentSize;
+
+			if (debugLabelsList && (environment == null))
+				image.logLabels();
+			image.load(memory);
+			heap = new HeapAllocator(memory, codeSegmentSize + dataSegmentSize,
+					environment == null ? heapLimit : environment.heapLimit());
+			start();
+
+			long outputPosition = 0;
+			if ((resumeFileName != null) && (environment == null)) {
+				final Checkpoint checkpoint = Checkpoint.read(resumeFileName);
+				if (!checkpoint.labels.equals(image.labelToAddr))
+					throw new Report.Error("Checkpoint file '" + resumeFileName + "' does not match the program.");
+				if (checkpoint.stackTop != stackTop)
+					throw new Report.Error("Checkpoint file '" + resumeFileName + "' does not match the stack layout (stack top "
+							+ checkpoint.stackTop + " instead of " + stackTop + ").");
+				PC = checkpoint.PC;
+				FP = checkpoint.FP;
+				SP = checkpoint.SP;
+				numInstrs = checkpoint.numInstrs;
+				checkpoint.loadPages(memory);
+				heap.restore(checkpoint.heap);
+				inputSkip = checkpoint.inputPosition;
+				outputPosition = checkpoint.outputPosition;
+			}
+			output = openOutput(outputPosition);
+		}
+
+		/**
+		 * Postavi registre na zacetek izvajanja programa.
+		 * 
+		 * Vrh sklada je na naslovu {@link Machine#STACK_TOP} ali visje, ce je
+		 * podana najmanjsa velikost prostora za sklad in je pod njim premalo prostora
+		 * za staticne spremenljivke, kopico (ce je njena velikost omejena) in sklad.
+		 * Omejitev velikosti kopice sama po sebi vrha sklada ne premakne.
+		 */
+		private void start() {
+			final int heapSize = environment == null ? heapLimit : environment.heapLimit();
+			final int minStackSize = environment == null ? stackSize : environment.stackSize();
+			final long topOfData = ((long) codeSegmentSize + dataSegmentSize + PagedMemory.PAGE_SIZE - 1)
+					& ~(PagedMemory.PAGE_SIZE - 1);
+			final long top = minStackSize == 0 ? topOfData
+					: topOfData + (heapSize == Integer.MAX_VALUE ? 0 : heapSize) + minStackSize;
+			if (top > Integer.MAX_VALUE - PagedMemory.PAGE_SIZE)
+				throw new Report.Error("Heap and stack do not fit into memory.");
+			stackTop = Math.max(STACK_TOP, (int) top);
+
+			PC = 0;
+			FP = stackTop;
+			SP = stackTop;
+
+			SP -= 4;
+			memory.save(SP, -1);
+			FP = SP + 0;
+			SP -= 4;
+			memory.save(SP, -1);
+		}
+
+		/**
+		 * Odpre izhod programa.
+		 * 
+		 * @param outputPosition Stevilo bajtov, ki ostanejo v datoteki za izhod.
+		 * @return Medpomnjen izhod programa.
+		 */
+		private OutputChannel openOutput(final long outputPosition) {
+			if (environment != null)
+				return new OutputChannel(environment.output(), environment.outputLimit());
+			return outputFileName == null ? new OutputChannel() : new OutputChannel(outputFileName, outputPosition);
+		}
+
+		/**
+		 * Pripravi skladovni stroj na ponovno izvajanje programa.
+		 * 
+		 * Predstavitev kode programa (in pri izvedbi {@link JitExecutor} tudi
+		 * prevedene funkcije) se ohrani, zato je ponovno izvajanje hitrejse od
+		 * izvajanja z novim skladovnim strojem.
+		 * 
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
+		 * @param freshData   Ali se staticne spremenljivke in kopica postavijo na
+		 *                    zacetne vrednosti (sicer se ohranijo iz prejsnjega
+		 *                    izvajanja).
+		 */
+		public void reset(final Environment environment, final boolean freshData) {
+			if (status == Status.SUSPENDED)
+				finish();
+			this.environment = environment;
+			this.console = environment == null ? System.out : environment.output();
+			if (freshData) {
+				memory.reset();
+				image.load(memory);
+				heap.reset();
+			}
+			heap.setMaxHeapSize(environment == null ? heapLimit : environment.heapLimit());
+			start();
+			numInstrs = 0;
+			runTime = 0;
+			status = Status.SUSPENDED;
+			started = false;
+			exited = false;
+			exitCode = 0;
+			input = null;
+			inputSkip = 0;
+			output = openOutput(0);
+		}
+
+		/**
+		 * Shrani stanje skladovnega stroja (med izvajanjem ukazov).
+		 * 
+		 * Shranijo se registri, stevilo izvedenih ukazov, polozaja na vhodu in
+		 * izhodu, stanje kopice in strani pomnilnika, ki se razlikujejo od
+		 * pomnilniske slike programa.
+		 * 
+		 * @param fileName Ime datoteke.
+		 */
+		protected final void checkpoint(final String fileName) {
+			output.flush();
+			final Checkpoint checkpoint = new Checkpoint();
+			checkpoint.PC = PC;
+			checkpoint.FP = FP;
+			checkpoint.SP = SP;
+			checkpoint.stackTop = stackTop;
+			checkpoint.numInstrs = numInstrs;
+			checkpoint.inputPosition = input == null ? inputSkip : input.position();
+			checkpoint.outputPosition = output.position();
+			checkpoint.labels.putAll(image.labelToAddr);
+			checkpoint.heap = heap.state();
+			final PagedMemory initialMemory = new PagedMemory();
+			image.load(initialMemory);
+			checkpoint.savePages(memory, initialMemory);
+			checkpoint.write(fileName);
+		}
+
+		/**
+		 * Izvede program do konca (ali do izcrpanja dovoljenega stevila ukazov).
+		 * 
+		 * @return Izid izvajanja.
+		 */
+		public final Result run() {
+			return step(Long.MAX_VALUE);
+		}
+
+		/**
+		 * Izvede najvec podano stevilo ukazov programa.
+		 * 
+		 * Ce se program pri tem ne konca, se izvajanje lahko nadaljuje z naslednjim
+		 * klicem te metode ali metode {@link #run()}. Ko se izvajanje konca, se vhod
+		 * in izhod programa zapreta, nadaljnji klici pa le vrnejo izid izvajanja.
+		 * 
+		 * @param numSteps Najvecje stevilo ukazov, ki se izvedejo.
+		 * @return Izid izvajanja.
+		 */
+		public final Result step(final long numSteps) {
+			if (status != Status.SUSPENDED)
+				return result();
+			if (!started) {
+				console.printf("\n");
+				started = true;
+			}
+			limit = numInstrs + Math.max(0, Math.min(numSteps, budget - numInstrs));
+			final long begTime = System.nanoTime();
+			status = Status.FAILED;
+			try {
+				execute();
+				if (exited)
+					status = Status.EXITED;
+				else if (numInstrs >= budget)
+					status = Status.EXHAUSTED;
+				else
+					status = Status.SUSPENDED;
+			} finally {
+				runTime += System.nanoTime() - begTime;
+				limit = Long.MAX_VALUE;
+				if (status == Status.SUSPENDED)
+					output.flush();
+				else
+					finish();
+			}
+			return result();
+		}
+
+		/**
+		 * Nastavi najvecje skupno stevilo izvedenih ukazov.
+		 * 
+		 * Ko program izvede toliko ukazov, se ustavi in izvajanja ni mogoce
+		 * nadaljevati. Izvedbe stevilo ukazov preverjajo sproti, le prevedene
+		 * funkcije izvedbe {@link JitExecutor} ga preverjajo ob skokih, klicih in
+		 * vrnitvah, zato lahko izvedejo nekaj ukazov vec.
+		 * 
+		 * @param budget Najvecje skupno stevilo izvedenih ukazov.
+		 */
+		public void setBudget(final long budget) {
+			this.budget = budget;
+		}
+
+		/**
+		 * Vrne izid izvajanja.
+		 * 
+		 * @return Izid izvajanja.
+		 */
+		public Result result() {
+			return new Result(status, exitCode, numInstrs, runTime);
+		}
+
+		/**
+		 * Izvaja ukaze programa, dokler se ne izvede klic {@code exit} ali stevilo
+		 * izvedenih ukazov ne doseze meje {@link #limit}. Ce se izvajanje prekine
+		 * zaradi meje, mora programski stevec kazati na naslednji ukaz.
+		 */
+		protected abstract void execute();
+
+		/**
+		 * Preveri, ali je sklad po klicu funkcije ali rezervaciji prostora za lokalne
+		 * spremenljivke dovolj oddaljen od vrha kopice.
+		 * 
+		 * @param SP Skladovni kazalec.
+		 */
+		protected final void checkStack(final int SP) {
+			if (SP - STACK_RED_ZONE < heap.top())
+				throw new Report.Error("Stack overflow.");
+		}
+
+		/**
+		 * Postavi klicni zapis repnega klica na mesto klicnega zapisa funkcije, iz
+		 * katere se klice.
+		 * 
+		 * Argumenti in staticna povezava klica se prestavijo na mesto argumentov in
+		 * staticne povezave funkcije, iz katere se klice, pod njimi pa se shranita
+		 * njen shranjeni klicni kazalec in povratni naslov.
+		 * 
+		 * @param FP             Klicni kazalec funkcije, iz katere se klice.
+		 * @param SP             Skladovni kazalec (kaze na staticno povezavo klica).
+		 * @param parsSize       Velikost parametrov klicane funkcije (brez staticne
+		 *                       povezave).
+		 * @param callerParsSize Velikost parametrov funkcije, iz katere se klice (brez
+		 *                       staticne povezave).
+		 * @return Klicni kazalec klicane funkcije.
+		 */
+		protected final int tailFrame(final int FP, final int SP, final int parsSize, final int callerParsSize) {
+			final int callerFP = memory.load(FP - 4);
+			final int returnPC = memory.load(FP - 8);
+			final int newFP = FP + callerParsSize - parsSize;
+			// argumenti se premikajo proti vrhu sklada, zato se prestavljajo od zadnjega
+			for (int offset = parsSize; offset >= 0; offset -= 4)
+				memory.save(newFP + offset, memory.load(SP + offset));
+			memory.save(newFP - 4, callerFP);
+			memory.save(newFP - 8, returnPC);
+			return newFP;
+		}
+
+		/**
+		 * Ali se izvajanje prekine pred izcrpanjem dovoljenega stevila ukazov (in ga
+		 * mora biti mogoce nadaljevati).
+		 * 
+		 * @return Ali se izvaja zahtevano stevilo ukazov.
+		 */
+		protected final boolean stepping() {
+			return limit < budget;
+		}
+
+		/**
+		 * Sprosti vire, ki jih uporablja izvajanje programa (ko se izvajanje konca).
+		 */
+		protected void finish() {
+			try {
+				output.close();
+			} finally {
+				if (input != null)
+					input.close();
+			}
+		}
+
+		/**
+		 * Vrne stevilo izvedenih ukazov.
+		 * 
+		 * @return Stevilo izvedenih ukazov.
+		 */
+		public long numInstrs() {
+			return numInstrs;
+		}
+
+		/**
+		 * Vrne cas izvajanja programa.
+		 * 
+		 * @return Cas izvajanja programa (v nanosekundah).
+		 */
+		public long runTime() {
+			return runTime;
+		}
+
+		/**
+		 * Shrani vrednost v pomnilnik.
+		 * 
+		 * @param addr       Pomnilniski naslov.
+		 * @param value      Vrednost.
+		 * @param debugInstr Lokacija dela izvorne kode, ki zahteva shranjevanje.
+		 */
+		protected void memSAVE(final int addr, final int value, final PDM.INSTR debugInstr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			memory.save(addr, value);
+		}
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		protected int memLOAD(final int addr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			return memory.load(addr);
+		}
+
+		/**
+		 * Prenos nove vrednosti na sklad.
+		 * 
+		 * @param value      Vrednost.
+		 * @param debugInstr Lokacija dela izvorne kode, ki prenos nove vrednosti na
+		 *                   sklad.
+		 */
+		protected void push(final int value, final PDM.INSTR debugInstr) {
+			SP -= 4;
+			memSAVE(SP, value, debugInstr);
+		}
+
+		/**
+		 * Prevzem vrednost z vrha sklada.
+		 * 
+		 * @return Vrednost.
+		 */
+		protected int pop() {
+			final int value = memLOAD(SP);
+			SP += 4;
+			return value;
+		}
+
+		/**
+		 * Izvede ukaz {@code INIT}.
+		 * 
+		 * @param SP Skladovni kazalec (na vrhu sklada sta naslov inicializacije in
+		 *           naslov spremenljivke).
+		 * @return Skladovni kazalec po izvedbi ukaza.
+		 */
+		protected final int execINIT(final int SP) {
+			int initAddr = memory.load(SP);
+			int dstAddr = memory.load(SP + 4);
+			if ((initAddr < codeSegmentSize) || (dstAddr < codeSegmentSize))
+				throw new Report.InternalError();
+			final int numInits = memory.load(initAddr);
+			initAddr += 4;
+			for (int nInit = 0; nInit < numInits; nInit++) {
+				final int num = memory.load(initAddr);
+				initAddr += 4;
+				final int len = memory.load(initAddr);
+				initAddr += 4;
+				for (int n = 0; n < num; n++) {
+					for (int l = 0; l < len; l++) {
+						memory.save(dstAddr, memory.load(initAddr + 4 * l));
+						dstAddr += 4;
+					}
+				}
+				initAddr += 4 * len;
+			}
+			return SP + 8;
+		}
+
+		/**
+		 * Izvede 'sistemsko' funkcijo.
+		 * 
+		 * Argumenti in staticna povezava so ob klicu na vrhu sklada, po vrnitvi pa je
+		 * na vrhu sklada rezultat funkcije. Programskega stevca ta metoda ne
+		 * spreminja.
+		 * 
+		 * @param sysCallAddr Naslov 'sistemske' funkcije.
+		 * @return Ali naj se izvajanje programa nadaljuje (pri klicu {@code exit} je
+		 *         vrnjena vrednost {@code false}).
+		 */
+		protected boolean sysCall(final int sysCallAddr) {
+			switch (sysCallAddr) {
+			case -1: { // exit(exitcode)
+				pop(); // SL
+				final int exitCode = pop();
+				pop();
+				pop();
+				output.flush();
+				console.printf("EXIT CODE (SP=%d): %d\n", SP, exitCode);
+				this.exited = true;
+				this.exitCode = exitCode;
+				return false;
+			}
+			case -2: { // getint()
+				pop(); // SL
+				output.flush();
+				final int intValue = input().getInt();
+				push(intValue, null); // result
+				return true;
+			}
+			case -3: { // putint(intvalue)
+				pop(); // SL
+				final int intValue = pop();
+				output.putInt(intValue);
+				push(1, null); // result
+				return true;
+			}
+			case -4: { // getstr(straddr)
+				pop(); // SL
+				int strAddr = pop();
+				output.flush();
+				final String strValue = input().getLine();
+				for (int c = 0; c < strValue.length(); c++) {
+					memSAVE(strAddr, strValue.charAt(c), null);
+					strAddr += 4;
+				}
+				memSAVE(strAddr, 0, null);
+				push(1, null); // result
+				return true;
+			}
+			case -5: { // putstr(straddr)
+				pop(); // SL
+				int strAddr = pop();
+				while (true) {
+					int c = memLOAD(strAddr);
+					if (c == 0)
+						break;
+					output.putChar(c);
+					strAddr += 4;
+				}
+				push(1, null); // result
+				return true;
+			}
+			case -6: { // new(size)
+				pop(); // SL
+				final int size = pop();
+				final int addr = heap.alloc(size, SP - STACK_RED_ZONE);
+				push(addr, null); // result
+				return true;
+			}
+			case -7: { // del(addr)
+				pop(); // SL
+				final int addr = pop();
+				heap.free(addr);
+				push(1, null); // result
+				return true;
+			}
+			default:
+				throw new Report.InternalError();
+			}
+		}
+
+		/**
+		 * Vrne medpomnjen vhod programa.
+		 * 
+		 * @return Medpomnjen vhod programa.
+		 */
+		private InputChannel input() {
+			if (input == null) {
+				if (environment != null)
+					input = new InputChannel(environment.input());
+				else
+					input = inputFileName == null ? new InputChannel() : new InputChannel(inputFileName);
+				input.skip(inputSkip);
+			}
+			return input;
+		}
+
+	}
+
 	/**
 	 * Izvajanje skladovnega stroja.
+	 * 
+	 * Ukazi se izvajajo neposredno iz objektne predstavitve ukazov. Ta izvedba je
+	 * referencna; razlicica z opazovanjem izvajanja je {@link TracedExecutor}.
 	 */
-	public static class Executor {
+	public static class Executor extends Processor {
+
+		/** Ukazi kode programa, indeksirani s fizicnim naslovom. */
+		protected final PDM.CodeInstr[] program;
+
+		/** Razreseni operandi ukazov, indeksirani s fizicnim naslovom. */
+		protected final int[] operands;
 
-		/** Seznam ukazov kode programa. */
-		private final HashMap<Integer, PDM.CodeInstr> program = new HashMap<Integer, PDM.CodeInstr>();
+		/** Ali je bilo zahtevano shranjevanje stanja (ob prekinitvi). */
+		private volatile boolean checkpointRequested = false;
 
-		/** Pomnilnik (brez predstavitve ukazov. */
-		private final HashMap<Integer, Byte> memory = new HashMap<Integer, Byte>();
+		/** Zapah, ki se sprosti, ko je stanje ob prekinitvi shranjeno ali je izvajanje koncano. */
+		private final CountDownLatch checkpointDone = new CountDownLatch(1);
+
+		/**
+		 * Ustvari nov skladovni stroj za podan program.
+		 * 
+		 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+		 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+		 */
+		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+			this(Linker.link(codeSegment, dataSegment));
+		}
 
-		/** Preslikava imen oznak v fizicne naslove. */
-		private final HashMap<String, Integer> labelToAddr = new HashMap<String, Integer>();
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa.
+		 * 
+		 * @param image Pomnilniska slika programa.
+		 */
+		public Executor(final Linker.Image image) {
+			this(image, null);
+		}
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa, ki se
+		 * izvaja v podanem okolju.
+		 * 
+		 * @param image       Pomnilniska slika programa.
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
+		 */
+		public Executor(final Linker.Image image, final Environment environment) {
+			super(image, environment);
+			this.program = image.code;
+			this.operands = image.operands;
+		}
+
+		@Override
+		protected void execute() {
+			if ((checkpointFileName != null) && (environment == null)) {
+				executeWithCheckpoints();
+				return;
+			}
+			final long limit = this.limit;
+			while (numInstrs < limit) {
+				numInstrs++;
+				if (!exec(program[PC]))
+					break;
+			}
+		}
+
+		/**
+		 * Izvaja ukaze programa in shranjuje stanje vsakih {@link #checkpointInterval}
+		 * ukazov ter ob prekinitvi (stanje se ob prekinitvi shrani, preden se
+		 * izvajanje navideznega stroja konca).
+		 */
+		private void executeWithCheckpoints() {
+			final Thread hook = new Thread(() -> {
+				checkpointRequested = true;
+				try {
+					checkpointDone.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException __) {
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(hook);
+			try {
+				long nextCheckpoint = checkpointInterval > 0 ? numInstrs + checkpointInterval : Long.MAX_VALUE;
+				while (numInstrs < limit) {
+					if ((numInstrs >= nextCheckpoint) || checkpointRequested) {
+						checkpoint(checkpointFileName);
+						if (checkpointRequested) {
+							checkpointDone.countDown();
+							// izvajanje se nadaljuje, dokler se navidezni stroj ne ustavi
+							checkpointRequested = false;
+							nextCheckpoint = Long.MAX_VALUE;
+						} else
+							nextCheckpoint = numInstrs + checkpointInterval;
+					}
+					numInstrs++;
+					if (!exec(program[PC]))
+						break;
+				}
+			} finally {
+				checkpointDone.countDown();
+				try {
+					Runtime.getRuntime().removeShutdownHook(hook);
+				} catch (IllegalStateException __) {
+					// navidezni stroj se ze ustavlja
+				}
+			}
+		}
+
+		/**
+		 * Izvede en ukaz.
+		 * 
+		 * @param instr Ukaz na naslovu, ki ga doloca programski stevec.
+		 * @return Ali naj se izvajanje programa nadaljuje (pri klicu {@code exit} je
+		 *         vrnjena vrednost {@code false}).
+		 */
+		protected final boolean exec(final PDM.CodeInstr instr) {
+			switch (instr) {
+			case PDM.INIT i: {
+				int initAddr = pop();
+				int dstAddr = pop();
+				final int numInits = memLOAD(initAddr);
+				initAddr += 4;
+				for (int nInit = 0; nInit < numInits; nInit++) {
+					int num = memLOAD(initAddr);
+					initAddr += 4;
+					int len = memLOAD(initAddr);
+					initAddr += 4;
+					for (int n = 0; n < num; n++) {
+						for (int l = 0; l < len; l++) {
+							memSAVE(dstAddr, memLOAD(initAddr + 4 * l), i);
+							dstAddr += 4;
+						}
+					}
+					initAddr += 4 * len;
+				}
+				PC += i.size();
+				break;
+			}
+			case PDM.LOAD i: {
+				int addr = pop();
+				int value = memLOAD(addr);
+				push(value, i);
+				PC += i.size();
+				break;
+			}
+			case PDM.SAVE i: {
+				final int addr = pop();
+				final int value = pop();
+				memSAVE(addr, value, i);
+				PC += i.size();
+				break;
+			}
+			case PDM.POPN i: {
+				int n = pop();
+				if (n < 0) {
+					checkStack(SP + n);
+					while (n < 0) {
+						push(0, i);
+						n += 4;
+					}
+				} else {
+					while (n > 0) {
+						pop();
+						n -= 4;
+					}
+				}
+				PC += i.size();
+				break;
+			}
+			case PDM.PUSH i: {
+				push(operands[PC], i);
+				PC += i.size();
+				break;
+			}
+			case PDM.NAME i: {
+				push(operands[PC], i);
+				PC += i.size();
+				break;
+			}
+			case PDM.LOADL i: {
+				push(memLOAD(FP + operands[PC]), i);
+				PC += i.size();
+				break;
+			}
+			case PDM.SAVEL i: {
+				memSAVE(FP + operands[PC], pop(), i);
+				PC += i.size();
+				break;
+			}
+			case PDM.LOADG i: {
+				push(memLOAD(operands[PC]), i);
+				PC += i.size();
+				break;
+			}
+			case PDM.SAVEG i: {
+				memSAVE(operands[PC], pop(), i);
+				PC += i.size();
+				break;
+			}
+			case PDM.REGN i: {
+				final int value = switch (i.regn) {
+				case PC -> PC;
+				case FP -> FP;
+				case SP -> SP;
+				default -> throw new Report.InternalError();
+				};
+				push(value, i);
+				PC += i.size();
+				break;
+			}
+			case PDM.OPER i: {
+				switch (i.oper) {
+				case NOT:
+				case NEG: {
+					final int expr = pop();
+					final int result = switch (i.oper) {
+					case NOT -> (expr == 0) ? 1 : 0;
+					case NEG -> -expr;
+					default -> throw new Report.InternalError();
+					};
+					push(result, i);
+					break;
+				}
+				case OR:
+				case AND:
+				case EQU:
+				case NEQ:
+				case GTH:
+				case LTH:
+				case GEQ:
+				case LEQ:
+				case ADD:
+				case SUB:
+				case MUL:
+				case DIV:
+				case MOD: {
+					final int snd = pop();
+					final int fst = pop();
+					int result = switch (i.oper) {
+					case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+					case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+					case EQU -> fst == snd ? 1 : 0;
+					case NEQ -> fst != snd ? 1 : 0;
+					case GTH -> fst > snd ? 1 : 0;
+					case LTH -> fst < snd ? 1 : 0;
+					case GEQ -> fst >= snd ? 1 : 0;
+					case LEQ -> fst <= snd ? 1 : 0;
+					case ADD -> fst + snd;
+					case SUB -> fst - snd;
+					case MUL -> fst * snd;
+					case DIV -> fst / snd;
+					case MOD -> fst % snd;
+					default -> throw new Report.InternalError();
+					};
+					push(result, i);
+					break;
+				}
+				default:
+					throw new Report.InternalError();
+				}
+				PC += i.size();
+				break;
+			}
+			case PDM.UJMP i: {
+				PC = pop();
+				break;
+			}
+			case PDM.CJMP i: {
+				final int elsePC = pop();
+				final int thenPC = pop();
+				final int cond = pop();
+				PC = (cond != 0) ? thenPC : elsePC;
+				break;
+			}
+			case PDM.BRCH i: {
+				final boolean taken = switch (i.cond) {
+				case Z -> pop() == 0;
+				case NZ -> pop() != 0;
+				default -> {
+					final int snd = pop();
+					final int fst = pop();
+					yield switch (i.cond) {
+					case EQ -> fst == snd;
+					case NE -> fst != snd;
+					case LT -> fst < snd;
+					case LE -> fst <= snd;
+					case GT -> fst > snd;
+					case GE -> fst >= snd;
+					default -> throw new Report.InternalError();
+					};
+				}
+				};
+				PC = taken ? operands[PC] : PC + i.size();
+				break;
+			}
+			case PDM.CALL i: {
+				final int newPC = pop();
+				if (newPC < 0) {
+					if (!sysCall(newPC))
+						return false;
+					PC += i.size();
+				} else {
+					checkStack(SP - 8);
+					push(FP, i);
+					push(PC + i.size(), i);
+					FP = SP + 8;
+					PC = newPC;
+				}
+				break;
+			}
+			case PDM.RETN i: {
+				int parsSize = pop();
+				final int result = pop();
+				PC = memLOAD(FP - 8);
+				while (SP != FP) {
+					pop();
+				}
+				// SP = FP;
+				FP = memLOAD(FP - 4);
+				parsSize += 4;
+				while (parsSize > 0) {
+					pop();
+					parsSize -= 4;
+				}
+				push(result, i);
+				break;
+			}
+			case PDM.TCALL i: {
+				final int newPC = pop();
+				final int callerParsSize = pop();
+				final int parsSize = pop();
+				final int callerFP = memLOAD(FP - 4);
+				final int returnPC = memLOAD(FP - 8);
+				final int newFP = FP + callerParsSize - parsSize;
+				for (int offset = parsSize; offset >= 0; offset -= 4)
+					memSAVE(newFP + offset, memLOAD(SP + offset), i);
+				memSAVE(newFP - 4, callerFP, i);
+				memSAVE(newFP - 8, returnPC, i);
+				FP = newFP;
+				SP = newFP - 8;
+				PC = newPC;
+				break;
+			}
+			default:
+				throw new Report.InternalError();
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * Izvajanje skladovnega stroja z opazovanjem izvajanja.
+	 * 
+	 * Ukazi se izvajajo enako kot pri {@link Executor}, pred in po vsakem ukazu
+	 * pa se opravi testni izpis dogajanja na skladu, zbiranje profila izvajanja
+	 * in/ali zapis dvojiske sledi izvajanja (glej {@link Trace}). Izvedba se
+	 * izbere ob zagonu, zato referencna izvedba nima nobenega preverjanja, ali se
+	 * izvajanje opazuje.
+	 */
+	public static class TracedExecutor extends Executor {
+
+		/** Preslikava naslova v lokacijo kode, ki je izvor vrednosti na naslovu. */
+		final HashMap<Integer, String> debugLocs = new HashMap<Integer, String>();
+
+		/** Preslikava naslova v pomen podatka, ki je shranjen na naslovu. */
+		final HashMap<Integer, String> debugDscs = new HashMap<Integer, String>();
+
+		/** Profil izvajanja ({@code null}, ce se profil ne zbira). */
+		private final Profiler profiler;
+
+		/** Zapisovalnik sledi izvajanja ({@code null}, ce se sled ne zapisuje). */
+		private final Trace.Recorder recorder;
+
+		/** Koda programa v zgosceni predstavitvi (le pri zapisovanju sledi). */
+		private final int[] code;
+
+		/** Stevilo besed, prevzetih z vrha sklada med izvajanjem ukaza. */
+		private int numPops = 0;
+
+		/** Naslovi in vrednosti besed, zapisanih med izvajanjem ukaza (izmenicno). */
+		private int[] writes = new int[64];
+
+		/** Stevilo besed, zapisanih med izvajanjem ukaza. */
+		private int numWrites = 0;
+
+		/**
+		 * Ustvari nov skladovni stroj z opazovanjem izvajanja za podano pomnilnisko
+		 * sliko programa.
+		 * 
+		 * @param image Pomnilniska slika programa.
+		 */
+		public TracedExecutor(final Linker.Image image) {
+			super(image);
+			this.profiler = printProfile ? new Profiler(image.code, image.addrToLabel) : null;
+			if (traceFileName != null) {
+				final int[] stack = new int[(stackTop - SP) / 4];
+				for (int i = 0; i < stack.length; i++)
+					stack[i] = memory.load(SP + 4 * i);
+				this.recorder = new Trace.Recorder(traceFileName, codeSegmentSize, SP, FP, stack);
+				this.code = Bytecode.lower(image.code, image.operands);
+			} else {
+				this.recorder = null;
+				this.code = null;
+			}
+		}
+
+		/**
+		 * Vrne profil izvajanja.
+		 * 
+		 * @return Profil izvajanja ({@code null}, ce se profil ne zbira).
+		 */
+		public Profiler profiler() {
+			return profiler;
+		}
+
+		@Override
+		protected void memSAVE(final int addr, final int value, final PDM.INSTR debugInstr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
+				debugLocs.put(addr, debugInstr.debugLocation.toString());
+			if (recorder != null) {
+				if (2 * numWrites == writes.length)
+					writes = Arrays.copyOf(writes, 2 * writes.length);
+				writes[2 * numWrites] = addr;
+				writes[2 * numWrites + 1] = value;
+				numWrites++;
+			}
+			memory.save(addr, value);
+		}
+
+		@Override
+		protected int pop() {
+			if (debugStack)
+				debugLocs.put(SP, null);
+			numPops++;
+			return super.pop();
+		}
+
+		@Override
+		protected void execute() {
+			final long limit = this.limit;
+			while (numInstrs < limit) {
+				numInstrs++;
+				if (profiler != null)
+					profiler.step(PC);
+
+				if (debugStack) {
+					output.flush();
+					printStack(memory, stackTop, SP, FP, debugLocs, debugDscs);
+				}
+
+				final PDM.CodeInstr instr = program[PC];
+				if (debugStack)
+					printInstr(instr, PC);
+
+				// naslov klicane funkcije je na vrhu sklada
+				final int newPC = instr instanceof PDM.CALL ? memLOAD(SP) : -1;
+				if (debugStack) {
+					if ((instr instanceof PDM.CALL i) && (newPC >= 0))
+						describeFrame(debugDscs, i.debugFrame, SP + 4);
+					if (instr instanceof PDM.RETN i)
+						forgetFrame(debugDscs, i.debugFrame, FP);
+				}
+
+				final int oldPC = PC;
+				final int oldSP = SP;
+				final int oldFP = FP;
+				numPops = 0;
+				numWrites = 0;
+				final boolean running = exec(instr);
+				if (recorder != null)
+					recorder.step(code[oldPC] | (newPC >= 0 ? Trace.ENTER : 0), oldPC, SP - oldSP, FP - oldFP,
+							numPops, SP, writes, numWrites);
+				if (!running)
+					break;
+
+				if (debugStack && (instr instanceof PDM.TCALL i)) {
+					forgetFrame(debugDscs, i.debugCallerFrame, oldFP);
+					describeFrame(debugDscs, i.debugFrame, FP);
+				}
+
+				if (profiler != null) {
+					if ((instr instanceof PDM.CALL) && (newPC >= 0))
+						profiler.call(newPC);
+					if (instr instanceof PDM.RETN)
+						profiler.retn();
+					if (instr instanceof PDM.TCALL) {
+						profiler.retn();
+						profiler.call(PC);
+					}
+				}
+			}
+		}
+
+		@Override
+		protected void finish() {
+			try {
+				if (recorder != null)
+					recorder.close();
+			} finally {
+				super.finish();
+			}
+		}
+
+		/**
+		 * Izpise vsebino sklada.
+		 * 
+		 * @param memory    Pomnilnik.
+		 * @param stackTop  Naslov vrha sklada.
+		 * @param SP        Skladovni kazalec.
+		 * @param FP        Klicni kazalec.
+		 * @param debugLocs Preslikava naslova v lokacijo kode, ki je izvor vrednosti
+		 *                  na naslovu.
+		 * @param debugDscs Preslikava naslova v pomen podatka, ki je shranjen na
+		 *                  naslovu.
+		 */
+		static void printStack(final PagedMemory memory, final int stackTop, final int SP, final int FP,
+				final Map<Integer, String> debugLocs, final Map<Integer, String> debugDscs) {
+			for (int stackAddr = stackTop - 4; stackAddr >= SP; stackAddr -= 4) {
+				final String debugLoc = debugLocs.get(stackAddr);
+				System.out.printf("%15s ", debugLoc == null ? "" : debugLoc);
+				if (stackAddr == FP)
+					System.out.printf("FP => ");
+				else if (stackAddr == SP)
+					System.out.printf("SP => ");
+				else
+					System.out.printf("      ");
+				System.out.printf("%6d: %12d", stackAddr, memory.load(stackAddr));
+				final String debugDsc = debugDscs.get(stackAddr);
+				System.out.printf(" %s", debugDsc == null ? "" : debugDsc);
+				System.out.printf("\n");
+			}
+			System.out.printf("\n");
+		}
+
+		/**
+		 * Izpise ukaz, ki se bo izvedel.
+		 * 
+		 * @param instr Ukaz.
+		 * @param PC    Naslov ukaza.
+		 */
+		static void printInstr(final PDM.CodeInstr instr, final int PC) {
+			System.out.printf("\033[1m%15s %5d: %s\033[0m\n\n",
+					((PDM.INSTR) instr).debugLocation == null ? "" : ((PDM.INSTR) instr).debugLocation, PC,
+					instr.toString());
+		}
+
+		/**
+		 * Zabelezi pomen podatkov v klicnem zapisu, ki se ustvarja.
+		 * 
+		 * @param debugDscs Preslikava naslova v pomen podatka, ki je shranjen na
+		 *                  naslovu.
+		 * @param frame     Klicni zapis klicane funkcije (ali {@code null}).
+		 * @param SP        Skladovni kazalec ob klicu (naslov staticne povezave).
+		 */
+		static void describeFrame(final Map<Integer, String> debugDscs, final Mem.Frame frame, final int SP) {
+			debugDscs.put(SP, "... SL");
+			debugDscs.put(SP - 4, "... FP *** " + (frame == null ? "" : frame.name) + " ***");
+			debugDscs.put(SP - 8, "... RA ");
+			if (frame != null) {
+				if (frame.debugPars != null)
+					for (final Mem.RelAccess relAccess : frame.debugPars)
+						if (relAccess.debugName != null)
+							debugDscs.put(SP + relAccess.offset, "... par: " + relAccess.debugName);
+				if (frame.debugVars != null)
+					for (final Mem.RelAccess relAccess : frame.debugVars)
+						if (relAccess.debugName != null) {
+							if (relAccess.size == 4)
+								debugDscs.put(SP + relAccess.offset, "... var: " + relAccess.debugName);
+							else {
+								for (int s = 0; s < relAccess.size; s += 4)
+									debugDscs.put(SP + relAccess.offset + s,
+											"... var: " + relAccess.debugName + "[" + (s / 4) + "]");
+							}
+						}
+			}
+		}
+
+		/**
+		 * Pozabi pomen podatkov v klicnem zapisu, ki se unicuje.
+		 * 
+		 * @param debugDscs Preslikava naslova v pomen podatka, ki je shranjen na
+		 *                  naslovu.
+		 * @param frame     Klicni zapis funkcije, iz katere se vraca (ali
+		 *                  {@code null}).
+		 * @param FP        Klicni kazalec funkcije, iz katere se vraca.
+		 */
+		static void forgetFrame(final Map<Integer, String> debugDscs, final Mem.Frame frame, final int FP) {
+			debugDscs.put(FP, null);
+			debugDscs.put(FP - 4, null);
+			debugDscs.put(FP - 8, null);
+			if (frame != null) {
+				if (frame.debugPars != null)
+					for (final Mem.RelAccess relAccess : frame.debugPars)
+						if (relAccess.debugName != null)
+							debugDscs.put(FP + relAccess.offset, null);
+				if (frame.debugVars != null)
+					for (final Mem.RelAccess relAccess : frame.debugVars)
+						if (relAccess.debugName != null) {
+							if (relAccess.size == 4)
+								debugDscs.put(FP + relAccess.offset, null);
+							else {
+								for (int s = 0; s < relAccess.size; s += 4)
+									debugDscs.put(FP + relAccess.offset + s, null);
+							}
+						}
+			}
+		}
+
+	}
+
+	/**
+	 * Izvajanje skladovnega stroja nad zgosceno predstavitvijo kode.
+	 * 
+	 * Koda programa je predstavljena s tabelo celih stevil (glej
+	 * {@link Bytecode}), ukazi pa se izbirajo s stavkom {@code switch} nad
+	 * operacijskimi kodami. Registri se med izvajanjem hranijo v lokalnih
+	 * spremenljivkah in se zapisejo nazaj le ob klicu 'sistemske' funkcije.
+	 */
+	public static class BytecodeExecutor extends Processor {
+
+		/** Koda programa, indeksirana s fizicnim naslovom. */
+		protected final int[] code;
+
+		/**
+		 * Ali se klici funkcij in skoki nazaj sporocajo metodama {@link #enter(int)}
+		 * in {@link #backEdge(int)}.
+		 */
+		protected boolean profile = false;
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa.
+		 * 
+		 * @param image Pomnilniska slika programa.
+		 */
+		public BytecodeExecutor(final Linker.Image image) {
+			this(image, null);
+		}
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa, ki se
+		 * izvaja v podanem okolju.
+		 * 
+		 * @param image       Pomnilniska slika programa.
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
+		 */
+		public BytecodeExecutor(final Linker.Image image, final Environment environment) {
+			super(image, environment);
+			this.code = Bytecode.lower(image.code, image.operands);
+		}
+
+		@Override
+		protected void execute() {
+			interpret(Integer.MIN_VALUE);
+		}
+
+		/**
+		 * Izvaja ukaze programa od trenutne vrednosti programskega stevca naprej.
+		 * 
+		 * Registri se ob vrnitvi zapisejo nazaj.
+		 * 
+		 * @param stopFP Klicni kazalec, ob katerega vzpostavitvi z ukazom
+		 *               {@code RETN} se izvajanje konca.
+		 * @return Ali se je izvajanje koncalo z vrnitvijo ali zaradi meje
+		 *         {@link #limit} (in ne s klicem {@code exit}).
+		 */
+		protected final boolean interpret(final int stopFP) {
+			final int[] code = this.code;
+			final PagedMemory memory = this.memory;
+			final int codeSegmentSize = this.codeSegmentSize;
+			final long limit = this.limit;
+			int PC = this.PC;
+			int FP = this.FP;
+			int SP = this.SP;
+			long numInstrs = this.numInstrs;
+
+			while (true) {
+				if (numInstrs >= limit) {
+					this.PC = PC;
+					this.FP = FP;
+					this.SP = SP;
+					this.numInstrs = numInstrs;
+					return true;
+				}
+				numInstrs++;
+				switch (code[PC]) {
+				case Bytecode.INIT: {
+					SP = execINIT(SP);
+					PC += 1;
+					break;
+				}
+				case Bytecode.LOAD: {
+					final int addr = memory.load(SP);
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(SP, memory.load(addr));
+					PC += 1;
+					break;
+				}
+				case Bytecode.SAVE: {
+					final int addr = memory.load(SP);
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(addr, memory.load(SP + 4));
+					SP += 8;
+					PC += 1;
+					break;
+				}
+				case Bytecode.POPN: {
+					int n = memory.load(SP);
+					SP += 4;
+					if (n < 0) {
+						checkStack(SP + n);
+						while (n < 0) {
+							SP -= 4;
+							memory.save(SP, 0);
+							n += 4;
+						}
+					} else {
+						while (n > 0) {
+							SP += 4;
+							n -= 4;
+						}
+					}
+					PC += 1;
+					break;
+				}
+				case Bytecode.PUSH: {
+					SP -= 4;
+					memory.save(SP, code[PC + 1]);
+					PC += 5;
+					break;
+				}
+				case Bytecode.LOADL: {
+					final int addr = FP + code[PC + 1];
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					SP -= 4;
+					memory.save(SP, memory.load(addr));
+					PC += 5;
+					break;
+				}
+				case Bytecode.SAVEL: {
+					final int addr = FP + code[PC + 1];
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(addr, memory.load(SP));
+					SP += 4;
+					PC += 5;
+					break;
+				}
+				case Bytecode.LOADG: {
+					SP -= 4;
+					memory.save(SP, memory.load(code[PC + 1]));
+					PC += 5;
+					break;
+				}
+				case Bytecode.SAVEG: {
+					memory.save(code[PC + 1], memory.load(SP));
+					SP += 4;
+					PC += 5;
+					break;
+				}
+				case Bytecode.REGN_PC: {
+					SP -= 4;
+					memory.save(SP, PC);
+					PC += 1;
+					break;
+				}
+				case Bytecode.REGN_FP: {
+					SP -= 4;
+					memory.save(SP, FP);
+					PC += 1;
+					break;
+				}
+				case Bytecode.REGN_SP: {
+					SP -= 4;
+					memory.save(SP, SP + 4);
+					PC += 1;
+					break;
+				}
+				case Bytecode.NOT: {
+					memory.save(SP, memory.load(SP) == 0 ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.NEG: {
+					memory.save(SP, -memory.load(SP));
+					PC += 1;
+					break;
+				}
+				case Bytecode.OR: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, (memory.load(SP) != 0) || (snd != 0) ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.AND: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, (memory.load(SP) != 0) && (snd != 0) ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.EQU: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) == snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.NEQ: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) != snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.GTH: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) > snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.LTH: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) < snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.GEQ: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) >= snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.LEQ: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) <= snd ? 1 : 0);
+					PC += 1;
+					break;
+				}
+				case Bytecode.ADD: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) + snd);
+					PC += 1;
+					break;
+				}
+				case Bytecode.SUB: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) - snd);
+					PC += 1;
+					break;
+				}
+				case Bytecode.MUL: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) * snd);
+					PC += 1;
+					break;
+				}
+				case Bytecode.DIV: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) / snd);
+					PC += 1;
+					break;
+				}
+				case Bytecode.MOD: {
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) % snd);
+					PC += 1;
+					break;
+				}
+				case Bytecode.UJMP: {
+					PC = jump(PC, memory.load(SP));
+					SP += 4;
+					break;
+				}
+				case Bytecode.CJMP: {
+					final int elsePC = memory.load(SP);
+					final int thenPC = memory.load(SP + 4);
+					final int cond = memory.load(SP + 8);
+					SP += 12;
+					PC = jump(PC, (cond != 0) ? thenPC : elsePC);
+					break;
+				}
+				case Bytecode.BEQ: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst == snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BNE: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst != snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BLT: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst < snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BLE: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst <= snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BGT: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst > snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BGE: {
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					PC = fst >= snd ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BZ: {
+					final int cond = memory.load(SP);
+					SP += 4;
+					PC = cond == 0 ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.BNZ: {
+					final int cond = memory.load(SP);
+					SP += 4;
+					PC = cond != 0 ? jump(PC, code[PC + 1]) : PC + 5;
+					break;
+				}
+				case Bytecode.CALL: {
+					final int newPC = memory.load(SP);
+					SP += 4;
+					if (newPC < 0) {
+						this.PC = PC;
+						this.FP = FP;
+						this.SP = SP;
+						this.numInstrs = numInstrs;
+						if (!sysCall(newPC))
+							return false;
+						SP = this.SP;
+						PC += 1;
+					} else {
+						if (profile) {
+							this.PC = PC;
+							this.FP = FP;
+							this.SP = SP;
+							this.numInstrs = numInstrs;
+							if (enter(newPC)) {
+								PC = this.PC;
+								SP = this.SP;
+								numInstrs = this.numInstrs;
+								break;
+							}
+						}
+						checkStack(SP - 8);
+						SP -= 4;
+						memory.save(SP, FP);
+						SP -= 4;
+						memory.save(SP, PC + 1);
+						FP = SP + 8;
+						PC = newPC;
+					}
+					break;
+				}
+				case Bytecode.RETN: {
+					int parsSize = memory.load(SP);
+					final int result = memory.load(SP + 4);
+					PC = memory.load(FP - 8);
+					SP = FP;
+					FP = memory.load(FP - 4);
+					parsSize += 4;
+					while (parsSize > 0) {
+						SP += 4;
+						parsSize -= 4;
+					}
+					SP -= 4;
+					memory.save(SP, result);
+					if (FP == stopFP) {
+						this.PC = PC;
+						this.FP = FP;
+						this.SP = SP;
+						this.numInstrs = numInstrs;
+						return true;
+					}
+					break;
+				}
+				case Bytecode.TCALL: {
+					final int newPC = memory.load(SP);
+					final int callerParsSize = memory.load(SP + 4);
+					final int parsSize = memory.load(SP + 8);
+					SP += 12;
+					FP = tailFrame(FP, SP, parsSize, callerParsSize);
+					SP = FP - 8;
+					if (profile) {
+						// klic se sporoci, kot da bi ga izvedel ukaz CALL klicatelja funkcije,
+						// iz katere se klice (pred povratnim naslovom)
+						this.PC = memory.load(FP - 8) - 1;
+						this.FP = memory.load(FP - 4);
+						this.SP = FP;
+						this.numInstrs = numInstrs;
+						if (enter(newPC)) {
+							PC = this.PC;
+							FP = this.FP;
+							SP = this.SP;
+							numInstrs = this.numInstrs;
+							if (FP == stopFP)
+								return true;
+							break;
+						}
+					}
+					PC = newPC;
+					break;
+				}
+				default:
+					throw new Report.InternalError();
+				}
+			}
+		}
+
+		/**
+		 * Izvede skok in ga po potrebi sporoci kot skok nazaj.
+		 * 
+		 * @param PC       Naslov ukaza za skok.
+		 * @param targetPC Naslov, na katerega se skoci.
+		 * @return Naslov, na katerega se skoci.
+		 */
+		private int jump(final int PC, final int targetPC) {
+			if (profile && (targetPC <= PC))
+				backEdge(PC);
+			return targetPC;
+		}
+
+		/**
+		 * Obdela klic funkcije, preden interpreter postavi njen klicni zapis.
+		 * 
+		 * Ob klicu so registri zapisani v poljih razreda, naslov funkcije je ze
+		 * prevzet s sklada, programski stevec pa kaze na ukaz {@code CALL}. Ce metoda
+		 * klic izvede sama, mora registre nastaviti na stanje po vrnitvi iz funkcije.
+		 * 
+		 * @param newPC Naslov klicane funkcije.
+		 * @return Ali je bil klic ze izveden.
+		 */
+		protected boolean enter(final int newPC) {
+			return false;
+		}
+
+		/**
+		 * Obdela skok nazaj.
+		 * 
+		 * @param PC Naslov ukaza za skok.
+		 */
+		protected void backEdge(final int PC) {
+		}
+
+	}
+
+	/**
+	 * Izvajanje skladovnega stroja nad grafom vozlisc.
+	 * 
+	 * Pred izvajanjem se vsak ukaz prevede v vozlisce, ki ima operand, naslednji
+	 * ukaz in (pri pogojnih skokih) cilj skoka ze doloceno. Izvajanje je
+	 * zaporedje klicev metode {@link Node#exec()}, ki izvede ukaz in vrne
+	 * naslednje vozlisce, zato se ukazi med izvajanjem ne dekodirajo vec.
+	 */
+	public static class ClosureExecutor extends Processor {
+
+		/** Vozlisca, indeksirana s fizicnim naslovom ukaza. */
+		private final Node[] nodes;
+
+		/**
+		 * Vozlisce grafa, ki predstavlja en ukaz.
+		 */
+		private abstract class Node {
+
+			/** Vozlisce naslednjega ukaza. */
+			Node next;
+
+			/** Vozlisce ukaza, na katerega se skoci (samo pri pogojnih skokih). */
+			Node target;
+
+			/** Fizicni naslov ukaza. */
+			int addr;
+
+			/**
+			 * Izvede ukaz.
+			 * 
+			 * @return Vozlisce ukaza, ki se izvede naslednji, ali {@code null} po klicu
+			 *         {@code exit}.
+			 */
+			abstract Node exec();
+
+		}
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa.
+		 * 
+		 * @param image Pomnilniska slika programa.
+		 */
+		public ClosureExecutor(final Linker.Image image) {
+			this(image, null);
+		}
+
+		/**
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa, ki se
+		 * izvaja v podanem okolju.
+		 * 
+		 * @param image       Pomnilniska slika programa.
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
+		 */
+		public ClosureExecutor(final Linker.Image image, final Environment environment) {
+			super(image, environment);
+			final int[] code = Bytecode.lower(image.code, image.operands);
+			this.nodes = new Node[codeSegmentSize];
+			for (int addr = 0; addr < codeSegmentSize; addr++)
+				if (image.code[addr] != null)
+					nodes[addr] = node(code, addr);
+			for (int addr = 0; addr < codeSegmentSize; addr++) {
+				if (nodes[addr] == null)
+					continue;
+				nodes[addr].addr = addr;
+				final int size = Bytecode.hasOperand(code[addr]) ? 5 : 1;
+				if (addr + size < codeSegmentSize)
+					nodes[addr].next = nodes[addr + size];
+				switch (code[addr]) {
+				case Bytecode.BEQ, Bytecode.BNE, Bytecode.BLT, Bytecode.BLE, Bytecode.BGT, Bytecode.BGE, Bytecode.BZ,
+						Bytecode.BNZ ->
+					nodes[addr].target = nodeAt(code[addr + 1]);
+				default -> {
+				}
+				}
+			}
+		}
+
+		@Override
+		protected void execute() {
+			final long limit = this.limit;
+			Node node = nodeAt(PC);
+			while (node != null) {
+				if (numInstrs >= limit) {
+					PC = node.addr;
+					break;
+				}
+				node = node.exec();
+			}
+		}
+
+		/**
+		 * Vrne vozlisce ukaza na podanem naslovu.
+		 * 
+		 * @param addr Fizicni naslov ukaza.
+		 * @return Vozlisce ukaza.
+		 */
+		private Node nodeAt(final int addr) {
+			final Node node = (addr >= 0) && (addr < nodes.length) ? nodes[addr] : null;
+			if (node == null)
+				throw new Report.InternalError();
+			return node;
+		}
+
+		/**
+		 * Prevede ukaz v vozlisce.
+		 * 
+		 * @param code Koda programa (glej {@link Bytecode}).
+		 * @param pc   Fizicni naslov ukaza.
+		 * @return Vozlisce ukaza.
+		 */
+		private Node node(final int[] code, final int pc) {
+			final int operand = Bytecode.hasOperand(code[pc]) ? code[pc + 1] : 0;
+			return switch (code[pc]) {
+			case Bytecode.INIT -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					SP = execINIT(SP);
+					return next;
+				}
+			};
+			case Bytecode.LOAD -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int addr = memory.load(SP);
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(SP, memory.load(addr));
+					return next;
+				}
+			};
+			case Bytecode.SAVE -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int addr = memory.load(SP);
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(addr, memory.load(SP + 4));
+					SP += 8;
+					return next;
+				}
+			};
+			case Bytecode.POPN -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					int n = memory.load(SP);
+					SP += 4;
+					if (n < 0) {
+						checkStack(SP + n);
+						while (n < 0) {
+							SP -= 4;
+							memory.save(SP, 0);
+							n += 4;
+						}
+					} else {
+						while (n > 0) {
+							SP += 4;
+							n -= 4;
+						}
+					}
+					return next;
+				}
+			};
+			case Bytecode.PUSH, Bytecode.REGN_PC -> {
+				final int value = code[pc] == Bytecode.PUSH ? operand : pc;
+				yield new Node() {
+					@Override
+					Node exec() {
+						numInstrs++;
+						SP -= 4;
+						memory.save(SP, value);
+						return next;
+					}
+				};
+			}
+			case Bytecode.REGN_FP -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					SP -= 4;
+					memory.save(SP, FP);
+					return next;
+				}
+			};
+			case Bytecode.REGN_SP -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					SP -= 4;
+					memory.save(SP, SP + 4);
+					return next;
+				}
+			};
+			case Bytecode.NOT -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					memory.save(SP, memory.load(SP) == 0 ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.NEG -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					memory.save(SP, -memory.load(SP));
+					return next;
+				}
+			};
+			case Bytecode.OR, Bytecode.AND, Bytecode.EQU, Bytecode.NEQ, Bytecode.GTH, Bytecode.LTH, Bytecode.GEQ,
+					Bytecode.LEQ, Bytecode.ADD, Bytecode.SUB, Bytecode.MUL, Bytecode.DIV, Bytecode.MOD ->
+				binary(code[pc]);
+			case Bytecode.UJMP -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int newPC = memory.load(SP);
+					SP += 4;
+					return nodeAt(newPC);
+				}
+			};
+			case Bytecode.CJMP -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int elsePC = memory.load(SP);
+					final int thenPC = memory.load(SP + 4);
+					final int cond = memory.load(SP + 8);
+					SP += 12;
+					return nodeAt((cond != 0) ? thenPC : elsePC);
+				}
+			};
+			case Bytecode.CALL -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int newPC = memory.load(SP);
+					SP += 4;
+					if (newPC < 0)
+						return sysCall(newPC) ? next : null;
+					checkStack(SP - 8);
+					SP -= 4;
+					memory.save(SP, FP);
+					SP -= 4;
+					memory.save(SP, pc + 1);
+					FP = SP + 8;
+					return nodeAt(newPC);
+				}
+			};
+			case Bytecode.RETN -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					int parsSize = memory.load(SP);
+					final int result = memory.load(SP + 4);
+					final int newPC = memory.load(FP - 8);
+					SP = FP;
+					FP = memory.load(FP - 4);
+					parsSize += 4;
+					while (parsSize > 0) {
+						SP += 4;
+						parsSize -= 4;
+					}
+					SP -= 4;
+					memory.save(SP, result);
+					return nodeAt(newPC);
+				}
+			};
+			case Bytecode.TCALL -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int newPC = memory.load(SP);
+					final int callerParsSize = memory.load(SP + 4);
+					final int parsSize = memory.load(SP + 8);
+					SP += 12;
+					FP = tailFrame(FP, SP, parsSize, callerParsSize);
+					SP = FP - 8;
+					return nodeAt(newPC);
+				}
+			};
+			case Bytecode.LOADL -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int addr = FP + operand;
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					SP -= 4;
+					memory.save(SP, memory.load(addr));
+					return next;
+				}
+			};
+			case Bytecode.SAVEL -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int addr = FP + operand;
+					if (addr < codeSegmentSize)
+						throw new Report.InternalError();
+					memory.save(addr, memory.load(SP));
+					SP += 4;
+					return next;
+				}
+			};
+			case Bytecode.LOADG -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					SP -= 4;
+					memory.save(SP, memory.load(operand));
+					return next;
+				}
+			};
+			case Bytecode.SAVEG -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					memory.save(operand, memory.load(SP));
+					SP += 4;
+					return next;
+				}
+			};
+			case Bytecode.BEQ, Bytecode.BNE, Bytecode.BLT, Bytecode.BLE, Bytecode.BGT, Bytecode.BGE ->
+				branch(code[pc]);
+			case Bytecode.BZ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int cond = memory.load(SP);
+					SP += 4;
+					return cond == 0 ? target : next;
+				}
+			};
+			case Bytecode.BNZ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int cond = memory.load(SP);
+					SP += 4;
+					return cond != 0 ? target : next;
+				}
+			};
+			default -> throw new Report.InternalError();
+			};
+		}
 
-		/** Preslikava fizicnih naslovov v imena oznak. */
-		private final HashMap<Integer, String> addrToLabel = new HashMap<Integer, String>();
+		/**
+		 * Prevede racunsko operacijo z dvema operandoma v vozlisce.
+		 * 
+		 * @param opcode Operacijska koda.
+		 * @return Vozlisce ukaza.
+		 */
+		private Node binary(final int opcode) {
+			return switch (opcode) {
+			case Bytecode.OR -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, (memory.load(SP) != 0) || (snd != 0) ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.AND -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, (memory.load(SP) != 0) && (snd != 0) ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.EQU -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) == snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.NEQ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) != snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.GTH -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) > snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.LTH -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) < snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.GEQ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) >= snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.LEQ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) <= snd ? 1 : 0);
+					return next;
+				}
+			};
+			case Bytecode.ADD -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) + snd);
+					return next;
+				}
+			};
+			case Bytecode.SUB -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) - snd);
+					return next;
+				}
+			};
+			case Bytecode.MUL -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) * snd);
+					return next;
+				}
+			};
+			case Bytecode.DIV -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) / snd);
+					return next;
+				}
+			};
+			case Bytecode.MOD -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					SP += 4;
+					memory.save(SP, memory.load(SP) % snd);
+					return next;
+				}
+			};
+			default -> throw new Report.InternalError();
+			};
+		}
 
-		/** Velikost segmenta z ukazi kode programa. */
-		private final int codeSegmentSize;
+		/**
+		 * Prevede pogojni skok s primerjavo dveh vrednosti v vozlisce.
+		 * 
+		 * @param opcode Operacijska koda.
+		 * @return Vozlisce ukaza.
+		 */
+		private Node branch(final int opcode) {
+			return switch (opcode) {
+			case Bytecode.BEQ -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst == snd ? target : next;
+				}
+			};
+			case Bytecode.BNE -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst != snd ? target : next;
+				}
+			};
+			case Bytecode.BLT -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst < snd ? target : next;
+				}
+			};
+			case Bytecode.BLE -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst <= snd ? target : next;
+				}
+			};
+			case Bytecode.BGT -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst > snd ? target : next;
+				}
+			};
+			case Bytecode.BGE -> new Node() {
+				@Override
+				Node exec() {
+					numInstrs++;
+					final int snd = memory.load(SP);
+					final int fst = memory.load(SP + 4);
+					SP += 8;
+					return fst >= snd ? target : next;
+				}
+			};
+			default -> throw new Report.InternalError();
+			};
+		}
 
-		/** Velikost segmenta s staticnimi spremenljivkami. */
-		private final int dataSegmentSize;
+	}
 
-		/** Preslikava naslova v lokacijo kode, ki je izvor vrednosti na naslovu. */
-		final HashMap<Integer, String> debugLocs = new HashMap<Integer, String>();
+	/**
+	 * Izvajanje skladovnega stroja s prevajanjem pogosto izvajanih funkcij v kodo
+	 * javanskega navideznega stroja.
+	 * 
+	 * Funkcije se najprej interpretirajo, pri tem pa se za vsako funkcijo steje
+	 * klice in skoke nazaj. Ko stevec funkcije doseze {@link #jitThreshold} (oz.
+	 * mejo iz okolja izvajanja), se funkcija prevede (glej {@link Jit}) in vsi nadaljnji klici funkcije izvedejo
+	 * prevedeno kodo. Ze zacetega izvajanja funkcije se ne nadaljuje v prevedeni
+	 * kodi.
+	 */
+	public static class JitExecutor extends BytecodeExecutor implements JitRuntime {
 
-		/** Preslikava naslova v pomen podatka, ki je shranjen na naslovu. */
-		final HashMap<Integer, String> debugDscs = new HashMap<Integer, String>();
+		/** Velikost sklada niti, ki izvaja program (prevedene funkcije se klicejo rekurzivno). */
+		private static final long THREAD_STACK_SIZE = 1L << 30;
 
-		{
-			labelToAddr.put("exit", -1);
-			addrToLabel.put(-1, "exit");
-			labelToAddr.put("getint", -2);
-			addrToLabel.put(-2, "getint");
-			labelToAddr.put("putint", -3);
-			addrToLabel.put(-3, "putint");
-			labelToAddr.put("getstr", -4);
-			addrToLabel.put(-4, "getstr");
-			labelToAddr.put("putstr", -5);
-			addrToLabel.put(-5, "putstr");
-			labelToAddr.put("new", -6);
-			addrToLabel.put(-6, "new");
-			labelToAddr.put("del", -7);
-			addrToLabel.put(-7, "del");
-		}
+		/** Koda funkcij, indeksirana z naslovom vstopne tocke. */
+		private final Jit.Region[] regions;
 
-		/** Programski stevec. */
-		private int PC;
+		/**
+		 * Naslov vstopne tocke funkcije, ki ji ukaz pripada, indeksiran s fizicnim
+		 * naslovom ukaza ({@code -1}, ce funkcija se ni bila klicana).
+		 */
+		private final int[] regionOf;
 
-		/** Klicni kazalec. */
-		private int FP;
+		/**
+		 * Stevci klicev in skokov nazaj, indeksirani z naslovom vstopne tocke
+		 * funkcije ({@code -1}, ce je bila funkcija ze prevedena ali je ni mogoce
+		 * prevesti).
+		 */
+		private final int[] counters;
 
-		/** Skladovni kazalec. */
-		private int SP;
+		/** Prevedene funkcije, indeksirane z naslovom vstopne tocke. */
+		private final JitCode[] compiled;
 
-		/** Kazalec na prvi prosti naslov na kopici. */
-		private int HP;
+		/** Stevilo prevedenih funkcij. */
+		private int numCompiled = 0;
 
 		/**
-		 * Shrani vrednost v pomnilnik.
-		 * 
-		 * @param addr       Pomnilniski naslov.
-		 * @param value      Vrednost.
-		 * @param debugInstr Lokacija dela izvorne kode, ki zahteva shranjevanje.
+		 * Konec izvajanja programa s klicem {@code exit} znotraj prevedene funkcije.
 		 */
-		private void memSAVE(int addr, int value, final PDM.INSTR debugInstr) {
-			if (addr < codeSegmentSize)
-				throw new Report.InternalError();
-			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
-				debugLocs.put(addr, debugInstr.debugLocation.toString());
-			for (int b = 0; b < 4; b++) {
-				int val = ((value >> (b * 8)) & 0xFF);
-				memory.put(addr, (byte) val);
-				addr += 1;
+		@SuppressWarnings("serial")
+		private static class Halt extends RuntimeException {
+
+			/** Ustvari nov konec izvajanja. */
+			Halt() {
+				super(null, null, false, false);
 			}
+
 		}
 
 		/**
-		 * Prebere vrednost iz pomnilnika.
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa.
 		 * 
-		 * @param addr Pomnilniski naslov.
-		 * @return Vrednost.
+		 * @param image Pomnilniska slika programa.
 		 */
-		private int memLOAD(int addr) {
-			if (addr < codeSegmentSize)
-				throw new Report.InternalError();
-			int value = 0;
-			for (int b = 0; b < 4; b++) {
-				Byte val = memory.get(addr);
-				addr += 1;
-				if (val == null)
-					val = 0;
-				value = value | (((val < 0) ? ((int) val) + 256 : ((int) val)) << (b * 8));
-			}
-			return value;
+		public JitExecutor(final Linker.Image image) {
+			this(image, null);
 		}
 
 		/**
-		 * Prenos nove vrednosti na sklad.
+		 * Ustvari nov skladovni stroj za podano pomnilnisko sliko programa, ki se
+		 * izvaja v podanem okolju.
 		 * 
-		 * @param value      Vrednost.
-		 * @param debugInstr Lokacija dela izvorne kode, ki prenos nove vrednosti na
-		 *                   sklad.
+		 * @param image       Pomnilniska slika programa.
+		 * @param environment Okolje izvajanja ({@code null} za izvajanje iz ukazne
+		 *                    vrstice).
 		 */
-		private void push(final int value, final PDM.INSTR debugInstr) {
-			SP -= 4;
-			memSAVE(SP, value, debugInstr);
+		public JitExecutor(final Linker.Image image, final Environment environment) {
+			super(image, environment);
+			this.regions = new Jit.Region[codeSegmentSize];
+			this.regionOf = new int[codeSegmentSize];
+			Arrays.fill(regionOf, -1);
+			this.counters = new int[codeSegmentSize];
+			this.compiled = new JitCode[codeSegmentSize];
+			profile = true;
 		}
 
 		/**
-		 * Prevzem vrednost z vrha sklada.
+		 * Vrne stevilo prevedenih funkcij.
 		 * 
-		 * @return Vrednost.
+		 * @return Stevilo prevedenih funkcij.
 		 */
-		private int pop() {
-			if (debugStack)
-				debugLocs.put(SP, null);
-			final int value = memLOAD(SP);
-			SP += 4;
-			return value;
+		public int numCompiled() {
+			return numCompiled;
 		}
 
 		/**
-		 * Ustvari nov skladovni stroj za podan program in ta program izvede.
+		 * Vrne stevilo klicev in skokov nazaj, po katerem se funkcija prevede.
 		 * 
-		 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
-		 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+		 * @return Stevilo klicev in skokov nazaj.
 		 */
-		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+		private int threshold() {
+			return environment == null ? jitThreshold : environment.jitThreshold();
+		}
 
-			Scanner scanner = new Scanner(System.in);
-
-			int memPtr = 0;
-
-			if (debugLabelsList)
-				System.out.println("\n\033[1mCODE LABELS:\033[0m");
-			for (final PDM.CodeInstr instr : codeSegment) {
-				switch (instr) {
-				case PDM.LABEL i -> {
-					labelToAddr.put(i.name, memPtr);
-					addrToLabel.put(memPtr, i.name);
-					if (debugLabelsList)
-						System.out.printf("LABEL %s = %d\n", i.name, memPtr);
-					memPtr -= 1;
-				}
-				case PDM.INIT i -> program.put(memPtr, i);
-				case PDM.LOAD i -> program.put(memPtr, i);
-				case PDM.SAVE i -> program.put(memPtr, i);
-				case PDM.POPN i -> program.put(memPtr, i);
-				case PDM.PUSH i -> {
-					program.put(memPtr, i);
-					memPtr += 4;
-				}
-				case PDM.NAME i -> {
-					program.put(memPtr, i);
-					memPtr += 4;
-				}
-				case PDM.REGN i -> program.put(memPtr, i);
-				case PDM.OPER i -> program.put(memPtr, i);
-				case PDM.UJMP i -> program.put(memPtr, i);
-				case PDM.CJMP i -> program.put(memPtr, i);
-				case PDM.CALL i -> program.put(memPtr, i);
-				case PDM.RETN i -> program.put(memPtr, i);
-				default -> throw new Report.InternalError();
-				}
-				memPtr += 1;
+		@Override
+		protected void execute() {
+			if (stepping()) {
+				// med izvajanjem po korakih se prevedena koda ne izvaja
+				interpret(Integer.MIN_VALUE);
+				return;
 			}
-			codeSegmentSize = memPtr;
-
-			if (debugLabelsList)
-				System.out.println("\n\033[1mDATA LABELS:\033[0m");
-			for (final PDM.DataInstr instr : dataSegment) {
-				switch (instr) {
-				case PDM.LABEL i -> {
-					labelToAddr.put(i.name, memPtr);
-					addrToLabel.put(memPtr, i.name);
-					if (debugLabelsList)
-						System.out.printf("LABEL %s = %d\n", i.name, memPtr);
-				}
-				case PDM.SIZE i -> {
-					memPtr += i.size;
-				}
-				case PDM.DATA i -> {
-					memSAVE(memPtr, i.intc, i);
-					memPtr += 4;
-				}
-				default -> throw new Report.InternalError();
+			final Throwable[] thrown = new Throwable[1];
+			final Thread thread = new Thread(null, () -> {
+				try {
+					interpret(Integer.MIN_VALUE);
+				} catch (Halt __) {
+				} catch (Throwable throwable) {
+					thrown[0] = throwable;
 				}
+			}, "pins24", THREAD_STACK_SIZE);
+			thread.start();
+			try {
+				thread.join();
+			} catch (InterruptedException __) {
+				throw new Report.InternalError();
 			}
-			dataSegmentSize = memPtr - codeSegmentSize;
+			if (thrown[0] instanceof Error error)
+				throw error;
+			if (thrown[0] instanceof RuntimeException exception)
+				throw exception;
+		}
 
-			PC = 0;
-			FP = 0x10000;
-			SP = 0x10000;
-			HP = codeSegmentSize + dataSegmentSize;
+		@Override
+		protected boolean enter(final int newPC) {
+			if (stepping())
+				return false;
+			final JitCode jitCode = jitCode(newPC);
+			if (jitCode == null)
+				return false;
+			final int callerFP = FP;
+			final int returnPC = PC + 1;
+			checkStack(SP - 8);
+			SP -= 4;
+			memory.save(SP, callerFP);
+			SP -= 4;
+			memory.save(SP, returnPC);
+			SP = jitCode.run(this, memory, SP + 8, SP);
+			FP = callerFP;
+			PC = returnPC;
+			return true;
+		}
 
-			push(-1, null);
-			FP = SP + 0;
-			push(-1, null);
-			SP = SP + 0;
+		@Override
+		protected void backEdge(final int PC) {
+			final int entry = regionOf[PC];
+			if ((entry >= 0) && (counters[entry] >= 0) && (++counters[entry] >= threshold()))
+				compile(entry);
+		}
 
-			System.out.printf("\n");
-			loop: while (true) {
+		@Override
+		public int call(final int newPC, final int returnPC, final int FP, int SP) {
+			if (newPC < 0) {
+				this.PC = returnPC - 1;
+				this.FP = FP;
+				this.SP = SP;
+				if (!sysCall(newPC))
+					throw new Halt();
+				return this.SP;
+			}
+			checkStack(SP - 8);
+			SP -= 4;
+			memory.save(SP, FP);
+			SP -= 4;
+			memory.save(SP, returnPC);
+			final JitCode jitCode = jitCode(newPC);
+			if (jitCode != null)
+				return jitCode.run(this, memory, SP + 8, SP);
+			this.PC = newPC;
+			this.FP = SP + 8;
+			this.SP = SP;
+			if (!interpret(FP) || (numInstrs >= limit))
+				throw new Halt();
+			return this.SP;
+		}
 
-				if (debugStack) {
-					for (int stackAddr = 0x10000 - 4; stackAddr >= SP; stackAddr -= 4) {
-						final String debugLoc = debugLocs.get(stackAddr);
-						System.out.printf("%15s ", debugLoc == null ? "" : debugLoc);
-						if (stackAddr == FP)
-							System.out.printf("FP => ");
-						else if (stackAddr == SP)
-							System.out.printf("SP => ");
-						else
-							System.out.printf("      ");
-						System.out.printf("%6d: %12d", stackAddr, memLOAD(stackAddr));
-						final String debugDsc = debugDscs.get(stackAddr);
-						System.out.printf(" %s", debugDsc == null ? "" : debugDsc);
-						System.out.printf("\n");
-					}
-					System.out.printf("\n");
-				}
+		@Override
+		public int tailCall(final int newPC, final int parsSize, final int callerParsSize, final int FP,
+				final int SP) {
+			final int newFP = tailFrame(FP, SP, parsSize, callerParsSize);
+			return call(newPC, memory.load(newFP - 8), memory.load(newFP - 4), newFP);
+		}
 
-				final PDM.CodeInstr instr = program.get(PC);
-				if (debugStack) {
-					System.out.printf("\033[1m%15s %5d: %s\033[0m\n\n",
-							((PDM.INSTR) instr).debugLocation == null ? "" : ((PDM.INSTR) instr).debugLocation, PC,
-							instr.toString());
-				}
+		@Override
+		public int init(final int SP) {
+			return execINIT(SP);
+		}
 
-				switch (instr) {
-				case PDM.INIT i: {
-					int initAddr = pop();
-					int dstAddr = pop();
-					final int numInits = memLOAD(initAddr);
-					initAddr += 4;
-					for (int nInit = 0; nInit < numInits; nInit++) {
-						int num = memLOAD(initAddr);
-						initAddr += 4;
-						int len = memLOAD(initAddr);
-						initAddr += 4;
-						for (int n = 0; n < num; n++) {
-							for (int l = 0; l < len; l++) {
-								memSAVE(dstAddr, memLOAD(initAddr + 4 * l), i);
-								dstAddr += 4;
-							}
-						}
-						initAddr += 4 * len;
-					}
-					PC += i.size();
-					break;
-				}
-				case PDM.LOAD i: {
-					int addr = pop();
-					int value = memLOAD(addr);
-					push(value, i);
-					PC += i.size();
-					break;
-				}
-				case PDM.SAVE i: {
-					final int addr = pop();
-					final int value = pop();
-					memSAVE(addr, value, i);
-					PC += i.size();
-					break;
-				}
-				case PDM.POPN i: {
-					int n = pop();
-					if (n < 0) {
-						while (n < 0) {
-							push(0, i);
-							n += 4;
-						}
-					} else {
-						while (n > 0) {
-							pop();
-							n -= 4;
-						}
-					}
-					PC += i.size();
-					break;
-				}
-				case PDM.PUSH i: {
-					push(i.intc, i);
-					PC += i.size();
-					break;
-				}
-				case PDM.NAME i: {
-					push(labelToAddr.get(i.name), i);
-					PC += i.size();
-					break;
-				}
-				case PDM.REGN i: {
-					final int value = switch (i.regn) {
-					case PC -> PC;
-					case FP -> FP;
-					case SP -> SP;
-					default -> throw new Report.InternalError();
-					};
-					push(value, i);
-					PC += i.size();
-					break;
-				}
-				case PDM.OPER i: {
-					switch (i.oper) {
-					case NOT:
-					case NEG: {
-						final int expr = pop();
-						final int result = switch (i.oper) {
-						case NOT -> (expr == 0) ? 1 : 0;
-						case NEG -> -expr;
-						default -> throw new Report.InternalError();
-						};
-						push(result, i);
-						break;
-					}
-					case OR:
-					case AND:
-					case EQU:
-					case NEQ:
-					case GTH:
-					case LTH:
-					case GEQ:
-					case LEQ:
-					case ADD:
-					case SUB:
-					case MUL:
-					case DIV:
-					case MOD: {
-						final int snd = pop();
-						final int fst = pop();
-						int result = switch (i.oper) {
-						case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
-						case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
-						case EQU -> fst == snd ? 1 : 0;
-						case NEQ -> fst != snd ? 1 : 0;
-						case GTH -> fst > snd ? 1 : 0;
-						case LTH -> fst < snd ? 1 : 0;
-						case GEQ -> fst >= snd ? 1 : 0;
-						case LEQ -> fst <= snd ? 1 : 0;
-						case ADD -> fst + snd;
-						case SUB -> fst - snd;
-						case MUL -> fst * snd;
-						case DIV -> fst / snd;
-						case MOD -> fst % snd;
-						default -> throw new Report.InternalError();
-						};
-						push(result, i);
-						break;
-					}
-					default:
-						throw new Report.InternalError();
-					}
-					PC += i.size();
-					break;
-				}
-				case PDM.UJMP i: {
-					PC = pop();
-					break;
-				}
-				case PDM.CJMP i: {
-					final int elsePC = pop();
-					final int thenPC = pop();
-					final int cond = pop();
-					PC = (cond != 0) ? thenPC : elsePC;
-					break;
-				}
-				case PDM.CALL i: {
-					final int newPC = pop();
-					if (newPC < 0) {
-						switch (newPC) {
-						case -1: { // exit(exitcode)
-							pop(); // SL
-							final int exitCode = pop();
-							pop();
-							pop();
-							System.out.printf("EXIT CODE (SP=%d): %d\n", SP, exitCode);
-							break loop;
-						}
-						case -2: { // getint()
-							pop(); // SL
-							final int intValue = scanner.nextInt();
-							push(intValue, null); // result
-							PC += i.size();
-							break;
-						}
-						case -3: { // putint(intvalue)
-							pop(); // SL
-							final int intValue = pop();
-							System.out.printf("%d", intValue);
-							push(1, null); // result
-							PC += i.size();
-							break;
-						}
-						case -4: { // getstr(straddr)
-							pop(); // SL
-							int strAddr = pop();
-							final String strValue = scanner.nextLine();
-							for (int c = 0; c < strValue.length(); c++) {
-								memSAVE(strAddr, strValue.charAt(c), null);
-								strAddr += 4;
-							}
-							memSAVE(strAddr, 0, null);
-							push(1, null); // result
-							PC += i.size();
-							break;
-						}
-						case -5: { // putstr(straddr)
-							pop(); // SL
-							int strAddr = pop();
-							while (true) {
-								int c = memLOAD(strAddr);
-								if (c == 0)
-									break;
-								System.out.printf("%c", c);
-								strAddr += 4;
-							}
-							push(1, null); // result
-							PC += i.size();
-							break;
-						}
-						case -6: { // new(size)
-							pop(); // SL
-							final int size = pop();
-							final int addr = HP;
-							for (int a = addr; a < addr + size; a++)
-								memory.put(a, (byte) 0);
-							HP += size;
-							push(addr, null); // result
-							PC += i.size();
-							break;
-						}
-						case -7: { // del(addr)
-							pop(); // SL
-							pop(); // addr
-							push(1, null); // result
-							PC += i.size();
-							break;
-						}
-						default:
-							throw new Report.InternalError();
-						}
-					} else {
-						if (debugStack) {
-							debugDscs.put(SP, "... SL");
-							debugDscs.put(SP - 4,
-									"... FP *** " + (i.debugFrame == null ? "" : i.debugFrame.name) + " ***");
-							debugDscs.put(SP - 8, "... RA ");
-							if (i.debugFrame != null) {
-								if (i.debugFrame.debugPars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
-										if (relAccess.debugName != null)
-											debugDscs.put(SP + relAccess.offset, "... par: " + relAccess.debugName);
-								if (i.debugFrame.debugVars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
-										if (relAccess.debugName != null) {
-											if (relAccess.size == 4)
-												debugDscs.put(SP + relAccess.offset, "... var: " + relAccess.debugName);
-											else {
-												for (int s = 0; s < relAccess.size; s += 4)
-													debugDscs.put(SP + relAccess.offset + s,
-															"... var: " + relAccess.debugName + "[" + (s / 4) + "]");
-											}
-										}
-							}
-						}
-						push(FP, i);
-						push(PC + i.size(), i);
-						FP = SP + 8;
-						PC = newPC;
-					}
-					break;
-				}
-				case PDM.RETN i: {
-					if (debugStack) {
-						debugDscs.put(FP, null);
-						debugDscs.put(FP - 4, null);
-						debugDscs.put(FP - 8, null);
-						if (i.debugFrame != null) {
-							if (i.debugFrame.debugPars != null)
-								for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
-									if (relAccess.debugName != null)
-										debugDscs.put(FP + relAccess.offset, null);
-							if (i.debugFrame.debugVars != null)
-								for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
-									if (relAccess.debugName != null) {
-										if (relAccess.size == 4)
-											debugDscs.put(FP + relAccess.offset, null);
-										else {
-											for (int s = 0; s < relAccess.size; s += 4)
-												debugDscs.put(FP + relAccess.offset + s, null);
-										}
-									}
-						}
-					}
-					int parsSize = pop();
-					final int result = pop();
-					PC = memLOAD(FP - 8);
-					while (SP != FP) {
-						pop();
-					}
-					// SP = FP;
-					FP = memLOAD(FP - 4);
-					parsSize += 4;
-					while (parsSize > 0) {
-						pop();
-						parsSize -= 4;
-					}
-					push(result, i);
-					break;
-				}
-				default:
-					throw new Report.InternalError();
+		@Override
+		public void stack(final int SP) {
+			checkStack(SP);
+		}
+
+		@Override
+		public void count(final long numInstrs) {
+			this.numInstrs += numInstrs;
+			if (this.numInstrs >= limit)
+				throw new Halt();
+		}
+
+		/**
+		 * Steje klic funkcije in vrne njeno prevedeno kodo.
+		 * 
+		 * @param entry Naslov vstopne tocke funkcije.
+		 * @return Prevedena funkcija ali {@code null}, ce funkcija (se) ni prevedena.
+		 */
+		private JitCode jitCode(final int entry) {
+			final JitCode jitCode = compiled[entry];
+			if ((jitCode != null) || (counters[entry] < 0))
+				return jitCode;
+			if (regions[entry] == null) {
+				final Jit.Region region = Jit.region(code, entry);
+				if (region == null) {
+					counters[entry] = -1;
+					return null;
 				}
+				regions[entry] = region;
+				for (final int addr : region.addrs())
+					regionOf[addr] = entry;
 			}
+			if (++counters[entry] < threshold())
+				return null;
+			compile(entry);
+			return compiled[entry];
+		}
 
-			scanner.close();
+		/**
+		 * Prevede funkcijo.
+		 * 
+		 * @param entry Naslov vstopne tocke funkcije.
+		 */
+		private void compile(final int entry) {
+			counters[entry] = -1;
+			compiled[entry] = Jit.compile(code, codeSegmentSize, regions[entry]);
+			if (compiled[entry] != null)
+				numCompiled++;
 		}
 
 	}
@@ -564,25 +2606,47 @@ public class Machine {
 		System.out.println("This is PINS'24 compiler (pushdown machine):");
 
 		try {
-			if (cmdLineArgs.length == 0)
+			String srcFileName = null;
+			boolean unusedArgs = false;
+			for (final String cmdLineArg : cmdLineArgs) {
+				if (cmdLineArg.startsWith("--"))
+					parseOption(cmdLineArg);
+				else if (srcFileName == null)
+					srcFileName = cmdLineArg;
+				else
+					unusedArgs = true;
+			}
+			if (srcFileName == null)
 				throw new Report.Error("No source file specified in the command line.");
-			if (cmdLineArgs.length > 1)
+			if (unusedArgs)
 				Report.warning("Unused arguments in the command line.");
 
-			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+			try (SynAn synAn = new SynAn(srcFileName)) {
 				// abstraktna sintaksa:
 				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
 				// semanticna analiza:
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
 				// pomnilniska predstavitev:
 				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
-				// generiranje kode:
-				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
-
-				final List<PDM.CodeInstr> codeSegment = (new CodeGen.CodeSegmentGenerator(codegenAttrAST))
-						.codeSegment();
-				final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST))
-						.dataSegment();
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+				final Peephole peephole = new Peephole();
+				final PassManager passManager = new PassManager();
+				final List<PDM.CodeInstr> codeSegment;
+				final List<PDM.DataInstr> dataSegment;
+				if (PassManager.enabled) {
+					// vmesna koda in njena optimizacija:
+					final Lowering lowering = new Lowering(passManager.run(IRBuilder.build(foldAttrAST)));
+					// optimizacija kode:
+					codeSegment = peephole.optimize(lowering.codeSegment());
+					dataSegment = lowering.dataSegment();
+				} else {
+					// generiranje kode:
+					final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(foldAttrAST);
+					// optimizacija kode:
+					codeSegment = peephole.optimize((new CodeGen.CodeSegmentGenerator(codegenAttrAST)).codeSegment());
+					dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST)).dataSegment();
+				}
 
 				if (debugInstrsList) {
 					int addr = 0;
@@ -604,8 +2668,37 @@ public class Machine {
 					}
 				}
 
+				// povezovanje:
+				final Linker.Image image = Linker.link(codeSegment, dataSegment);
+
 				// ustvari nov stroj in izvede program:
-				new Executor(codeSegment, dataSegment);
+				final Processor processor = newProcessor(image);
+				processor.setBudget(maxInstrs);
+				final Result result = processor.run();
+				if (printStats) {
+					final double seconds = processor.runTime() / 1e9;
+					Report.info(String.format("%s engine: %d instructions in %.3f s (%.0f instructions/s).",
+							engine.name().toLowerCase(), processor.numInstrs(), seconds,
+							processor.numInstrs() / Math.max(seconds, 1e-9)));
+					if (PassManager.enabled)
+						Report.info(passManager.stats());
+					Report.info(peephole.stats());
+					Report.info(processor.heap.stats());
+					if (processor instanceof JitExecutor jitExecutor)
+						Report.info(String.format("jit: %d functions compiled.", jitExecutor.numCompiled()));
+				}
+				if ((processor instanceof TracedExecutor executor) && (executor.profiler() != null)) {
+					if (profileFileName == null)
+						executor.profiler().report(System.out);
+					else
+						try (PrintStream profileFile = new PrintStream(profileFileName)) {
+							executor.profiler().report(profileFile);
+						} catch (IOException __) {
+							throw new Report.Error("Cannot write profile to file '" + profileFileName + "'.");
+						}
+				}
+				if (result.status() == Status.EXHAUSTED)
+					throw new Report.Error("Program exceeded " + maxInstrs + " instructions.");
 			}
 
 			// Upajmo, da kdaj pridemo to te tocke.
@@ -620,4 +2713,172 @@ public class Machine {
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Obdela izbiro v ukazni vrstici.
+	 * 
+	 * @param option Izbira v ukazni vrstici.
+	 */
+	private static void parseOption(final String option) {
+		if (option.equals("--stats")) {
+			printStats = true;
+			return;
+		}
+		if (option.equals("--display")) {
+			CodeGen.display = true;
+			return;
+		}
+		if (option.equals("--ir")) {
+			PassManager.enabled = true;
+			return;
+		}
+		if (option.equals("--profile")) {
+			printProfile = true;
+			return;
+		}
+		if (option.startsWith("--profile=")) {
+			printProfile = true;
+			profileFileName = option.substring("--profile=".length());
+			if (!profileFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing profile file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--output=")) {
+			outputFileName = option.substring("--output=".length());
+			if (!outputFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing output file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--input=")) {
+			inputFileName = option.substring("--input=".length());
+			if (!inputFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing input file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--trace=")) {
+			traceFileName = option.substring("--trace=".length());
+			if (!traceFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing trace file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--checkpoint=")) {
+			checkpointFileName = option.substring("--checkpoint=".length());
+			if (!checkpointFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing checkpoint file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--checkpoint-every=")) {
+			try {
+				checkpointInterval = Long.parseLong(option.substring("--checkpoint-every=".length()));
+				if (checkpointInterval > 0)
+					return;
+			} catch (NumberFormatException __) {
+			}
+			throw new Report.Error("Illegal checkpoint interval in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--resume=")) {
+			resumeFileName = option.substring("--resume=".length());
+			if (!resumeFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing checkpoint file name in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--engine=")) {
+			try {
+				engine = Engine.valueOf(option.substring("--engine=".length()).toUpperCase());
+				return;
+			} catch (IllegalArgumentException __) {
+				throw new Report.Error("Unknown engine in command line option '" + option + "'.");
+			}
+		}
+		if (option.startsWith("--max-instrs=")) {
+			try {
+				maxInstrs = Long.parseLong(option.substring("--max-instrs=".length()));
+				if (maxInstrs > 0)
+					return;
+			} catch (NumberFormatException __) {
+			}
+			throw new Report.Error("Illegal instruction limit in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--heap-limit=")) {
+			try {
+				heapLimit = Integer.parseInt(option.substring("--heap-limit=".length()));
+				if (heapLimit >= 0)
+					return;
+			} catch (NumberFormatException __) {
+			}
+			throw new Report.Error("Illegal heap limit in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--stack-size=")) {
+			try {
+				stackSize = Integer.parseInt(option.substring("--stack-size=".length()));
+				if (stackSize >= 0)
+					return;
+			} catch (NumberFormatException __) {
+			}
+			throw new Report.Error("Illegal stack size in command line option '" + option + "'.");
+		}
+		if (option.startsWith("--jit-threshold=")) {
+			try {
+				jitThreshold = Integer.parseInt(option.substring("--jit-threshold=".length()));
+				if (jitThreshold > 0)
+					return;
+			} catch (NumberFormatException __) {
+			}
+			throw new Report.Error("Illegal JIT threshold in command line option '" + option + "'.");
+		}
+		throw new Report.Error("Unknown command line option '" + option + "'.");
+	}
+
+	/**
+	 * Ustvari izbrano izvedbo skladovnega stroja.
+	 * 
+	 * @param image Pomnilniska slika programa.
+	 * @return Skladovni stroj.
+	 */
+	private static Processor newProcessor(final Linker.Image image) {
+		if (debugStack && (engine != Engine.OBJECT)) {
+			Report.warning("Stack tracing is supported by the object engine only.");
+			engine = Engine.OBJECT;
+		}
+		if (printProfile && (engine != Engine.OBJECT)) {
+			Report.warning("Profiling is supported by the object engine only.");
+			engine = Engine.OBJECT;
+		}
+		if ((traceFileName != null) && (engine != Engine.OBJECT)) {
+			Report.warning("Execution tracing is supported by the object engine only.");
+			engine = Engine.OBJECT;
+		}
+		if ((checkpointFileName != null) && (engine != Engine.OBJECT)) {
+			Report.warning("Checkpoints are supported by the object engine only.");
+			engine = Engine.OBJECT;
+		}
+		if ((checkpointFileName != null) && (debugStack || printProfile || (traceFileName != null)))
+			Report.warning("Checkpoints are not written while execution is traced.");
+		return switch (engine) {
+		case OBJECT -> (debugStack || printProfile || (traceFileName != null)) ? new TracedExecutor(image)
+				: new Executor(image);
+		case BYTECODE -> new BytecodeExecutor(image);
+		case JIT -> new JitExecutor(image);
+		case CLOSURE -> new ClosureExecutor(image);
+		};
+	}
+
+	/**
+	 * Ustvari izbrano izvedbo skladovnega stroja, ki izvaja program v podanem
+	 * okolju (brez opazovanja izvajanja in izbir v ukazni vrstici).
+	 * 
+	 * @param engine      Izvedba skladovnega stroja.
+	 * @param image       Pomnilniska slika programa.
+	 * @param environment Okolje izvajanja.
+	 * @return Skladovni stroj.
+	 */
+	public static Processor newProcessor(final Engine engine, final Linker.Image image,
+			final Environment environment) {
+		return switch (engine) {
+		case OBJECT -> new Executor(image, environment);
+		case BYTECODE -> new BytecodeExecutor(image, environment);
+		case JIT -> new JitExecutor(image, environment);
+		case CLOSURE -> new ClosureExecutor(image, environment);
+		};
+	}
+
+}
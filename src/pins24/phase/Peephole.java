@@ -0,0 +1,302 @@
+package pins24.phase;
+
+import java.util.*;
+import java.util.function.*;
+
+import pins24.common.*;
+
+/**
+ * Optimizacija kode skozi lino (peephole).
+ *
+ * Segment kode se pregleduje po kratkih zaporedjih zaporednih ukazov, ki se
+ * primerjajo z vzorci iz tabele {@link #patterns}. Zaporedje, ki ustreza
+ * vzorcu, se nadomesti s krajsim zaporedjem enakega pomena, pregledovanje pa se
+ * ponavlja, dokler se koda spreminja. Noben vzorec ne odstrani oznake in noben
+ * vzorec (razen skoka na naslednji ukaz) ne sega preko oznake, zato skoki v
+ * kodo ostanejo veljavni. Nova ukaza prevzameta lokacijo v izvorni kodi prvega
+ * ukaza nadomescenega zaporedja.
+ */
+public class Peephole {
+
+	/**
+	 * Vzorec zaporedja ukazov.
+	 *
+	 * @param name    Opis vzorca.
+	 * @param length  Dolzina zaporedja ukazov.
+	 * @param rewrite Funkcija, ki zaporedju ukazov vrne nadomestno zaporedje ali
+	 *                {@code null}, ce zaporedje ne ustreza vzorcu.
+	 */
+	private record Pattern(String name, int length, Function<List<PDM.CodeInstr>, List<PDM.CodeInstr>> rewrite) {
+	}
+
+	/** Tabela vzorcev (daljsi vzorci z istim zacetkom so pred krajsimi). */
+	private static final List<Pattern> patterns = List.of(
+			// PUSH a; POPN; PUSH b; POPN -> PUSH a+b; POPN (oba odstranjujeta ali oba dodajata)
+			new Pattern("POPN; POPN", 4, instrs -> {
+				final Integer fst = pushed(instrs.get(0));
+				final Integer snd = pushed(instrs.get(2));
+				if ((fst == null) || (snd == null) || !(instrs.get(1) instanceof PDM.POPN)
+						|| !(instrs.get(3) instanceof PDM.POPN) || ((fst < 0) != (snd < 0)))
+					return null;
+				return List.of(new PDM.PUSH(fst + snd, loc(instrs)), instrs.get(1));
+			}),
+			// PUSH 0; POPN ->
+			new Pattern("PUSH 0; POPN", 2, instrs -> {
+				if (!isPushed(instrs.get(0), 0) || !(instrs.get(1) instanceof PDM.POPN))
+					return null;
+				return List.of();
+			}),
+			// (vrednost brez stranskih ucinkov); PUSH 4; POPN ->
+			new Pattern("value; PUSH 4; POPN", 3, instrs -> {
+				if (!isPure(instrs.get(0)) || !isPushed(instrs.get(1), 4) || !(instrs.get(2) instanceof PDM.POPN))
+					return null;
+				return List.of();
+			}),
+			// NAME l; UJMP; LABEL l -> LABEL l
+			new Pattern("jump to next", 3, instrs -> {
+				if (!(instrs.get(0) instanceof PDM.NAME name) || !(instrs.get(1) instanceof PDM.UJMP)
+						|| !(instrs.get(2) instanceof PDM.LABEL label) || !name.name.equals(label.name))
+					return null;
+				return List.of(label);
+			}),
+			// UJMP; (ukaz brez oznake) -> UJMP
+			new Pattern("unreachable", 2, instrs -> {
+				final PDM.CodeInstr instr = instrs.get(0);
+				if (!((instr instanceof PDM.UJMP) || (instr instanceof PDM.RETN) || (instr instanceof PDM.TCALL))
+						|| (instrs.get(1) instanceof PDM.LABEL))
+					return null;
+				return List.of(instr);
+			}),
+			// REGN.FP; PUSH k; OPER.ADD; LOAD -> LOADL k
+			new Pattern("local load", 4, instrs -> {
+				final Integer offset = framePointerOffset(instrs);
+				if ((offset == null) || !(instrs.get(3) instanceof PDM.LOAD))
+					return null;
+				return List.of(new PDM.LOADL(offset, loc(instrs)));
+			}),
+			// REGN.FP; PUSH k; OPER.ADD; SAVE -> SAVEL k
+			new Pattern("local save", 4, instrs -> {
+				final Integer offset = framePointerOffset(instrs);
+				if ((offset == null) || !(instrs.get(3) instanceof PDM.SAVE))
+					return null;
+				return List.of(new PDM.SAVEL(offset, loc(instrs)));
+			}),
+			// NAME l; LOAD -> LOADG l
+			new Pattern("global load", 2, instrs -> {
+				if (!(instrs.get(0) instanceof PDM.NAME name) || !(instrs.get(1) instanceof PDM.LOAD))
+					return null;
+				return List.of(new PDM.LOADG(name.name, loc(instrs)));
+			}),
+			// NAME l; SAVE -> SAVEG l
+			new Pattern("global save", 2, instrs -> {
+				if (!(instrs.get(0) instanceof PDM.NAME name) || !(instrs.get(1) instanceof PDM.SAVE))
+					return null;
+				return List.of(new PDM.SAVEG(name.name, loc(instrs)));
+			}),
+			// PUSH a; OPER.ADD; PUSH b; OPER.ADD -> PUSH a+b; OPER.ADD
+			new Pattern("ADD; ADD", 4, instrs -> {
+				final Integer fst = pushed(instrs.get(0));
+				final Integer snd = pushed(instrs.get(2));
+				if ((fst == null) || (snd == null) || !isOper(instrs.get(1), PDM.OPER.Oper.ADD)
+						|| !isOper(instrs.get(3), PDM.OPER.Oper.ADD))
+					return null;
+				return List.of(new PDM.PUSH(fst + snd, loc(instrs)), instrs.get(1));
+			}),
+			// PUSH a; PUSH b; OPER -> PUSH (a OPER b)
+			new Pattern("constant operation", 3, instrs -> {
+				final Integer fst = pushed(instrs.get(0));
+				final Integer snd = pushed(instrs.get(1));
+				if ((fst == null) || (snd == null) || !(instrs.get(2) instanceof PDM.OPER oper))
+					return null;
+				final Integer value = compute(oper.oper, fst, snd);
+				return value == null ? null : List.of(new PDM.PUSH(value, loc(instrs)));
+			}),
+			// PUSH a; OPER.NEG -> PUSH -a, PUSH a; OPER.NOT -> PUSH !a
+			new Pattern("constant negation", 2, instrs -> {
+				final Integer value = pushed(instrs.get(0));
+				if ((value == null) || !(instrs.get(1) instanceof PDM.OPER oper))
+					return null;
+				return switch (oper.oper) {
+				case NEG -> List.of(new PDM.PUSH(-value, loc(instrs)));
+				case NOT -> List.of(new PDM.PUSH(value == 0 ? 1 : 0, loc(instrs)));
+				default -> null;
+				};
+			}),
+			// PUSH 0; OPER.ADD ->, PUSH 0; OPER.SUB ->, PUSH 1; OPER.MUL ->, PUSH 1; OPER.DIV ->
+			new Pattern("neutral operand", 2, instrs -> {
+				if ((isPushed(instrs.get(0), 0)
+						&& (isOper(instrs.get(1), PDM.OPER.Oper.ADD) || isOper(instrs.get(1), PDM.OPER.Oper.SUB)))
+						|| (isPushed(instrs.get(0), 1)
+								&& (isOper(instrs.get(1), PDM.OPER.Oper.MUL) || isOper(instrs.get(1), PDM.OPER.Oper.DIV))))
+					return List.of();
+				return null;
+			}));
+
+	/** Stevilo odstranjenih ukazov za vsak vzorec. */
+	private final int[] numRemoved = new int[patterns.size()];
+
+	/**
+	 * Ustvari nov optimizator kode skozi lino.
+	 */
+	public Peephole() {
+	}
+
+	/**
+	 * Optimizira segment kode.
+	 *
+	 * @param codeSegment Segment kode.
+	 * @return Optimiziran segment kode.
+	 */
+	public List<PDM.CodeInstr> optimize(final List<PDM.CodeInstr> codeSegment) {
+		List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>(codeSegment);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			final List<PDM.CodeInstr> newCode = new ArrayList<PDM.CodeInstr>(code.size());
+			int index = 0;
+			next: while (index < code.size()) {
+				for (int p = 0; p < patterns.size(); p++) {
+					final Pattern pattern = patterns.get(p);
+					if (index + pattern.length() > code.size())
+						continue;
+					final List<PDM.CodeInstr> instrs = code.subList(index, index + pattern.length());
+					final List<PDM.CodeInstr> replacement = pattern.rewrite().apply(instrs);
+					if (replacement == null)
+						continue;
+					newCode.addAll(replacement);
+					numRemoved[p] += pattern.length() - replacement.size();
+					index += pattern.length();
+					changed = true;
+					continue next;
+				}
+				newCode.add(code.get(index++));
+			}
+			code = newCode;
+		}
+		return code;
+	}
+
+	/**
+	 * Vrne stevilo odstranjenih ukazov za vsak vzorec, ki je bil uporabljen.
+	 *
+	 * @return Stevilo odstranjenih ukazov po opisih vzorcev.
+	 */
+	public Map<String, Integer> numRemoved() {
+		final Map<String, Integer> removed = new LinkedHashMap<String, Integer>();
+		for (int p = 0; p < patterns.size(); p++)
+			if (numRemoved[p] > 0)
+				removed.put(patterns.get(p).name(), numRemoved[p]);
+		return removed;
+	}
+
+	/**
+	 * Vrne opis stevila odstranjenih ukazov.
+	 *
+	 * @return Opis stevila odstranjenih ukazov.
+	 */
+	public String stats() {
+		int total = 0;
+		final StringBuilder perPattern = new StringBuilder();
+		for (final Map.Entry<String, Integer> entry : numRemoved().entrySet()) {
+			total += entry.getValue();
+			perPattern.append(perPattern.isEmpty() ? "" : ", ").append(entry.getKey() + ": " + entry.getValue());
+		}
+		return String.format("peephole: %d instructions removed (%s).", total, perPattern);
+	}
+
+	/**
+	 * Vrne lokacijo prvega ukaza zaporedja.
+	 *
+	 * @param instrs Zaporedje ukazov.
+	 * @return Lokacija prvega ukaza.
+	 */
+	private static Report.Locatable loc(final List<PDM.CodeInstr> instrs) {
+		return ((PDM.INSTR) instrs.get(0)).debugLocation;
+	}
+
+	/**
+	 * Vrne konstanto, ki jo ukaz {@code PUSH} potisne na sklad.
+	 *
+	 * @param instr Ukaz.
+	 * @return Konstanta ali {@code null}, ce ukaz ni {@code PUSH}.
+	 */
+	private static Integer pushed(final PDM.CodeInstr instr) {
+		return instr instanceof PDM.PUSH push ? push.intc : null;
+	}
+
+	/**
+	 * Ali ukaz na sklad potisne podano konstanto.
+	 *
+	 * @param instr Ukaz.
+	 * @param value Konstanta.
+	 * @return Ali ukaz na sklad potisne podano konstanto.
+	 */
+	private static boolean isPushed(final PDM.CodeInstr instr, final int value) {
+		final Integer pushed = pushed(instr);
+		return (pushed != null) && (pushed == value);
+	}
+
+	/**
+	 * Ali je ukaz podana operacija.
+	 *
+	 * @param instr Ukaz.
+	 * @param oper  Operacija.
+	 * @return Ali je ukaz podana operacija.
+	 */
+	private static boolean isOper(final PDM.CodeInstr instr, final PDM.OPER.Oper oper) {
+		return (instr instanceof PDM.OPER operInstr) && (operInstr.oper == oper);
+	}
+
+	/**
+	 * Ali ukaz le potisne vrednost na sklad (brez drugih ucinkov).
+	 *
+	 * @param instr Ukaz.
+	 * @return Ali ukaz le potisne vrednost na sklad.
+	 */
+	private static boolean isPure(final PDM.CodeInstr instr) {
+		return (instr instanceof PDM.PUSH) || (instr instanceof PDM.NAME) || (instr instanceof PDM.LOADL)
+				|| (instr instanceof PDM.LOADG) || (instr instanceof PDM.REGN);
+	}
+
+	/**
+	 * Vrne odmik naslova {@code FP+k}, ki ga izracunajo prvi trije ukazi zaporedja.
+	 *
+	 * @param instrs Zaporedje ukazov.
+	 * @return Odmik ali {@code null}, ce zaporedje ne izracuna takega naslova.
+	 */
+	private static Integer framePointerOffset(final List<PDM.CodeInstr> instrs) {
+		if (!(instrs.get(0) instanceof PDM.REGN regn) || (regn.regn != PDM.REGN.Reg.FP)
+				|| !isOper(instrs.get(2), PDM.OPER.Oper.ADD))
+			return null;
+		return pushed(instrs.get(1));
+	}
+
+	/**
+	 * Izracuna vrednost dvomestne operacije enako kot skladovni stroj.
+	 *
+	 * @param oper Operacija.
+	 * @param fst  Vrednost prvega operanda.
+	 * @param snd  Vrednost drugega operanda.
+	 * @return Vrednost ali {@code null}, ce operacija ni dvomestna ali bi se
+	 *         koncala z napako (deljenje z nic).
+	 */
+	private static Integer compute(final PDM.OPER.Oper oper, final int fst, final int snd) {
+		return switch (oper) {
+		case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+		case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+		case EQU -> fst == snd ? 1 : 0;
+		case NEQ -> fst != snd ? 1 : 0;
+		case GTH -> fst > snd ? 1 : 0;
+		case LTH -> fst < snd ? 1 : 0;
+		case GEQ -> fst >= snd ? 1 : 0;
+		case LEQ -> fst <= snd ? 1 : 0;
+		case ADD -> fst + snd;
+		case SUB -> fst - snd;
+		case MUL -> fst * snd;
+		case DIV -> snd == 0 ? null : fst / snd;
+		case MOD -> snd == 0 ? null : fst % snd;
+		default -> null;
+		};
+	}
+
+}
@@ -0,0 +1,192 @@
+package pins24.phase;
+
+import java.util.*;
+import pins24.common.*;
+import pins24.ir.*;
+import pins24.machine.*;
+
+/**
+ * Pregledovalnik dvojiske sledi izvajanja skladovnega stroja.
+ *
+ * Program se ponovno prevede, nato pa se sled izvajanja (glej {@link Trace}), ki
+ * jo zapise skladovni stroj z izbiro {@code --trace=FILE}, ponovi nad
+ * pomnilnikom brez izvajanja ukazov. Za izvedbe ukazov v izbranem obmocju se
+ * izpise enak testni izpis dogajanja na skladu kot pri
+ * {@link Machine#debugStack}, le brez izhoda programa.
+ */
+public class TraceView {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public TraceView() {
+		throw new Report.InternalError();
+	}
+
+	/** Zaporedna stevilka prve izpisane izvedbe ukaza. */
+	private static long fromStep = 1;
+
+	/** Zaporedna stevilka zadnje izpisane izvedbe ukaza. */
+	private static long toStep = Long.MAX_VALUE;
+
+	/** Ime datoteke s sledjo. */
+	private static String traceFileName = null;
+
+	/**
+	 * Ponovi sled izvajanja in izpise dogajanje na skladu.
+	 *
+	 * @param image  Pomnilniska slika programa.
+	 * @param reader Bralnik sledi.
+	 */
+	public static void replay(final Linker.Image image, final Trace.Reader reader) {
+		if (reader.codeSegmentSize != image.codeSegmentSize)
+			throw new Report.Error("Trace does not match the program.");
+
+		final PagedMemory memory = new PagedMemory();
+		image.load(memory);
+		for (int i = 0; i < reader.initStack.length; i++)
+			memory.save(reader.initSP + 4 * i, reader.initStack[i]);
+		final int stackTop = reader.initSP + 4 * reader.initStack.length;
+		final HashMap<Integer, String> debugLocs = new HashMap<Integer, String>();
+		final HashMap<Integer, String> debugDscs = new HashMap<Integer, String>();
+
+		final Trace.Step step = reader.start();
+		while (reader.next(step)) {
+			if (step.number > toStep)
+				break;
+			if ((step.PC < 0) || (step.PC >= image.code.length) || (image.code[step.PC] == null))
+				throw new Report.Error("Trace does not match the program.");
+			final PDM.CodeInstr instr = image.code[step.PC];
+
+			if (step.number >= fromStep) {
+				Machine.TracedExecutor.printStack(memory, stackTop, step.oldSP, step.oldFP, debugLocs, debugDscs);
+				Machine.TracedExecutor.printInstr(instr, step.PC);
+			}
+
+			if ((instr instanceof PDM.CALL i) && step.enter)
+				Machine.TracedExecutor.describeFrame(debugDscs, i.debugFrame, step.oldSP + 4);
+			if (instr instanceof PDM.RETN i)
+				Machine.TracedExecutor.forgetFrame(debugDscs, i.debugFrame, step.oldFP);
+			if (instr instanceof PDM.TCALL i) {
+				Machine.TracedExecutor.forgetFrame(debugDscs, i.debugCallerFrame, step.oldFP);
+				Machine.TracedExecutor.describeFrame(debugDscs, i.debugFrame, step.FP);
+			}
+			for (int p = 0; p < step.numPops; p++)
+				debugLocs.put(step.oldSP + 4 * p, null);
+			// 'sistemske' funkcije zapisujejo brez lokacije v izvorni kodi
+			final Report.Location location = ((instr instanceof PDM.CALL) && !step.enter) ? null
+					: ((PDM.INSTR) instr).debugLocation;
+			for (int w = 0; w < step.numWrites; w++) {
+				final int addr = step.writes[2 * w];
+				memory.save(addr, step.writes[2 * w + 1]);
+				if (location != null)
+					debugLocs.put(addr, location.toString());
+			}
+		}
+		System.out.printf("TRACE: %d steps replayed\n", Math.min(step.number, toStep));
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon pregledovalnika sledi kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (trace viewer):");
+
+		try {
+			String srcFileName = null;
+			boolean unusedArgs = false;
+			for (final String cmdLineArg : cmdLineArgs) {
+				if (cmdLineArg.startsWith("--"))
+					parseOption(cmdLineArg);
+				else if (srcFileName == null)
+					srcFileName = cmdLineArg;
+				else
+					unusedArgs = true;
+			}
+			if (srcFileName == null)
+				throw new Report.Error("No source file specified in the command line.");
+			if (traceFileName == null)
+				throw new Report.Error("No trace file specified in the command line.");
+			if (unusedArgs)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(srcFileName)) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// poenostavljanje izrazov:
+				final Memory.AttrAST foldAttrAST = ConstFold.fold(memoryAttrAST);
+				final List<PDM.CodeInstr> codeSegment;
+				final List<PDM.DataInstr> dataSegment;
+				if (PassManager.enabled) {
+					// vmesna koda in njena optimizacija:
+					final Lowering lowering = new Lowering((new PassManager()).run(IRBuilder.build(foldAttrAST)));
+					codeSegment = (new Peephole()).optimize(lowering.codeSegment());
+					dataSegment = lowering.dataSegment();
+				} else {
+					// generiranje kode:
+					final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(foldAttrAST);
+					codeSegment = (new Peephole())
+							.optimize((new CodeGen.CodeSegmentGenerator(codegenAttrAST)).codeSegment());
+					dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST)).dataSegment();
+				}
+
+				// povezovanje:
+				final Linker.Image image = Linker.link(codeSegment, dataSegment);
+
+				// ponovitev sledi:
+				try (Trace.Reader reader = new Trace.Reader(traceFileName)) {
+					replay(image, reader);
+				}
+			}
+
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Obdela izbiro v ukazni vrstici.
+	 *
+	 * @param option Izbira v ukazni vrstici.
+	 */
+	private static void parseOption(final String option) {
+		if (option.equals("--display")) {
+			CodeGen.display = true;
+			return;
+		}
+		if (option.equals("--ir")) {
+			PassManager.enabled = true;
+			return;
+		}
+		if (option.startsWith("--trace=")) {
+			traceFileName = option.substring("--trace=".length());
+			if (!traceFileName.isEmpty())
+				return;
+			throw new Report.Error("Missing trace file name in command line option '" + option + "'.");
+		}
+		try {
+			if (option.startsWith("--from=")) {
+				fromStep = Long.parseLong(option.substring("--from=".length()));
+				if (fromStep > 0)
+					return;
+			}
+			if (option.startsWith("--to=")) {
+				toStep = Long.parseLong(option.substring("--to=".length()));
+				if (toStep > 0)
+					return;
+			}
+		} catch (NumberFormatException __) {
+		}
+		throw new Report.Error("Illegal command line option '" + option + "'.");
+	}
+
+}